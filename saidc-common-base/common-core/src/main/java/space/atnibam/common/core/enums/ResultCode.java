@@ -77,7 +77,10 @@ public enum ResultCode {
     MINIO_CREATE_TEMP_FILE_BEFORE_PROCESS_ERROR(3315, "处理视频前创建临时文件失败", HttpStatus.BAD_REQUEST),
     MINIO_DOWNLOAD_ORIGINAL_FILE_ERROR(3316, "下载原始文件过程出错", HttpStatus.NOT_FOUND),
     MINIO_PROCESS_VIDEO_ERROR(3317, "处理视频失败", HttpStatus.BAD_REQUEST),
-    MINIO_UPLOAD_FILE_ERROR(3318, "上传文件失败", HttpStatus.BAD_REQUEST);
+    MINIO_UPLOAD_FILE_ERROR(3318, "上传文件失败", HttpStatus.BAD_REQUEST),
+    MINIO_CREATE_MULTIPART_UPLOAD_ERROR(3319, "创建分段上传会话失败", HttpStatus.INTERNAL_SERVER_ERROR),
+    MINIO_COMPLETE_MULTIPART_UPLOAD_ERROR(3320, "完成分段上传失败", HttpStatus.INTERNAL_SERVER_ERROR),
+    MINIO_PACKAGE_HLS_ERROR(3321, "视频切片打包失败", HttpStatus.INTERNAL_SERVER_ERROR);
 
     /**
      * 状态码
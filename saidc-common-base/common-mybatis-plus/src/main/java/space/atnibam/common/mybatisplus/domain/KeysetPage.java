@@ -0,0 +1,35 @@
+package space.atnibam.common.mybatisplus.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * @ClassName: KeysetPage
+ * @Description: 键集分页（游标分页）结果，下一页从上一页最后一条记录的排序键之后开始查询，不需要跳过前面的记录
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-26 17:10
+ **/
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class KeysetPage<T> implements Serializable {
+
+    /**
+     * 当前页的记录
+     */
+    private List<T> records;
+
+    /**
+     * 查询下一页时传入的游标，没有下一页时为null
+     */
+    private String nextCursor;
+
+    /**
+     * 是否还有下一页
+     */
+    private Boolean hasMore;
+}
@@ -0,0 +1,148 @@
+package space.atnibam.common.mybatisplus.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.toolkit.support.SFunction;
+import space.atnibam.common.mybatisplus.domain.KeysetPage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * @ClassName: KeysetPageUtils
+ * @Description: 键集分页工具类，按（排序列, 主键）组合排序，以游标记录上一页最后一条记录的排序键.
+ * 查询条件为 排序列 &lt; 游标值 OR (排序列 = 游标值 AND 主键 &lt; 游标主键)，配合(过滤列, 排序列, 主键)索引，
+ * 任意页的查询代价都只与每页大小有关
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-26 17:18
+ **/
+public class KeysetPageUtils {
+
+    /**
+     * 每页最大记录数
+     */
+    public static final int MAX_PAGE_SIZE = 100;
+
+    /**
+     * 游标中各个值之间的分隔符
+     */
+    private static final String CURSOR_SEPARATOR = ",";
+
+    /**
+     * 为查询条件加上游标条件、排序和数量限制，多查询一条用于判断是否还有下一页
+     *
+     * @param wrapper    查询条件
+     * @param sortColumn 排序列
+     * @param idColumn   主键列
+     * @param sortValue  游标中的排序列值，查询第一页时为null
+     * @param idValue    游标中的主键值，查询第一页时为null
+     * @param asc        是否升序
+     * @param size       每页记录数
+     * @param <T>        实体类型
+     * @return 查询条件
+     */
+    public static <T> LambdaQueryWrapper<T> seek(LambdaQueryWrapper<T> wrapper, SFunction<T, ?> sortColumn, SFunction<T, ?> idColumn,
+                                                 Object sortValue, Object idValue, boolean asc, int size) {
+        if (sortValue != null && idValue != null) {
+            if (asc) {
+                wrapper.and(w -> w.gt(sortColumn, sortValue).or(o -> o.eq(sortColumn, sortValue).gt(idColumn, idValue)));
+            } else {
+                wrapper.and(w -> w.lt(sortColumn, sortValue).or(o -> o.eq(sortColumn, sortValue).lt(idColumn, idValue)));
+            }
+        }
+        wrapper.orderBy(true, asc, sortColumn).orderBy(true, asc, idColumn);
+        wrapper.last("LIMIT " + (normalizeSize(size) + 1));
+        return wrapper;
+    }
+
+    /**
+     * 为查询条件加上只按主键排序的游标条件、排序和数量限制，多查询一条用于判断是否还有下一页
+     *
+     * @param wrapper  查询条件
+     * @param idColumn 主键列
+     * @param idValue  游标中的主键值，查询第一页时为null
+     * @param asc      是否升序
+     * @param size     每页记录数
+     * @param <T>      实体类型
+     * @return 查询条件
+     */
+    public static <T> LambdaQueryWrapper<T> seek(LambdaQueryWrapper<T> wrapper, SFunction<T, ?> idColumn,
+                                                 Object idValue, boolean asc, int size) {
+        if (idValue != null) {
+            if (asc) {
+                wrapper.gt(idColumn, idValue);
+            } else {
+                wrapper.lt(idColumn, idValue);
+            }
+        }
+        wrapper.orderBy(true, asc, idColumn);
+        wrapper.last("LIMIT " + (normalizeSize(size) + 1));
+        return wrapper;
+    }
+
+    /**
+     * 将查询结果转为分页结果，查询结果比每页记录数多时说明还有下一页
+     *
+     * @param rows         按seek条件查询到的记录
+     * @param size         每页记录数
+     * @param cursorValues 从记录中取出游标值，依次为排序列值、主键值
+     * @param <T>          记录类型
+     * @return 分页结果
+     */
+    public static <T> KeysetPage<T> toPage(List<T> rows, int size, Function<T, Object[]> cursorValues) {
+        int pageSize = normalizeSize(size);
+        if (rows.size() <= pageSize) {
+            return new KeysetPage<>(rows, null, false);
+        }
+        List<T> records = new ArrayList<>(rows.subList(0, pageSize));
+        return new KeysetPage<>(records, encodeCursor(cursorValues.apply(records.get(pageSize - 1))), true);
+    }
+
+    /**
+     * 将游标值编码为游标
+     *
+     * @param values 游标值
+     * @return Base64编码的游标
+     */
+    public static String encodeCursor(Object... values) {
+        StringBuilder builder = new StringBuilder();
+        for (Object value : values) {
+            if (builder.length() > 0) {
+                builder.append(CURSOR_SEPARATOR);
+            }
+            builder.append(value);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(builder.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解码游标
+     *
+     * @param cursor 游标
+     * @param count  游标中值的个数
+     * @return 游标值，游标为空时返回null
+     * @throws IllegalArgumentException 游标格式不正确
+     */
+    public static String[] decodeCursor(String cursor, int count) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        String[] values = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(CURSOR_SEPARATOR, -1);
+        if (values.length != count) {
+            throw new IllegalArgumentException("游标格式不正确：" + cursor);
+        }
+        return values;
+    }
+
+    /**
+     * 将每页记录数限制在1到最大记录数之间
+     *
+     * @param size 每页记录数
+     * @return 限制后的每页记录数
+     */
+    private static int normalizeSize(int size) {
+        return Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+    }
+}
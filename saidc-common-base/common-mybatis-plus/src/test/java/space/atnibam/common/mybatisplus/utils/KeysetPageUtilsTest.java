@@ -0,0 +1,190 @@
+package space.atnibam.common.mybatisplus.utils;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.MybatisSqlSessionFactoryBuilder;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import lombok.Data;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import space.atnibam.common.mybatisplus.domain.KeysetPage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @ClassName: KeysetPageUtilsTest
+ * @Description: 键集分页工具类测试，在H2内存数据库中逐页查询，校验排序值重复时既不遗漏也不重复
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-29 19:30
+ **/
+class KeysetPageUtilsTest {
+
+    private static final int ROWS = 23;
+
+    private static final LocalDateTime BASE_TIME = LocalDateTime.of(2023, 10, 1, 12, 0);
+
+    private SqlSession session;
+
+    private ItemMapper mapper;
+
+    private final List<Item> items = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:keyset;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS keyset_item");
+            statement.execute("CREATE TABLE keyset_item (id BIGINT PRIMARY KEY, user_id BIGINT, create_date DATETIME)");
+            try (PreparedStatement insert = connection.prepareStatement("INSERT INTO keyset_item VALUES (?, ?, ?)")) {
+                for (long id = 1; id <= ROWS; id++) {
+                    // 每3条记录的创建时间相同，分页边界会落在相同的创建时间中间
+                    Item item = new Item();
+                    item.setId(id);
+                    item.setUserId(id % 5 == 0 ? 2L : 1L);
+                    item.setCreateDate(BASE_TIME.plusMinutes((id * 7 % ROWS) / 3));
+                    items.add(item);
+                    insert.setLong(1, item.getId());
+                    insert.setLong(2, item.getUserId());
+                    insert.setTimestamp(3, Timestamp.valueOf(item.getCreateDate()));
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+        }
+
+        MybatisConfiguration configuration = new MybatisConfiguration(
+                new Environment("test", new JdbcTransactionFactory(), dataSource));
+        configuration.setMapUnderscoreToCamelCase(true);
+        configuration.addMapper(ItemMapper.class);
+        session = new MybatisSqlSessionFactoryBuilder().build(configuration).openSession(true);
+        mapper = session.getMapper(ItemMapper.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        session.close();
+    }
+
+    /**
+     * 按(创建时间, 主键)降序逐页查询，结果与整体排序一致，排序值重复的记录不遗漏、不重复
+     */
+    @Test
+    void walksAllPagesBySortColumnAndId() {
+        List<Long> walked = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            String[] values = KeysetPageUtils.decodeCursor(cursor, 2);
+            LambdaQueryWrapper<Item> wrapper = new LambdaQueryWrapper<Item>().eq(Item::getUserId, 1L);
+            KeysetPageUtils.seek(wrapper, Item::getCreateDate, Item::getId,
+                    values == null ? null : LocalDateTime.parse(values[0]), values == null ? null : Long.valueOf(values[1]),
+                    false, 4);
+            KeysetPage<Item> page = KeysetPageUtils.toPage(mapper.selectList(wrapper), 4,
+                    item -> new Object[]{item.getCreateDate(), item.getId()});
+
+            assertThat(page.getRecords()).hasSizeLessThanOrEqualTo(4);
+            page.getRecords().forEach(item -> walked.add(item.getId()));
+            assertThat(page.getHasMore()).isEqualTo(page.getNextCursor() != null);
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        List<Long> expected = items.stream().filter(item -> item.getUserId() == 1L)
+                .sorted(Comparator.comparing(Item::getCreateDate).thenComparing(Item::getId).reversed())
+                .map(Item::getId).collect(Collectors.toList());
+        assertThat(walked).isEqualTo(expected);
+        assertThat(pages).isEqualTo((expected.size() + 3) / 4);
+    }
+
+    /**
+     * 只按主键升序逐页查询
+     */
+    @Test
+    void walksAllPagesById() {
+        List<Long> walked = new ArrayList<>();
+        String cursor = null;
+        do {
+            String[] values = KeysetPageUtils.decodeCursor(cursor, 1);
+            LambdaQueryWrapper<Item> wrapper = KeysetPageUtils.seek(new LambdaQueryWrapper<>(), Item::getId,
+                    values == null ? null : Long.valueOf(values[0]), true, 10);
+            KeysetPage<Item> page = KeysetPageUtils.toPage(mapper.selectList(wrapper), 10,
+                    item -> new Object[]{item.getId()});
+            page.getRecords().forEach(item -> walked.add(item.getId()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+
+        assertThat(walked).isEqualTo(IntStream.rangeClosed(1, ROWS).mapToObj(Long::valueOf).collect(Collectors.toList()));
+    }
+
+    /**
+     * 每页记录数限制在1到最大记录数之间，多查询的一条只用于判断是否还有下一页
+     */
+    @Test
+    void clampsPageSize() {
+        List<Integer> rows = IntStream.range(0, KeysetPageUtils.MAX_PAGE_SIZE + 50).boxed().collect(Collectors.toList());
+
+        KeysetPage<Integer> page = KeysetPageUtils.toPage(rows, 1000, row -> new Object[]{row});
+        assertThat(page.getRecords()).hasSize(KeysetPageUtils.MAX_PAGE_SIZE);
+        assertThat(page.getHasMore()).isTrue();
+
+        KeysetPage<Integer> single = KeysetPageUtils.toPage(rows.subList(0, 2), 0, row -> new Object[]{row});
+        assertThat(single.getRecords()).containsExactly(0);
+        assertThat(KeysetPageUtils.decodeCursor(single.getNextCursor(), 1)).containsExactly("0");
+
+        KeysetPage<Integer> last = KeysetPageUtils.toPage(Collections.singletonList(7), 5, row -> new Object[]{row});
+        assertThat(last.getHasMore()).isFalse();
+        assertThat(last.getNextCursor()).isNull();
+    }
+
+    /**
+     * 游标编码后可还原，值的个数不符时视为格式错误
+     */
+    @Test
+    void decodesOnlyWellFormedCursors() {
+        String cursor = KeysetPageUtils.encodeCursor("2023-10-01T12:00", 42L);
+
+        assertThat(KeysetPageUtils.decodeCursor(cursor, 2)).containsExactly("2023-10-01T12:00", "42");
+        assertThat(KeysetPageUtils.decodeCursor(null, 2)).isNull();
+        assertThat(KeysetPageUtils.decodeCursor("", 2)).isNull();
+        assertThatThrownBy(() -> KeysetPageUtils.decodeCursor(cursor, 1)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> KeysetPageUtils.decodeCursor("%%%", 1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Data
+    @TableName("keyset_item")
+    public static class Item {
+
+        @TableId(type = IdType.INPUT)
+        private Long id;
+
+        private Long userId;
+
+        private LocalDateTime createDate;
+    }
+
+    public interface ItemMapper extends BaseMapper<Item> {
+    }
+}
@@ -0,0 +1,133 @@
+package space.atnibam.common.redis.configure;
+
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * @ClassName: CompressedRedisValueCodec
+ * @Description: 为其他编解码方式增加压缩，编码结果超过阈值时压缩.
+ * 编码结果的第一个字节标记是否压缩，小数据不压缩，避免压缩的CPU开销超过节省的传输开销
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-28 10:34
+ **/
+public class CompressedRedisValueCodec implements RedisValueCodec {
+
+    /**
+     * 未压缩的标记
+     */
+    private static final byte RAW = 0;
+
+    /**
+     * 已压缩的标记
+     */
+    private static final byte DEFLATED = 1;
+
+    private final RedisValueCodec delegate;
+
+    /**
+     * 压缩阈值（单位：字节），编码结果不小于此值时压缩
+     */
+    private final int threshold;
+
+    /**
+     * 构造函数
+     *
+     * @param delegate  实际的编解码方式
+     * @param threshold 压缩阈值（单位：字节）
+     */
+    public CompressedRedisValueCodec(RedisValueCodec delegate, int threshold) {
+        this.delegate = delegate;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        return compress(delegate.encode(value), threshold);
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, Class<T> type) {
+        return delegate.decode(decompress(bytes), type);
+    }
+
+    /**
+     * 超过阈值时压缩，结果的第一个字节为压缩标记
+     *
+     * @param bytes     原始数据
+     * @param threshold 压缩阈值（单位：字节）
+     * @return 带压缩标记的数据
+     */
+    public static byte[] compress(byte[] bytes, int threshold) {
+        if (bytes.length < threshold) {
+            return mark(RAW, bytes, bytes.length);
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2 + 1);
+            out.write(DEFLATED);
+            byte[] buffer = new byte[Math.min(bytes.length, 8192)];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            // 压缩后没有变小时保存原始数据
+            if (out.size() >= bytes.length + 1) {
+                return mark(RAW, bytes, bytes.length);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * 按压缩标记还原数据
+     *
+     * @param bytes 带压缩标记的数据
+     * @return 原始数据
+     */
+    public static byte[] decompress(byte[] bytes) {
+        if (bytes[0] == RAW) {
+            return Arrays.copyOfRange(bytes, 1, bytes.length);
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, 1, bytes.length - 1);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new SerializationException("压缩数据不完整");
+                }
+                out.write(buffer, 0, length);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new SerializationException("解压缩失败", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * 在数据前加上压缩标记
+     *
+     * @param flag   压缩标记
+     * @param bytes  数据
+     * @param length 数据长度
+     * @return 带压缩标记的数据
+     */
+    private static byte[] mark(byte flag, byte[] bytes, int length) {
+        byte[] marked = new byte[length + 1];
+        marked[0] = flag;
+        System.arraycopy(bytes, 0, marked, 1, length);
+        return marked;
+    }
+}
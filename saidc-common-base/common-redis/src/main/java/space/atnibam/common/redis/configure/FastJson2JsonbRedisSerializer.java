@@ -0,0 +1,57 @@
+package space.atnibam.common.redis.configure;
+
+import com.alibaba.fastjson2.JSONB;
+import com.alibaba.fastjson2.JSONWriter;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import static space.atnibam.common.redis.configure.FastJson2JsonRedisSerializer.AUTO_TYPE_FILTER;
+
+/**
+ * @ClassName: FastJson2JsonbRedisSerializer
+ * @Description: Redis使用FastJSON2的JSONB二进制格式进行序列化操作，超过阈值的数据压缩保存.
+ * RedisService读取时不指定类型，因此仍写入类名，类名在JSONB中只占用符号表中的一项
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-28 11:02
+ **/
+public class FastJson2JsonbRedisSerializer<T> implements RedisSerializer<T> {
+
+    /**
+     * 泛型类Class对象
+     */
+    private final Class<T> clazz;
+
+    /**
+     * 压缩阈值（单位：字节）
+     */
+    private final int compressThreshold;
+
+    /**
+     * 构造函数
+     *
+     * @param clazz             泛型类Class对象
+     * @param compressThreshold 压缩阈值（单位：字节）
+     */
+    public FastJson2JsonbRedisSerializer(Class<T> clazz, int compressThreshold) {
+        this.clazz = clazz;
+        this.compressThreshold = compressThreshold;
+    }
+
+    @Override
+    public byte[] serialize(T t) throws SerializationException {
+        if (t == null) {
+            return new byte[0];
+        }
+        // ArrayList和HashMap在JSONB中的类名是不在白名单内的简写，不写入，读取时按字段类型还原
+        return CompressedRedisValueCodec.compress(JSONB.toBytes(t, JSONWriter.Feature.WriteClassName,
+                JSONWriter.Feature.NotWriteHashMapArrayListClassName), compressThreshold);
+    }
+
+    @Override
+    public T deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length <= 0) {
+            return null;
+        }
+        return JSONB.parseObject(CompressedRedisValueCodec.decompress(bytes), clazz, AUTO_TYPE_FILTER);
+    }
+}
@@ -0,0 +1,24 @@
+package space.atnibam.common.redis.configure;
+
+import cn.hutool.json.JSONUtil;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @ClassName: JsonRedisValueCodec
+ * @Description: 使用Hutool JSON文本编解码，与CacheClient原有的缓存格式一致，便于在Redis中直接查看
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-28 10:18
+ **/
+public class JsonRedisValueCodec implements RedisValueCodec {
+
+    @Override
+    public byte[] encode(Object value) {
+        return JSONUtil.toJsonStr(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, Class<T> type) {
+        return JSONUtil.toBean(new String(bytes, StandardCharsets.UTF_8), type);
+    }
+}
@@ -0,0 +1,22 @@
+package space.atnibam.common.redis.configure;
+
+import com.alibaba.fastjson2.JSONB;
+
+/**
+ * @ClassName: JsonbRedisValueCodec
+ * @Description: 使用FastJSON2的JSONB二进制格式编解码，不写入类名，按调用方给出的类型解码，体积和解析开销都小于JSON文本
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-28 10:25
+ **/
+public class JsonbRedisValueCodec implements RedisValueCodec {
+
+    @Override
+    public byte[] encode(Object value) {
+        return JSONB.toBytes(value);
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, Class<T> type) {
+        return JSONB.parseObject(bytes, type);
+    }
+}
@@ -1,5 +1,6 @@
 package space.atnibam.common.redis.configure;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.AutoConfigureBefore;
 import org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration;
 import org.springframework.cache.annotation.CachingConfigurerSupport;
@@ -8,11 +9,15 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
+import static space.atnibam.common.redis.constant.RedisConstants.*;
+
 /**
  * @ClassName: RedisConfig
- * @Description: Redis的配置类，使用自定义的FastJson2JsonRedisSerializer来序列化和反序列化redis的key值
+ * @Description: Redis的配置类，使用自定义的FastJson2JsonRedisSerializer来序列化和反序列化redis的key值，
+ * 配置redis.serializer.type=jsonb时改用JSONB二进制格式并压缩较大的值
  * @Author: AtnibamAitay
  * @CreateTime: 2023-10-15 14:55
  **/
@@ -21,6 +26,18 @@ import org.springframework.data.redis.serializer.StringRedisSerializer;
 @AutoConfigureBefore(RedisAutoConfiguration.class)
 public class RedisConfig extends CachingConfigurerSupport {
 
+    /**
+     * 值的序列化方式，json或jsonb，修改后已有的数据无法读取
+     */
+    @Value("${redis.serializer.type:" + SERIALIZER_JSON + "}")
+    private String serializerType;
+
+    /**
+     * jsonb序列化方式的压缩阈值（单位：字节）
+     */
+    @Value("${redis.serializer.compress-threshold:" + DEFAULT_COMPRESS_THRESHOLD + "}")
+    private int compressThreshold;
+
     /**
      * 配置RedisTemplate，设置序列化工具
      *
@@ -33,7 +50,9 @@ public class RedisConfig extends CachingConfigurerSupport {
         RedisTemplate<Object, Object> template = new RedisTemplate<>();
         template.setConnectionFactory(connectionFactory);
 
-        FastJson2JsonRedisSerializer serializer = new FastJson2JsonRedisSerializer(Object.class);
+        RedisSerializer serializer = SERIALIZER_JSONB.equals(serializerType)
+                ? new FastJson2JsonbRedisSerializer(Object.class, compressThreshold)
+                : new FastJson2JsonRedisSerializer(Object.class);
 
         // 使用StringRedisSerializer来序列化和反序列化redis的key值
         template.setKeySerializer(new StringRedisSerializer());
@@ -0,0 +1,28 @@
+package space.atnibam.common.redis.configure;
+
+/**
+ * @ClassName: RedisValueCodec
+ * @Description: 缓存值的编解码接口，CacheClient按key前缀选择编解码方式，未指定时使用JsonRedisValueCodec
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-28 10:12
+ **/
+public interface RedisValueCodec {
+
+    /**
+     * 编码
+     *
+     * @param value 缓存的值，不为null
+     * @return 编码后的字节数组，长度大于0
+     */
+    byte[] encode(Object value);
+
+    /**
+     * 解码
+     *
+     * @param bytes 编码后的字节数组
+     * @param type  值的类型
+     * @param <T>   值的类型
+     * @return 解码后的值
+     */
+    <T> T decode(byte[] bytes, Class<T> type);
+}
@@ -32,6 +32,16 @@ public class RedisConstants {
      */
     public static final int THREAD_POOL_SIZE = 10;
 
+    /**
+     * 重建缓存线程池的队列容量，队列满时放弃重建，继续返回旧数据
+     */
+    public static final int REBUILD_QUEUE_CAPACITY = 1000;
+
+    /**
+     * 逻辑过期数据提前刷新的系数，越大越早刷新，为0时只在过期后刷新
+     */
+    public static final double EARLY_REFRESH_BETA = 1.0;
+
     /**
      * 获取互斥锁的超时时间（10秒）
      */
@@ -41,4 +51,59 @@ public class RedisConstants {
      * 线程休眠的时间（50毫秒）
      */
     public static final long SLEEP_TIME_IN_MILLIS = 50L;
+
+    /**
+     * 逻辑过期数据在Redis中的实际过期时间为逻辑过期时间的倍数，持续被访问的数据会在重建时续期，长期未访问的数据由Redis清理
+     */
+    public static final long LOGICAL_EXPIRE_TTL_MULTIPLE = 3L;
+
+    /**
+     * 逻辑过期数据的头部长度，依次为逻辑过期时间戳和重建耗时，各8字节
+     */
+    public static final int LOGICAL_EXPIRE_HEADER_LENGTH = 16;
+
+    /**
+     * RedisTemplate值的序列化方式：JSON文本
+     */
+    public static final String SERIALIZER_JSON = "json";
+
+    /**
+     * RedisTemplate值的序列化方式：JSONB二进制
+     */
+    public static final String SERIALIZER_JSONB = "jsonb";
+
+    /**
+     * 默认的压缩阈值（单位：字节）
+     */
+    public static final int DEFAULT_COMPRESS_THRESHOLD = 1024;
+
+    /**
+     * 二级缓存失效消息的发布订阅频道
+     */
+    public static final String CACHE_INVALIDATION_CHANNEL = "cache:invalidation";
+
+    /**
+     * 布隆过滤器位图的键前缀
+     */
+    public static final String BLOOM_FILTER_KEY = "bloom:";
+
+    /**
+     * 布隆过滤器新增元素的发布订阅频道
+     */
+    public static final String BLOOM_FILTER_CHANNEL = "bloom:add";
+
+    /**
+     * 布隆过滤器初始化完成标记的键后缀
+     */
+    public static final String BLOOM_FILTER_READY_SUFFIX = ":ready";
+
+    /**
+     * 本地布隆过滤器与Redis位图同步的间隔（单位：秒），作为新增消息丢失时的兜底
+     */
+    public static final long BLOOM_FILTER_SYNC_SECONDS = 60L;
+
+    /**
+     * 布隆过滤器初始化锁的超时时间（单位：秒），需要覆盖从数据库加载全部id的耗时，持有锁的节点退出后其他节点最迟在过期后重新初始化
+     */
+    public static final long BLOOM_FILTER_INIT_LOCK_TIMEOUT = 300L;
 }
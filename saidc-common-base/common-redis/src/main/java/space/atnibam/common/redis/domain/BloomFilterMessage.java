@@ -0,0 +1,31 @@
+package space.atnibam.common.redis.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @ClassName: BloomFilterMessage
+ * @Description: 布隆过滤器的新增元素消息，通过Redis发布订阅通知其他节点更新本地布隆过滤器
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-27 17:05
+ **/
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BloomFilterMessage {
+    /**
+     * 发送消息的节点标识，节点忽略自己发送的消息
+     */
+    private String nodeId;
+
+    /**
+     * 布隆过滤器名称
+     */
+    private String filterName;
+
+    /**
+     * 新增的元素
+     */
+    private String value;
+}
@@ -0,0 +1,31 @@
+package space.atnibam.common.redis.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @ClassName: CacheInvalidationMessage
+ * @Description: 二级缓存的失效消息，通过Redis发布订阅通知其他节点清除本地缓存
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-27 10:24
+ **/
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheInvalidationMessage {
+    /**
+     * 发送消息的节点标识，节点忽略自己发送的消息
+     */
+    private String nodeId;
+
+    /**
+     * 缓存名称
+     */
+    private String cacheName;
+
+    /**
+     * 失效的键，为null时清空整个本地缓存
+     */
+    private String key;
+}
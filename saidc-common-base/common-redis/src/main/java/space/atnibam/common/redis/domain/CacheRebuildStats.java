@@ -0,0 +1,42 @@
+package space.atnibam.common.redis.domain;
+
+import lombok.Data;
+
+/**
+ * @ClassName: CacheRebuildStats
+ * @Description: 逻辑过期缓存的重建统计，包括重建线程池的状态和各类重建次数
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-27 15:20
+ **/
+@Data
+public class CacheRebuildStats {
+    /**
+     * 正在执行重建的线程数
+     */
+    private int activeCount;
+
+    /**
+     * 等待执行的重建任务数
+     */
+    private int queueSize;
+
+    /**
+     * 已完成的重建任务数
+     */
+    private long completedCount;
+
+    /**
+     * 过期前提前刷新的次数
+     */
+    private long earlyRefreshCount;
+
+    /**
+     * 因队列已满被放弃的重建次数
+     */
+    private long rejectedCount;
+
+    /**
+     * 执行失败的重建次数
+     */
+    private long failedCount;
+}
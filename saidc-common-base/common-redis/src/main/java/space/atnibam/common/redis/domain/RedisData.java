@@ -20,4 +20,9 @@ public class RedisData {
      * 实际的数据对象
      */
     private Object data;
+
+    /**
+     * 上一次重建数据的耗时（单位：毫秒），用于提前刷新
+     */
+    private Long rebuildMillis;
 }
\ No newline at end of file
@@ -189,6 +189,16 @@ public class RedisService {
         return redisTemplate.opsForHash().entries(key);
     }
 
+    /**
+     * 获取Hash数据结构中的所有字段，不读取字段的值
+     *
+     * @param key 用于获取数据的key
+     * @return Hash中的字段集合
+     */
+    public Set<String> getCacheMapKeys(final String key) {
+        return redisTemplate.opsForHash().keys(key);
+    }
+
     /**
      * 往Hash数据结构中存入数据
      *
@@ -200,6 +210,18 @@ public class RedisService {
         redisTemplate.opsForHash().put(key, hKey, value);
     }
 
+    /**
+     * 仅当Hash中不存在该字段时存入数据
+     *
+     * @param key   Redis的key
+     * @param hKey  Hash的key
+     * @param value 需要存储的值
+     * @return 存入成功返回true，字段已存在返回false
+     */
+    public <T> boolean setCacheMapValueIfAbsent(final String key, final String hKey, final T value) {
+        return Boolean.TRUE.equals(redisTemplate.opsForHash().putIfAbsent(key, hKey, value));
+    }
+
     /**
      * 获取Hash数据结构中的数据
      *
@@ -0,0 +1,231 @@
+package space.atnibam.common.redis.utils;
+
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.json.JSONUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import space.atnibam.common.redis.domain.BloomFilterMessage;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static space.atnibam.common.redis.constant.RedisConstants.*;
+
+/**
+ * @ClassName: BloomFilterManager
+ * @Description: 布隆过滤器管理器，按缓存的key前缀注册布隆过滤器，CacheClient查询前据此拒绝一定不存在的id.
+ * 第一个注册的节点从数据库加载全部id写入Redis位图，其他节点从Redis同步；新增元素通过发布订阅通知其他节点，并定时从Redis同步兜底
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-27 16:58
+ **/
+@Slf4j
+@Component
+public class BloomFilterManager {
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedisConnectionFactory redisConnectionFactory;
+
+    /**
+     * 当前节点的标识，用于忽略自己发送的新增消息
+     */
+    private final String nodeId = IdUtil.fastSimpleUUID();
+
+    private final Map<String, RedisBloomFilter> filters = new ConcurrentHashMap<>();
+
+    /**
+     * 各布隆过滤器的全量加载方法，初始化节点中途退出时由定时同步重新初始化
+     */
+    private final Map<String, Supplier<Collection<?>>> loaders = new ConcurrentHashMap<>();
+
+    private RedisMessageListenerContainer listenerContainer;
+
+    private ScheduledExecutorService syncExecutor;
+
+    /**
+     * 注册布隆过滤器.
+     * Redis中没有位图时，获取到初始化锁的节点调用loader加载全部id并写入Redis，其他节点等待写入完成后同步；
+     * 初始化完成前布隆过滤器认为所有id都可能存在
+     *
+     * @param keyPrefix          缓存的key前缀
+     * @param expectedInsertions 预计的元素数量
+     * @param fpp                期望的误判率
+     * @param loader             加载全部id，通常查询数据库
+     * @return 布隆过滤器
+     */
+    public RedisBloomFilter register(String keyPrefix, long expectedInsertions, double fpp, Supplier<Collection<?>> loader) {
+        RedisBloomFilter filter = new RedisBloomFilter(keyPrefix, expectedInsertions, fpp, stringRedisTemplate);
+        filters.put(keyPrefix, filter);
+        loaders.put(keyPrefix, loader);
+        start();
+
+        // Redis中的位图可能只有初始化期间新增元素写入的部分位，以初始化完成标记为准
+        if (initialized(keyPrefix)) {
+            if (filter.loadFromRedis()) {
+                filter.markReady();
+                return filter;
+            }
+            // 有完成标记但位图不存在（如被淘汰或误删），标记已失效，需要重新初始化
+            log.warn("布隆过滤器位图不存在，重新初始化：{}", keyPrefix);
+            stringRedisTemplate.delete(BLOOM_FILTER_KEY + keyPrefix + BLOOM_FILTER_READY_SUFFIX);
+        }
+
+        initialize(filter, loader);
+        // 未获取到锁时由定时同步在其他节点写入位图后完成初始化
+        return filter;
+    }
+
+    /**
+     * 获取初始化锁后调用loader加载全部id并写入Redis，未获取到锁时直接返回
+     *
+     * @param filter 布隆过滤器
+     * @param loader 加载全部id
+     */
+    private void initialize(RedisBloomFilter filter, Supplier<Collection<?>> loader) {
+        String keyPrefix = filter.getName();
+        String lockKey = LOCK_KEY + BLOOM_FILTER_KEY + keyPrefix;
+        Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(lockKey, nodeId, BLOOM_FILTER_INIT_LOCK_TIMEOUT, TimeUnit.SECONDS);
+        if (!Boolean.TRUE.equals(locked)) {
+            return;
+        }
+        try {
+            // 加载期间其他节点新增的元素通过发布订阅同时写入本地副本，写入Redis时一并保存
+            for (Object id : loader.get()) {
+                filter.putLocal(id);
+            }
+            filter.saveToRedis();
+            stringRedisTemplate.opsForValue().set(BLOOM_FILTER_KEY + keyPrefix + BLOOM_FILTER_READY_SUFFIX, nodeId);
+            filter.markReady();
+            log.info("布隆过滤器初始化完成：{}", keyPrefix);
+        } finally {
+            stringRedisTemplate.delete(lockKey);
+        }
+    }
+
+    /**
+     * 判断id是否可能存在，未注册布隆过滤器的key前缀总是返回true
+     *
+     * @param keyPrefix 缓存的key前缀
+     * @param id        数据的id
+     * @return 返回false时id一定不存在
+     */
+    public boolean mightContain(String keyPrefix, Object id) {
+        RedisBloomFilter filter = filters.get(keyPrefix);
+        return filter == null || filter.mightContain(id);
+    }
+
+    /**
+     * 新增id，数据写入数据库后调用
+     *
+     * @param keyPrefix 缓存的key前缀
+     * @param id        数据的id
+     */
+    public void put(String keyPrefix, Object id) {
+        RedisBloomFilter filter = filters.get(keyPrefix);
+        if (filter == null) {
+            return;
+        }
+        try {
+            filter.put(id);
+            stringRedisTemplate.convertAndSend(BLOOM_FILTER_CHANNEL,
+                    JSONUtil.toJsonStr(new BloomFilterMessage(nodeId, keyPrefix, String.valueOf(id))));
+        } catch (Exception e) {
+            // 本地副本已更新，其他节点在Redis恢复后仍可能误判该id不存在
+            log.warn("布隆过滤器新增元素失败，过滤器：{}，id：{}，错误信息：{}", keyPrefix, id, e.getMessage());
+        }
+    }
+
+    /**
+     * 订阅新增消息并启动定时同步，只执行一次
+     */
+    private synchronized void start() {
+        if (listenerContainer != null) {
+            return;
+        }
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        container.addMessageListener((message, pattern) ->
+                onMessage(new String(message.getBody(), StandardCharsets.UTF_8)), new ChannelTopic(BLOOM_FILTER_CHANNEL));
+        container.afterPropertiesSet();
+        container.start();
+        listenerContainer = container;
+
+        syncExecutor = Executors.newSingleThreadScheduledExecutor(
+                ThreadFactoryBuilder.create().setNamePrefix("bloom-sync-").setDaemon(true).build());
+        syncExecutor.scheduleWithFixedDelay(this::sync, BLOOM_FILTER_SYNC_SECONDS, BLOOM_FILTER_SYNC_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 收到其他节点的新增消息，更新本地副本
+     *
+     * @param body 消息内容
+     */
+    private void onMessage(String body) {
+        BloomFilterMessage message = JSONUtil.toBean(body, BloomFilterMessage.class);
+        if (nodeId.equals(message.getNodeId())) {
+            return;
+        }
+        RedisBloomFilter filter = filters.get(message.getFilterName());
+        if (filter != null) {
+            filter.putLocal(message.getValue());
+        }
+    }
+
+    /**
+     * Redis中的位图是否已由某个节点初始化完成
+     *
+     * @param keyPrefix 缓存的key前缀
+     * @return 是否已初始化
+     */
+    private boolean initialized(String keyPrefix) {
+        return Boolean.TRUE.equals(stringRedisTemplate.hasKey(BLOOM_FILTER_KEY + keyPrefix + BLOOM_FILTER_READY_SUFFIX));
+    }
+
+    /**
+     * 从Redis同步所有布隆过滤器，未初始化完成的布隆过滤器在其他节点初始化完成后开始生效；
+     * 仍未初始化时尝试获取初始化锁，初始化节点中途退出、锁过期后由当前节点重新初始化
+     */
+    private void sync() {
+        for (RedisBloomFilter filter : filters.values()) {
+            try {
+                if (filter.isReady()) {
+                    filter.loadFromRedis();
+                } else if (initialized(filter.getName()) && filter.loadFromRedis()) {
+                    filter.markReady();
+                } else {
+                    initialize(filter, loaders.get(filter.getName()));
+                }
+            } catch (Exception e) {
+                log.warn("同步布隆过滤器失败，过滤器：{}，错误信息：{}", filter.getName(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 停止订阅和定时同步
+     */
+    @PreDestroy
+    public synchronized void destroy() throws Exception {
+        if (syncExecutor != null) {
+            syncExecutor.shutdownNow();
+        }
+        if (listenerContainer != null) {
+            listenerContainer.destroy();
+        }
+    }
+}
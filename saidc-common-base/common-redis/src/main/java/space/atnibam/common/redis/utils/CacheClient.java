@@ -1,19 +1,43 @@
 package space.atnibam.common.redis.utils;
 
+import cn.hutool.core.thread.ThreadFactoryBuilder;
 import cn.hutool.core.util.BooleanUtil;
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
+import cn.hutool.core.util.IdUtil;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.core.types.Expiration;
 import org.springframework.stereotype.Component;
+import space.atnibam.common.redis.configure.JsonRedisValueCodec;
+import space.atnibam.common.redis.configure.RedisValueCodec;
+import space.atnibam.common.redis.domain.CacheRebuildStats;
 import space.atnibam.common.redis.domain.RedisData;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static space.atnibam.common.redis.constant.RedisConstants.*;
 
@@ -26,20 +50,115 @@ import static space.atnibam.common.redis.constant.RedisConstants.*;
 @Slf4j
 @Component
 public class CacheClient {
+    /**
+     * 释放互斥锁的脚本，锁的值与获取时一致才删除
+     */
+    private static final RedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end", Long.class);
+    /**
+     * 正在加载的key及其加载结果，同一节点内同一个key同时只有一个线程查询数据库
+     */
+    private final Map<String, CompletableFuture<Object>> inFlightLoads = new ConcurrentHashMap<>();
+    /**
+     * 互斥加载时表示缓存中没有可用数据，与缓存的空值区分
+     */
+    private static final Object CACHE_MISS = new Object();
+    /**
+     * 未按key前缀指定编解码方式时使用的JSON文本编解码
+     */
+    private static final RedisValueCodec DEFAULT_CODEC = new JsonRedisValueCodec();
+    /**
+     * 按key前缀指定的编解码方式
+     */
+    private final Map<String, RedisValueCodec> codecs = new ConcurrentHashMap<>();
+    /**
+     * 重建缓存线程池的核心线程数
+     */
+    @Value("${cache.rebuild.core-size:" + THREAD_POOL_SIZE + "}")
+    private int rebuildCoreSize;
+    /**
+     * 重建缓存线程池的最大线程数
+     */
+    @Value("${cache.rebuild.max-size:" + THREAD_POOL_SIZE + "}")
+    private int rebuildMaxSize;
+    /**
+     * 重建缓存线程池的队列容量
+     */
+    @Value("${cache.rebuild.queue-capacity:" + REBUILD_QUEUE_CAPACITY + "}")
+    private int rebuildQueueCapacity;
+    /**
+     * 提前刷新的系数，为0时只在逻辑过期后刷新
+     */
+    @Value("${cache.early-refresh.beta:" + EARLY_REFRESH_BETA + "}")
+    private double earlyRefreshBeta;
     /**
      * 用于重建缓存的线程池
      */
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(THREAD_POOL_SIZE);
+    private ThreadPoolExecutor cacheRebuildExecutor;
+    private final LongAdder earlyRefreshCount = new LongAdder();
+    private final LongAdder rejectedRebuildCount = new LongAdder();
+    private final LongAdder failedRebuildCount = new LongAdder();
     /**
      * StringRedisTemplate是Spring Data Redis模块的一个类，用来简化Redis的操作
      */
     private final StringRedisTemplate stringRedisTemplate;
 
+    /**
+     * 按key前缀注册的布隆过滤器，查询前拒绝一定不存在的id
+     */
+    private final BloomFilterManager bloomFilterManager;
+
     /**
      * 构造函数，初始化stringRedisTemplate
      */
-    public CacheClient(StringRedisTemplate stringRedisTemplate) {
+    public CacheClient(StringRedisTemplate stringRedisTemplate, BloomFilterManager bloomFilterManager) {
         this.stringRedisTemplate = stringRedisTemplate;
+        this.bloomFilterManager = bloomFilterManager;
+    }
+
+    /**
+     * 创建重建缓存的线程池，队列有界，队列满时放弃重建
+     */
+    @PostConstruct
+    public void initRebuildExecutor() {
+        cacheRebuildExecutor = new ThreadPoolExecutor(rebuildCoreSize, Math.max(rebuildCoreSize, rebuildMaxSize),
+                60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(rebuildQueueCapacity),
+                ThreadFactoryBuilder.create().setNamePrefix("cache-rebuild-").setDaemon(true).build(),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 关闭重建缓存的线程池
+     */
+    @PreDestroy
+    public void shutdownRebuildExecutor() {
+        cacheRebuildExecutor.shutdown();
+    }
+
+    /**
+     * 获取逻辑过期缓存的重建统计
+     *
+     * @return 重建统计
+     */
+    public CacheRebuildStats getRebuildStats() {
+        CacheRebuildStats stats = new CacheRebuildStats();
+        stats.setActiveCount(cacheRebuildExecutor.getActiveCount());
+        stats.setQueueSize(cacheRebuildExecutor.getQueue().size());
+        stats.setCompletedCount(cacheRebuildExecutor.getCompletedTaskCount());
+        stats.setEarlyRefreshCount(earlyRefreshCount.sum());
+        stats.setRejectedCount(rejectedRebuildCount.sum());
+        stats.setFailedCount(failedRebuildCount.sum());
+        return stats;
+    }
+
+    /**
+     * 为key前缀指定编解码方式，未指定的key使用JSON文本，修改已有数据的编解码方式时旧数据会被当作未命中重新加载
+     *
+     * @param keyPrefix key的前缀
+     * @param codec     编解码方式
+     */
+    public void registerCodec(String keyPrefix, RedisValueCodec codec) {
+        codecs.put(keyPrefix, codec);
     }
 
     /**
@@ -51,11 +170,21 @@ public class CacheClient {
      * @param unit  过期时间的单位
      */
     public void set(String key, Object value, Long time, TimeUnit unit) {
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value), time, unit);
+        setBytes(key, codecFor(key).encode(value), time, unit);
+    }
+
+    /**
+     * 删除Redis中的数据
+     *
+     * @param key 数据的键
+     */
+    public void delete(String key) {
+        stringRedisTemplate.delete(key);
     }
 
     /**
-     * 设置逻辑过期，即使数据在Redis中未过期，但是如果超过设定的逻辑过期时间，也视为过期
+     * 设置逻辑过期，即使数据在Redis中未过期，但是如果超过设定的逻辑过期时间，也视为过期.
+     * 数据在Redis中的实际过期时间为逻辑过期时间的若干倍，避免不再访问的数据一直占用内存
      *
      * @param key   数据的键
      * @param value 数据的值
@@ -63,17 +192,111 @@ public class CacheClient {
      * @param unit  过期时间的单位
      */
     public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit) {
-        // 创建一个RedisData对象，用于存放数据和逻辑过期时间
-        RedisData redisData = new RedisData();
-        redisData.setData(value);
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(unit.toSeconds(time)));
-        // 将RedisData对象写入Redis
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
+        setWithLogicalExpire(key, value, time, unit, null);
+    }
+
+    /**
+     * 设置逻辑过期，同时记录重建数据的耗时，用于提前刷新
+     *
+     * @param key           数据的键
+     * @param value         数据的值
+     * @param time          过期时间的值
+     * @param unit          过期时间的单位
+     * @param rebuildMillis 重建数据的耗时（单位：毫秒），未知时为null
+     */
+    private void setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit, Long rebuildMillis) {
+        // 逻辑过期时间和重建耗时以定长头部保存在数据之前，读取时不需要先解析数据
+        byte[] data = codecFor(key).encode(value);
+        ByteBuffer buffer = ByteBuffer.allocate(LOGICAL_EXPIRE_HEADER_LENGTH + data.length);
+        buffer.putLong(System.currentTimeMillis() + unit.toMillis(time));
+        buffer.putLong(rebuildMillis == null ? -1L : rebuildMillis);
+        buffer.put(data);
+        // 将数据写入Redis
+        setBytes(key, buffer.array(), time * LOGICAL_EXPIRE_TTL_MULTIPLE, unit);
+    }
+
+    /**
+     * 解析逻辑过期的数据
+     *
+     * @param key   数据的键
+     * @param bytes Redis中的数据
+     * @param type  数据的类型
+     * @return 包含数据和逻辑过期时间的RedisData对象，格式不正确时返回null
+     */
+    private RedisData decodeWithLogicalExpire(String key, byte[] bytes, Class<?> type) {
+        if (bytes.length <= LOGICAL_EXPIRE_HEADER_LENGTH) {
+            return null;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            RedisData redisData = new RedisData();
+            redisData.setExpireTime(LocalDateTime.ofInstant(Instant.ofEpochMilli(buffer.getLong()), ZoneId.systemDefault()));
+            long rebuildMillis = buffer.getLong();
+            redisData.setRebuildMillis(rebuildMillis < 0 ? null : rebuildMillis);
+            byte[] data = new byte[buffer.remaining()];
+            buffer.get(data);
+            redisData.setData(codecFor(key).decode(data, type));
+            return redisData;
+        } catch (Exception e) {
+            // 编解码方式变更前写入的数据，当作未命中处理
+            log.warn("解析缓存数据失败，key：{}，错误信息：{}", key, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 获取key对应的编解码方式
+     *
+     * @param key 数据的键
+     * @return 编解码方式
+     */
+    private RedisValueCodec codecFor(String key) {
+        for (Map.Entry<String, RedisValueCodec> entry : codecs.entrySet()) {
+            if (key.startsWith(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return DEFAULT_CODEC;
+    }
+
+    /**
+     * 读取Redis中的原始数据
+     *
+     * @param key 数据的键
+     * @return 原始数据，不存在时返回null，空值为长度为0的数组
+     */
+    private byte[] getBytes(String key) {
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        return stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(rawKey));
+    }
+
+    /**
+     * 向Redis写入原始数据
+     *
+     * @param key   数据的键
+     * @param value 原始数据
+     * @param time  过期时间的值
+     * @param unit  过期时间的单位
+     */
+    private void setBytes(String key, byte[] value, long time, TimeUnit unit) {
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        stringRedisTemplate.execute((RedisCallback<Boolean>) connection -> connection.stringCommands()
+                .set(rawKey, value, Expiration.from(time, unit), RedisStringCommands.SetOption.upsert()));
+    }
+
+    /**
+     * 写入空值，防止缓存穿透
+     *
+     * @param key 数据的键
+     */
+    private void setNull(String key) {
+        setBytes(key, new byte[0], CACHE_NULL_TTL, TimeUnit.MINUTES);
     }
 
     /**
      * 查询数据，解决缓存穿透问题。
      * 缓存穿透指查询一个一定不存在的数据，常通过禁止外部直接查询某个具体的key，或者将查询结果为空也缓存起来，来解决这个问题。
+     * 注册了布隆过滤器的key前缀，一定不存在的id在查询Redis前即被拒绝，不会写入空值
      *
      * @param keyPrefix  key的前缀
      * @param id         查询数据库时使用的id
@@ -89,15 +312,19 @@ public class CacheClient {
             String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
         // 构造完整的key
         String key = keyPrefix + id;
+        // 布隆过滤器判断一定不存在的id直接返回，不访问Redis和数据库
+        if (!bloomFilterManager.mightContain(keyPrefix, id)) {
+            return null;
+        }
         // 从Redis中查询数据
-        String json = stringRedisTemplate.opsForValue().get(key);
+        byte[] bytes = getBytes(key);
         // 判断结果是否存在
-        if (StrUtil.isNotBlank(json)) {
+        if (bytes != null && bytes.length > 0) {
             // 如果存在，直接返回
-            return JSONUtil.toBean(json, type);
+            return codecFor(key).decode(bytes, type);
         }
         // 判断命中的是否是空值
-        if (json != null) {
+        if (bytes != null) {
             // 如果是空值，返回错误信息
             return null;
         }
@@ -107,7 +334,7 @@ public class CacheClient {
         // 如果查询结果为空
         if (r == null) {
             // 将空值写入Redis，并设置过期时间，防止缓存穿透
-            stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+            setNull(key);
             // 返回错误信息
             return null;
         }
@@ -120,6 +347,9 @@ public class CacheClient {
     /**
      * 查询数据，解决缓存击穿问题。
      * 缓存击穿指一个热点key在某些时刻突然失效，导致大量的请求都去查询数据库，可以通过设置互斥锁或者逻辑过期解决。
+     * 数据不在Redis中时与互斥锁方式一样合并并发的未命中，只有一个线程查询数据库并写入，查询结果为空时缓存空值，防止缓存穿透.
+     * 数据在逻辑过期前按XFetch算法以一定概率提前刷新，重建耗时越长、越接近过期，提前刷新的概率越大，
+     * 热点数据在过期前就已刷新，各节点的刷新时间也随之错开
      *
      * @param keyPrefix  key的前缀
      * @param id         查询数据库时使用的id
@@ -134,53 +364,153 @@ public class CacheClient {
     public <R, ID> R queryWithLogicalExpire(
             String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
         String key = keyPrefix + id;
+        // 布隆过滤器判断一定不存在的id直接返回，不访问Redis和数据库
+        if (!bloomFilterManager.mightContain(keyPrefix, id)) {
+            return null;
+        }
         // 从Redis中查询数据
-        String json = stringRedisTemplate.opsForValue().get(key);
-        // 判断结果是否存在
-        if (StrUtil.isBlank(json)) {
-            // 如果不存在，返回错误信息
+        byte[] bytes = getBytes(key);
+        // 判断命中的是否是空值
+        if (bytes != null && bytes.length == 0) {
             return null;
         }
-        // 将json数据反序列化为RedisData对象
-        RedisData redisData = JSONUtil.toBean(json, RedisData.class);
-        // 获取并反序列化保存在RedisData中的data数据
-        R r = JSONUtil.toBean((JSONObject) redisData.getData(), type);
+        // 解析为RedisData对象，不存在或无法解析时查询数据库并写入Redis，与互斥锁方式一样合并并发的未命中
+        RedisData redisData = bytes == null ? null : decodeWithLogicalExpire(key, bytes, type);
+        if (redisData == null) {
+            return loadOnce(key, () -> loadWithMutex(key, k -> readLogicalExpire(k, type),
+                    () -> rebuild(key, id, dbFallback, time, unit), () -> dbFallback.apply(id)));
+        }
+        // 获取保存在RedisData中的data数据
+        @SuppressWarnings("unchecked")
+        R r = (R) redisData.getData();
         // 获取保存在RedisData中的逻辑过期时间
         LocalDateTime expireTime = redisData.getExpireTime();
-        // 判断数据是否已经逻辑过期
-        if (expireTime.isAfter(LocalDateTime.now())) {
+        // 判断数据是否已经逻辑过期，未过期时按重建耗时决定是否提前刷新
+        boolean expired = !expireTime.isAfter(LocalDateTime.now());
+        if (!expired && !shouldRefreshEarly(expireTime, redisData.getRebuildMillis())) {
             // 如果未过期，直接返回结果
             return r;
         }
-        // 如果已过期，需要重建缓存
-        // 获取互斥锁的key
-        String lockKey = LOCK_KEY + id;
+        // 如果已过期或需要提前刷新，需要重建缓存
+        // 获取互斥锁的key，包含key的前缀，避免不同数据的id相同时互相阻塞
+        String lockKey = LOCK_KEY + key;
+        String lockValue = IdUtil.fastSimpleUUID();
         // 尝试获取互斥锁
-        boolean isLock = tryLock(lockKey);
+        boolean isLock = tryLock(lockKey, lockValue);
         // 判断是否获取锁成功
         if (isLock) {
+            // 再次检查缓存，读取旧值之后其他线程可能已完成重建并释放锁，此时直接返回新值，不重复重建
+            RedisData latest = decodeLatest(key, type);
+            if (latest != null && latest.getExpireTime().isAfter(expireTime)) {
+                unlock(lockKey, lockValue);
+                @SuppressWarnings("unchecked")
+                R fresh = (R) latest.getData();
+                return fresh;
+            }
+            if (!expired) {
+                earlyRefreshCount.increment();
+            }
             // 如果成功，开启一个新的线程来重建缓存
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
-                try {
-                    // 查询数据库
-                    R newR = dbFallback.apply(id);
-                    // 将查询结果写入Redis，并设置逻辑过期时间
-                    this.setWithLogicalExpire(key, newR, time, unit);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                } finally {
-                    // 释放锁
-                    unlock(lockKey);
-                }
-            });
+            try {
+                cacheRebuildExecutor.execute(() -> {
+                    try {
+                        rebuild(key, id, dbFallback, time, unit);
+                    } catch (Exception e) {
+                        failedRebuildCount.increment();
+                        log.warn("重建缓存失败，key：{}，错误信息：{}", key, e.getMessage());
+                    } finally {
+                        // 释放锁
+                        unlock(lockKey, lockValue);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // 队列已满，放弃本次重建，之后的查询会再次尝试
+                rejectedRebuildCount.increment();
+                unlock(lockKey, lockValue);
+                log.warn("重建缓存的队列已满，放弃重建，key：{}", key);
+            }
+        }
+        // 返回原先的信息
+        return r;
+    }
+
+    /**
+     * 读取以逻辑过期方式缓存的数据，供互斥加载时检查缓存
+     *
+     * @param key  数据的键
+     * @param type 数据的类型
+     * @return 缓存的数据，空值返回null，不存在或无法解析时返回{@link #CACHE_MISS}
+     */
+    private Object readLogicalExpire(String key, Class<?> type) {
+        byte[] bytes = getBytes(key);
+        if (bytes == null) {
+            return CACHE_MISS;
+        }
+        if (bytes.length == 0) {
+            return null;
+        }
+        RedisData redisData = decodeWithLogicalExpire(key, bytes, type);
+        return redisData == null ? CACHE_MISS : redisData.getData();
+    }
+
+    /**
+     * 重新读取逻辑过期的数据，获取重建锁之后使用
+     *
+     * @param key  数据的键
+     * @param type 数据的类型
+     * @return 缓存的数据，不存在、为空值或无法解析时返回null
+     */
+    private RedisData decodeLatest(String key, Class<?> type) {
+        byte[] bytes = getBytes(key);
+        return bytes == null || bytes.length == 0 ? null : decodeWithLogicalExpire(key, bytes, type);
+    }
+
+    /**
+     * 查询数据库并以逻辑过期方式写入Redis，同时记录查询耗时，查询结果为空时缓存空值
+     *
+     * @param key        数据的键
+     * @param id         查询数据库时使用的id
+     * @param dbFallback 数据库查询逻辑
+     * @param time       缓存数据的过期时间值
+     * @param unit       缓存数据的过期时间单位
+     * @param <R>        返回的数据类型
+     * @param <ID>       id的类型
+     * @return 查询到的数据
+     */
+    private <R, ID> R rebuild(String key, ID id, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        long start = System.currentTimeMillis();
+        R r = dbFallback.apply(id);
+        if (r == null) {
+            // 将空值写入Redis，并设置过期时间，防止缓存穿透
+            setNull(key);
+            return null;
         }
-        // 返回原先过期的信息
+        // 将查询结果写入Redis，并设置逻辑过期时间
+        this.setWithLogicalExpire(key, r, time, unit, System.currentTimeMillis() - start);
         return r;
     }
 
+    /**
+     * 按XFetch算法判断是否提前刷新：当前时间 - 重建耗时 * 系数 * ln(随机数) 超过过期时间时刷新.
+     * ln(随机数)为负数，重建耗时越长、系数越大，越早开始刷新
+     *
+     * @param expireTime    逻辑过期时间
+     * @param rebuildMillis 重建数据的耗时（单位：毫秒），未知时不提前刷新
+     * @return 是否需要提前刷新
+     */
+    private boolean shouldRefreshEarly(LocalDateTime expireTime, Long rebuildMillis) {
+        if (earlyRefreshBeta <= 0 || rebuildMillis == null || rebuildMillis <= 0) {
+            return false;
+        }
+        double gap = -rebuildMillis * earlyRefreshBeta * Math.log(ThreadLocalRandom.current().nextDouble());
+        return LocalDateTime.now().plus((long) gap, ChronoUnit.MILLIS).isAfter(expireTime);
+    }
+
     /**
      * 查询数据，解决缓存击穿问题。
      * 缓存击穿指一个热点key在某些时刻突然失效，导致大量的请求都去查询数据库，可以通过设置互斥锁或者逻辑过期解决。
+     * 同一节点内同一个key的并发未命中合并为一次加载，其他线程等待同一个结果；Redis互斥锁只在节点之间竞争，
+     * 未获取到锁的节点轮询缓存直到其他节点重建完成
      *
      * @param keyPrefix  key的前缀
      * @param id         查询数据库时使用的id
@@ -195,12 +525,16 @@ public class CacheClient {
     public <R, ID> R queryWithMutex(
             String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
         String key = keyPrefix + id;
+        // 布隆过滤器判断一定不存在的id直接返回，不访问Redis和数据库
+        if (!bloomFilterManager.mightContain(keyPrefix, id)) {
+            return null;
+        }
         // 从Redis中查询数据
-        String cacheData = stringRedisTemplate.opsForValue().get(key);
+        byte[] cacheData = getBytes(key);
         // 判断结果是否存在
-        if (StrUtil.isNotBlank(cacheData)) {
+        if (cacheData != null && cacheData.length > 0) {
             // 如果存在，直接返回结果
-            return JSONUtil.toBean(cacheData, type);
+            return codecFor(key).decode(cacheData, type);
         }
         // 判断命中的是否是空值
         if (cacheData != null) {
@@ -208,56 +542,157 @@ public class CacheClient {
             return null;
         }
 
-        // 获取互斥锁的key
-        String lockKey = LOCK_KEY + id;
-        R r = null;
+        return loadOnce(key, () -> loadWithMutex(key, k -> readCached(k, type),
+                () -> loadAndCache(key, id, dbFallback, time, unit), () -> dbFallback.apply(id)));
+    }
+
+    /**
+     * 同一节点内同一个key的并发加载合并为一次，已有线程在加载时等待其结果
+     *
+     * @param key    数据的键
+     * @param loader 加载逻辑
+     * @param <R>    返回的数据类型
+     * @return 加载到的数据
+     */
+    @SuppressWarnings("unchecked")
+    private <R> R loadOnce(String key, Supplier<R> loader) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> loading = inFlightLoads.putIfAbsent(key, future);
+        if (loading != null) {
+            try {
+                return (R) loading.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+            }
+        }
+
         try {
-            // 尝试获取互斥锁
-            boolean isLock = tryLock(lockKey);
-            // 判断是否获取成功
-            if (!isLock) {
-                // 如果没有获取成功，线程休眠一段时间之后重试整个查询操作
+            R r = loader.get();
+            future.complete(r);
+            return r;
+        } catch (Throwable e) {
+            // 任何异常（包括Error）都要结束等待中的线程，否则它们会一直阻塞
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightLoads.remove(key, future);
+        }
+    }
+
+    /**
+     * 读取直接缓存的数据，供互斥加载时检查缓存
+     *
+     * @param key  数据的键
+     * @param type 数据的类型
+     * @return 缓存的数据，空值返回null，不存在时返回{@link #CACHE_MISS}
+     */
+    private Object readCached(String key, Class<?> type) {
+        byte[] bytes = getBytes(key);
+        if (bytes == null) {
+            return CACHE_MISS;
+        }
+        return bytes.length > 0 ? codecFor(key).decode(bytes, type) : null;
+    }
+
+    /**
+     * 在Redis互斥锁的保护下查询数据库并写入缓存.
+     * 获取到锁后再次查询缓存，避免重复加载刚被其他节点重建的数据；未获取到锁时轮询缓存，等待超时后直接查询数据库
+     *
+     * @param key         数据的键
+     * @param cacheReader 读取缓存，缓存中没有可用数据时返回{@link #CACHE_MISS}
+     * @param loader      查询数据库并写入缓存
+     * @param fallback    等待超时后直接查询数据库
+     * @param <R>         返回的数据类型
+     * @return 查询到的数据
+     */
+    @SuppressWarnings("unchecked")
+    private <R> R loadWithMutex(String key, Function<String, Object> cacheReader, Supplier<R> loader, Supplier<R> fallback) {
+        // 获取互斥锁的key，包含key的前缀，避免不同数据的id相同时互相阻塞
+        String lockKey = LOCK_KEY + key;
+        String lockValue = IdUtil.fastSimpleUUID();
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(LOCK_TIMEOUT);
+
+        while (true) {
+            if (tryLock(lockKey, lockValue)) {
+                try {
+                    Object cached = cacheReader.apply(key);
+                    if (cached != CACHE_MISS) {
+                        return (R) cached;
+                    }
+                    return loader.get();
+                } finally {
+                    // 释放锁
+                    unlock(lockKey, lockValue);
+                }
+            }
+
+            // 其他节点正在重建缓存，等待一段时间后查询缓存
+            try {
                 Thread.sleep(SLEEP_TIME_IN_MILLIS);
-                return queryWithMutex(keyPrefix, id, type, dbFallback, time, unit);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
             }
-            // 如果获取成功，根据id查询数据库
-            r = dbFallback.apply(id);
-            // 如果查询结果为空
-            if (r == null) {
-                // 将空值写入Redis，并设置过期时间，防止缓存穿透
-                stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
-                // 返回错误信息
-                return null;
+            Object cached = cacheReader.apply(key);
+            if (cached != CACHE_MISS) {
+                return (R) cached;
+            }
+            // 持有锁的节点可能已经异常，超过锁的超时时间后不再等待
+            if (System.currentTimeMillis() > deadline) {
+                return fallback.get();
             }
-            // 如果查询结果不为空，将结果写入Redis
-            this.set(key, r, time, unit);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        } finally {
-            // 释放锁
-            unlock(lockKey);
         }
-        // 返回查询结果
+    }
+
+    /**
+     * 查询数据库并写入缓存，查询结果为空时缓存空值
+     *
+     * @param key        数据的键
+     * @param id         查询数据库时使用的id
+     * @param dbFallback 数据库查询逻辑
+     * @param time       缓存数据的过期时间值
+     * @param unit       缓存数据的过期时间单位
+     * @param <R>        返回的数据类型
+     * @param <ID>       id的类型
+     * @return 查询到的数据
+     */
+    private <R, ID> R loadAndCache(String key, ID id, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        // 根据id查询数据库
+        R r = dbFallback.apply(id);
+        // 如果查询结果为空
+        if (r == null) {
+            // 将空值写入Redis，并设置过期时间，防止缓存穿透
+            setNull(key);
+            return null;
+        }
+        // 如果查询结果不为空，将结果写入Redis
+        this.set(key, r, time, unit);
         return r;
     }
 
     /**
      * 尝试获取互斥锁
      *
-     * @param key 锁的key
+     * @param key   锁的key
+     * @param value 锁的值，释放时校验，避免释放其他线程持有的锁
      * @return 是否成功获取到锁
      */
-    private boolean tryLock(String key) {
-        Boolean flag = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", LOCK_TIMEOUT, TimeUnit.SECONDS);
+    private boolean tryLock(String key, String value) {
+        Boolean flag = stringRedisTemplate.opsForValue().setIfAbsent(key, value, LOCK_TIMEOUT, TimeUnit.SECONDS);
         return BooleanUtil.isTrue(flag);
     }
 
     /**
-     * 释放互斥锁
+     * 释放互斥锁，只有锁的值与获取时一致才删除
      *
-     * @param key 锁的key
+     * @param key   锁的key
+     * @param value 获取锁时使用的值
      */
-    private void unlock(String key) {
-        stringRedisTemplate.delete(key);
+    private void unlock(String key, String value) {
+        stringRedisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(key), value);
     }
 }
\ No newline at end of file
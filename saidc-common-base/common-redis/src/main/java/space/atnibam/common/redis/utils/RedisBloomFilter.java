@@ -0,0 +1,213 @@
+package space.atnibam.common.redis.utils;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static space.atnibam.common.redis.constant.RedisConstants.BLOOM_FILTER_KEY;
+
+/**
+ * @ClassName: RedisBloomFilter
+ * @Description: 布隆过滤器，位图保存在Redis中，本地保存一份副本用于判断，判断元素是否存在时不访问Redis.
+ * 实例由BloomFilterManager创建，本地副本在新增元素时通过发布订阅和定时同步与Redis保持一致
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-27 16:32
+ **/
+public class RedisBloomFilter {
+
+    /**
+     * 布隆过滤器名称，即对应缓存的key前缀
+     */
+    private final String name;
+
+    /**
+     * Redis中位图的键
+     */
+    private final byte[] redisKey;
+
+    /**
+     * 位图的位数
+     */
+    private final long bitSize;
+
+    /**
+     * 每个元素使用的哈希函数个数
+     */
+    private final int hashCount;
+
+    /**
+     * 本地位图副本
+     */
+    private final AtomicLongArray bits;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 是否已完成初始化，未完成时认为所有元素都可能存在
+     */
+    private volatile boolean ready;
+
+    RedisBloomFilter(String name, long expectedInsertions, double fpp, StringRedisTemplate stringRedisTemplate) {
+        this.name = name;
+        this.redisKey = (BLOOM_FILTER_KEY + name).getBytes(StandardCharsets.UTF_8);
+        // 位数 m = -n * ln(p) / (ln2)^2，按字节对齐，与Redis位图的长度一致
+        long m = (long) Math.ceil(-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        this.bitSize = Math.max(Long.SIZE, (m + Long.SIZE - 1) / Long.SIZE * Long.SIZE);
+        // 哈希函数个数 k = m / n * ln2
+        this.hashCount = Math.max(1, (int) Math.round((double) bitSize / expectedInsertions * Math.log(2)));
+        this.bits = new AtomicLongArray((int) (bitSize / Long.SIZE));
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    /**
+     * 判断元素是否可能存在，只查询本地副本
+     *
+     * @param value 元素
+     * @return 返回false时元素一定不存在
+     */
+    public boolean mightContain(Object value) {
+        if (!ready) {
+            return true;
+        }
+        for (long offset : offsets(value)) {
+            if ((bits.get((int) (offset >>> 6)) & (1L << offset)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 新增元素，同时写入本地副本和Redis位图
+     *
+     * @param value 元素
+     */
+    public void put(Object value) {
+        long[] offsets = offsets(value);
+        for (long offset : offsets) {
+            setLocal(offset);
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (long offset : offsets) {
+                connection.stringCommands().setBit(redisKey, offset, true);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 只在本地副本中新增元素，收到其他节点的新增消息时调用
+     *
+     * @param value 元素
+     */
+    void putLocal(Object value) {
+        for (long offset : offsets(value)) {
+            setLocal(offset);
+        }
+    }
+
+    /**
+     * 将本地副本整体写入Redis，初始化时使用
+     */
+    void saveToRedis() {
+        byte[] bytes = new byte[(int) (bitSize / Byte.SIZE)];
+        for (int i = 0; i < bytes.length; i++) {
+            int value = 0;
+            for (int j = 0; j < Byte.SIZE; j++) {
+                long offset = (long) i * Byte.SIZE + j;
+                if ((bits.get((int) (offset >>> 6)) & (1L << offset)) != 0) {
+                    // Redis位图中偏移0对应第一个字节的最高位
+                    value |= 0x80 >>> j;
+                }
+            }
+            bytes[i] = (byte) value;
+        }
+        stringRedisTemplate.execute((RedisCallback<Boolean>) connection -> connection.stringCommands().set(redisKey, bytes));
+    }
+
+    /**
+     * 从Redis位图同步到本地副本，只增加本地缺少的位
+     *
+     * @return Redis中是否有位图
+     */
+    boolean loadFromRedis() {
+        byte[] bytes = stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(redisKey));
+        if (bytes == null) {
+            return false;
+        }
+        int length = (int) Math.min(bytes.length, bitSize / Byte.SIZE);
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] == 0) {
+                continue;
+            }
+            for (int j = 0; j < Byte.SIZE; j++) {
+                if ((bytes[i] & (0x80 >>> j)) != 0) {
+                    setLocal((long) i * Byte.SIZE + j);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 标记初始化完成
+     */
+    void markReady() {
+        ready = true;
+    }
+
+    /**
+     * 是否已完成初始化
+     *
+     * @return 是否已完成初始化
+     */
+    boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 获取布隆过滤器名称
+     *
+     * @return 名称
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 计算元素对应的各个位，使用两个哈希值组合出多个哈希函数
+     *
+     * @param value 元素
+     * @return 位偏移
+     */
+    private long[] offsets(Object value) {
+        long[] hash = MurmurHash.hash128(String.valueOf(value));
+        long[] offsets = new long[hashCount];
+        long combined = hash[0];
+        for (int i = 0; i < hashCount; i++) {
+            offsets[i] = (combined & Long.MAX_VALUE) % bitSize;
+            combined += hash[1];
+        }
+        return offsets;
+    }
+
+    /**
+     * 设置本地副本中的一位
+     *
+     * @param offset 位偏移
+     */
+    private void setLocal(long offset) {
+        int index = (int) (offset >>> 6);
+        long mask = 1L << offset;
+        long word;
+        do {
+            word = bits.get(index);
+            if ((word & mask) != 0) {
+                return;
+            }
+        } while (!bits.compareAndSet(index, word, word | mask));
+    }
+}
@@ -0,0 +1,129 @@
+package space.atnibam.common.redis.utils;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * @ClassName: TwoLevelCache
+ * @Description: 二级缓存，一级为进程内按容量和时间淘汰的本地缓存，保存反序列化后的对象；二级为Redis中逻辑过期的缓存.
+ * 写入和删除时通过Redis发布订阅通知其他节点清除本地缓存，实例由TwoLevelCacheManager创建
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-27 10:31
+ **/
+public class TwoLevelCache<V> {
+
+    /**
+     * 缓存名称，同时作为Redis中key的前缀
+     */
+    private final String name;
+
+    private final Class<V> type;
+
+    /**
+     * 本地缓存，超过容量时淘汰最久未使用的数据
+     */
+    private final LRUCache<String, V> localCache;
+
+    /**
+     * Redis中数据的逻辑过期时间
+     */
+    private final long redisTtl;
+
+    private final TimeUnit unit;
+
+    private final CacheClient cacheClient;
+
+    /**
+     * 发布失效消息，参数为缓存名称和失效的键
+     */
+    private final BiConsumer<String, String> invalidationPublisher;
+
+    /**
+     * 本地缓存失效的次数，查询期间发生过失效时不把查询结果写入本地缓存，避免覆盖较新的失效
+     */
+    private final AtomicLong invalidations = new AtomicLong();
+
+    TwoLevelCache(String name, Class<V> type, int localCapacity, long localTtlMillis, long redisTtl, TimeUnit unit,
+                  CacheClient cacheClient, BiConsumer<String, String> invalidationPublisher) {
+        this.name = name;
+        this.type = type;
+        this.localCache = CacheUtil.newLRUCache(localCapacity, localTtlMillis);
+        this.redisTtl = redisTtl;
+        this.unit = unit;
+        this.cacheClient = cacheClient;
+        this.invalidationPublisher = invalidationPublisher;
+    }
+
+    /**
+     * 查询数据，依次查询本地缓存和Redis，都未命中时查询数据库，不存在的数据在Redis中以空值缓存
+     *
+     * @param key        数据的键
+     * @param dbFallback 数据库查询逻辑
+     * @return 查询到的数据，不存在时返回null
+     */
+    public V get(String key, Function<String, V> dbFallback) {
+        V value = localCache.get(key);
+        if (value != null) {
+            return value;
+        }
+
+        long version = invalidations.get();
+        value = cacheClient.queryWithLogicalExpire(name, key, type, dbFallback, redisTtl, unit);
+        if (value != null && version == invalidations.get()) {
+            localCache.put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * 写入数据，并通知其他节点清除本地缓存
+     *
+     * @param key   数据的键
+     * @param value 数据的值
+     */
+    public void put(String key, V value) {
+        invalidateLocal(key);
+        cacheClient.setWithLogicalExpire(name + key, value, redisTtl, unit);
+        localCache.put(key, value);
+        invalidationPublisher.accept(name, key);
+    }
+
+    /**
+     * 删除数据，并通知其他节点清除本地缓存
+     *
+     * @param key 数据的键
+     */
+    public void evict(String key) {
+        invalidateLocal(key);
+        cacheClient.delete(name + key);
+        invalidationPublisher.accept(name, key);
+    }
+
+    /**
+     * 清除本地缓存中的数据，收到其他节点的失效消息时调用
+     *
+     * @param key 数据的键，为null时清空本地缓存
+     */
+    void invalidateLocal(String key) {
+        invalidations.incrementAndGet();
+        if (key == null) {
+            localCache.clear();
+        } else {
+            localCache.remove(key);
+        }
+    }
+
+    /**
+     * 获取缓存名称
+     *
+     * @return 缓存名称
+     */
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,147 @@
+package space.atnibam.common.redis.utils;
+
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.json.JSONUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import space.atnibam.common.redis.configure.RedisValueCodec;
+import space.atnibam.common.redis.domain.CacheInvalidationMessage;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static space.atnibam.common.redis.constant.RedisConstants.CACHE_INVALIDATION_CHANNEL;
+
+/**
+ * @ClassName: TwoLevelCacheManager
+ * @Description: 二级缓存管理器，按名称创建和保存二级缓存，通过Redis发布订阅在节点之间传递本地缓存的失效消息.
+ * 创建第一个二级缓存时才开始订阅，未使用二级缓存的服务不会建立订阅连接
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-27 10:48
+ **/
+@Slf4j
+@Component
+public class TwoLevelCacheManager {
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedisConnectionFactory redisConnectionFactory;
+
+    /**
+     * 当前节点的标识，用于忽略自己发送的失效消息
+     */
+    private final String nodeId = IdUtil.fastSimpleUUID();
+
+    private final Map<String, TwoLevelCache<?>> caches = new ConcurrentHashMap<>();
+
+    private RedisMessageListenerContainer listenerContainer;
+
+    /**
+     * 获取二级缓存，不存在时按参数创建，同名缓存只创建一次
+     *
+     * @param name           缓存名称，同时作为Redis中key的前缀
+     * @param type           缓存的数据类型
+     * @param localCapacity  本地缓存的最大条数
+     * @param localTtlMillis 本地缓存的过期时间（单位：毫秒），作为失效消息丢失时的兜底
+     * @param redisTtl       Redis中数据的逻辑过期时间
+     * @param unit           Redis中数据的逻辑过期时间单位
+     * @param <V>            缓存的数据类型
+     * @return 二级缓存
+     */
+    @SuppressWarnings("unchecked")
+    public <V> TwoLevelCache<V> getCache(String name, Class<V> type, int localCapacity, long localTtlMillis,
+                                         long redisTtl, TimeUnit unit) {
+        subscribe();
+        return (TwoLevelCache<V>) caches.computeIfAbsent(name, n -> new TwoLevelCache<>(
+                n, type, localCapacity, localTtlMillis, redisTtl, unit, cacheClient, this::publish));
+    }
+
+    /**
+     * 获取二级缓存，不存在时按参数创建，并为Redis中的数据指定编解码方式
+     *
+     * @param name           缓存名称，同时作为Redis中key的前缀
+     * @param type           缓存的数据类型
+     * @param localCapacity  本地缓存的最大条数
+     * @param localTtlMillis 本地缓存的过期时间（单位：毫秒），作为失效消息丢失时的兜底
+     * @param redisTtl       Redis中数据的逻辑过期时间
+     * @param unit           Redis中数据的逻辑过期时间单位
+     * @param codec          Redis中数据的编解码方式
+     * @param <V>            缓存的数据类型
+     * @return 二级缓存
+     */
+    public <V> TwoLevelCache<V> getCache(String name, Class<V> type, int localCapacity, long localTtlMillis,
+                                         long redisTtl, TimeUnit unit, RedisValueCodec codec) {
+        cacheClient.registerCodec(name, codec);
+        return getCache(name, type, localCapacity, localTtlMillis, redisTtl, unit);
+    }
+
+    /**
+     * 发布失效消息，发布失败时其他节点的本地缓存在过期后失效
+     *
+     * @param cacheName 缓存名称
+     * @param key       失效的键
+     */
+    private void publish(String cacheName, String key) {
+        try {
+            stringRedisTemplate.convertAndSend(CACHE_INVALIDATION_CHANNEL,
+                    JSONUtil.toJsonStr(new CacheInvalidationMessage(nodeId, cacheName, key)));
+        } catch (Exception e) {
+            log.warn("发布缓存失效消息失败，缓存：{}，键：{}，错误信息：{}", cacheName, key, e.getMessage());
+        }
+    }
+
+    /**
+     * 订阅失效消息
+     */
+    private synchronized void subscribe() {
+        if (listenerContainer != null) {
+            return;
+        }
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        container.addMessageListener((message, pattern) ->
+                onMessage(new String(message.getBody(), StandardCharsets.UTF_8)), new ChannelTopic(CACHE_INVALIDATION_CHANNEL));
+        container.afterPropertiesSet();
+        container.start();
+        listenerContainer = container;
+    }
+
+    /**
+     * 收到其他节点的失效消息，清除本地缓存
+     *
+     * @param body 消息内容
+     */
+    private void onMessage(String body) {
+        CacheInvalidationMessage message = JSONUtil.toBean(body, CacheInvalidationMessage.class);
+        if (nodeId.equals(message.getNodeId())) {
+            return;
+        }
+        TwoLevelCache<?> cache = caches.get(message.getCacheName());
+        if (cache != null) {
+            cache.invalidateLocal(message.getKey());
+        }
+    }
+
+    /**
+     * 停止订阅
+     */
+    @PreDestroy
+    public synchronized void destroy() throws Exception {
+        if (listenerContainer != null) {
+            listenerContainer.destroy();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package space.atnibam.common.redis.configure;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @ClassName: RedisValueCodecTest
+ * @Description: 缓存值编解码测试，校验各编解码方式的往返一致性和压缩标记
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-29 21:40
+ **/
+class RedisValueCodecTest {
+
+    private static final int THRESHOLD = 256;
+
+    /**
+     * JSON文本和JSONB编码后都能按给定类型还原
+     */
+    @Test
+    void jsonAndJsonbRoundTrip() {
+        Payload payload = payload(20);
+
+        for (RedisValueCodec codec : Arrays.asList(new JsonRedisValueCodec(), new JsonbRedisValueCodec())) {
+            byte[] bytes = codec.encode(payload);
+            assertThat(bytes).isNotEmpty();
+            assertThat(codec.decode(bytes, Payload.class)).isEqualTo(payload);
+        }
+    }
+
+    /**
+     * JSONB不写入类名，编码结果小于JSON文本
+     */
+    @Test
+    void jsonbIsSmallerThanJsonText() {
+        Payload payload = payload(50);
+
+        byte[] jsonb = new JsonbRedisValueCodec().encode(payload);
+        byte[] json = new JsonRedisValueCodec().encode(payload);
+
+        assertThat(jsonb.length).isLessThan(json.length);
+        assertThat(new String(jsonb, StandardCharsets.ISO_8859_1)).doesNotContain(Payload.class.getName());
+    }
+
+    /**
+     * 小于阈值的数据只加上未压缩标记，不小于阈值的可压缩数据被压缩
+     */
+    @Test
+    void compressesOnlyAboveThreshold() {
+        RedisValueCodec codec = new CompressedRedisValueCodec(new JsonRedisValueCodec(), THRESHOLD);
+        Payload small = payload(1);
+        Payload large = payload(200);
+
+        byte[] smallBytes = codec.encode(small);
+        byte[] largeBytes = codec.encode(large);
+
+        assertThat(smallBytes[0]).isEqualTo((byte) 0);
+        assertThat(smallBytes.length).isEqualTo(new JsonRedisValueCodec().encode(small).length + 1);
+        assertThat(largeBytes[0]).isEqualTo((byte) 1);
+        assertThat(largeBytes.length).isLessThan(new JsonRedisValueCodec().encode(large).length / 2);
+        assertThat(codec.decode(smallBytes, Payload.class)).isEqualTo(small);
+        assertThat(codec.decode(largeBytes, Payload.class)).isEqualTo(large);
+    }
+
+    /**
+     * 压缩后没有变小的数据保存原始数据
+     */
+    @Test
+    void keepsIncompressibleDataRaw() {
+        byte[] random = new byte[4 * THRESHOLD];
+        ThreadLocalRandom.current().nextBytes(random);
+
+        byte[] marked = CompressedRedisValueCodec.compress(random, THRESHOLD);
+
+        assertThat(marked[0]).isEqualTo((byte) 0);
+        assertThat(marked).hasSize(random.length + 1);
+        assertThat(CompressedRedisValueCodec.decompress(marked)).isEqualTo(random);
+    }
+
+    /**
+     * 被截断的压缩数据无法还原时抛出SerializationException，不会死循环
+     */
+    @Test
+    void rejectsTruncatedCompressedData() {
+        byte[] compressed = CompressedRedisValueCodec.compress(
+                new JsonRedisValueCodec().encode(payload(200)), THRESHOLD);
+        byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+
+        assertThatThrownBy(() -> CompressedRedisValueCodec.decompress(truncated))
+                .isInstanceOf(SerializationException.class);
+    }
+
+    /**
+     * RedisTemplate使用的JSONB序列化写入类名，读取时不指定类型也能还原，超过阈值时压缩
+     */
+    @Test
+    void jsonbSerializerRoundTripsWithClassName() {
+        FastJson2JsonbRedisSerializer<Object> serializer = new FastJson2JsonbRedisSerializer<>(Object.class, THRESHOLD);
+        Payload small = payload(1);
+        Payload large = payload(200);
+
+        byte[] smallBytes = serializer.serialize(small);
+        byte[] largeBytes = serializer.serialize(large);
+
+        assertThat(smallBytes[0]).isEqualTo((byte) 0);
+        assertThat(largeBytes[0]).isEqualTo((byte) 1);
+        assertThat(serializer.deserialize(smallBytes)).isEqualTo(small);
+        assertThat(serializer.deserialize(largeBytes)).isEqualTo(large);
+        // 集合本身不写入类名，元素仍按类名还原
+        List<Payload> list = new ArrayList<>(Arrays.asList(small, large));
+        assertThat(serializer.deserialize(serializer.serialize(list))).asList().containsExactly(small, large);
+        assertThat(serializer.serialize(null)).isEmpty();
+        assertThat(serializer.deserialize(new byte[0])).isNull();
+    }
+
+    private static Payload payload(int tags) {
+        return new Payload(42L, "file-info", new ArrayList<>(Collections.nCopies(tags, "video/mp4")));
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Payload {
+
+        private Long id;
+
+        private String name;
+
+        private List<String> tags;
+    }
+}
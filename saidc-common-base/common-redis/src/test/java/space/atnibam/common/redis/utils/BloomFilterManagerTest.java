@@ -0,0 +1,259 @@
+package space.atnibam.common.redis.utils;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static space.atnibam.common.redis.constant.RedisConstants.*;
+
+/**
+ * @ClassName: BloomFilterManagerTest
+ * @Description: 布隆过滤器测试，两个BloomFilterManager模拟两个节点，共用一个嵌入式Redis
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-29 21:10
+ **/
+class BloomFilterManagerTest {
+
+    private static final String NAME = "test:bloom:";
+
+    private static final int INSERTIONS = 1000;
+
+    private static final double FPP = 0.01D;
+
+    private static final RedisScript<Long> NUMSUB_SCRIPT = new DefaultRedisScript<>(
+            "return redis.call('PUBSUB', 'NUMSUB', KEYS[1])[2]", Long.class);
+
+    private static RedisServer redisServer;
+
+    private static LettuceConnectionFactory connectionFactory;
+
+    private StringRedisTemplate redisTemplate;
+
+    private BloomFilterManager managerA;
+
+    private BloomFilterManager managerB;
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redisServer = new RedisServer(port);
+        redisServer.start();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", port));
+        connectionFactory.afterPropertiesSet();
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        connectionFactory.destroy();
+        redisServer.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+        redisTemplate.afterPropertiesSet();
+        redisTemplate.execute(connection -> {
+            connection.serverCommands().flushAll();
+            return null;
+        }, true);
+        managerA = newManager();
+        managerB = newManager();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        managerA.destroy();
+        managerB.destroy();
+    }
+
+    /**
+     * 加载的id全部判断为可能存在，不存在的id误判率接近配置的误判率
+     */
+    @Test
+    void loadedIdsAreNeverRejected() {
+        List<Object> ids = ids(0, INSERTIONS);
+        managerA.register(NAME, INSERTIONS, FPP, () -> ids);
+
+        for (Object id : ids) {
+            assertThat(managerA.mightContain(NAME, id)).isTrue();
+        }
+        int falsePositives = 0;
+        for (Object id : ids(INSERTIONS, 10 * INSERTIONS)) {
+            if (managerA.mightContain(NAME, id)) {
+                falsePositives++;
+            }
+        }
+        assertThat(falsePositives).isLessThan((int) (9 * INSERTIONS * FPP * 3));
+        assertThat(redisTemplate.hasKey(BLOOM_FILTER_KEY + NAME + BLOOM_FILTER_READY_SUFFIX)).isTrue();
+        assertThat(redisTemplate.hasKey(LOCK_KEY + BLOOM_FILTER_KEY + NAME)).isFalse();
+    }
+
+    /**
+     * 未注册布隆过滤器的key前缀不做拦截
+     */
+    @Test
+    void unregisteredPrefixMightContainEverything() {
+        assertThat(managerA.mightContain("test:unknown:", "any")).isTrue();
+
+        // 未注册时新增元素被忽略
+        managerA.put("test:unknown:", "any");
+        assertThat(redisTemplate.hasKey(BLOOM_FILTER_KEY + "test:unknown:")).isFalse();
+    }
+
+    /**
+     * 初始化完成后注册的节点从Redis同步位图，不再调用loader
+     */
+    @Test
+    void laterNodeLoadsBitmapFromRedis() {
+        List<Object> ids = ids(0, INSERTIONS);
+        managerA.register(NAME, INSERTIONS, FPP, () -> ids);
+        AtomicInteger loads = new AtomicInteger();
+
+        managerB.register(NAME, INSERTIONS, FPP, () -> {
+            loads.incrementAndGet();
+            return Collections.emptyList();
+        });
+
+        assertThat(loads).hasValue(0);
+        for (Object id : ids) {
+            assertThat(managerB.mightContain(NAME, id)).isTrue();
+        }
+        assertThat(managerB.mightContain(NAME, "missing")).isEqualTo(managerA.mightContain(NAME, "missing"));
+    }
+
+    /**
+     * 其他节点正在初始化时（持有初始化锁）不加载，初始化完成前不拒绝任何id
+     */
+    @Test
+    void filterIsPermissiveUntilInitialized() {
+        redisTemplate.opsForValue().set(LOCK_KEY + BLOOM_FILTER_KEY + NAME, "other-node");
+        AtomicInteger loads = new AtomicInteger();
+
+        managerA.register(NAME, INSERTIONS, FPP, () -> {
+            loads.incrementAndGet();
+            return Collections.emptyList();
+        });
+
+        assertThat(loads).hasValue(0);
+        assertThat(managerA.mightContain(NAME, "not-loaded")).isTrue();
+    }
+
+    /**
+     * 有初始化完成标记但位图不存在时不信任标记，重新加载全部id
+     */
+    @Test
+    void staleReadyFlagWithoutBitmapRebuilds() {
+        redisTemplate.opsForValue().set(BLOOM_FILTER_KEY + NAME + BLOOM_FILTER_READY_SUFFIX, "other-node");
+        List<Object> ids = ids(0, INSERTIONS);
+
+        managerA.register(NAME, INSERTIONS, FPP, () -> ids);
+
+        assertThat(redisTemplate.hasKey(BLOOM_FILTER_KEY + NAME)).isTrue();
+        assertThat(managerA.mightContain(NAME, "id-1")).isTrue();
+        assertThat(managerA.mightContain(NAME, "missing")).isFalse();
+    }
+
+    /**
+     * 初始化节点中途退出时，锁过期后由定时同步重新初始化
+     */
+    @Test
+    void syncRetriesInitAfterLockHolderDies() {
+        redisTemplate.opsForValue().set(LOCK_KEY + BLOOM_FILTER_KEY + NAME, "dead-node");
+        AtomicInteger loads = new AtomicInteger();
+        managerA.register(NAME, INSERTIONS, FPP, () -> {
+            loads.incrementAndGet();
+            return ids(0, INSERTIONS);
+        });
+
+        // 锁未过期时同步不加载
+        ReflectionTestUtils.invokeMethod(managerA, "sync");
+        assertThat(loads).hasValue(0);
+
+        // 模拟锁过期
+        redisTemplate.delete(LOCK_KEY + BLOOM_FILTER_KEY + NAME);
+        ReflectionTestUtils.invokeMethod(managerA, "sync");
+
+        assertThat(loads).hasValue(1);
+        assertThat(redisTemplate.hasKey(BLOOM_FILTER_KEY + NAME + BLOOM_FILTER_READY_SUFFIX)).isTrue();
+        assertThat(redisTemplate.hasKey(LOCK_KEY + BLOOM_FILTER_KEY + NAME)).isFalse();
+        assertThat(managerA.mightContain(NAME, "missing")).isFalse();
+    }
+
+    /**
+     * 一个节点新增的id写入Redis位图，并通过发布订阅同步到其他节点的本地副本
+     */
+    @Test
+    void putPropagatesToOtherNodes() throws Exception {
+        managerA.register(NAME, INSERTIONS, FPP, Collections::emptyList);
+        managerB.register(NAME, INSERTIONS, FPP, Collections::emptyList);
+        // 订阅是异步建立的，等两个节点都订阅后再新增
+        waitUntil(() -> subscribers() == 2L);
+        assertThat(managerB.mightContain(NAME, "new-id")).isFalse();
+
+        managerA.put(NAME, "new-id");
+
+        assertThat(managerA.mightContain(NAME, "new-id")).isTrue();
+        waitUntil(() -> managerB.mightContain(NAME, "new-id"));
+
+        // Redis位图中同样包含新增的id，之后注册的节点也能判断为可能存在
+        BloomFilterManager managerC = newManager();
+        try {
+            managerC.register(NAME, INSERTIONS, FPP, Collections::emptyList);
+            assertThat(managerC.mightContain(NAME, "new-id")).isTrue();
+        } finally {
+            managerC.destroy();
+        }
+    }
+
+    /**
+     * 订阅新增消息的连接数
+     */
+    private long subscribers() {
+        Long count = redisTemplate.execute(NUMSUB_SCRIPT, Collections.singletonList(BLOOM_FILTER_CHANNEL));
+        return count == null ? 0L : count;
+    }
+
+    private BloomFilterManager newManager() {
+        BloomFilterManager manager = new BloomFilterManager();
+        ReflectionTestUtils.setField(manager, "stringRedisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(manager, "redisConnectionFactory", connectionFactory);
+        return manager;
+    }
+
+    private static List<Object> ids(int from, int to) {
+        List<Object> ids = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            ids.add("id-" + i);
+        }
+        return ids;
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("等待条件超时").isLessThan(deadline);
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,522 @@
+package space.atnibam.common.redis.utils;
+
+import cn.hutool.core.util.StrUtil;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import redis.embedded.RedisServer;
+import space.atnibam.common.redis.configure.CompressedRedisValueCodec;
+import space.atnibam.common.redis.configure.JsonbRedisValueCodec;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static space.atnibam.common.redis.constant.RedisConstants.*;
+
+/**
+ * @ClassName: CacheClientTest
+ * @Description: CacheClient测试，使用嵌入式Redis，数据库查询由计数的函数模拟
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-29 20:00
+ **/
+class CacheClientTest {
+
+    private static final String PREFIX = "test:item:";
+
+    private static RedisServer redisServer;
+
+    private static LettuceConnectionFactory connectionFactory;
+
+    private StringRedisTemplate redisTemplate;
+
+    private CacheClient cacheClient;
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redisServer = new RedisServer(port);
+        redisServer.start();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", port));
+        connectionFactory.afterPropertiesSet();
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        connectionFactory.destroy();
+        redisServer.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+        redisTemplate.afterPropertiesSet();
+        redisTemplate.execute(connection -> {
+            connection.serverCommands().flushAll();
+            return null;
+        }, true);
+        cacheClient = newCacheClient();
+    }
+
+    @AfterEach
+    void tearDown() {
+        cacheClient.shutdownRebuildExecutor();
+    }
+
+    /**
+     * 冷启动未命中时同步加载并写入，之后的查询直接命中；实际过期时间为逻辑过期时间的若干倍
+     */
+    @Test
+    void logicalExpireLoadsOnColdMissThenHits() {
+        AtomicInteger loads = new AtomicInteger();
+        Function<Long, Item> db = id -> {
+            loads.incrementAndGet();
+            return new Item(id, "v1");
+        };
+
+        assertThat(cacheClient.queryWithLogicalExpire(PREFIX, 1L, Item.class, db, 60L, TimeUnit.SECONDS))
+                .isEqualTo(new Item(1L, "v1"));
+        assertThat(cacheClient.queryWithLogicalExpire(PREFIX, 1L, Item.class, db, 60L, TimeUnit.SECONDS))
+                .isEqualTo(new Item(1L, "v1"));
+
+        assertThat(loads).hasValue(1);
+        assertThat(redisTemplate.getExpire(PREFIX + 1L, TimeUnit.SECONDS))
+                .isBetween(60 * LOGICAL_EXPIRE_TTL_MULTIPLE - 5, 60 * LOGICAL_EXPIRE_TTL_MULTIPLE);
+    }
+
+    /**
+     * 数据库中不存在时缓存空值，空值过期前不再查询数据库
+     */
+    @Test
+    void logicalExpireCachesMissingRows() {
+        AtomicInteger loads = new AtomicInteger();
+        Function<Long, Item> db = id -> {
+            loads.incrementAndGet();
+            return null;
+        };
+
+        assertThat(cacheClient.queryWithLogicalExpire(PREFIX, 2L, Item.class, db, 60L, TimeUnit.SECONDS)).isNull();
+        assertThat(cacheClient.queryWithLogicalExpire(PREFIX, 2L, Item.class, db, 60L, TimeUnit.SECONDS)).isNull();
+
+        assertThat(loads).hasValue(1);
+        assertThat(redisTemplate.opsForValue().get(PREFIX + 2L)).isEmpty();
+        assertThat(redisTemplate.getExpire(PREFIX + 2L, TimeUnit.MINUTES)).isBetween(CACHE_NULL_TTL - 1, CACHE_NULL_TTL);
+    }
+
+    /**
+     * 逻辑过期后先返回旧值，由重建线程异步刷新，并发查询只触发一次重建
+     */
+    @Test
+    void logicalExpireServesStaleValueWhileOneRebuildRuns() throws InterruptedException {
+        cacheClient.setWithLogicalExpire(PREFIX + 3L, new Item(3L, "old"), 300L, TimeUnit.MILLISECONDS);
+        Thread.sleep(350);
+        AtomicInteger loads = new AtomicInteger();
+        Function<Long, Item> db = id -> {
+            loads.incrementAndGet();
+            sleep(200);
+            return new Item(id, "new");
+        };
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(cacheClient.queryWithLogicalExpire(PREFIX, 3L, Item.class, db, 60L, TimeUnit.SECONDS).getName())
+                    .isEqualTo("old");
+        }
+
+        waitUntil(() -> "new".equals(cacheClient.queryWithLogicalExpire(PREFIX, 3L, Item.class, db, 60L, TimeUnit.SECONDS).getName()));
+        assertThat(loads).hasValue(1);
+        // 重建完成后释放锁
+        assertThat(redisTemplate.hasKey(LOCK_KEY + PREFIX + 3L)).isFalse();
+    }
+
+    /**
+     * 重建时数据已被删除，写入空值，之后的查询返回null
+     */
+    @Test
+    void logicalExpireRebuildOfDeletedRowWritesNullMarker() throws InterruptedException {
+        cacheClient.setWithLogicalExpire(PREFIX + 4L, new Item(4L, "old"), 300L, TimeUnit.MILLISECONDS);
+        Thread.sleep(350);
+
+        assertThat(cacheClient.queryWithLogicalExpire(PREFIX, 4L, Item.class, id -> null, 60L, TimeUnit.SECONDS).getName())
+                .isEqualTo("old");
+
+        waitUntil(() -> "".equals(redisTemplate.opsForValue().get(PREFIX + 4L)));
+        assertThat(cacheClient.queryWithLogicalExpire(PREFIX, 4L, Item.class, id -> new Item(id, "unexpected"), 60L, TimeUnit.SECONDS))
+                .isNull();
+    }
+
+    /**
+     * 无法解析的旧格式数据当作未命中，重新加载并覆盖
+     */
+    @Test
+    void logicalExpireReloadsUndecodableEntries() {
+        redisTemplate.opsForValue().set(PREFIX + 5L, "{\"data\":{\"id\":5},\"expireTime\":\"2023-10-01\"}");
+        AtomicReference<Long> loaded = new AtomicReference<>();
+
+        Item item = cacheClient.queryWithLogicalExpire(PREFIX, 5L, Item.class, id -> {
+            loaded.set(id);
+            return new Item(id, "v1");
+        }, 60L, TimeUnit.SECONDS);
+
+        assertThat(item).isEqualTo(new Item(5L, "v1"));
+        assertThat(loaded).hasValue(5L);
+        byte[] raw = rawBytes(PREFIX + 5L);
+        assertThat(raw.length).isGreaterThan(LOGICAL_EXPIRE_HEADER_LENGTH);
+    }
+
+    /**
+     * 按key前缀注册的编解码方式同时用于普通缓存和逻辑过期缓存，逻辑过期的头部之后是编码后的数据
+     */
+    @Test
+    void registeredCodecIsUsedForPrefix() {
+        cacheClient.registerCodec(PREFIX, new CompressedRedisValueCodec(new JsonbRedisValueCodec(), 64));
+        Item large = new Item(14L, StrUtil.repeat("compressible", 20));
+
+        cacheClient.set(PREFIX + 14L, large, 60L, TimeUnit.SECONDS);
+        assertThat(cacheClient.queryWithPassThrough(PREFIX, 14L, Item.class, id -> null, 60L, TimeUnit.SECONDS))
+                .isEqualTo(large);
+        assertThat(rawBytes(PREFIX + 14L)[0]).isEqualTo((byte) 1);
+
+        assertThat(cacheClient.queryWithLogicalExpire(PREFIX, 15L, Item.class, id -> new Item(id, "small"), 60L, TimeUnit.SECONDS))
+                .isEqualTo(new Item(15L, "small"));
+        assertThat(rawBytes(PREFIX + 15L)[LOGICAL_EXPIRE_HEADER_LENGTH]).isEqualTo((byte) 0);
+        assertThat(cacheClient.queryWithLogicalExpire(PREFIX, 15L, Item.class, id -> new Item(id, "unexpected"), 60L, TimeUnit.SECONDS))
+                .isEqualTo(new Item(15L, "small"));
+
+        // 其他前缀仍使用默认的JSON文本
+        cacheClient.set("test:other:1", new Item(1L, "json"), 60L, TimeUnit.SECONDS);
+        assertThat(redisTemplate.opsForValue().get("test:other:1")).startsWith("{");
+    }
+
+    /**
+     * 开启提前刷新后，未过期的数据按记录的重建耗时提前异步刷新，刷新期间返回旧值
+     */
+    @Test
+    void logicalExpireRefreshesEarlyByRebuildTime() throws InterruptedException {
+        // 系数足够大时每次查询都会触发提前刷新
+        ReflectionTestUtils.setField(cacheClient, "earlyRefreshBeta", 1_000_000D);
+        AtomicInteger loads = new AtomicInteger();
+        Function<Long, Item> db = id -> {
+            sleep(50);
+            return new Item(id, "v" + loads.incrementAndGet());
+        };
+
+        assertThat(cacheClient.queryWithLogicalExpire(PREFIX, 9L, Item.class, db, 60L, TimeUnit.SECONDS).getName())
+                .isEqualTo("v1");
+        assertThat(cacheClient.queryWithLogicalExpire(PREFIX, 9L, Item.class, db, 60L, TimeUnit.SECONDS).getName())
+                .isEqualTo("v1");
+
+        waitUntil(() -> loads.get() == 2 && !redisTemplate.hasKey(LOCK_KEY + PREFIX + 9L));
+        assertThat(cacheClient.getRebuildStats().getEarlyRefreshCount()).isGreaterThanOrEqualTo(1L);
+        assertThat(cacheClient.getRebuildStats().getRejectedCount()).isZero();
+    }
+
+    /**
+     * 重建耗时未知（直接写入的数据）时不提前刷新
+     */
+    @Test
+    void logicalExpireDoesNotRefreshEarlyWithoutRebuildTime() throws InterruptedException {
+        ReflectionTestUtils.setField(cacheClient, "earlyRefreshBeta", 1_000_000D);
+        cacheClient.setWithLogicalExpire(PREFIX + 10L, new Item(10L, "v1"), 60L, TimeUnit.SECONDS);
+        AtomicInteger loads = new AtomicInteger();
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(cacheClient.queryWithLogicalExpire(PREFIX, 10L, Item.class, id -> {
+                loads.incrementAndGet();
+                return new Item(id, "v2");
+            }, 60L, TimeUnit.SECONDS).getName()).isEqualTo("v1");
+        }
+
+        Thread.sleep(100);
+        assertThat(loads).hasValue(0);
+        assertThat(cacheClient.getRebuildStats().getEarlyRefreshCount()).isZero();
+    }
+
+    /**
+     * 重建线程和队列都已占满时放弃重建并释放锁，返回旧值，之后的查询可以再次尝试
+     */
+    @Test
+    void logicalExpireRejectsRebuildWhenPoolIsFull() throws InterruptedException {
+        cacheClient.shutdownRebuildExecutor();
+        ReflectionTestUtils.setField(cacheClient, "rebuildCoreSize", 1);
+        ReflectionTestUtils.setField(cacheClient, "rebuildMaxSize", 1);
+        ReflectionTestUtils.setField(cacheClient, "rebuildQueueCapacity", 1);
+        cacheClient.initRebuildExecutor();
+        for (long id = 11L; id <= 13L; id++) {
+            cacheClient.setWithLogicalExpire(PREFIX + id, new Item(id, "old"), 300L, TimeUnit.MILLISECONDS);
+        }
+        Thread.sleep(350);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        Function<Long, Item> blockingDb = id -> {
+            loads.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new Item(id, "new");
+        };
+
+        try {
+            // 第一个重建占用线程，第二个进入队列，第三个被拒绝
+            for (long id = 11L; id <= 13L; id++) {
+                assertThat(cacheClient.queryWithLogicalExpire(PREFIX, id, Item.class, blockingDb, 60L, TimeUnit.SECONDS).getName())
+                        .isEqualTo("old");
+                if (id == 11L) {
+                    waitUntil(() -> loads.get() == 1);
+                }
+            }
+
+            assertThat(cacheClient.getRebuildStats().getRejectedCount()).isEqualTo(1L);
+            assertThat(cacheClient.getRebuildStats().getQueueSize()).isEqualTo(1);
+            assertThat(redisTemplate.hasKey(LOCK_KEY + PREFIX + 13L)).isFalse();
+        } finally {
+            release.countDown();
+        }
+
+        waitUntil(() -> cacheClient.getRebuildStats().getCompletedCount() == 2);
+        assertThat(cacheClient.queryWithLogicalExpire(PREFIX, 13L, Item.class, blockingDb, 60L, TimeUnit.SECONDS).getName())
+                .isEqualTo("old");
+        waitUntil(() -> "new".equals(cacheClient.queryWithLogicalExpire(PREFIX, 13L, Item.class, blockingDb, 60L, TimeUnit.SECONDS).getName()));
+        assertThat(cacheClient.getRebuildStats().getRejectedCount()).isEqualTo(1L);
+    }
+
+    /**
+     * 逻辑过期方式的冷启动未命中同样合并为一次数据库查询，其他线程等待同一个结果
+     */
+    @Test
+    void logicalExpireCoalescesConcurrentColdMisses() throws Exception {
+        int threads = 8;
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        Function<Long, Item> db = id -> {
+            loads.incrementAndGet();
+            sleep(200);
+            return new Item(id, "v1");
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Item>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    ready.countDown();
+                    start.await();
+                    return cacheClient.queryWithLogicalExpire(PREFIX, 11L, Item.class, db, 60L, TimeUnit.SECONDS);
+                }));
+            }
+            ready.await();
+            start.countDown();
+            for (Future<Item> result : results) {
+                assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo(new Item(11L, "v1"));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(loads).hasValue(1);
+        assertThat(redisTemplate.hasKey(LOCK_KEY + PREFIX + 11L)).isFalse();
+    }
+
+    /**
+     * 同一节点内同一个key的并发未命中只查询一次数据库，所有线程得到同一个结果
+     */
+    @Test
+    void mutexCoalescesConcurrentMissesPerKey() throws Exception {
+        int threads = 8;
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        Function<Long, Item> db = id -> {
+            loads.incrementAndGet();
+            sleep(200);
+            return new Item(id, "v1");
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Item>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    ready.countDown();
+                    start.await();
+                    return cacheClient.queryWithMutex(PREFIX, 6L, Item.class, db, 60L, TimeUnit.SECONDS);
+                }));
+            }
+            ready.await();
+            start.countDown();
+            for (Future<Item> result : results) {
+                assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo(new Item(6L, "v1"));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(loads).hasValue(1);
+        assertThat(cacheClient.queryWithMutex(PREFIX, 6L, Item.class, db, 60L, TimeUnit.SECONDS)).isEqualTo(new Item(6L, "v1"));
+        assertThat(loads).hasValue(1);
+        assertThat(redisTemplate.hasKey(LOCK_KEY + PREFIX + 6L)).isFalse();
+    }
+
+    /**
+     * 加载失败时等待同一结果的线程得到同样的异常，之后的查询重新加载
+     */
+    @Test
+    void mutexPropagatesLoadFailureAndRetriesLater() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch fail = new CountDownLatch(1);
+        Function<Long, Item> failingDb = id -> {
+            loading.countDown();
+            try {
+                fail.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IllegalStateException("db down");
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Item> loader = executor.submit(() -> cacheClient.queryWithMutex(PREFIX, 7L, Item.class, failingDb, 60L, TimeUnit.SECONDS));
+            assertThat(loading.await(2, TimeUnit.SECONDS)).isTrue();
+            Future<Item> waiter = executor.submit(() -> cacheClient.queryWithMutex(PREFIX, 7L, Item.class,
+                    id -> new Item(id, "unexpected"), 60L, TimeUnit.SECONDS));
+            Thread.sleep(100);
+            fail.countDown();
+
+            assertThatThrownBy(() -> loader.get(5, TimeUnit.SECONDS)).hasRootCauseMessage("db down");
+            assertThatThrownBy(() -> waiter.get(5, TimeUnit.SECONDS)).hasRootCauseMessage("db down");
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(cacheClient.queryWithMutex(PREFIX, 7L, Item.class, id -> new Item(id, "v2"), 60L, TimeUnit.SECONDS))
+                .isEqualTo(new Item(7L, "v2"));
+    }
+
+    /**
+     * 加载时抛出Error也会结束等待同一结果的线程，之后的查询重新加载
+     */
+    @Test
+    void mutexReleasesWaitersWhenLoadThrowsError() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch fail = new CountDownLatch(1);
+        Function<Long, Item> failingDb = id -> {
+            loading.countDown();
+            try {
+                fail.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new StackOverflowError("too deep");
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Item> loader = executor.submit(() -> cacheClient.queryWithMutex(PREFIX, 12L, Item.class, failingDb, 60L, TimeUnit.SECONDS));
+            assertThat(loading.await(2, TimeUnit.SECONDS)).isTrue();
+            Future<Item> waiter = executor.submit(() -> cacheClient.queryWithMutex(PREFIX, 12L, Item.class,
+                    id -> new Item(id, "unexpected"), 60L, TimeUnit.SECONDS));
+            Thread.sleep(100);
+            fail.countDown();
+
+            assertThatThrownBy(() -> loader.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(StackOverflowError.class);
+            assertThatThrownBy(() -> waiter.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(StackOverflowError.class);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(cacheClient.queryWithMutex(PREFIX, 12L, Item.class, id -> new Item(id, "v2"), 60L, TimeUnit.SECONDS))
+                .isEqualTo(new Item(12L, "v2"));
+    }
+
+    /**
+     * 其他节点持有互斥锁时不查询数据库，轮询缓存直到其他节点写入
+     */
+    @Test
+    void mutexWaitsForOtherNodeToRebuild() throws Exception {
+        redisTemplate.opsForValue().set(LOCK_KEY + PREFIX + 8L, "other-node", LOCK_TIMEOUT, TimeUnit.SECONDS);
+        AtomicInteger loads = new AtomicInteger();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Item> result = executor.submit(() -> cacheClient.queryWithMutex(PREFIX, 8L, Item.class, id -> {
+                loads.incrementAndGet();
+                return new Item(id, "mine");
+            }, 60L, TimeUnit.SECONDS));
+            Thread.sleep(200);
+            cacheClient.set(PREFIX + 8L, new Item(8L, "theirs"), 60L, TimeUnit.SECONDS);
+
+            assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo(new Item(8L, "theirs"));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(loads).hasValue(0);
+        // 不释放其他节点持有的锁
+        assertThat(redisTemplate.opsForValue().get(LOCK_KEY + PREFIX + 8L)).isEqualTo("other-node");
+    }
+
+    /**
+     * 创建不提前刷新的CacheClient，逻辑过期相关的测试结果不受随机数影响
+     */
+    private byte[] rawBytes(String key) {
+        return redisTemplate.execute(connection -> connection.stringCommands().get(key.getBytes(StandardCharsets.UTF_8)), true);
+    }
+
+    private CacheClient newCacheClient() {
+        CacheClient client = new CacheClient(redisTemplate, new BloomFilterManager());
+        ReflectionTestUtils.setField(client, "rebuildCoreSize", 2);
+        ReflectionTestUtils.setField(client, "rebuildMaxSize", 2);
+        ReflectionTestUtils.setField(client, "rebuildQueueCapacity", 10);
+        ReflectionTestUtils.setField(client, "earlyRefreshBeta", 0D);
+        client.initRebuildExecutor();
+        return client;
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("等待条件超时").isLessThan(deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Item {
+
+        private Long id;
+
+        private String name;
+    }
+}
@@ -0,0 +1,207 @@
+package space.atnibam.common.redis.utils;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+import redis.embedded.RedisServer;
+import space.atnibam.common.redis.utils.CacheClientTest.Item;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static space.atnibam.common.redis.constant.RedisConstants.CACHE_INVALIDATION_CHANNEL;
+
+/**
+ * @ClassName: TwoLevelCacheTest
+ * @Description: 二级缓存测试，两个TwoLevelCacheManager模拟两个节点，共用一个嵌入式Redis
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-29 20:30
+ **/
+class TwoLevelCacheTest {
+
+    private static final String NAME = "test:two-level:";
+
+    private static final RedisScript<Long> NUMSUB_SCRIPT = new DefaultRedisScript<>(
+            "return redis.call('PUBSUB', 'NUMSUB', KEYS[1])[2]", Long.class);
+
+    private static RedisServer redisServer;
+
+    private static LettuceConnectionFactory connectionFactory;
+
+    private StringRedisTemplate redisTemplate;
+
+    private CacheClient clientA;
+
+    private CacheClient clientB;
+
+    private TwoLevelCacheManager managerA;
+
+    private TwoLevelCacheManager managerB;
+
+    private TwoLevelCache<Item> cacheA;
+
+    private TwoLevelCache<Item> cacheB;
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redisServer = new RedisServer(port);
+        redisServer.start();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", port));
+        connectionFactory.afterPropertiesSet();
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        connectionFactory.destroy();
+        redisServer.stop();
+    }
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+        redisTemplate.afterPropertiesSet();
+        redisTemplate.execute(connection -> {
+            connection.serverCommands().flushAll();
+            return null;
+        }, true);
+
+        clientA = newCacheClient();
+        clientB = newCacheClient();
+        managerA = newManager(clientA);
+        managerB = newManager(clientB);
+        cacheA = managerA.getCache(NAME, Item.class, 100, 60_000L, 60L, TimeUnit.SECONDS);
+        cacheB = managerB.getCache(NAME, Item.class, 100, 60_000L, 60L, TimeUnit.SECONDS);
+        // 订阅是异步建立的，等两个节点都订阅后再开始测试
+        waitUntil(() -> subscribers() == 2L);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        managerA.destroy();
+        managerB.destroy();
+        clientA.shutdownRebuildExecutor();
+        clientB.shutdownRebuildExecutor();
+    }
+
+    /**
+     * 命中本地缓存时不再访问Redis，Redis中的数据被直接删除后仍返回本地缓存的值
+     */
+    @Test
+    void servesFromLocalCacheAfterFirstLoad() {
+        AtomicInteger loads = new AtomicInteger();
+
+        assertThat(cacheB.get("k", key -> value(loads, "v1"))).isEqualTo(item("v1"));
+        redisTemplate.delete(NAME + "k");
+
+        assertThat(cacheB.get("k", key -> value(loads, "v2"))).isEqualTo(item("v1"));
+        assertThat(loads).hasValue(1);
+    }
+
+    /**
+     * 一个节点写入后，其他节点的本地缓存收到失效消息后清除，再次查询时读到新值
+     */
+    @Test
+    void putInvalidatesOtherNodes() throws InterruptedException {
+        assertThat(cacheB.get("k", key -> item("v1"))).isEqualTo(item("v1"));
+
+        cacheA.put("k", item("v2"));
+
+        waitUntil(() -> item("v2").equals(cacheB.get("k", key -> item("db"))));
+        // 写入的节点忽略自己的失效消息，本地缓存保留刚写入的值
+        redisTemplate.delete(NAME + "k");
+        assertThat(cacheA.get("k", key -> item("db"))).isEqualTo(item("v2"));
+    }
+
+    /**
+     * 一个节点删除后，其他节点的本地缓存清除，再次查询时从数据库加载
+     */
+    @Test
+    void evictInvalidatesOtherNodes() throws InterruptedException {
+        assertThat(cacheB.get("k", key -> item("v1"))).isEqualTo(item("v1"));
+
+        cacheA.evict("k");
+
+        assertThat(redisTemplate.hasKey(NAME + "k")).isFalse();
+        waitUntil(() -> item("reloaded").equals(cacheB.get("k", key -> item("reloaded"))));
+    }
+
+    /**
+     * 查询期间发生失效时，查询结果不写入本地缓存，避免旧值覆盖失效
+     */
+    @Test
+    void skipsLocalFillWhenInvalidatedDuringLoad() {
+        AtomicInteger loads = new AtomicInteger();
+        Function<String, Item> racingLoad = key -> {
+            // 模拟加载期间收到其他节点的失效消息
+            cacheB.invalidateLocal(key);
+            return value(loads, "stale");
+        };
+
+        assertThat(cacheB.get("k", racingLoad)).isEqualTo(item("stale"));
+        redisTemplate.delete(NAME + "k");
+
+        assertThat(cacheB.get("k", key -> value(loads, "fresh"))).isEqualTo(item("fresh"));
+        assertThat(loads).hasValue(2);
+    }
+
+    /**
+     * 订阅失效频道的连接数
+     */
+    private long subscribers() {
+        Long count = redisTemplate.execute(NUMSUB_SCRIPT, Collections.singletonList(CACHE_INVALIDATION_CHANNEL));
+        return count == null ? 0L : count;
+    }
+
+    private CacheClient newCacheClient() {
+        CacheClient client = new CacheClient(redisTemplate, new BloomFilterManager());
+        ReflectionTestUtils.setField(client, "rebuildCoreSize", 1);
+        ReflectionTestUtils.setField(client, "rebuildMaxSize", 1);
+        ReflectionTestUtils.setField(client, "rebuildQueueCapacity", 10);
+        ReflectionTestUtils.setField(client, "earlyRefreshBeta", 0D);
+        client.initRebuildExecutor();
+        return client;
+    }
+
+    private TwoLevelCacheManager newManager(CacheClient client) {
+        TwoLevelCacheManager manager = new TwoLevelCacheManager();
+        ReflectionTestUtils.setField(manager, "cacheClient", client);
+        ReflectionTestUtils.setField(manager, "stringRedisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(manager, "redisConnectionFactory", connectionFactory);
+        return manager;
+    }
+
+    private static Item value(AtomicInteger loads, String name) {
+        loads.incrementAndGet();
+        return item(name);
+    }
+
+    private static Item item(String name) {
+        return new Item(1L, name);
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("等待条件超时").isLessThan(deadline);
+            Thread.sleep(20);
+        }
+    }
+}
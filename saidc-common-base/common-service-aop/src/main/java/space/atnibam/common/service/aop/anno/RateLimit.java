@@ -1,11 +1,16 @@
 package space.atnibam.common.service.aop.anno;
 
+import space.atnibam.common.service.aop.enums.RateLimitAlgorithm;
+
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 import java.util.concurrent.TimeUnit;
 
+import static space.atnibam.common.service.aop.constant.RateLimiterConstant.DEFAULT_LEASE_MILLIS;
+import static space.atnibam.common.service.aop.constant.RateLimiterConstant.DEFAULT_PERMIT_TIMEOUT_MILLIS;
+
 /**
  * @ClassName: RateLimit
  * @Description: 用于方法级别的速率限制注解，可以控制接口的请求频率。
@@ -23,7 +28,24 @@ public @interface RateLimit {
     String resourceName();
 
     /**
-     * 表示令牌桶的初始容量，即最初令牌桶中的令牌数量
+     * 表示限流的维度，为SpEL表达式，可以引用方法参数（如 #userId）、当前请求 #request 和客户端地址 #ip。
+     * 表达式的值拼接在资源名称之后，每个值单独限流；为空时整个资源共用一个限流器。
+     * #ip默认为连接的来源地址，配置了 rate-limit.trusted-proxy-count 时才从X-Forwarded-For中解析
+     *
+     * @return String 限流维度的SpEL表达式
+     */
+    String key() default "";
+
+    /**
+     * 表示限流算法
+     *
+     * @return RateLimitAlgorithm 限流算法，默认为令牌桶
+     */
+    RateLimitAlgorithm algorithm() default RateLimitAlgorithm.TOKEN_BUCKET;
+
+    /**
+     * 表示令牌桶的初始容量，即最初令牌桶中的令牌数量；
+     * 滑动窗口算法下为窗口内允许的最大请求数，并发数限制算法下为最大并发数
      *
      * @return int 初始容量
      */
@@ -34,12 +56,36 @@ public @interface RateLimit {
      *
      * @return int 填充速率
      */
-    int refillRate();
+    int refillRate() default 1;
 
     /**
-     * 表示令牌桶填充的时间单位，用于定义填充速率的时间范围
+     * 表示令牌桶填充的时间单位，用于定义填充速率的时间范围；滑动窗口算法下为窗口长度
      *
      * @return TimeUnit 时间单位
      */
-    TimeUnit refillTimeUnit();
+    TimeUnit refillTimeUnit() default TimeUnit.SECONDS;
+
+    /**
+     * 表示并发许可的过期时间，持有许可的节点宕机未能释放时，许可在过期后自动回收，应大于被限制方法的最长执行时间
+     *
+     * @return long 过期时间（单位：ms）
+     */
+    long permitTimeoutMillis() default DEFAULT_PERMIT_TIMEOUT_MILLIS;
+
+    /**
+     * 表示每个节点每次从令牌桶中租用的令牌数，大于1时开启本地租用模式，
+     * 节点在本地扣减租用到的令牌，每租用一次才访问一次Redis。
+     * 全局速率的误差不超过 节点数 × 租用数，因此该值即为可容忍的误差。
+     * 仅对未设置key的令牌桶生效
+     *
+     * @return int 每次租用的令牌数，默认不租用
+     */
+    int leaseSize() default 0;
+
+    /**
+     * 表示租用令牌的有效期，到期后未使用的令牌归还到令牌桶
+     *
+     * @return long 有效期（单位：ms）
+     */
+    long leaseMillis() default DEFAULT_LEASE_MILLIS;
 }
@@ -1,18 +1,48 @@
 package space.atnibam.common.service.aop.aspect;
 
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.expression.MethodBasedEvaluationContext;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.stereotype.Component;
-import space.atnibam.common.redis.service.RedisService;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import space.atnibam.common.core.exception.base.BaseException;
+import space.atnibam.common.core.utils.text.StringUtils;
 import space.atnibam.common.service.aop.anno.RateLimit;
+import space.atnibam.common.service.aop.enums.RateLimitAlgorithm;
+import space.atnibam.common.service.aop.service.ConcurrencyLimiter;
 import space.atnibam.common.service.aop.service.DistributedRateLimiterNew;
+import space.atnibam.common.service.aop.service.LeasedRateLimiter;
+import space.atnibam.common.service.aop.service.RateLimiter;
+import space.atnibam.common.service.aop.service.SlidingWindowRateLimiter;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import static space.atnibam.common.core.enums.ResultCode.SERVER_LIMIT;
-import static space.atnibam.common.service.aop.constant.RateLimiterConstant.REFILL_DURATION;
+import static space.atnibam.common.redis.constant.RedisConstants.REDIS_SEPARATOR;
+import static space.atnibam.common.service.aop.constant.RateLimiterConstant.*;
 
 /**
  * @ClassName: RateLimitAspect
@@ -20,15 +50,88 @@ import static space.atnibam.common.service.aop.constant.RateLimiterConstant.REFI
  * @Author: AtnibamAitay
  * @CreateTime: 2023-10-21 21:24
  **/
+@Slf4j
 @Aspect
 @Component
 public class RateLimitAspect {
 
     /**
-     * 使用 RedisService 工具类操作 Redis
+     * 用于执行限流脚本的 Redis 模板
      */
     @Resource
-    private RedisService redisCache;
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 每个被注解方法对应的限流器，首次拦截时创建，之后直接复用；设置了key的方法每次按key的值创建
+     */
+    private final Map<Method, RateLimiter> limiters = new ConcurrentHashMap<>();
+
+    /**
+     * 每个被注解方法对应的并发数限制器
+     */
+    private final Map<Method, ConcurrencyLimiter> concurrencyLimiters = new ConcurrentHashMap<>();
+
+    /**
+     * 每个被注解方法的key表达式，解析一次后复用
+     */
+    private final Map<Method, Expression> keyExpressions = new ConcurrentHashMap<>();
+
+    private final ExpressionParser parser = new SpelExpressionParser();
+
+    private final ParameterNameDiscoverer parameterNameDiscoverer = new DefaultParameterNameDiscoverer();
+
+    /**
+     * 检查并归还到期租用的间隔（单位：毫秒）
+     */
+    @Value("${rate-limit.lease-sweep-interval-millis:" + DEFAULT_LEASE_SWEEP_INTERVAL_MILLIS + "}")
+    private long leaseSweepIntervalMillis;
+
+    private ScheduledExecutorService leaseSweepExecutor;
+
+    /**
+     * 本服务前面的可信代理（如网关、负载均衡）的层数，为0时不信任X-Forwarded-For，只使用连接的来源地址
+     */
+    @Value("${rate-limit.trusted-proxy-count:" + DEFAULT_TRUSTED_PROXY_COUNT + "}")
+    private int trustedProxyCount;
+
+    /**
+     * 启动定时任务，归还到期后仍未使用的租用令牌，避免请求停止后令牌一直被本节点占用
+     */
+    @PostConstruct
+    public void startLeaseSweep() {
+        leaseSweepExecutor = Executors.newSingleThreadScheduledExecutor(
+                ThreadFactoryBuilder.create().setNamePrefix("rate-limit-lease-").setDaemon(true).build());
+        leaseSweepExecutor.scheduleWithFixedDelay(() -> forEachLeasedLimiter(LeasedRateLimiter::returnExpiredLease),
+                leaseSweepIntervalMillis, leaseSweepIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止定时任务，并归还所有租用的令牌
+     */
+    @PreDestroy
+    public void returnLeases() {
+        if (leaseSweepExecutor != null) {
+            leaseSweepExecutor.shutdownNow();
+        }
+        forEachLeasedLimiter(LeasedRateLimiter::returnLease);
+    }
+
+    /**
+     * 对每个租用令牌的限流器执行操作，单个限流器出错不影响其他限流器
+     *
+     * @param action 操作
+     */
+    private void forEachLeasedLimiter(Consumer<LeasedRateLimiter> action) {
+        for (RateLimiter limiter : limiters.values()) {
+            if (limiter instanceof LeasedRateLimiter) {
+                try {
+                    action.accept((LeasedRateLimiter) limiter);
+                } catch (Exception e) {
+                    log.warn("归还租用的令牌失败：{}", e.getMessage());
+                }
+            }
+        }
+    }
 
     /**
      * 对使用了 RateLimit 注解的方法进行拦截，并处理其限流逻辑
@@ -40,22 +143,125 @@ public class RateLimitAspect {
      */
     @Around("@annotation(rateLimit)")
     public Object aroundRateLimit(ProceedingJoinPoint joinPoint, RateLimit rateLimit) throws Throwable {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        String key = resolveKey(joinPoint, method, rateLimit);
 
-        // 获取注解内的参数
-        String resourceName = rateLimit.resourceName();
-        int initialCapacity = rateLimit.initialCapacity();
-        int refillRate = rateLimit.refillRate();
-        TimeUnit refillTimeUnit = rateLimit.refillTimeUnit();
+        if (rateLimit.algorithm() == RateLimitAlgorithm.CONCURRENCY) {
+            return proceedWithPermit(joinPoint, method, rateLimit, key);
+        }
 
-        // 创建并初始化一个分布式限流器
-        DistributedRateLimiterNew distributedRateLimiterNew = new DistributedRateLimiterNew(redisCache, resourceName, initialCapacity, refillRate, REFILL_DURATION);
+        // 获取该方法对应的限流器，令牌桶的初始化在限流脚本中完成
+        RateLimiter rateLimiter = key == null
+                ? limiters.computeIfAbsent(method, m -> createLimiter(rateLimit, rateLimit.resourceName()))
+                : createLimiter(rateLimit, rateLimit.resourceName() + REDIS_SEPARATOR + key);
 
         // 如果当前请求不能被接受（即超过了设定的频率），则抛出异常
-        if (!distributedRateLimiterNew.allowRequest()) {
-            throw new RuntimeException(SERVER_LIMIT.getMessage());
+        if (!rateLimiter.allowRequest()) {
+            throw new BaseException(SERVER_LIMIT);
         }
 
         // 否则正常执行被代理的方法，并返回其结果
         return joinPoint.proceed();
     }
-}
\ No newline at end of file
+
+    /**
+     * 获取并发许可后执行被代理的方法，执行结束后释放许可
+     *
+     * @param joinPoint 切入点
+     * @param method    被代理的方法
+     * @param rateLimit 自定义注解，包含了限流相关的参数
+     * @param key       限流维度的值，未设置key时为 null
+     * @return 方法的返回值
+     * @throws Throwable 在执行方法过程中可能会抛出的异常
+     */
+    private Object proceedWithPermit(ProceedingJoinPoint joinPoint, Method method, RateLimit rateLimit, String key) throws Throwable {
+        ConcurrencyLimiter limiter = key == null
+                ? concurrencyLimiters.computeIfAbsent(method, m -> createConcurrencyLimiter(rateLimit, rateLimit.resourceName()))
+                : createConcurrencyLimiter(rateLimit, rateLimit.resourceName() + REDIS_SEPARATOR + key);
+
+        String permit = limiter.tryAcquire();
+        if (permit == null) {
+            throw new BaseException(SERVER_LIMIT);
+        }
+        try {
+            return joinPoint.proceed();
+        } finally {
+            limiter.release(permit);
+        }
+    }
+
+    /**
+     * 根据注解内的参数创建一个分布式限流器，令牌桶配置了租用令牌数且未设置key时在令牌桶外包装本地租用
+     *
+     * @param rateLimit    自定义注解，包含了限流相关的参数
+     * @param resourceName 资源名称，设置了key时已拼接key的值
+     * @return 分布式限流器
+     */
+    private RateLimiter createLimiter(RateLimit rateLimit, String resourceName) {
+        long unitMillis = rateLimit.refillTimeUnit().toMillis(1);
+        if (rateLimit.algorithm() == RateLimitAlgorithm.SLIDING_WINDOW) {
+            return new SlidingWindowRateLimiter(stringRedisTemplate, resourceName, rateLimit.initialCapacity(), unitMillis);
+        }
+
+        DistributedRateLimiterNew tokenBucket = new DistributedRateLimiterNew(stringRedisTemplate, resourceName,
+                rateLimit.initialCapacity(), rateLimit.refillRate(), unitMillis);
+        if (rateLimit.leaseSize() > 1 && StringUtils.isEmpty(rateLimit.key())) {
+            return new LeasedRateLimiter(tokenBucket, rateLimit.leaseSize(), rateLimit.leaseMillis());
+        }
+        return tokenBucket;
+    }
+
+    /**
+     * 根据注解内的参数创建一个并发数限制器
+     *
+     * @param rateLimit    自定义注解，包含了限流相关的参数
+     * @param resourceName 资源名称，设置了key时已拼接key的值
+     * @return 并发数限制器
+     */
+    private ConcurrencyLimiter createConcurrencyLimiter(RateLimit rateLimit, String resourceName) {
+        return new ConcurrencyLimiter(stringRedisTemplate, resourceName, rateLimit.initialCapacity(), rateLimit.permitTimeoutMillis());
+    }
+
+    /**
+     * 计算限流维度的值
+     *
+     * @param joinPoint 切入点
+     * @param method    被代理的方法
+     * @param rateLimit 自定义注解，包含了限流相关的参数
+     * @return 限流维度的值，未设置key时返回 null
+     */
+    private String resolveKey(ProceedingJoinPoint joinPoint, Method method, RateLimit rateLimit) {
+        if (StringUtils.isEmpty(rateLimit.key())) {
+            return null;
+        }
+        Expression expression = keyExpressions.computeIfAbsent(method, m -> parser.parseExpression(rateLimit.key()));
+
+        MethodBasedEvaluationContext context = new MethodBasedEvaluationContext(null, method, joinPoint.getArgs(), parameterNameDiscoverer);
+        RequestAttributes ra = RequestContextHolder.getRequestAttributes();
+        if (ra instanceof ServletRequestAttributes) {
+            HttpServletRequest request = ((ServletRequestAttributes) ra).getRequest();
+            context.setVariable("request", request);
+            context.setVariable("ip", getClientIp(request));
+        }
+        return String.valueOf(expression.getValue(context));
+    }
+
+    /**
+     * 获取客户端地址。X-Forwarded-For可以由客户端任意填写，只有配置了可信代理数时才使用：
+     * 每一级代理在末尾追加它收到请求的来源地址，从右往左数第（可信代理数）个地址为可信代理记录的客户端地址，
+     * 更靠左的地址由客户端填写，不可信；未配置可信代理时使用连接的来源地址
+     *
+     * @param request 当前请求
+     * @return 客户端地址
+     */
+    private String getClientIp(HttpServletRequest request) {
+        String forwardedFor = request.getHeader(X_FORWARDED_FOR);
+        if (trustedProxyCount <= 0 || StringUtils.isEmpty(forwardedFor)) {
+            return request.getRemoteAddr();
+        }
+        String[] addresses = forwardedFor.split(",");
+        // 地址数少于可信代理数时，请求只经过了部分可信代理，第一个地址也由可信代理记录
+        String clientIp = addresses[Math.max(0, addresses.length - trustedProxyCount)].trim();
+        return StringUtils.isNotEmpty(clientIp) ? clientIp : request.getRemoteAddr();
+    }
+}
@@ -9,27 +9,67 @@ package space.atnibam.common.service.aop.constant;
 public class RateLimiterConstant {
 
     /**
-     * 定义用于在 Redis 存储令牌数量的 Key 的前缀
+     * 定义用于在 Redis 存储令牌桶（Hash，包含令牌数量和上次填充时间）的 Key 的前缀
      */
     public static final String RATE_LIMIT_KEY = "rate_limit:";
 
     /**
-     * 定义用于在 Redis 存储上次填充令牌的时间的 Key 的前缀
+     * 令牌桶Lua脚本在类路径中的位置
      */
-    public static final String LAST_REFILL_TIME_KEY = "last_refill_time:";
+    public static final String TOKEN_BUCKET_SCRIPT_PATH = "lua/token_bucket.lua";
 
     /**
-     * 定义令牌桶的最大容量
+     * 归还租用令牌的Lua脚本在类路径中的位置
      */
-    public static final long REFILL_DURATION = 10000L;
+    public static final String TOKEN_BUCKET_RETURN_SCRIPT_PATH = "lua/token_bucket_return.lua";
 
     /**
-     * 令牌桶在 Redis 缓存中的过期时间（单位：分钟）
+     * 定义用于在 Redis 存储滑动窗口内请求记录的 Key 的前缀
      */
-    public static final Long TOKEN_BUCKET_EXPIRE_TIME_MINUTES = 60L;
+    public static final String SLIDING_WINDOW_KEY = "sliding_window:";
+
+    /**
+     * 滑动窗口Lua脚本在类路径中的位置
+     */
+    public static final String SLIDING_WINDOW_SCRIPT_PATH = "lua/sliding_window.lua";
+
+    /**
+     * 定义用于在 Redis 存储并发许可的 Key 的前缀
+     */
+    public static final String CONCURRENCY_KEY = "concurrency:";
+
+    /**
+     * 获取并发许可的Lua脚本在类路径中的位置
+     */
+    public static final String CONCURRENCY_ACQUIRE_SCRIPT_PATH = "lua/concurrency_acquire.lua";
+
+    /**
+     * 并发许可的默认过期时间（单位：毫秒）
+     */
+    public static final long DEFAULT_PERMIT_TIMEOUT_MILLIS = 300000L;
 
     /**
-     * 资源在 Redis 缓存中的过期时间（单位：秒）
+     * 节点租用令牌的默认有效期（单位：毫秒），到期后未使用的令牌归还到令牌桶
      */
-    public static final long RESOURCE_EXPIRE_TIME_SECONDS = 3600L;
+    public static final long DEFAULT_LEASE_MILLIS = 1000L;
+
+    /**
+     * 检查并归还到期租用的默认间隔（单位：毫秒）
+     */
+    public static final long DEFAULT_LEASE_SWEEP_INTERVAL_MILLIS = 200L;
+
+    /**
+     * 记录经过的代理和客户端地址的请求头
+     */
+    public static final String X_FORWARDED_FOR = "X-Forwarded-For";
+
+    /**
+     * 默认的可信代理层数，默认不信任X-Forwarded-For
+     */
+    public static final int DEFAULT_TRUSTED_PROXY_COUNT = 0;
+
+    /**
+     * 令牌桶在 Redis 缓存中的过期时间（单位：分钟）
+     */
+    public static final Long TOKEN_BUCKET_EXPIRE_TIME_MINUTES = 60L;
 }
@@ -0,0 +1,29 @@
+package space.atnibam.common.service.aop.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * @ClassName: RateLimitResult
+ * @Description: 限流判断结果
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-28 14:36
+ **/
+@Data
+@AllArgsConstructor
+public class RateLimitResult {
+    /**
+     * 是否允许请求
+     */
+    private boolean allowed;
+
+    /**
+     * 剩余令牌数
+     */
+    private long remaining;
+
+    /**
+     * 被拒绝时需要等待的时间（单位：毫秒），允许时为0
+     */
+    private long retryAfterMillis;
+}
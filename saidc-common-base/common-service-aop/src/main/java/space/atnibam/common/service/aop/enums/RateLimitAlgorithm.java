@@ -0,0 +1,24 @@
+package space.atnibam.common.service.aop.enums;
+
+/**
+ * @ClassName: RateLimitAlgorithm
+ * @Description: 限流算法
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-28 16:02
+ **/
+public enum RateLimitAlgorithm {
+    /**
+     * 令牌桶，容量为initialCapacity，每个refillTimeUnit补充refillRate个令牌，允许突发流量
+     */
+    TOKEN_BUCKET,
+
+    /**
+     * 滑动窗口，任意一个refillTimeUnit长度的时间窗口内最多允许initialCapacity个请求
+     */
+    SLIDING_WINDOW,
+
+    /**
+     * 并发数限制，所有节点同时执行中的请求最多为initialCapacity个
+     */
+    CONCURRENCY
+}
@@ -0,0 +1,98 @@
+package space.atnibam.common.service.aop.service;
+
+import cn.hutool.core.util.IdUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+
+import java.util.Collections;
+
+import static space.atnibam.common.service.aop.constant.RateLimiterConstant.CONCURRENCY_ACQUIRE_SCRIPT_PATH;
+import static space.atnibam.common.service.aop.constant.RateLimiterConstant.CONCURRENCY_KEY;
+
+/**
+ * @ClassName: ConcurrencyLimiter
+ * @Description: 基于 Redis 实现的分布式信号量，限制所有节点同时执行的请求数。
+ * 许可带有过期时间，持有许可的节点宕机时许可在过期后自动回收
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-28 16:18
+ **/
+@Slf4j
+public class ConcurrencyLimiter {
+
+    /**
+     * 获取许可的脚本
+     */
+    private static final DefaultRedisScript<Long> ACQUIRE_SCRIPT = new DefaultRedisScript<>();
+
+    static {
+        ACQUIRE_SCRIPT.setScriptSource(new ResourceScriptSource(new ClassPathResource(CONCURRENCY_ACQUIRE_SCRIPT_PATH)));
+        ACQUIRE_SCRIPT.setResultType(Long.class);
+    }
+
+    /**
+     * 用于执行脚本的 Redis 模板
+     */
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 定义资源名称
+     */
+    private final String resourceName;
+
+    /**
+     * 最大并发数
+     */
+    private final int maxConcurrency;
+
+    /**
+     * 许可的过期时间（单位：ms），应大于被限制操作的最长执行时间
+     */
+    private final long permitTimeoutMillis;
+
+    /**
+     * 构造函数
+     *
+     * @param stringRedisTemplate Redis 模板
+     * @param resourceName        资源名称
+     * @param maxConcurrency      最大并发数
+     * @param permitTimeoutMillis 许可的过期时间，单位ms
+     */
+    public ConcurrencyLimiter(StringRedisTemplate stringRedisTemplate, String resourceName, int maxConcurrency, long permitTimeoutMillis) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.resourceName = resourceName;
+        this.maxConcurrency = maxConcurrency;
+        this.permitTimeoutMillis = permitTimeoutMillis;
+    }
+
+    /**
+     * 尝试获取一个许可
+     *
+     * @return 许可的标识，并发数已满时返回 null
+     */
+    public String tryAcquire() {
+        String permit = IdUtil.fastSimpleUUID();
+        Long acquired = stringRedisTemplate.execute(ACQUIRE_SCRIPT,
+                Collections.singletonList(CONCURRENCY_KEY + resourceName),
+                String.valueOf(maxConcurrency),
+                String.valueOf(permitTimeoutMillis),
+                permit);
+        return acquired != null && acquired == 1L ? permit : null;
+    }
+
+    /**
+     * 释放许可
+     *
+     * @param permit 获取许可时返回的标识
+     */
+    public void release(String permit) {
+        try {
+            stringRedisTemplate.opsForZSet().remove(CONCURRENCY_KEY + resourceName, permit);
+        } catch (Exception e) {
+            // 未能释放的许可在过期后自动回收
+            log.warn("释放并发许可失败，资源：{}，错误信息：{}", resourceName, e.getMessage());
+        }
+    }
+}
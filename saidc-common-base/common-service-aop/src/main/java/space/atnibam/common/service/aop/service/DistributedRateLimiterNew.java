@@ -1,26 +1,51 @@
 package space.atnibam.common.service.aop.service;
 
-import lombok.extern.slf4j.Slf4j;
-import space.atnibam.common.redis.service.RedisService;
-
-import java.util.Objects;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+import space.atnibam.common.service.aop.domain.RateLimitResult;
+
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import static space.atnibam.common.service.aop.constant.RateLimiterConstant.*;
 
 /**
  * @ClassName: DistributedRateLimiterNew
- * @Description: 基于 Redis 实现的分布式限流器，采用令牌桶算法
+ * @Description: 基于 Redis 实现的分布式限流器，采用令牌桶算法。
+ * 令牌桶的状态保存在一个Hash中，补充令牌和扣除令牌由Lua脚本在一次往返中原子完成
  * @Author: AtnibamAitay
  * @CreateTime: 2023-10-21 21:24
  **/
-@Slf4j
-public class DistributedRateLimiterNew {
+public class DistributedRateLimiterNew implements RateLimiter {
+
+    /**
+     * 令牌桶脚本，执行时优先使用EVALSHA，Redis中没有缓存该脚本时才发送脚本内容
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> TOKEN_BUCKET_SCRIPT = new DefaultRedisScript<>();
+
+    static {
+        TOKEN_BUCKET_SCRIPT.setScriptSource(new ResourceScriptSource(new ClassPathResource(TOKEN_BUCKET_SCRIPT_PATH)));
+        TOKEN_BUCKET_SCRIPT.setResultType(List.class);
+    }
 
     /**
-     * 定义用于操作 Redis 的工具类实例
+     * 归还租用令牌的脚本
      */
-    private final RedisService redisCache;
+    private static final DefaultRedisScript<Long> TOKEN_BUCKET_RETURN_SCRIPT = new DefaultRedisScript<>();
+
+    static {
+        TOKEN_BUCKET_RETURN_SCRIPT.setScriptSource(new ResourceScriptSource(new ClassPathResource(TOKEN_BUCKET_RETURN_SCRIPT_PATH)));
+        TOKEN_BUCKET_RETURN_SCRIPT.setResultType(Long.class);
+    }
+
+    /**
+     * 用于执行限流脚本的 Redis 模板
+     */
+    private final StringRedisTemplate stringRedisTemplate;
 
     /**
      * 定义资源名称
@@ -45,21 +70,18 @@ public class DistributedRateLimiterNew {
     /**
      * 构造函数
      *
-     * @param redisCache     Redis 工具类
-     * @param resourceName   资源名称
-     * @param maxTokens      令牌桶容量
-     * @param refillRate     令牌桶单位时间填充速率
-     * @param refillInterval 令牌桶填充时间间隔，单位ms
+     * @param stringRedisTemplate Redis 模板
+     * @param resourceName        资源名称
+     * @param maxTokens           令牌桶容量
+     * @param refillRate          令牌桶单位时间填充速率
+     * @param refillInterval      令牌桶填充时间间隔，单位ms
      */
-    public DistributedRateLimiterNew(RedisService redisCache, String resourceName, int maxTokens, int refillRate, long refillInterval) {
-        this.redisCache = redisCache;
+    public DistributedRateLimiterNew(StringRedisTemplate stringRedisTemplate, String resourceName, int maxTokens, int refillRate, long refillInterval) {
+        this.stringRedisTemplate = stringRedisTemplate;
         this.resourceName = resourceName;
         this.maxTokens = maxTokens;
         this.refillRate = refillRate;
         this.refillInterval = refillInterval;
-
-        // 初始化令牌桶
-        initializeTokenBucket();
     }
 
     /**
@@ -67,48 +89,63 @@ public class DistributedRateLimiterNew {
      *
      * @return 如果没有超过设定的限制则返回 true，否则返回 false
      */
+    @Override
     public boolean allowRequest() {
-        String key = RATE_LIMIT_KEY + resourceName;
-        long currentTime = System.currentTimeMillis();
-
-        // 获取当前令牌数量
-        Integer tokenCountCache = redisCache.getCacheObject(key);
-        int tokenCount = Objects.isNull(tokenCountCache) ? 0 : tokenCountCache;
-
-        // 补充令牌
-        long lastRefillTime = redisCache.getCacheObject(LAST_REFILL_TIME_KEY + resourceName);
-        long timePassed = currentTime - lastRefillTime;
-        int newTokens = (int) (timePassed * refillRate / refillInterval);
-        tokenCount = Math.min(tokenCount + newTokens, maxTokens);
-
-        log.info("扣除之前tokenCount:{}", tokenCount);
-
-        // 判断是否允许请求
-        if (tokenCount > 0) {
-            tokenCount--;
-            log.info("扣除之后tokenCount:{}", tokenCount);
-            // 保存令牌桶数量
-            redisCache.setCacheObject(key, tokenCount, TOKEN_BUCKET_EXPIRE_TIME_MINUTES, TimeUnit.MINUTES);
-            // 保存最近一次更新token的时间
-            redisCache.setCacheObject(LAST_REFILL_TIME_KEY + resourceName, System.currentTimeMillis(), TOKEN_BUCKET_EXPIRE_TIME_MINUTES, TimeUnit.MINUTES);
-            return true;
-        } else {
-            return false;
-        }
+        return tryAcquire(1).isAllowed();
     }
 
     /**
-     * 初始化令牌桶。即在 Redis 中为该资源创建对应的记录，并设置初始值
+     * 尝试从令牌桶中获取令牌，令牌桶不存在时按满桶初始化
+     *
+     * @param permits 需要的令牌数
+     * @return 限流判断结果，包含剩余令牌数和被拒绝时需要等待的时间
      */
-    private void initializeTokenBucket() {
-        // 当资源为空时，则进行新建
-        if (redisCache.getCacheObject(RATE_LIMIT_KEY + resourceName) == null) {
-            // 保存最近一次更新token的时间
-            redisCache.setCacheObject(LAST_REFILL_TIME_KEY + resourceName, System.currentTimeMillis(), TOKEN_BUCKET_EXPIRE_TIME_MINUTES, TimeUnit.MINUTES);
-            // 保存令牌桶数量
-            redisCache.setCacheObject(RATE_LIMIT_KEY + resourceName, maxTokens, TOKEN_BUCKET_EXPIRE_TIME_MINUTES, TimeUnit.MINUTES);
-            // 设置过期时间，当长期不用则自动删除
-            redisCache.expire(resourceName, RESOURCE_EXPIRE_TIME_SECONDS);
+    public RateLimitResult tryAcquire(int permits) {
+        List<Long> result = execute(permits, false);
+        return new RateLimitResult(result.get(0) > 0, result.get(1), result.get(2));
+    }
+
+    /**
+     * 批量租用令牌，剩余令牌不足时取走全部剩余的令牌
+     *
+     * @param maxPermits 最多租用的令牌数
+     * @return 实际租用到的令牌数，为0表示令牌桶已空
+     */
+    public long lease(int maxPermits) {
+        return execute(maxPermits, true).get(0);
+    }
+
+    /**
+     * 归还租用后未使用的令牌
+     *
+     * @param permits 归还的令牌数
+     */
+    public void giveBack(long permits) {
+        if (permits <= 0) {
+            return;
         }
+        stringRedisTemplate.execute(TOKEN_BUCKET_RETURN_SCRIPT,
+                Collections.singletonList(RATE_LIMIT_KEY + resourceName),
+                String.valueOf(maxTokens),
+                String.valueOf(permits));
+    }
+
+    /**
+     * 执行令牌桶脚本
+     *
+     * @param permits 需要的令牌数
+     * @param partial 令牌不足时是否取走全部剩余的令牌
+     * @return 取得的令牌数、剩余令牌数和令牌不足时需要等待的时间
+     */
+    @SuppressWarnings("unchecked")
+    private List<Long> execute(int permits, boolean partial) {
+        return stringRedisTemplate.execute(TOKEN_BUCKET_SCRIPT,
+                Collections.singletonList(RATE_LIMIT_KEY + resourceName),
+                String.valueOf(maxTokens),
+                String.valueOf(refillRate),
+                String.valueOf(refillInterval),
+                String.valueOf(permits),
+                String.valueOf(TimeUnit.MINUTES.toMillis(TOKEN_BUCKET_EXPIRE_TIME_MINUTES)),
+                partial ? "1" : "0");
     }
 }
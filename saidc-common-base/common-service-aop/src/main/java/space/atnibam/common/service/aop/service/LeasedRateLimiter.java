@@ -0,0 +1,140 @@
+package space.atnibam.common.service.aop.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @ClassName: LeasedRateLimiter
+ * @Description: 租用令牌的分布式限流器，每次从Redis令牌桶中批量租用令牌，在本地无锁扣减，
+ * 租用到期后将未使用的令牌归还。各节点最多多持有一批令牌，全局速率的误差不超过 节点数 × 每批租用数.
+ * 到期的租用由RateLimitAspect定时归还，请求停止后本地剩余的令牌也不会一直被占用
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-28 15:18
+ **/
+@Slf4j
+public class LeasedRateLimiter implements RateLimiter {
+
+    /**
+     * 共享的Redis令牌桶
+     */
+    private final DistributedRateLimiterNew delegate;
+
+    /**
+     * 每次租用的令牌数
+     */
+    private final int leaseSize;
+
+    /**
+     * 租用的有效期（单位：ms）
+     */
+    private final long leaseMillis;
+
+    /**
+     * 本地剩余的令牌数
+     */
+    private final AtomicLong localTokens = new AtomicLong();
+
+    /**
+     * 当前租用的到期时间，在本地令牌数更新之后写入
+     */
+    private volatile long leaseExpireAt;
+
+    /**
+     * 构造函数
+     *
+     * @param delegate    共享的Redis令牌桶
+     * @param leaseSize   每次租用的令牌数
+     * @param leaseMillis 租用的有效期，单位ms
+     */
+    public LeasedRateLimiter(DistributedRateLimiterNew delegate, int leaseSize, long leaseMillis) {
+        this.delegate = delegate;
+        this.leaseSize = leaseSize;
+        this.leaseMillis = leaseMillis;
+    }
+
+    /**
+     * 判断是否允许请求。租用有效期内优先扣减本地令牌，本地令牌用完或租用到期时再向Redis租用
+     *
+     * @return 如果没有超过设定的限制则返回 true，否则返回 false
+     */
+    @Override
+    public boolean allowRequest() {
+        if (System.currentTimeMillis() < leaseExpireAt && tryTakeLocal()) {
+            return true;
+        }
+        return renewLease();
+    }
+
+    /**
+     * 扣减一个本地令牌
+     *
+     * @return 本地令牌已用完时返回 false
+     */
+    private boolean tryTakeLocal() {
+        long tokens;
+        do {
+            tokens = localTokens.get();
+            if (tokens <= 0) {
+                return false;
+            }
+        } while (!localTokens.compareAndSet(tokens, tokens - 1));
+        return true;
+    }
+
+    /**
+     * 归还上一批未使用的令牌并重新租用，同一时间只有一个线程访问Redis
+     *
+     * @return 租用到令牌时返回 true，本次请求消耗其中一个
+     */
+    private synchronized boolean renewLease() {
+        long now = System.currentTimeMillis();
+        // 其他线程已经完成租用
+        if (now < leaseExpireAt && tryTakeLocal()) {
+            return true;
+        }
+
+        // 令牌未用完但租用已到期，归还剩余的令牌
+        giveBackUnused();
+
+        long granted = delegate.lease(leaseSize);
+        if (granted <= 0) {
+            return false;
+        }
+        localTokens.set(granted - 1);
+        leaseExpireAt = now + leaseMillis;
+        return true;
+    }
+
+    /**
+     * 租用已到期时归还本地剩余的令牌，由定时任务调用
+     */
+    public synchronized void returnExpiredLease() {
+        if (System.currentTimeMillis() >= leaseExpireAt) {
+            giveBackUnused();
+        }
+    }
+
+    /**
+     * 立即结束当前租用并归还本地剩余的令牌，节点停止时调用
+     */
+    public synchronized void returnLease() {
+        leaseExpireAt = 0L;
+        giveBackUnused();
+    }
+
+    /**
+     * 将本地剩余的令牌归还到令牌桶
+     */
+    private void giveBackUnused() {
+        long unused = localTokens.getAndSet(0);
+        if (unused > 0) {
+            try {
+                delegate.giveBack(unused);
+            } catch (Exception e) {
+                // 未能归还的令牌随令牌桶的补充自然恢复
+                log.warn("归还租用的令牌失败：{}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package space.atnibam.common.service.aop.service;
+
+/**
+ * @ClassName: RateLimiter
+ * @Description: 限流器，RateLimitAspect根据注解参数选择具体实现
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-28 15:10
+ **/
+public interface RateLimiter {
+
+    /**
+     * 判断是否允许请求。即判断当前的请求频率是否超过了设定的限制
+     *
+     * @return 如果没有超过设定的限制则返回 true，否则返回 false
+     */
+    boolean allowRequest();
+}
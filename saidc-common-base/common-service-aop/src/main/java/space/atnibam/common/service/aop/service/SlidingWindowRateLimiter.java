@@ -0,0 +1,95 @@
+package space.atnibam.common.service.aop.service;
+
+import cn.hutool.core.util.IdUtil;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+import space.atnibam.common.service.aop.domain.RateLimitResult;
+
+import java.util.Collections;
+import java.util.List;
+
+import static space.atnibam.common.service.aop.constant.RateLimiterConstant.SLIDING_WINDOW_KEY;
+import static space.atnibam.common.service.aop.constant.RateLimiterConstant.SLIDING_WINDOW_SCRIPT_PATH;
+
+/**
+ * @ClassName: SlidingWindowRateLimiter
+ * @Description: 基于 Redis 有序集合实现的滑动窗口限流器，记录窗口内每次请求的时间，
+ * 不会出现固定窗口在窗口边界处通过两倍请求的问题
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-28 16:10
+ **/
+public class SlidingWindowRateLimiter implements RateLimiter {
+
+    /**
+     * 滑动窗口脚本
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> SLIDING_WINDOW_SCRIPT = new DefaultRedisScript<>();
+
+    static {
+        SLIDING_WINDOW_SCRIPT.setScriptSource(new ResourceScriptSource(new ClassPathResource(SLIDING_WINDOW_SCRIPT_PATH)));
+        SLIDING_WINDOW_SCRIPT.setResultType(List.class);
+    }
+
+    /**
+     * 用于执行限流脚本的 Redis 模板
+     */
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 定义资源名称
+     */
+    private final String resourceName;
+
+    /**
+     * 窗口内允许的最大请求数
+     */
+    private final int limit;
+
+    /**
+     * 窗口长度（单位：ms）
+     */
+    private final long windowMillis;
+
+    /**
+     * 构造函数
+     *
+     * @param stringRedisTemplate Redis 模板
+     * @param resourceName        资源名称
+     * @param limit               窗口内允许的最大请求数
+     * @param windowMillis        窗口长度，单位ms
+     */
+    public SlidingWindowRateLimiter(StringRedisTemplate stringRedisTemplate, String resourceName, int limit, long windowMillis) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.resourceName = resourceName;
+        this.limit = limit;
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * 判断是否允许请求。即判断当前的请求频率是否超过了设定的限制
+     *
+     * @return 如果没有超过设定的限制则返回 true，否则返回 false
+     */
+    @Override
+    public boolean allowRequest() {
+        return tryAcquire().isAllowed();
+    }
+
+    /**
+     * 尝试在当前窗口内记录一次请求
+     *
+     * @return 限流判断结果，包含窗口内剩余的请求数和被拒绝时需要等待的时间
+     */
+    @SuppressWarnings("unchecked")
+    public RateLimitResult tryAcquire() {
+        List<Long> result = stringRedisTemplate.execute(SLIDING_WINDOW_SCRIPT,
+                Collections.singletonList(SLIDING_WINDOW_KEY + resourceName),
+                String.valueOf(limit),
+                String.valueOf(windowMillis),
+                IdUtil.fastSimpleUUID());
+        return new RateLimitResult(result.get(0) == 1L, result.get(1), result.get(2));
+    }
+}
@@ -0,0 +1,28 @@
+-- 获取分布式并发许可：有序集合中每个成员为一个许可，分数为许可的过期时间（毫秒）
+-- 持有许可的节点宕机未能释放时，许可在过期后自动回收
+-- KEYS[1] 许可集合的键
+-- ARGV[1] 最大并发数
+-- ARGV[2] 许可的过期时间（毫秒）
+-- ARGV[3] 许可的唯一标识
+-- 返回 1 表示获取成功，0 表示并发数已满
+
+redis.replicate_commands()
+
+local key = KEYS[1]
+local limit = tonumber(ARGV[1])
+local timeout = tonumber(ARGV[2])
+local permit = ARGV[3]
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+-- 回收已过期的许可
+redis.call('ZREMRANGEBYSCORE', key, '-inf', now)
+
+if redis.call('ZCARD', key) >= limit then
+    return 0
+end
+
+redis.call('ZADD', key, now + timeout, permit)
+redis.call('PEXPIRE', key, timeout)
+return 1
@@ -0,0 +1,34 @@
+-- 滑动窗口限流：有序集合中每个成员为一次请求，分数为请求时间（毫秒）
+-- KEYS[1] 滑动窗口的键
+-- ARGV[1] 窗口内允许的最大请求数
+-- ARGV[2] 窗口长度（毫秒）
+-- ARGV[3] 本次请求的唯一标识
+-- 返回 {是否允许(1/0), 窗口内剩余的请求数, 被拒绝时需要等待的毫秒数}
+
+redis.replicate_commands()
+
+local key = KEYS[1]
+local limit = tonumber(ARGV[1])
+local window = tonumber(ARGV[2])
+local member = ARGV[3]
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+-- 移除窗口之外的请求
+redis.call('ZREMRANGEBYSCORE', key, '-inf', now - window)
+
+local count = redis.call('ZCARD', key)
+if count < limit then
+    redis.call('ZADD', key, now, member)
+    redis.call('PEXPIRE', key, window)
+    return { 1, limit - count - 1, 0 }
+end
+
+-- 最早的请求移出窗口后才能再次请求
+local oldest = redis.call('ZRANGE', key, 0, 0, 'WITHSCORES')
+local retryAfter = 0
+if oldest[2] then
+    retryAfter = math.max(0, tonumber(oldest[2]) + window - now)
+end
+return { 0, 0, retryAfter }
@@ -0,0 +1,55 @@
+-- 令牌桶限流：在一次调用中完成补充令牌和扣除令牌
+-- KEYS[1] 令牌桶的键，Hash结构，tokens为当前令牌数，ts为上次补充令牌的时间（毫秒）
+-- ARGV[1] 令牌桶容量
+-- ARGV[2] 每个填充间隔补充的令牌数
+-- ARGV[3] 填充间隔（毫秒）
+-- ARGV[4] 本次需要的令牌数
+-- ARGV[5] 令牌桶的过期时间（毫秒）
+-- ARGV[6] 是否允许部分获取，1表示令牌不足时取走全部剩余的整数个令牌，用于节点批量租用令牌
+-- 返回 {取得的令牌数(0表示拒绝), 剩余令牌数, 令牌不足时需要等待的毫秒数}
+
+-- 使用Redis的时间，避免各节点时钟不一致；Redis 5之前需要开启命令复制才能在TIME之后写入
+redis.replicate_commands()
+
+local key = KEYS[1]
+local capacity = tonumber(ARGV[1])
+local rate = tonumber(ARGV[2])
+local interval = tonumber(ARGV[3])
+local requested = tonumber(ARGV[4])
+local ttl = tonumber(ARGV[5])
+local partial = ARGV[6] == '1'
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+local bucket = redis.call('HMGET', key, 'tokens', 'ts')
+local tokens = tonumber(bucket[1])
+local ts = tonumber(bucket[2])
+
+-- 令牌桶不存在时按满桶初始化
+if tokens == nil or ts == nil then
+    tokens = capacity
+    ts = now
+end
+
+-- 按经过的时间补充令牌，保留小数部分，避免频繁请求时补充的令牌被舍去
+if now > ts then
+    tokens = math.min(capacity, tokens + (now - ts) * rate / interval)
+    ts = now
+end
+
+local granted = 0
+local retryAfter = 0
+if tokens >= requested then
+    granted = requested
+elseif partial and tokens >= 1 then
+    granted = math.floor(tokens)
+else
+    retryAfter = math.ceil((requested - tokens) * interval / rate)
+end
+tokens = tokens - granted
+
+redis.call('HMSET', key, 'tokens', tokens, 'ts', ts)
+redis.call('PEXPIRE', key, ttl)
+
+return { granted, math.floor(tokens), retryAfter }
@@ -0,0 +1,17 @@
+-- 归还节点租用后未使用的令牌，令牌数不超过令牌桶容量
+-- KEYS[1] 令牌桶的键
+-- ARGV[1] 令牌桶容量
+-- ARGV[2] 归还的令牌数
+-- 令牌桶已过期时不需要归还，重新创建时即为满桶
+
+local key = KEYS[1]
+local capacity = tonumber(ARGV[1])
+local returned = tonumber(ARGV[2])
+
+local tokens = tonumber(redis.call('HGET', key, 'tokens'))
+if tokens == nil then
+    return 0
+end
+
+redis.call('HSET', key, 'tokens', math.min(capacity, tokens + returned))
+return 1
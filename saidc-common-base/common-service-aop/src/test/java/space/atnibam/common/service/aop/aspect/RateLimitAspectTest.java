@@ -0,0 +1,318 @@
+package space.atnibam.common.service.aop.aspect;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import redis.embedded.RedisServer;
+import space.atnibam.common.core.exception.base.BaseException;
+import space.atnibam.common.service.aop.anno.RateLimit;
+import space.atnibam.common.service.aop.enums.RateLimitAlgorithm;
+import space.atnibam.common.service.aop.service.DistributedRateLimiterNew;
+import space.atnibam.common.service.aop.service.LeasedRateLimiter;
+import space.atnibam.common.service.aop.service.RateLimiter;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.ServerSocket;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static space.atnibam.common.core.enums.ResultCode.SERVER_LIMIT;
+import static space.atnibam.common.redis.constant.RedisConstants.REDIS_SEPARATOR;
+import static space.atnibam.common.service.aop.constant.RateLimiterConstant.*;
+
+/**
+ * @ClassName: RateLimitAspectTest
+ * @Description: 限流切面测试，通过AspectJ代理调用被注解的方法，限流器使用嵌入式Redis
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-29 22:30
+ **/
+class RateLimitAspectTest {
+
+    private static RedisServer redisServer;
+
+    private static LettuceConnectionFactory connectionFactory;
+
+    private StringRedisTemplate redisTemplate;
+
+    private RateLimitAspect aspect;
+
+    private Api api;
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redisServer = new RedisServer(port);
+        redisServer.start();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", port));
+        connectionFactory.afterPropertiesSet();
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        connectionFactory.destroy();
+        redisServer.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+        redisTemplate.afterPropertiesSet();
+        redisTemplate.execute(connection -> {
+            connection.serverCommands().flushAll();
+            return null;
+        }, true);
+        aspect = new RateLimitAspect();
+        ReflectionTestUtils.setField(aspect, "stringRedisTemplate", redisTemplate);
+        AspectJProxyFactory factory = new AspectJProxyFactory(new Api());
+        factory.addAspect(aspect);
+        api = factory.getProxy();
+    }
+
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    /**
+     * 未设置key的方法首次拦截时创建限流器，之后复用同一个实例，令牌用完后拒绝
+     */
+    @Test
+    void reusesLimiterPerMethod() throws Exception {
+        assertThat(api.fixed()).isEqualTo("ok");
+        RateLimiter first = limiters().get(Api.class.getMethod("fixed"));
+        assertThat(api.fixed()).isEqualTo("ok");
+
+        assertThat(limiters()).hasSize(1);
+        assertThat(limiters().get(Api.class.getMethod("fixed"))).isSameAs(first).isInstanceOf(DistributedRateLimiterNew.class);
+        assertThatThrownBy(api::fixed)
+                .isInstanceOf(BaseException.class)
+                .extracting("resultCode").isEqualTo(SERVER_LIMIT);
+    }
+
+    /**
+     * 设置了key的方法每个key的值单独限流，不缓存限流器，key表达式只解析一次
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    void limitsEachKeySeparately() throws Exception {
+        assertThat(api.perUser(1L)).isEqualTo("ok");
+        assertThatThrownBy(() -> api.perUser(1L)).isInstanceOf(BaseException.class);
+        assertThat(api.perUser(2L)).isEqualTo("ok");
+
+        assertThat(limiters()).isEmpty();
+        Map<Object, Object> keyExpressions = (Map<Object, Object>) ReflectionTestUtils.getField(aspect, "keyExpressions");
+        assertThat(keyExpressions).containsOnlyKeys(Api.class.getMethod("perUser", Long.class));
+    }
+
+    /**
+     * 配置了租用令牌数的令牌桶在本地租用，同一个方法的各次调用共用本地令牌
+     */
+    @Test
+    void wrapsTokenBucketWithLeaseWhenConfigured() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            assertThat(api.leased()).isEqualTo("ok");
+        }
+
+        assertThat(limiters().get(Api.class.getMethod("leased"))).isInstanceOf(LeasedRateLimiter.class);
+        assertThatThrownBy(api::leased).isInstanceOf(BaseException.class);
+    }
+
+    /**
+     * 定时任务将到期后未使用的租用令牌归还到令牌桶，节点停止时归还全部租用令牌
+     */
+    @Test
+    void sweepsExpiredLeasesBackToBucket() throws Exception {
+        ReflectionTestUtils.setField(aspect, "leaseSweepIntervalMillis", 50L);
+        aspect.startLeaseSweep();
+        try {
+            assertThat(api.shortLease()).isEqualTo("ok");
+            assertThat(bucketTokens("test:short-lease")).isZero();
+
+            // 租用到期后剩余的1个令牌被归还，不需要再有请求触发
+            waitUntil(() -> bucketTokens("test:short-lease") == 1L);
+
+            assertThat(api.leased()).isEqualTo("ok");
+            assertThat(bucketTokens("test:leased")).isEqualTo(2L);
+        } finally {
+            aspect.returnLeases();
+        }
+        assertThat(bucketTokens("test:leased")).isEqualTo(3L);
+    }
+
+    /**
+     * 未配置可信代理时按连接的来源地址限流，客户端伪造的X-Forwarded-For不影响限流维度
+     */
+    @Test
+    void ignoresForwardedForWithoutTrustedProxy() {
+        bindRequest("10.0.0.1", "1.1.1.1");
+        assertThat(api.perIp()).isEqualTo("ok");
+
+        bindRequest("10.0.0.1", "2.2.2.2");
+        assertThatThrownBy(api::perIp).isInstanceOf(BaseException.class);
+
+        bindRequest("10.0.0.2", null);
+        assertThat(api.perIp()).isEqualTo("ok");
+        assertThat(redisTemplate.hasKey(RATE_LIMIT_KEY + "test:ip" + REDIS_SEPARATOR + "10.0.0.1")).isTrue();
+    }
+
+    /**
+     * 配置了可信代理层数时，取X-Forwarded-For从右往左数对应层数的地址，客户端在左侧追加的地址被忽略
+     */
+    @Test
+    void resolvesClientIpBehindTrustedProxies() {
+        ReflectionTestUtils.setField(aspect, "trustedProxyCount", 2);
+
+        // 客户端伪造的地址, 客户端地址（由第一层代理追加）, 第一层代理地址（由第二层代理追加）
+        bindRequest("10.0.0.9", "6.6.6.6, 203.0.113.7, 10.0.0.8");
+        assertThat(api.perIp()).isEqualTo("ok");
+        bindRequest("10.0.0.9", "7.7.7.7, 203.0.113.7, 10.0.0.8");
+        assertThatThrownBy(api::perIp).isInstanceOf(BaseException.class);
+
+        // 只经过一层代理时地址数少于可信代理数，取第一个地址
+        bindRequest("10.0.0.8", "198.51.100.4");
+        assertThat(api.perIp()).isEqualTo("ok");
+
+        assertThat(redisTemplate.hasKey(RATE_LIMIT_KEY + "test:ip" + REDIS_SEPARATOR + "203.0.113.7")).isTrue();
+        assertThat(redisTemplate.hasKey(RATE_LIMIT_KEY + "test:ip" + REDIS_SEPARATOR + "198.51.100.4")).isTrue();
+        assertThat(redisTemplate.keys(RATE_LIMIT_KEY + "test:ip" + REDIS_SEPARATOR + "*")).hasSize(2);
+    }
+
+    /**
+     * 滑动窗口内的请求数达到上限后拒绝，最早的请求移出窗口后允许
+     */
+    @Test
+    void slidingWindowLimitsRequestsPerWindow() throws InterruptedException {
+        assertThat(api.window()).isEqualTo("ok");
+        assertThat(api.window()).isEqualTo("ok");
+        assertThatThrownBy(api::window).isInstanceOf(BaseException.class);
+
+        Thread.sleep(1100);
+        assertThat(api.window()).isEqualTo("ok");
+    }
+
+    /**
+     * 并发数达到上限时拒绝，方法执行结束（包括抛出异常）后释放许可
+     */
+    @Test
+    void concurrencyLimitReleasesPermitAfterCall() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> running = executor.submit(() -> api.exclusive(() -> {
+                entered.countDown();
+                release.await();
+                return "first";
+            }));
+            assertThat(entered.await(5, TimeUnit.SECONDS)).isTrue();
+
+            assertThatThrownBy(() -> api.exclusive(() -> "second")).isInstanceOf(BaseException.class);
+
+            release.countDown();
+            assertThat(running.get(5, TimeUnit.SECONDS)).isEqualTo("first");
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThatThrownBy(() -> api.exclusive(() -> {
+            throw new IllegalStateException("failed");
+        })).isInstanceOf(IllegalStateException.class);
+        assertThat(api.exclusive(() -> "third")).isEqualTo("third");
+        assertThat(redisTemplate.opsForZSet().zCard(CONCURRENCY_KEY + "test:exclusive")).isZero();
+    }
+
+    private static void bindRequest(String remoteAddr, String forwardedFor) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr(remoteAddr);
+        if (forwardedFor != null) {
+            request.addHeader(X_FORWARDED_FOR, forwardedFor);
+        }
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    }
+
+    /**
+     * 令牌桶中的令牌数
+     */
+    private long bucketTokens(String resourceName) {
+        Object tokens = redisTemplate.opsForHash().get(RATE_LIMIT_KEY + resourceName, "tokens");
+        return tokens == null ? -1L : (long) Double.parseDouble(tokens.toString());
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("等待条件超时").isLessThan(deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Method, RateLimiter> limiters() {
+        return (Map<Method, RateLimiter>) ReflectionTestUtils.getField(aspect, "limiters");
+    }
+
+    /**
+     * 被限流的方法
+     */
+    public static class Api {
+
+        @RateLimit(resourceName = "test:fixed", initialCapacity = 2, refillTimeUnit = TimeUnit.HOURS)
+        public String fixed() {
+            return "ok";
+        }
+
+        @RateLimit(resourceName = "test:user", key = "#userId", initialCapacity = 1, refillTimeUnit = TimeUnit.HOURS)
+        public String perUser(Long userId) {
+            return "ok";
+        }
+
+        @RateLimit(resourceName = "test:leased", initialCapacity = 4, refillTimeUnit = TimeUnit.HOURS,
+                leaseSize = 2, leaseMillis = 60000L)
+        public String leased() {
+            return "ok";
+        }
+
+        @RateLimit(resourceName = "test:ip", key = "#ip", initialCapacity = 1, refillTimeUnit = TimeUnit.HOURS)
+        public String perIp() {
+            return "ok";
+        }
+
+        @RateLimit(resourceName = "test:window", algorithm = RateLimitAlgorithm.SLIDING_WINDOW, initialCapacity = 2)
+        public String window() {
+            return "ok";
+        }
+
+        @RateLimit(resourceName = "test:exclusive", algorithm = RateLimitAlgorithm.CONCURRENCY, initialCapacity = 1)
+        public String exclusive(Callable<String> body) throws Exception {
+            return body.call();
+        }
+
+        @RateLimit(resourceName = "test:short-lease", initialCapacity = 2, refillTimeUnit = TimeUnit.HOURS,
+                leaseSize = 2, leaseMillis = 100L)
+        public String shortLease() {
+            return "ok";
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package space.atnibam.common.service.aop.service;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import redis.embedded.RedisServer;
+import space.atnibam.common.service.aop.domain.RateLimitResult;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static space.atnibam.common.service.aop.constant.RateLimiterConstant.RATE_LIMIT_KEY;
+import static space.atnibam.common.service.aop.constant.RateLimiterConstant.TOKEN_BUCKET_EXPIRE_TIME_MINUTES;
+
+/**
+ * @ClassName: DistributedRateLimiterNewTest
+ * @Description: 令牌桶Lua脚本测试，使用嵌入式Redis执行脚本
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-29 22:05
+ **/
+class DistributedRateLimiterNewTest {
+
+    private static final String RESOURCE = "test:bucket";
+
+    private static RedisServer redisServer;
+
+    private static LettuceConnectionFactory connectionFactory;
+
+    private StringRedisTemplate redisTemplate;
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redisServer = new RedisServer(port);
+        redisServer.start();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", port));
+        connectionFactory.afterPropertiesSet();
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        connectionFactory.destroy();
+        redisServer.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+        redisTemplate.afterPropertiesSet();
+        redisTemplate.execute(connection -> {
+            connection.serverCommands().flushAll();
+            return null;
+        }, true);
+    }
+
+    /**
+     * 令牌桶不存在时按满桶初始化，令牌用完后拒绝并给出需要等待的时间，令牌桶设置了过期时间
+     */
+    @Test
+    void startsFullAndRejectsWhenEmpty() {
+        DistributedRateLimiterNew limiter = limiter(3, 1, TimeUnit.HOURS.toMillis(1));
+
+        for (int i = 2; i >= 0; i--) {
+            RateLimitResult result = limiter.tryAcquire(1);
+            assertThat(result.isAllowed()).isTrue();
+            assertThat(result.getRemaining()).isEqualTo(i);
+        }
+        RateLimitResult rejected = limiter.tryAcquire(1);
+
+        assertThat(rejected.isAllowed()).isFalse();
+        assertThat(rejected.getRetryAfterMillis()).isBetween(TimeUnit.HOURS.toMillis(1) - 1000, TimeUnit.HOURS.toMillis(1));
+        assertThat(redisTemplate.getExpire(RATE_LIMIT_KEY + RESOURCE, TimeUnit.MINUTES))
+                .isBetween(TOKEN_BUCKET_EXPIRE_TIME_MINUTES - 1, TOKEN_BUCKET_EXPIRE_TIME_MINUTES);
+    }
+
+    /**
+     * 按经过的时间补充令牌，补充后不超过容量
+     */
+    @Test
+    void refillsByElapsedTimeUpToCapacity() throws InterruptedException {
+        DistributedRateLimiterNew limiter = limiter(2, 1, 200L);
+        assertThat(limiter.allowRequest()).isTrue();
+        assertThat(limiter.allowRequest()).isTrue();
+        assertThat(limiter.allowRequest()).isFalse();
+
+        Thread.sleep(250);
+        assertThat(limiter.allowRequest()).isTrue();
+        assertThat(limiter.allowRequest()).isFalse();
+
+        Thread.sleep(1000);
+        assertThat(limiter.tryAcquire(1).getRemaining()).isEqualTo(1L);
+    }
+
+    /**
+     * 补充令牌和扣除令牌在一次脚本调用中完成，并发请求通过的数量不超过令牌数
+     */
+    @Test
+    void concurrentRequestsNeverOverdraw() throws Exception {
+        int capacity = 50;
+        int threads = 8;
+        int requestsPerThread = 20;
+        DistributedRateLimiterNew limiter = limiter(capacity, 1, TimeUnit.HOURS.toMillis(1));
+        AtomicInteger allowed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int j = 0; j < requestsPerThread; j++) {
+                        if (limiter.allowRequest()) {
+                            allowed.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(allowed).hasValue(capacity);
+    }
+
+    /**
+     * 一次请求多个令牌时不足则全部拒绝，不扣减令牌
+     */
+    @Test
+    void multiPermitRequestIsAllOrNothing() {
+        DistributedRateLimiterNew limiter = limiter(5, 1, TimeUnit.HOURS.toMillis(1));
+
+        assertThat(limiter.tryAcquire(4).isAllowed()).isTrue();
+        assertThat(limiter.tryAcquire(2).isAllowed()).isFalse();
+        assertThat(limiter.tryAcquire(1).isAllowed()).isTrue();
+    }
+
+    /**
+     * 批量租用时令牌不足则取走全部剩余的令牌，归还的令牌不超过容量
+     */
+    @Test
+    void leaseTakesRemainderAndGiveBackIsCapped() {
+        DistributedRateLimiterNew limiter = limiter(10, 1, TimeUnit.HOURS.toMillis(1));
+
+        assertThat(limiter.lease(4)).isEqualTo(4L);
+        assertThat(limiter.lease(8)).isEqualTo(6L);
+        assertThat(limiter.lease(8)).isZero();
+
+        limiter.giveBack(3);
+        assertThat(limiter.lease(8)).isEqualTo(3L);
+
+        limiter.giveBack(100);
+        assertThat(limiter.tryAcquire(1).getRemaining()).isEqualTo(9L);
+    }
+
+    /**
+     * 令牌桶已过期时归还不会创建令牌桶
+     */
+    @Test
+    void giveBackIgnoresMissingBucket() {
+        limiter(10, 1, 1000L).giveBack(5);
+
+        assertThat(redisTemplate.hasKey(RATE_LIMIT_KEY + RESOURCE)).isFalse();
+    }
+
+    private DistributedRateLimiterNew limiter(int capacity, int rate, long intervalMillis) {
+        return new DistributedRateLimiterNew(redisTemplate, RESOURCE, capacity, rate, intervalMillis);
+    }
+}
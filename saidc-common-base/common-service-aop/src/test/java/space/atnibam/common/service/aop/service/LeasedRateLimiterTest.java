@@ -0,0 +1,97 @@
+package space.atnibam.common.service.aop.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+/**
+ * @ClassName: LeasedRateLimiterTest
+ * @Description: 租用令牌的限流器测试，Redis令牌桶使用模拟对象
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-29 22:50
+ **/
+@ExtendWith(MockitoExtension.class)
+class LeasedRateLimiterTest {
+
+    private static final int LEASE_SIZE = 5;
+
+    @Mock
+    private DistributedRateLimiterNew delegate;
+
+    /**
+     * 租用有效期内只在本地扣减，本地令牌用完后再次租用
+     */
+    @Test
+    void consumesLocallyUntilLeaseIsUsedUp() {
+        when(delegate.lease(LEASE_SIZE)).thenReturn(5L, 0L);
+        LeasedRateLimiter limiter = new LeasedRateLimiter(delegate, LEASE_SIZE, 60000L);
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(limiter.allowRequest()).isTrue();
+        }
+        assertThat(limiter.allowRequest()).isFalse();
+
+        verify(delegate, times(2)).lease(LEASE_SIZE);
+        verify(delegate, never()).giveBack(anyLong());
+    }
+
+    /**
+     * 定时任务只归还已到期的租用，未到期时保留本地令牌
+     */
+    @Test
+    void returnsOnlyExpiredLease() throws InterruptedException {
+        when(delegate.lease(LEASE_SIZE)).thenReturn(5L);
+        LeasedRateLimiter limiter = new LeasedRateLimiter(delegate, LEASE_SIZE, 100L);
+        assertThat(limiter.allowRequest()).isTrue();
+
+        limiter.returnExpiredLease();
+        verify(delegate, never()).giveBack(anyLong());
+
+        Thread.sleep(150);
+        limiter.returnExpiredLease();
+        verify(delegate).giveBack(4L);
+
+        // 已归还的令牌不会重复归还
+        limiter.returnExpiredLease();
+        verify(delegate, times(1)).giveBack(anyLong());
+    }
+
+    /**
+     * 节点停止时立即归还本地剩余的令牌，之后的请求重新租用
+     */
+    @Test
+    void returnLeaseGivesBackImmediately() {
+        when(delegate.lease(LEASE_SIZE)).thenReturn(5L);
+        LeasedRateLimiter limiter = new LeasedRateLimiter(delegate, LEASE_SIZE, 60000L);
+        assertThat(limiter.allowRequest()).isTrue();
+        assertThat(limiter.allowRequest()).isTrue();
+
+        limiter.returnLease();
+        verify(delegate).giveBack(3L);
+
+        assertThat(limiter.allowRequest()).isTrue();
+        verify(delegate, times(2)).lease(LEASE_SIZE);
+    }
+
+    /**
+     * 归还失败时不影响之后的租用
+     */
+    @Test
+    void giveBackFailureDoesNotBreakRenewal() throws InterruptedException {
+        when(delegate.lease(LEASE_SIZE)).thenReturn(5L);
+        doThrow(new IllegalStateException("redis down")).when(delegate).giveBack(anyLong());
+        LeasedRateLimiter limiter = new LeasedRateLimiter(delegate, LEASE_SIZE, 50L);
+        assertThat(limiter.allowRequest()).isTrue();
+
+        Thread.sleep(100);
+        limiter.returnExpiredLease();
+
+        assertThat(limiter.allowRequest()).isTrue();
+        verify(delegate, times(2)).lease(LEASE_SIZE);
+    }
+}
@@ -0,0 +1,65 @@
+package space.atnibam.gateway.constant;
+
+/**
+ * @ClassName: RateLimitConstants
+ * @Description: 网关限流相关的常量
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-28 17:05
+ **/
+public class RateLimitConstants {
+
+    /**
+     * 网关令牌桶在 Redis 中的 Key 的前缀，令牌桶结构与服务端的 RateLimitAspect 一致
+     */
+    public static final String GATEWAY_RATE_LIMIT_KEY = "rate_limit:gateway:";
+
+    /**
+     * 令牌桶Lua脚本在类路径中的位置
+     */
+    public static final String TOKEN_BUCKET_SCRIPT_PATH = "lua/token_bucket.lua";
+
+    /**
+     * 限流维度中用户的前缀
+     */
+    public static final String USER_KEY_PREFIX = "user:";
+
+    /**
+     * 限流维度中客户端地址的前缀
+     */
+    public static final String IP_KEY_PREFIX = "ip:";
+
+    /**
+     * 未匹配到路由或无法获取客户端地址时使用的标识
+     */
+    public static final String UNKNOWN = "unknown";
+
+    /**
+     * 默认的令牌桶容量
+     */
+    public static final int DEFAULT_CAPACITY = 100;
+
+    /**
+     * 默认每个填充间隔补充的令牌数
+     */
+    public static final int DEFAULT_REFILL_RATE = 50;
+
+    /**
+     * 默认的令牌桶填充间隔（单位：毫秒）
+     */
+    public static final long DEFAULT_REFILL_INTERVAL_MILLIS = 1000L;
+
+    /**
+     * 令牌桶在 Redis 中的过期时间（单位：毫秒）
+     */
+    public static final long TOKEN_BUCKET_EXPIRE_MILLIS = 3600000L;
+
+    /**
+     * 默认信任的代理层数，为0时不解析X-Forwarded-For，直接使用连接的对端地址
+     */
+    public static final int DEFAULT_TRUSTED_PROXY_COUNT = 0;
+
+    /**
+     * 限流过滤器的执行顺序，在路由转发等过滤器之前执行
+     */
+    public static final int RATE_LIMIT_FILTER_ORDER = -200;
+}
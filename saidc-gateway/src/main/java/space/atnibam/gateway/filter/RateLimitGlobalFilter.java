@@ -0,0 +1,234 @@
+package space.atnibam.gateway.filter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ipresolver.XForwardedRemoteAddressResolver;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import space.atnibam.common.core.utils.ServletUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.net.InetSocketAddress;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+import static space.atnibam.common.core.enums.ResultCode.SERVER_LIMIT;
+import static space.atnibam.gateway.constant.RateLimitConstants.*;
+
+/**
+ * @ClassName: RateLimitGlobalFilter
+ * @Description: 网关限流过滤器，按 路由 + 客户端地址 维度限流，已认证的请求再按 路由 + 用户 维度限流，
+ * 使用与服务端 RateLimitAspect 相同的Redis令牌桶脚本，通过响应式Redis非阻塞执行，被拒绝的请求不会转发到下游服务。
+ * 客户端地址默认取连接的对端地址，只有配置了信任的代理层数时才从X-Forwarded-For中解析；
+ * 用户只取认证后的Principal，不使用客户端可以随意伪造的请求头
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-28 17:12
+ **/
+@Component
+public class RateLimitGlobalFilter implements GlobalFilter, Ordered {
+    /**
+     * 日志记录工具
+     */
+    private static final Logger log = LoggerFactory.getLogger(RateLimitGlobalFilter.class);
+
+    /**
+     * 令牌桶脚本，执行时优先使用EVALSHA，Redis中没有缓存该脚本时才发送脚本内容
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> TOKEN_BUCKET_SCRIPT = new DefaultRedisScript<>();
+
+    static {
+        TOKEN_BUCKET_SCRIPT.setScriptSource(new ResourceScriptSource(new ClassPathResource(TOKEN_BUCKET_SCRIPT_PATH)));
+        TOKEN_BUCKET_SCRIPT.setResultType(List.class);
+    }
+
+    @Resource
+    private ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+
+    /**
+     * 是否开启网关限流
+     */
+    @Value("${gateway.rate-limit.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 令牌桶容量
+     */
+    @Value("${gateway.rate-limit.capacity:" + DEFAULT_CAPACITY + "}")
+    private int capacity;
+
+    /**
+     * 每个填充间隔补充的令牌数
+     */
+    @Value("${gateway.rate-limit.refill-rate:" + DEFAULT_REFILL_RATE + "}")
+    private int refillRate;
+
+    /**
+     * 令牌桶填充间隔（单位：毫秒）
+     */
+    @Value("${gateway.rate-limit.refill-interval-millis:" + DEFAULT_REFILL_INTERVAL_MILLIS + "}")
+    private long refillIntervalMillis;
+
+    /**
+     * 网关前信任的代理层数，大于0时从X-Forwarded-For右侧第该层数个地址取客户端地址，
+     * 为0时X-Forwarded-For可能是客户端伪造的，直接使用连接的对端地址
+     */
+    @Value("${gateway.rate-limit.trusted-proxy-count:" + DEFAULT_TRUSTED_PROXY_COUNT + "}")
+    private int trustedProxyCount;
+
+    /**
+     * 从X-Forwarded-For中解析客户端地址的解析器，未配置信任的代理时为null
+     */
+    private XForwardedRemoteAddressResolver forwardedAddressResolver;
+
+    /**
+     * 配置了信任的代理层数时创建X-Forwarded-For解析器
+     */
+    @PostConstruct
+    public void initForwardedAddressResolver() {
+        if (trustedProxyCount > 0) {
+            forwardedAddressResolver = XForwardedRemoteAddressResolver.maxTrustedIndex(trustedProxyCount);
+        }
+    }
+
+    /**
+     * 对请求进行限流，先扣减客户端地址的令牌，通过后已认证的请求再扣减用户的令牌，
+     * 任一维度令牌不足时直接返回，Redis不可用时放行
+     *
+     * @param exchange 当前web交互对象
+     * @param chain    过滤器链
+     * @return Mono<Void> 返回一个Mono执行流，不返回任何结果
+     */
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        if (!enabled) {
+            return chain.filter(exchange);
+        }
+
+        Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+        String routeId = route == null ? UNKNOWN : route.getId();
+
+        return acquire(routeId + ":" + IP_KEY_PREFIX + getClientIp(exchange))
+                .flatMap(ipResult -> {
+                    if (isRejected(ipResult)) {
+                        return reject(exchange.getResponse(), ipResult.get(2));
+                    }
+                    return exchange.getPrincipal()
+                            .map(Principal::getName)
+                            .filter(StringUtils::hasText)
+                            .flatMap(user -> acquire(routeId + ":" + USER_KEY_PREFIX + user))
+                            .defaultIfEmpty(Collections.emptyList())
+                            .flatMap(userResult -> isRejected(userResult)
+                                    ? reject(exchange.getResponse(), userResult.get(2))
+                                    : chain.filter(exchange));
+                });
+    }
+
+    /**
+     * 从指定令牌桶中获取一个令牌
+     *
+     * @param key 限流维度
+     * @return 脚本返回值，Redis不可用时为空列表
+     */
+    private Mono<List<Long>> acquire(String key) {
+        List<String> keys = Collections.singletonList(GATEWAY_RATE_LIMIT_KEY + key);
+        List<String> args = Arrays.asList(
+                String.valueOf(capacity),
+                String.valueOf(refillRate),
+                String.valueOf(refillIntervalMillis),
+                // 每个请求消耗一个令牌，不允许部分获取
+                "1",
+                String.valueOf(TOKEN_BUCKET_EXPIRE_MILLIS),
+                "0");
+
+        return reactiveStringRedisTemplate.execute(TOKEN_BUCKET_SCRIPT, keys, args)
+                .collectList()
+                .map(RateLimitGlobalFilter::flatten)
+                .onErrorResume(e -> {
+                    // 限流只是保护手段，Redis不可用时不影响正常请求
+                    log.warn("[网关限流]执行令牌桶脚本失败，请求放行：{}", e.getMessage());
+                    return Mono.just(Collections.emptyList());
+                });
+    }
+
+    /**
+     * 判断脚本返回值是否表示令牌不足
+     *
+     * @param result 脚本返回值
+     * @return 令牌不足时返回true
+     */
+    private static boolean isRejected(List<Long> result) {
+        return result.size() >= 3 && result.get(0) <= 0;
+    }
+
+    /**
+     * 返回限流响应，并通过Retry-After告知客户端需要等待的时间
+     *
+     * @param response         服务器响应对象
+     * @param retryAfterMillis 需要等待的时间（单位：毫秒）
+     * @return Mono<Void> 返回一个Mono执行流，不返回任何结果
+     */
+    private Mono<Void> reject(ServerHttpResponse response, long retryAfterMillis) {
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf((retryAfterMillis + 999) / 1000));
+        return ServletUtils.webFluxResponseWriter(response, HttpStatus.TOO_MANY_REQUESTS, SERVER_LIMIT.getMessage(), SERVER_LIMIT.getCode());
+    }
+
+    /**
+     * 获取客户端地址，未配置信任的代理时为连接的对端地址
+     *
+     * @param exchange 当前web交互对象
+     * @return 客户端地址
+     */
+    private String getClientIp(ServerWebExchange exchange) {
+        InetSocketAddress remoteAddress = forwardedAddressResolver == null
+                ? exchange.getRequest().getRemoteAddress() : forwardedAddressResolver.resolve(exchange);
+        return remoteAddress == null ? UNKNOWN : remoteAddress.getHostString();
+    }
+
+    /**
+     * 将脚本返回值展开为数字列表，多值回复可能作为一个列表发出，也可能逐个元素发出
+     *
+     * @param values 脚本返回值
+     * @return 数字列表
+     */
+    private static List<Long> flatten(List<?> values) {
+        List<Long> result = new ArrayList<>(3);
+        for (Object value : values) {
+            if (value instanceof List) {
+                result.addAll(flatten((List<?>) value));
+            } else if (value instanceof Number) {
+                result.add(((Number) value).longValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 获取过滤器的执行顺序，在路由转发等过滤器之前执行
+     *
+     * @return 执行顺序
+     */
+    @Override
+    public int getOrder() {
+        return RATE_LIMIT_FILTER_ORDER;
+    }
+}
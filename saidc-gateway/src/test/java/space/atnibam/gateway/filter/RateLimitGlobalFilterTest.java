@@ -0,0 +1,214 @@
+package space.atnibam.gateway.filter;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ipresolver.XForwardedRemoteAddressResolver;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.security.Principal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+import static space.atnibam.gateway.constant.RateLimitConstants.*;
+
+/**
+ * @ClassName: RateLimitGlobalFilterTest
+ * @Description: 网关限流过滤器测试，使用嵌入式Redis执行令牌桶脚本
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-29 23:10
+ **/
+class RateLimitGlobalFilterTest {
+
+    private static final String ROUTE = "test-route";
+
+    private static final int CAPACITY = 2;
+
+    private static RedisServer redisServer;
+
+    private static LettuceConnectionFactory connectionFactory;
+
+    private ReactiveStringRedisTemplate redisTemplate;
+
+    private final AtomicInteger forwarded = new AtomicInteger();
+
+    private final GatewayFilterChain chain = exchange -> {
+        forwarded.incrementAndGet();
+        return Mono.empty();
+    };
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        int port = freePort();
+        redisServer = new RedisServer(port);
+        redisServer.start();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", port));
+        connectionFactory.afterPropertiesSet();
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        connectionFactory.destroy();
+        redisServer.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate = new ReactiveStringRedisTemplate(connectionFactory);
+        redisTemplate.execute(connection -> connection.serverCommands().flushAll()).blockLast();
+    }
+
+    /**
+     * 未配置信任的代理时忽略X-Forwarded-For，更换伪造的地址不能绕过限流，被拒绝时返回429和Retry-After
+     */
+    @Test
+    void spoofedForwardedForIsIgnoredWithoutTrustedProxy() {
+        RateLimitGlobalFilter filter = filter(0);
+
+        for (int i = 0; i < CAPACITY; i++) {
+            ServerWebExchange exchange = exchange("10.0.0.1", "192.168.0." + i);
+            filter.filter(exchange, chain).block();
+            assertThat(exchange.getResponse().getStatusCode()).isNotEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        }
+        ServerWebExchange rejected = exchange("10.0.0.1", "192.168.0.99");
+        filter.filter(rejected, chain).block();
+
+        assertThat(forwarded).hasValue(CAPACITY);
+        assertThat(rejected.getResponse().getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        assertThat(Long.parseLong(rejected.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER)))
+                .isBetween(TimeUnit.HOURS.toSeconds(1) - 1, TimeUnit.HOURS.toSeconds(1));
+        assertThat(hasKey(ROUTE + ":" + IP_KEY_PREFIX + "10.0.0.1")).isTrue();
+        assertThat(hasKey(ROUTE + ":" + IP_KEY_PREFIX + "192.168.0.0")).isFalse();
+    }
+
+    /**
+     * 配置了信任的代理层数时取X-Forwarded-For右侧对应层数的地址，客户端在左侧伪造的地址不影响限流维度
+     */
+    @Test
+    void trustedProxyResolvesClientFromForwardedFor() {
+        RateLimitGlobalFilter filter = filter(1);
+
+        filter.filter(exchange("10.0.0.9", "6.6.6.6, 1.1.1.1"), chain).block();
+        filter.filter(exchange("10.0.0.9", "7.7.7.7, 1.1.1.1"), chain).block();
+        ServerWebExchange rejected = exchange("10.0.0.9", "8.8.8.8, 1.1.1.1");
+        filter.filter(rejected, chain).block();
+        ServerWebExchange otherClient = exchange("10.0.0.9", "2.2.2.2");
+        filter.filter(otherClient, chain).block();
+
+        assertThat(forwarded).hasValue(3);
+        assertThat(rejected.getResponse().getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        assertThat(otherClient.getResponse().getStatusCode()).isNotEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        assertThat(hasKey(ROUTE + ":" + IP_KEY_PREFIX + "1.1.1.1")).isTrue();
+        assertThat(hasKey(ROUTE + ":" + IP_KEY_PREFIX + "2.2.2.2")).isTrue();
+        assertThat(hasKey(ROUTE + ":" + IP_KEY_PREFIX + "10.0.0.9")).isFalse();
+        assertThat(hasKey(ROUTE + ":" + IP_KEY_PREFIX + "6.6.6.6")).isFalse();
+    }
+
+    /**
+     * 已认证的请求同时按用户限流，同一用户更换客户端地址不能绕过限流，未认证的请求头不作为用户维度
+     */
+    @Test
+    void authenticatedRequestsAreAlsoLimitedPerUser() {
+        RateLimitGlobalFilter filter = filter(0);
+
+        for (int i = 1; i <= CAPACITY; i++) {
+            filter.filter(authenticated(exchange("10.0.0." + i, null), "alice"), chain).block();
+        }
+        ServerWebExchange rejected = authenticated(exchange("10.0.0.3", null), "alice");
+        filter.filter(rejected, chain).block();
+        ServerWebExchange anonymous = MockServerWebExchange.from(MockServerHttpRequest.get("/api")
+                .remoteAddress(new InetSocketAddress("10.0.0.1", 40000))
+                .header(HttpHeaders.AUTHORIZATION, "Bearer forged"));
+        anonymous.getAttributes().put(GATEWAY_ROUTE_ATTR, route());
+        filter.filter(anonymous, chain).block();
+
+        assertThat(forwarded).hasValue(CAPACITY + 1);
+        assertThat(rejected.getResponse().getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        assertThat(hasKey(ROUTE + ":" + USER_KEY_PREFIX + "alice")).isTrue();
+        // 地址维度仍然生效，被用户维度拒绝的请求也消耗了地址的令牌
+        assertThat(hasKey(ROUTE + ":" + IP_KEY_PREFIX + "10.0.0.3")).isTrue();
+        assertThat(anonymous.getResponse().getStatusCode()).isNotEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+    }
+
+    /**
+     * Redis不可用时放行请求
+     */
+    @Test
+    void redisFailureLetsRequestsThrough() throws IOException {
+        LettuceConnectionFactory unavailable = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", freePort()));
+        unavailable.afterPropertiesSet();
+        try {
+            RateLimitGlobalFilter filter = filter(0);
+            ReflectionTestUtils.setField(filter, "reactiveStringRedisTemplate", new ReactiveStringRedisTemplate(unavailable));
+
+            for (int i = 0; i <= CAPACITY; i++) {
+                ServerWebExchange exchange = authenticated(exchange("10.0.0.1", null), "alice");
+                filter.filter(exchange, chain).block();
+                assertThat(exchange.getResponse().getStatusCode()).isNotEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+            }
+            assertThat(forwarded).hasValue(CAPACITY + 1);
+        } finally {
+            unavailable.destroy();
+        }
+    }
+
+    private RateLimitGlobalFilter filter(int trustedProxyCount) {
+        RateLimitGlobalFilter filter = new RateLimitGlobalFilter();
+        ReflectionTestUtils.setField(filter, "reactiveStringRedisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(filter, "enabled", true);
+        ReflectionTestUtils.setField(filter, "capacity", CAPACITY);
+        ReflectionTestUtils.setField(filter, "refillRate", 1);
+        ReflectionTestUtils.setField(filter, "refillIntervalMillis", TimeUnit.HOURS.toMillis(1));
+        ReflectionTestUtils.setField(filter, "trustedProxyCount", trustedProxyCount);
+        filter.initForwardedAddressResolver();
+        return filter;
+    }
+
+    private static ServerWebExchange exchange(String remoteAddress, String forwardedFor) {
+        MockServerHttpRequest.BaseBuilder<?> request = MockServerHttpRequest.get("/api")
+                .remoteAddress(new InetSocketAddress(remoteAddress, 40000));
+        if (forwardedFor != null) {
+            request.header(XForwardedRemoteAddressResolver.X_FORWARDED_FOR, forwardedFor);
+        }
+        MockServerWebExchange exchange = MockServerWebExchange.from(request);
+        exchange.getAttributes().put(GATEWAY_ROUTE_ATTR, route());
+        return exchange;
+    }
+
+    private static ServerWebExchange authenticated(ServerWebExchange exchange, String user) {
+        Principal principal = () -> user;
+        return exchange.mutate().principal(Mono.just(principal)).build();
+    }
+
+    private static Route route() {
+        return Route.async().id(ROUTE).uri("http://localhost").predicate(exchange -> true).build();
+    }
+
+    private boolean hasKey(String key) {
+        return Boolean.TRUE.equals(redisTemplate.hasKey(GATEWAY_RATE_LIMIT_KEY + key).block());
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
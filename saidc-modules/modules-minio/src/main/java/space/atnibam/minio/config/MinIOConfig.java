@@ -4,6 +4,7 @@ import io.minio.MinioClient;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 
 /**
  * @ClassName: MinIOConfig
@@ -24,10 +25,22 @@ public class MinIOConfig {
     private String secretKey;
 
     @Bean
+    @Primary
     public MinioClient minioClient() {
         return MinioClient.builder()
                 .endpoint(endpoint)
                 .credentials(accessKey, secretKey)
                 .build();
     }
+
+    /**
+     * 创建支持分段上传的MinIO客户端，与minioClient共用连接配置
+     *
+     * @param minioClient MinIO客户端
+     * @return 支持分段上传的MinIO客户端
+     */
+    @Bean
+    public MultipartMinioClient multipartMinioClient(MinioClient minioClient) {
+        return new MultipartMinioClient(minioClient);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,94 @@
+package space.atnibam.minio.config;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import io.minio.MinioClient;
+import io.minio.messages.ListMultipartUploadsResult;
+import io.minio.messages.Part;
+import org.springframework.http.HttpHeaders;
+
+/**
+ * @ClassName: MultipartMinioClient
+ * @Description: 对外暴露S3分段上传接口的MinIO客户端，MinioClient中这些方法为protected
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-24 20:18
+ **/
+public class MultipartMinioClient extends MinioClient {
+
+    /**
+     * 构造方法，复用已有客户端的连接配置
+     *
+     * @param client 已配置好的MinIO客户端
+     */
+    public MultipartMinioClient(MinioClient client) {
+        super(client);
+    }
+
+    /**
+     * 创建分段上传会话
+     *
+     * @param bucket      桶的名称
+     * @param objectName  对象名称
+     * @param contentType 文件的Content-Type
+     * @return 分段上传会话ID
+     * @throws Exception 请求MinIO过程中可能发生的异常
+     */
+    public String createMultipartUpload(String bucket, String objectName, String contentType) throws Exception {
+        Multimap<String, String> headers = HashMultimap.create();
+        headers.put(HttpHeaders.CONTENT_TYPE, contentType);
+        return createMultipartUpload(bucket, null, objectName, headers, null).result().uploadId();
+    }
+
+    /**
+     * 上传一个分段
+     *
+     * @param bucket     桶的名称
+     * @param objectName 对象名称
+     * @param uploadId   分段上传会话ID
+     * @param bytes      分段数据
+     * @param partNumber 分段序号，从1开始
+     * @return 分段的ETag
+     * @throws Exception 请求MinIO过程中可能发生的异常
+     */
+    public String uploadPart(String bucket, String objectName, String uploadId, byte[] bytes, int partNumber) throws Exception {
+        return uploadPart(bucket, null, objectName, bytes, bytes.length, uploadId, partNumber, null, null).etag();
+    }
+
+    /**
+     * 完成分段上传，由MinIO按分段序号拼接成完整对象
+     *
+     * @param bucket     桶的名称
+     * @param objectName 对象名称
+     * @param uploadId   分段上传会话ID
+     * @param parts      按分段序号排列的分段
+     * @throws Exception 请求MinIO过程中可能发生的异常
+     */
+    public void completeMultipartUpload(String bucket, String objectName, String uploadId, Part[] parts) throws Exception {
+        completeMultipartUpload(bucket, null, objectName, uploadId, parts, null, null);
+    }
+
+    /**
+     * 终止分段上传，释放已上传的分段
+     *
+     * @param bucket     桶的名称
+     * @param objectName 对象名称
+     * @param uploadId   分段上传会话ID
+     * @throws Exception 请求MinIO过程中可能发生的异常
+     */
+    public void abortMultipartUpload(String bucket, String objectName, String uploadId) throws Exception {
+        abortMultipartUpload(bucket, null, objectName, uploadId, null, null);
+    }
+
+    /**
+     * 分页查询存储桶中未完成的分段上传会话
+     *
+     * @param bucket         桶的名称
+     * @param keyMarker      上一页返回的nextKeyMarker，查询第一页时为空
+     * @param uploadIdMarker 上一页返回的nextUploadIdMarker，查询第一页时为空
+     * @return 一页分段上传会话
+     * @throws Exception 请求MinIO过程中可能发生的异常
+     */
+    public ListMultipartUploadsResult listMultipartUploads(String bucket, String keyMarker, String uploadIdMarker) throws Exception {
+        return listMultipartUploads(bucket, null, null, null, keyMarker, null, null, uploadIdMarker, null, null).result();
+    }
+}
@@ -0,0 +1,118 @@
+package space.atnibam.minio.config;
+
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static space.atnibam.minio.constant.VideoTaskConstants.DEFAULT_FFMPEG_THREADS;
+import static space.atnibam.minio.constant.VideoTaskConstants.TRANSCODE_SHUTDOWN_TIMEOUT_SECONDS;
+
+/**
+ * @ClassName: ThreadPoolConfig
+ * @Description: 对象存储服务使用的线程池配置类
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-24 10:12
+ **/
+@Configuration
+public class ThreadPoolConfig {
+
+    /**
+     * 合并分块时并发下载分块的线程数
+     */
+    @Value("${minio.merge.parallelism:8}")
+    private int mergeParallelism;
+
+    /**
+     * 并发上传HLS切片的线程数
+     */
+    @Value("${video.hls.upload-parallelism:8}")
+    private int hlsUploadParallelism;
+
+    /**
+     * 同时进行的视频转码任务数，小于等于0时根据CPU核心数和每个ffmpeg进程的线程数计算
+     */
+    @Value("${video.transcode.concurrency:0}")
+    private int transcodeConcurrency;
+
+    /**
+     * 每个ffmpeg进程使用的线程数
+     */
+    @Value("${video.transcode.ffmpeg-threads:" + DEFAULT_FFMPEG_THREADS + "}")
+    private int ffmpegThreads;
+
+    /**
+     * 创建合并分块时用于并发下载分块的线程池，所有合并任务共用，线程数即为下载的并发上限
+     *
+     * @return 分块下载线程池
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService chunkDownloadExecutor() {
+        return new ThreadPoolExecutor(
+                mergeParallelism,
+                mergeParallelism,
+                60L,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                ThreadFactoryBuilder.create().setNamePrefix("chunk-download-").build());
+    }
+
+    /**
+     * 创建并发上传HLS切片的线程池，所有打包任务共用，线程数即为上传的并发上限
+     *
+     * @return HLS切片上传线程池
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService hlsUploadExecutor() {
+        return new ThreadPoolExecutor(
+                hlsUploadParallelism,
+                hlsUploadParallelism,
+                60L,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                ThreadFactoryBuilder.create().setNamePrefix("hls-upload-").build());
+    }
+
+    /**
+     * 创建视频转码线程池，整个应用共用一个，线程数即为同时运行的ffmpeg进程数.
+     * 关闭应用时等待正在进行的转码完成，超时未完成的任务保持未处理状态，由下次调度重新处理
+     *
+     * @return 视频转码线程池
+     */
+    @Bean
+    public ThreadPoolTaskExecutor videoTranscodeExecutor() {
+        int concurrency = transcodeConcurrency > 0
+                ? transcodeConcurrency
+                : Math.max(1, Runtime.getRuntime().availableProcessors() / Math.max(1, ffmpegThreads));
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(concurrency);
+        executor.setMaxPoolSize(concurrency);
+        // 提交的任务数由调用方按空闲线程数控制，队列只用于吸收线程归还前的短暂间隙
+        executor.setQueueCapacity(concurrency);
+        executor.setThreadNamePrefix("video-transcode-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(TRANSCODE_SHUTDOWN_TIMEOUT_SECONDS);
+        return executor;
+    }
+
+    /**
+     * 创建续期视频任务租约的调度线程池，续期只执行一条UPDATE，单线程即可
+     *
+     * @return 租约续期调度线程池
+     */
+    @Bean
+    public ThreadPoolTaskScheduler leaseRenewalScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(1);
+        scheduler.setThreadNamePrefix("lease-renewal-");
+        return scheduler;
+    }
+}
@@ -28,6 +28,136 @@ public class FileServiceConstants {
      */
     public static final String CHUNK_SEPARATOR = "chunk";
 
+    /**
+     * 流式上传时的临时对象后缀，MD5计算完成前文件先以该后缀暂存
+     */
+    public static final String UPLOADING_SUFFIX = ".uploading";
+
+    /**
+     * 流式上传的分片大小（MinIO允许的最小分片5MB），决定了单个上传请求占用的堆内存上限
+     */
+    public static final long UPLOAD_PART_SIZE = 5L * 1024 * 1024;
+
+    /**
+     * 分块信息在Redis中的键前缀，Hash结构，field为分块序号，value为分块的MD5和大小
+     */
+    public static final String CHUNK_INFO_KEY = "minio:chunk:";
+
+    /**
+     * 分块信息在Redis中的过期时间（单位：天）
+     */
+    public static final long CHUNK_INFO_EXPIRE_DAYS = 7L;
+
+    /**
+     * 单个文件允许的最大分块数，与S3分段上传的最大分段数一致
+     */
+    public static final int MAX_CHUNK_TOTAL = 10000;
+
+    /**
+     * 本地合并分块时读写缓冲区的大小，缓冲区在堆外分配，所有分块复用同一个
+     */
+    public static final int MERGE_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * 文件信息在Redis中的键前缀，以逻辑过期方式缓存
+     */
+    public static final String FILE_INFO_KEY = "minio:file:info:";
+
+    /**
+     * 文件信息在Redis中的逻辑过期时间（单位：分钟）
+     */
+    public static final long FILE_INFO_TTL_MINUTES = 30L;
+
+    /**
+     * 文件信息本地缓存的最大条数
+     */
+    public static final int FILE_INFO_NEAR_CACHE_CAPACITY = 4096;
+
+    /**
+     * 文件信息本地缓存的过期时间（单位：毫秒），其他节点修改文件信息后通过Redis发布订阅清除本地缓存，过期时间仅作为消息丢失时的兜底
+     */
+    public static final long FILE_INFO_NEAR_CACHE_TTL_MILLIS = 300000L;
+
+    /**
+     * 文件信息布隆过滤器预计的文件数量
+     */
+    public static final long FILE_INFO_BLOOM_EXPECTED_INSERTIONS = 1000000L;
+
+    /**
+     * 文件信息布隆过滤器期望的误判率
+     */
+    public static final double FILE_INFO_BLOOM_FPP = 0.001;
+
+    /**
+     * 文件、分块是否存在的本地缓存过期时间（单位：毫秒）
+     */
+    public static final long EXISTENCE_CACHE_TTL_MILLIS = 5000L;
+
+    /**
+     * MinIO中对象不存在时返回的错误码
+     */
+    public static final String NO_SUCH_KEY = "NoSuchKey";
+
+    /**
+     * 合并模式：下载分块到本地合并后重新上传
+     */
+    public static final String MERGE_MODE_DOWNLOAD = "download";
+
+    /**
+     * 合并模式：在MinIO服务端拼接分块
+     */
+    public static final String MERGE_MODE_COMPOSE = "compose";
+
+    /**
+     * 分块上传模式：每个分块保存为独立对象，合并时再拼接
+     */
+    public static final String CHUNK_MODE_OBJECT = "object";
+
+    /**
+     * 分块上传模式：每个文件对应一个S3分段上传会话，分块直接作为分段上传，要求除最后一块外每块不小于5MB
+     */
+    public static final String CHUNK_MODE_MULTIPART = "multipart";
+
+    /**
+     * 分段上传会话在Redis中的键前缀，Hash结构，保存会话ID、对象名以及各分段的ETag（field为分段序号）
+     */
+    public static final String MULTIPART_SESSION_KEY = "minio:multipart:";
+
+    /**
+     * 分段上传会话中保存会话ID的字段
+     */
+    public static final String UPLOAD_ID_FIELD = "uploadId";
+
+    /**
+     * 分段上传会话中保存对象名的字段
+     */
+    public static final String OBJECT_NAME_FIELD = "objectName";
+
+    /**
+     * 分段上传会话中会话ID、对象名这两个非分段字段的数量
+     */
+    public static final int MULTIPART_SESSION_META_FIELD_COUNT = 2;
+
+    /**
+     * 分段上传会话的过期时间（单位：天），比Redis中的会话信息晚一天过期，过期后由定时任务终止会话
+     */
+    public static final long MULTIPART_UPLOAD_EXPIRE_DAYS = CHUNK_INFO_EXPIRE_DAYS + 1;
+
+    /**
+     * 服务端拼接时允许的最大分块数
+     */
+    public static final int MAX_COMPOSE_SOURCES = 10000;
+
+    /**
+     * 分段上传对象的ETag中分段数的分隔符，此类ETag不是对象内容的MD5
+     */
+    public static final String MULTIPART_ETAG_SEPARATOR = "-";
+
+    /**
+     * ETag两侧的引号
+     */
+    public static final String ETAG_QUOTE = "\"";
+
     /**
      * 任务状态：待处理
      */
@@ -37,4 +167,19 @@ public class FileServiceConstants {
      * 任务状态：处理失败
      */
     public static final String STATUS_FAILURE = "3";
+
+    /**
+     * 合并分块文件的限流资源名称
+     */
+    public static final String MERGE_CHUNKS_RESOURCE = "minio:merge_chunks";
+
+    /**
+     * 所有节点同时合并分块文件的最大数量，合并需要下载全部分块并重新上传，占用大量带宽和磁盘
+     */
+    public static final int MERGE_CHUNKS_MAX_CONCURRENCY = 4;
+
+    /**
+     * 合并分块文件的并发许可过期时间（单位：毫秒），应大于单个文件的最长合并时间
+     */
+    public static final long MERGE_CHUNKS_PERMIT_TIMEOUT_MILLIS = 1800000L;
 }
@@ -8,6 +8,16 @@ package space.atnibam.minio.constant;
  **/
 public class VideoTaskConstants {
 
+    /**
+     * 任务状态 - 未处理
+     */
+    public static final String TASK_STATUS_PENDING = "1";
+
+    /**
+     * 任务状态 - 处理中，由租约持有者处理
+     */
+    public static final String TASK_STATUS_PROCESSING = "4";
+
     /**
      * 任务状态 - 已处理
      */
@@ -18,11 +28,6 @@ public class VideoTaskConstants {
      */
     public static final String TASK_STATUS_FAILED = "3";
 
-    /**
-     * 转换结果 - 成功
-     */
-    public static final String CONVERT_RESULT_SUCCESS = "success";
-
     /**
      * 临时文件前缀 - 原始
      */
@@ -39,7 +44,142 @@ public class VideoTaskConstants {
     public static final String TEMP_FILE_SUFFIX_MP4 = ".mp4";
 
     /**
-     * 等待超时时间（单位：分钟）
+     * 每个ffmpeg进程默认使用的线程数
+     */
+    public static final int DEFAULT_FFMPEG_THREADS = 2;
+
+    /**
+     * 任务租约的默认时长（单位：秒），处理过程中定期续期，执行器宕机后租约到期的任务会被重新领取
+     */
+    public static final long DEFAULT_LEASE_SECONDS = 120L;
+
+    /**
+     * 每个任务默认最多领取的次数，处理过程中执行器崩溃等导致未记录结果时，租约到期后会被重新领取
+     */
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+    /**
+     * 领取次数达到上限的任务记录的失败原因
+     */
+    public static final String TASK_ATTEMPTS_EXHAUSTED_MSG = "处理次数达到上限";
+
+    /**
+     * 每个租约时长内续期的次数，续期间隔为租约时长除以该值
+     */
+    public static final int LEASE_RENEWALS_PER_PERIOD = 3;
+
+    /**
+     * 跨节点分发新任务的Redis Stream的key
+     */
+    public static final String VIDEO_TASK_STREAM_KEY = "minio:video:task:stream";
+
+    /**
+     * Redis Stream中保留的最大消息数，消息只用于唤醒其他节点，无需长期保留
+     */
+    public static final long VIDEO_TASK_STREAM_MAX_LEN = 1000L;
+
+    /**
+     * Redis Stream消息中发送节点的字段
+     */
+    public static final String STREAM_FIELD_NODE = "node";
+
+    /**
+     * Redis Stream消息中任务ID的字段
+     */
+    public static final String STREAM_FIELD_TASK_ID = "taskId";
+
+    /**
+     * 读取Redis Stream时的阻塞时长（单位：秒）
+     */
+    public static final long STREAM_POLL_TIMEOUT_SECONDS = 2L;
+
+    /**
+     * 批量记录任务完成状态时，收集同一批结果的默认等待时长（单位：毫秒）
+     */
+    public static final long DEFAULT_FINISH_BATCH_WINDOW_MILLIS = 20L;
+
+    /**
+     * 批量记录任务完成状态时，每批最多包含的结果数
+     */
+    public static final int DEFAULT_FINISH_BATCH_SIZE = 100;
+
+    /**
+     * 关闭应用时等待已提交的任务完成状态写入数据库的最长时间（单位：秒）
+     */
+    public static final long FINISH_WRITER_SHUTDOWN_TIMEOUT_SECONDS = 10L;
+
+    /**
+     * 转码线程等待任务完成状态写入数据库的最长时间（单位：秒），超时后不再等待，租约到期后重新处理
+     */
+    public static final long FINISH_WAIT_TIMEOUT_SECONDS = 30L;
+
+    /**
+     * 关闭应用时等待正在进行的转码任务完成的最长时间（单位：秒）
+     */
+    public static final int TRANSCODE_SHUTDOWN_TIMEOUT_SECONDS = 60;
+
+    /**
+     * 单个视频转码任务默认的超时时间（单位：分钟）
+     */
+    public static final long DEFAULT_TRANSCODE_TIMEOUT_MINUTES = 10L;
+
+    /**
+     * 视频转码进度在Redis中的key前缀，后接任务ID
+     */
+    public static final String TRANSCODE_PROGRESS_KEY = "minio:transcode:progress:";
+
+    /**
+     * 视频转码进度在Redis中的过期时间（单位：分钟），每次更新进度时刷新
+     */
+    public static final long TRANSCODE_PROGRESS_TTL_MINUTES = 60L;
+
+    /**
+     * 默认的HLS码率阶梯，每档格式为"分辨率:视频码率:音频码率"，多档之间用逗号分隔
+     */
+    public static final String DEFAULT_HLS_LADDER = "1280x720:1500k:96k,854x480:800k:64k,640x360:400k:48k";
+
+    /**
+     * HLS码率阶梯中各档之间的分隔符
+     */
+    public static final String HLS_RENDITION_SEPARATOR = ",";
+
+    /**
+     * HLS码率阶梯中每档各字段之间的分隔符
+     */
+    public static final String HLS_RENDITION_FIELD_SEPARATOR = ":";
+
+    /**
+     * 默认的HLS切片时长（单位：秒）
+     */
+    public static final int DEFAULT_HLS_SEGMENT_SECONDS = 4;
+
+    /**
+     * HLS切片在视频所在目录下的子目录
+     */
+    public static final String HLS_FOLDER = "hls";
+
+    /**
+     * HLS主播放列表文件名
+     */
+    public static final String HLS_MASTER_PLAYLIST = "master.m3u8";
+
+    /**
+     * HLS每档码率的播放列表文件名，%v由ffmpeg替换为档位序号
+     */
+    public static final String HLS_VARIANT_PLAYLIST = "stream_%v.m3u8";
+
+    /**
+     * HLS切片文件名，%v由ffmpeg替换为档位序号，%05d替换为切片序号
+     */
+    public static final String HLS_SEGMENT_FILE = "stream_%v_%05d.ts";
+
+    /**
+     * 转码时生成的各档位mp4文件名，%d替换为档位序号
+     */
+    public static final String HLS_RENDITION_FILE = "rendition_%d.mp4";
+
+    /**
+     * 打包HLS时本地临时目录的前缀
      */
-    public static final long AWAIT_TIMEOUT_MINUTES = 30;
+    public static final String TEMP_DIR_PREFIX_HLS = "hls";
 }
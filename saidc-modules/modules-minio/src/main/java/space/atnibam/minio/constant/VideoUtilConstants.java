@@ -29,17 +29,77 @@ public class VideoUtilConstants {
     public static final String DEFAULT_RESULT = "error";
 
     /**
-     * 默认退出值为-1
+     * 进程输出最多保留的行数
      */
-    public static final int DEFAULT_EXIT_VALUE = -1;
+    public static final int OUTPUT_BUFFER_LINES = 200;
 
     /**
-     * 最大重试次数为600，每次休眠1秒，最长执行时间10分钟
+     * 获取视频时长的ffmpeg进程的超时时间（单位：秒）
      */
-    public static final int MAX_RETRY = 600;
+    public static final long PROBE_TIMEOUT_SECONDS = 30L;
 
     /**
      * 字符串最后一个字符的位置
      */
     public static final String LAST_CHAR_POSITION = ".";
+
+    /**
+     * ffmpeg输出中源视频时长的格式，例如"Duration: 00:01:02.03"
+     */
+    public static final String DURATION_PATTERN = "Duration: (\\d+):(\\d{2}):(\\d{2}(?:\\.\\d+)?)";
+
+    /**
+     * ffmpeg输出中输入文件音频流的格式，例如"Stream #0:1(und): Audio: aac"
+     */
+    public static final String INPUT_AUDIO_STREAM_PATTERN = "Stream #0:\\d+.*?: Audio: ";
+
+    /**
+     * ffmpeg输出中输出文件信息的开始标记，之后的Duration和Stream均属于输出文件
+     */
+    public static final String OUTPUT_SECTION_MARKER = "Output #";
+
+    /**
+     * ffmpeg的-progress输出行的格式，每行为一个key=value
+     */
+    public static final String PROGRESS_LINE_PATTERN = "^([a-z0-9_]+)=(\\S*)$";
+
+    /**
+     * -progress输出中已编码时长的字段（单位：微秒）
+     */
+    public static final String PROGRESS_OUT_TIME_US = "out_time_us";
+
+    /**
+     * -progress输出中已编码时长的旧字段，虽然名为ms，单位实际也是微秒
+     */
+    public static final String PROGRESS_OUT_TIME_MS = "out_time_ms";
+
+    /**
+     * -progress输出中编码帧率的字段
+     */
+    public static final String PROGRESS_FPS = "fps";
+
+    /**
+     * -progress输出中码率的字段
+     */
+    public static final String PROGRESS_BITRATE = "bitrate";
+
+    /**
+     * -progress输出中编码速度的字段
+     */
+    public static final String PROGRESS_SPEED = "speed";
+
+    /**
+     * -progress输出中每组进度的结束字段，值为continue或end
+     */
+    public static final String PROGRESS_STATE = "progress";
+
+    /**
+     * -progress输出中表示编码结束的值
+     */
+    public static final String PROGRESS_STATE_END = "end";
+
+    /**
+     * 校验转码前后时长时允许的误差（单位：毫秒）
+     */
+    public static final long DURATION_TOLERANCE_MILLIS = 1000L;
 }
@@ -8,15 +8,20 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import space.atnibam.common.core.domain.R;
 import space.atnibam.common.core.exception.MinioException;
+import space.atnibam.common.service.aop.anno.RateLimit;
+import space.atnibam.common.service.aop.enums.RateLimitAlgorithm;
 import space.atnibam.minio.model.dto.UploadFileParamsDTO;
 import space.atnibam.minio.service.FileInfoService;
+import space.atnibam.minio.service.FileProcessService;
 import space.atnibam.minio.utils.FileServiceUtil;
 
 import javax.annotation.Resource;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Objects;
 
 import static space.atnibam.common.core.enums.ResultCode.MINIO_UPLOAD_ERROR;
+import static space.atnibam.minio.constant.FileServiceConstants.*;
 
 /**
  * @ClassName: MinioController
@@ -33,6 +38,9 @@ public class MinioController {
     @Resource
     private FileInfoService fileInfoService;
 
+    @Resource
+    private FileProcessService fileProcessService;
+
     /**
      * 一次性上传文件接口
      * 适用于小文件
@@ -66,9 +74,9 @@ public class MinioController {
                 .contentType(FileServiceUtil.getContentType(Objects.requireNonNull(files.getOriginalFilename())))
                 .build();
 
-        try {
-            // 调用服务层方法进行文件上传，并返回上传结果
-            String url = fileInfoService.uploadFile(uploadFileParamsDTO, files.getBytes(), folder);
+        try (InputStream inputStream = files.getInputStream()) {
+            // 调用服务层方法以流的方式进行文件上传，并返回上传结果
+            String url = fileInfoService.uploadFile(uploadFileParamsDTO, inputStream, folder);
 
             log.info("文件上传成功，文件url：{}", url);
 
@@ -107,12 +115,29 @@ public class MinioController {
         return R.success(fileInfoService.checkChunk(md5, chunk, bucket));
     }
 
+    /**
+     * 断点续传前批量检查分块，一次返回所有分块的上传状态
+     *
+     * @param md5        文件的MD5值
+     * @param chunkTotal 分块总数
+     * @param bucket     存储桶
+     * @return 返回R对象，包含Base64编码的分块位图，第i个分块对应第i/8个字节中从低位起的第i%8位，1表示已上传
+     */
+    @ApiOperation(value = "批量检查分块")
+    @PostMapping("/upload/checkchunks")
+    public R checkChunks(@RequestParam("md5") String md5,
+                         @RequestParam("chunkTotal") int chunkTotal,
+                         @RequestParam("bucket") String bucket) {
+        return R.success(fileInfoService.checkChunks(md5, chunkTotal, bucket));
+    }
+
     /**
      * 上传分块后文件的单块
      *
-     * @param file  分块文件
-     * @param md5   文件的MD5值
-     * @param chunk 文件的块索引
+     * @param file     分块文件
+     * @param md5      文件的MD5值
+     * @param chunk    文件的块索引
+     * @param fileName 源文件名，分段上传模式下必填
      * @return 返回R对象，具体内容根据实际业务定义
      * @throws Exception 可能发生的异常
      */
@@ -120,8 +145,9 @@ public class MinioController {
     @PostMapping("/upload/uploadchunk")
     public R uploadChunk(@RequestParam("file") MultipartFile file,
                          @RequestParam("md5") String md5,
-                         @RequestParam("chunk") int chunk, @RequestParam("bucket") String bucket) throws Exception {
-        return R.success(fileInfoService.uploadChunk(md5, chunk, file.getBytes(), bucket));
+                         @RequestParam("chunk") int chunk, @RequestParam("bucket") String bucket,
+                         @RequestParam(value = "fileName", required = false) String fileName) throws Exception {
+        return R.success(fileInfoService.uploadChunk(md5, chunk, file.getBytes(), bucket, fileName));
     }
 
     /**
@@ -135,6 +161,8 @@ public class MinioController {
      */
     @ApiOperation(value = "合并分块文件")
     @PostMapping("/upload/mergechunks")
+    @RateLimit(resourceName = MERGE_CHUNKS_RESOURCE, algorithm = RateLimitAlgorithm.CONCURRENCY,
+            initialCapacity = MERGE_CHUNKS_MAX_CONCURRENCY, permitTimeoutMillis = MERGE_CHUNKS_PERMIT_TIMEOUT_MILLIS)
     public R mergeChunks(@RequestParam("md5") String md5,
                          @RequestParam("fileName") String fileName,
                          @RequestParam("chunkTotal") int chunkTotal,
@@ -153,4 +181,48 @@ public class MinioController {
         return R.success();
     }
 
+    /**
+     * 查询视频转码任务的实时进度
+     *
+     * @param id 文件处理任务ID
+     * @return 返回R对象，包含转码进度，任务未开始转码时为空
+     */
+    @ApiOperation(value = "查询视频转码进度")
+    @GetMapping("/process/progress")
+    public R getProcessProgress(@RequestParam("id") Long id) {
+        return R.success(fileProcessService.getProgress(id));
+    }
+
+    /**
+     * 按上传时间倒序分页查询用户的文件
+     *
+     * @param userId 用户ID
+     * @param cursor 上一页返回的游标，查询第一页时不传
+     * @param size   每页记录数
+     * @return 返回R对象，包含当前页的文件、下一页的游标和是否还有下一页
+     */
+    @ApiOperation(value = "分页查询用户的文件")
+    @GetMapping("/file/list")
+    public R listUserFiles(@RequestParam("userId") Integer userId,
+                           @RequestParam(value = "cursor", required = false) String cursor,
+                           @RequestParam(value = "size", defaultValue = "20") int size) {
+        return R.success(fileInfoService.listUserFiles(userId, cursor, size));
+    }
+
+    /**
+     * 按任务ID分页查询文件处理任务
+     *
+     * @param status 任务状态，不传时查询全部任务
+     * @param cursor 上一页返回的游标，查询第一页时不传
+     * @param size   每页记录数
+     * @return 返回R对象，包含当前页的任务、下一页的游标和是否还有下一页
+     */
+    @ApiOperation(value = "分页查询文件处理任务")
+    @GetMapping("/process/list")
+    public R listFileProcess(@RequestParam(value = "status", required = false) String status,
+                             @RequestParam(value = "cursor", required = false) String cursor,
+                             @RequestParam(value = "size", defaultValue = "20") int size) {
+        return R.success(fileProcessService.listFileProcess(status, cursor, size));
+    }
+
 }
@@ -1,8 +1,11 @@
 package space.atnibam.minio.mapper;
 
+import org.apache.ibatis.annotations.Param;
 import space.atnibam.minio.model.entity.FileProcessHistory;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 
+import java.util.List;
+
 /**
 * @author Atnibam Aitay
 * @description 针对表【file_process_history】的数据库操作Mapper
@@ -11,8 +14,11 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 */
 public interface FileProcessHistoryMapper extends BaseMapper<FileProcessHistory> {
 
+    /**
+     * 批量插入历史处理记录，一条INSERT语句写入所有记录
+     *
+     * @param list 历史处理记录，ID沿用任务ID
+     * @return 插入的行数
+     */
+    int insertBatch(@Param("list") List<FileProcessHistory> list);
 }
-
-
-
-
@@ -1,10 +1,14 @@
 package space.atnibam.minio.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Delete;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import space.atnibam.minio.model.dto.ProcessFinishDTO;
 import space.atnibam.minio.model.entity.FileProcess;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -16,15 +20,116 @@ import java.util.List;
 public interface FileProcessMapper extends BaseMapper<FileProcess> {
 
     /**
-     * 根据分片索引和数量限制查询文件处理列表
+     * 查询可领取的任务ID并加行锁，包括未处理的任务和租约已过期的处理中任务，领取次数达到上限的任务不再领取.
+     * 已被其他事务锁定的行直接跳过，多个执行器并发领取时互不等待，必须在事务中调用
      *
-     * @param shardTotal 分片总数
-     * @param shardIndex 分片索引
-     * @param count      查询数量上限
-     * @return 匹配条件的文件处理列表
+     * @param count       查询数量上限
+     * @param maxAttempts 每个任务最多领取的次数
+     * @return 可领取的任务ID列表
      */
-    @Select("SELECT * FROM file_process WHERE id % #{shardTotal} = #{shardIndex} AND status = '1' LIMIT #{count}")
-    List<FileProcess> selectListByShardIndex(@Param("shardTotal") int shardTotal,
-                                             @Param("shardIndex") int shardIndex,
-                                             @Param("count") int count);
-}
\ No newline at end of file
+    @Select("SELECT id FROM file_process " +
+            "WHERE (status = '1' OR (status = '4' AND lease_expire_time < NOW())) AND attempts < #{maxAttempts} " +
+            "ORDER BY id LIMIT #{count} FOR UPDATE SKIP LOCKED")
+    List<Long> selectClaimableIdsForUpdate(@Param("count") int count, @Param("maxAttempts") int maxAttempts);
+
+    /**
+     * 将租约已过期且领取次数达到上限的处理中任务标记为处理失败.
+     * 这类任务每次处理都未能记录结果（如导致执行器崩溃），不再重新领取
+     *
+     * @param maxAttempts 每个任务最多领取的次数
+     * @param errorMsg    失败原因
+     * @return 更新的行数
+     */
+    @Update("UPDATE file_process SET status = '3', finish_date = NOW(), error_msg = #{errorMsg}, " +
+            "lease_owner = NULL, lease_expire_time = NULL " +
+            "WHERE status = '4' AND lease_expire_time < NOW() AND attempts >= #{maxAttempts}")
+    int failExhausted(@Param("maxAttempts") int maxAttempts, @Param("errorMsg") String errorMsg);
+
+    /**
+     * 将任务标记为处理中，记录租约持有者和租约到期时间，并累加领取次数
+     *
+     * @param ids          任务ID列表
+     * @param owner        租约持有者
+     * @param leaseSeconds 租约时长（单位：秒）
+     * @return 更新的行数
+     */
+    @Update("<script>" +
+            "UPDATE file_process SET status = '4', lease_owner = #{owner}, attempts = attempts + 1, " +
+            "lease_expire_time = TIMESTAMPADD(SECOND, #{leaseSeconds}, NOW()) " +
+            "WHERE id IN <foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>" +
+            "</script>")
+    int claimByIds(@Param("ids") Collection<Long> ids,
+                   @Param("owner") String owner,
+                   @Param("leaseSeconds") long leaseSeconds);
+
+    /**
+     * 续期租约，只会续期仍由该持有者持有的处理中任务
+     *
+     * @param ids          任务ID列表
+     * @param owner        租约持有者
+     * @param leaseSeconds 租约时长（单位：秒）
+     * @return 续期成功的行数
+     */
+    @Update("<script>" +
+            "UPDATE file_process SET lease_expire_time = TIMESTAMPADD(SECOND, #{leaseSeconds}, NOW()) " +
+            "WHERE status = '4' AND lease_owner = #{owner} " +
+            "AND id IN <foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>" +
+            "</script>")
+    int renewLease(@Param("ids") Collection<Long> ids,
+                   @Param("owner") String owner,
+                   @Param("leaseSeconds") long leaseSeconds);
+
+    /**
+     * 查询仍由结果中的租约持有者持有的处理中任务并加行锁，必须在事务中调用.
+     * 租约过期后被其他执行器重新领取的任务不会返回，其处理结果不再记录；加锁后重新领取会跳过这些行，直到事务结束
+     *
+     * @param list 任务完成结果
+     * @return 租约仍有效的任务
+     */
+    @Select("<script>" +
+            "SELECT * FROM file_process WHERE status = '4' AND " +
+            "<foreach collection='list' item='item' open='(' separator=' OR ' close=')'>" +
+            "(id = #{item.taskId} AND lease_owner = #{item.leaseOwner})</foreach> " +
+            "FOR UPDATE" +
+            "</script>")
+    List<FileProcess> selectLeasedForUpdate(@Param("list") List<ProcessFinishDTO> list);
+
+    /**
+     * 批量将任务标记为处理失败，一条UPDATE语句记录所有任务各自的失败原因，只更新租约仍由结果中的持有者持有的任务
+     *
+     * @param list 处理失败的任务结果
+     * @return 更新的行数
+     */
+    @Update("<script>" +
+            "UPDATE file_process SET status = '3', finish_date = NOW(), " +
+            "error_msg = CASE id <foreach collection='list' item='item'>WHEN #{item.taskId} THEN #{item.errorMsg} </foreach>END " +
+            "WHERE status = '4' AND " +
+            "<foreach collection='list' item='item' open='(' separator=' OR ' close=')'>" +
+            "(id = #{item.taskId} AND lease_owner = #{item.leaseOwner})</foreach>" +
+            "</script>")
+    int updateFailedBatch(@Param("list") List<ProcessFinishDTO> list);
+
+    /**
+     * 批量删除处理成功的任务，只删除租约仍由结果中的持有者持有的任务
+     *
+     * @param list 处理成功的任务结果
+     * @return 删除的行数
+     */
+    @Delete("<script>" +
+            "DELETE FROM file_process WHERE status = '4' AND " +
+            "<foreach collection='list' item='item' open='(' separator=' OR ' close=')'>" +
+            "(id = #{item.taskId} AND lease_owner = #{item.leaseOwner})</foreach>" +
+            "</script>")
+    int deleteLeasedBatch(@Param("list") List<ProcessFinishDTO> list);
+
+    /**
+     * 释放租约，将任务恢复为未处理状态，供其他执行器立即领取，本次领取不计入领取次数
+     *
+     * @param id    任务ID
+     * @param owner 租约持有者
+     * @return 更新的行数
+     */
+    @Update("UPDATE file_process SET status = '1', lease_owner = NULL, lease_expire_time = NULL, attempts = attempts - 1 " +
+            "WHERE id = #{id} AND status = '4' AND lease_owner = #{owner}")
+    int releaseLease(@Param("id") Long id, @Param("owner") String owner);
+}
@@ -0,0 +1,29 @@
+package space.atnibam.minio.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * @ClassName: ChunkInfoDTO
+ * @Description: 上传分块时记录的分块信息，用于合并前校验分块
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023/10/24 0024 15:36
+ **/
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChunkInfoDTO implements Serializable {
+
+    /**
+     * 分块的MD5值
+     */
+    private String chunkMd5;
+
+    /**
+     * 分块大小
+     */
+    private Long chunkSize;
+}
@@ -0,0 +1,59 @@
+package space.atnibam.minio.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * @ClassName: ProcessFinishDTO
+ * @Description: 视频处理任务的完成结果，用于批量记录任务状态
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023/10/26 0026 15:02
+ **/
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProcessFinishDTO implements Serializable {
+
+    /**
+     * 任务ID
+     */
+    private Long taskId;
+
+    /**
+     * 任务状态
+     */
+    private String status;
+
+    /**
+     * 文件标识
+     */
+    private String fileId;
+
+    /**
+     * 文件访问地址
+     */
+    private String url;
+
+    /**
+     * HLS主播放列表访问地址
+     */
+    private String playlistUrl;
+
+    /**
+     * 错误信息
+     */
+    private String errorMsg;
+
+    /**
+     * HLS打包失败原因，打包失败时任务仍按mp4的处理结果记录
+     */
+    private String hlsErrorMsg;
+
+    /**
+     * 处理该任务的租约持有者，只有租约仍由其持有时才记录处理结果
+     */
+    private String leaseOwner;
+}
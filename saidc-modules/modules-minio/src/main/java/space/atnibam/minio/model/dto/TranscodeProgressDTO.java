@@ -0,0 +1,50 @@
+package space.atnibam.minio.model.dto;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * @ClassName: TranscodeProgressDTO
+ * @Description: 视频转码的实时进度，由ffmpeg的-progress输出解析得到
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023/10/25 0025 14:20
+ **/
+@Data
+public class TranscodeProgressDTO implements Serializable {
+
+    /**
+     * 源视频时长（单位：毫秒），未知时为null
+     */
+    private Long sourceDurationMillis;
+
+    /**
+     * 已编码的时长（单位：毫秒）
+     */
+    private Long encodedMillis;
+
+    /**
+     * 进度百分比，源视频时长未知时为null
+     */
+    private Integer percent;
+
+    /**
+     * 编码帧率
+     */
+    private Double fps;
+
+    /**
+     * 输出码率，例如"753.2kbits/s"
+     */
+    private String bitrate;
+
+    /**
+     * 编码速度，例如"2.5x"
+     */
+    private String speed;
+
+    /**
+     * 编码是否已结束
+     */
+    private Boolean finished;
+}
@@ -0,0 +1,50 @@
+package space.atnibam.minio.model.dto;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * @ClassName: TranscodeResultDTO
+ * @Description: 视频转码结果，校验转码前后时长所需的信息均来自转码过程中的ffmpeg输出
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023/10/25 0025 14:26
+ **/
+@Data
+public class TranscodeResultDTO implements Serializable {
+
+    /**
+     * 是否转码成功
+     */
+    private Boolean success;
+
+    /**
+     * 源视频时长（单位：毫秒），未知时为null
+     */
+    private Long sourceDurationMillis;
+
+    /**
+     * 转码后的视频时长（单位：毫秒）
+     */
+    private Long encodedDurationMillis;
+
+    /**
+     * 平均编码帧率
+     */
+    private Double fps;
+
+    /**
+     * 输出码率，例如"753.2kbits/s"
+     */
+    private String bitrate;
+
+    /**
+     * 源视频是否包含音频
+     */
+    private Boolean audio;
+
+    /**
+     * 转码失败时的原因或ffmpeg日志
+     */
+    private String message;
+}
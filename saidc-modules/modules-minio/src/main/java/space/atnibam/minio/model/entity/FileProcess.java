@@ -42,10 +42,25 @@ public class FileProcess implements Serializable {
     private String filePath;
 
     /**
-     * 状态,1:未处理，2：处理成功  3处理失败
+     * 状态,1:未处理，2：处理成功  3处理失败  4处理中
      */
     private String status;
 
+    /**
+     * 租约持有者，即正在处理该任务的执行器
+     */
+    private String leaseOwner;
+
+    /**
+     * 租约到期时间，到期未续期的处理中任务可被其他执行器重新领取
+     */
+    private LocalDateTime leaseExpireTime;
+
+    /**
+     * 领取次数，达到上限仍未完成的任务不再领取
+     */
+    private Integer attempts;
+
     /**
      * 上传时间
      */
@@ -61,6 +76,11 @@ public class FileProcess implements Serializable {
      */
     private String url;
 
+    /**
+     * HLS主播放列表访问地址
+     */
+    private String playlistUrl;
+
     /**
      * 失败原因
      */
@@ -55,6 +55,11 @@ public class FileProcessHistory implements Serializable {
      */
     private String url;
 
+    /**
+     * HLS主播放列表访问地址
+     */
+    private String playlistUrl;
+
     /**
      * 文件路径
      */
@@ -65,6 +70,11 @@ public class FileProcessHistory implements Serializable {
      */
     private String errorMsg;
 
+    /**
+     * HLS打包失败原因
+     */
+    private String hlsErrorMsg;
+
     @TableField(exist = false)
     private static final long serialVersionUID = 1L;
 }
\ No newline at end of file
@@ -1,10 +1,12 @@
 package space.atnibam.minio.service;
 
 import com.baomidou.mybatisplus.extension.service.IService;
+import space.atnibam.common.mybatisplus.domain.KeysetPage;
 import space.atnibam.minio.model.dto.UploadFileParamsDTO;
 import space.atnibam.minio.model.entity.FileInfo;
 
 import java.io.File;
+import java.io.InputStream;
 
 /**
  * @ClassName: FileInfoService
@@ -15,14 +17,14 @@ import java.io.File;
 public interface FileInfoService extends IService<FileInfo> {
 
     /**
-     * 文件上传方法
+     * 文件上传方法，边读取输入流边计算MD5并写入MinIO，不会将整个文件读入内存
      *
-     * @param uploadFileParamsDTO 包含文件信息的数据传输对象
-     * @param bytes               要上传的文件的字节数组
+     * @param uploadFileParamsDTO 包含文件信息的数据传输对象，其中文件大小必须已知
+     * @param inputStream         要上传的文件的输入流
      * @param folder              目标存储的子目录名称
      * @return 返回文件上传后的结果信息
      */
-    String uploadFile(UploadFileParamsDTO uploadFileParamsDTO, byte[] bytes, String folder);
+    String uploadFile(UploadFileParamsDTO uploadFileParamsDTO, InputStream inputStream, String folder);
 
     /**
      * 将文件上传到 MinIO 服务器
@@ -51,16 +53,27 @@ public interface FileInfoService extends IService<FileInfo> {
      */
     Boolean checkChunk(String md5, int chunkIndex, String bucket);
 
+    /**
+     * 批量检查分块是否存在
+     *
+     * @param md5        文件的MD5
+     * @param chunkTotal 分块的总数目
+     * @param bucket     存储桶名称
+     * @return 分块位图，第i个分块对应第i/8个字节中从低位起的第i%8位，1表示该分块已上传
+     */
+    byte[] checkChunks(String md5, int chunkTotal, String bucket);
+
     /**
      * 上传文件块
      *
-     * @param md5    文件的MD5值
-     * @param chunk  文件块的索引
-     * @param bytes  文件块的字节数据
-     * @param bucket 存储桶名称
+     * @param md5      文件的MD5值
+     * @param chunk    文件块的索引
+     * @param bytes    文件块的字节数据
+     * @param bucket   存储桶名称
+     * @param fileName 源文件名，分段上传模式下创建会话时用于确定对象名，其他模式可以为空
      * @return R 返回上传结果，如果上传成功返回true，否则返回false和错误信息
      */
-    Boolean uploadChunk(String md5, int chunk, byte[] bytes, String bucket);
+    Boolean uploadChunk(String md5, int chunk, byte[] bytes, String bucket, String fileName);
 
     /**
      * 合并分块文件，并上传至MinIO，最后将文件信息写入数据库.
@@ -71,6 +84,24 @@ public interface FileInfoService extends IService<FileInfo> {
      */
     void mergeChunks(String md5, int chunkTotal, UploadFileParamsDTO uploadFileParamsDTO);
 
+    /**
+     * 在MinIO服务端拼接分块文件，拼接不经过本服务，最后将文件信息写入数据库.
+     * 拼接前根据上传分块时记录的分块MD5和大小校验各分块，开启了合并校验时拼接后再流式读取一遍拼接结果校验整体MD5
+     *
+     * @param md5                 文件的MD5值
+     * @param chunkTotal          分块的总数目
+     * @param uploadFileParamsDTO 上传文件的参数对象
+     * @return 分块满足服务端拼接条件并拼接成功返回true，不满足条件（如分块信息缺失、分块小于5MB）返回false
+     */
+    Boolean composeChunks(String md5, int chunkTotal, UploadFileParamsDTO uploadFileParamsDTO);
+
+    /**
+     * 终止所有存储桶中过期的分段上传会话，释放已上传的分段
+     *
+     * @return 终止的会话数
+     */
+    int abortExpiredMultipartUploads();
+
     /**
      * 从MinIO服务器下载文件.
      *
@@ -88,4 +119,23 @@ public interface FileInfoService extends IService<FileInfo> {
      * @param extension 文件扩展名
      */
     String getFilePathByMd5(String md5, String extension);
+
+    /**
+     * 按上传时间倒序分页查询用户的文件
+     *
+     * @param userId 用户ID
+     * @param cursor 上一页返回的游标，查询第一页时为空
+     * @param size   每页记录数
+     * @return 文件信息分页结果
+     */
+    KeysetPage<FileInfo> listUserFiles(Integer userId, String cursor, int size);
+
+    /**
+     * 修改文件状态，并使文件信息的缓存失效.
+     * 仅供服务内部调用，不通过接口对外暴露
+     *
+     * @param md5    文件的MD5值
+     * @param status 文件状态，1:正常，0:禁用
+     */
+    void updateFileStatus(String md5, String status);
 }
\ No newline at end of file
@@ -2,8 +2,11 @@ package space.atnibam.minio.service;
 
 import com.baomidou.mybatisplus.extension.service.IService;
 import org.springframework.transaction.annotation.Transactional;
+import space.atnibam.minio.model.dto.ProcessFinishDTO;
 import space.atnibam.minio.model.entity.FileProcessHistory;
 
+import java.util.List;
+
 /**
  * @ClassName: FileProcessHistoryService
  * @Description: 针对表【file_process_history】的数据库操作Service
@@ -15,12 +18,23 @@ public interface FileProcessHistoryService extends IService<FileProcessHistory>
     /**
      * 更新任务状态
      *
-     * @param taskId   任务ID
-     * @param status   任务状态
-     * @param fileId   文件标识
-     * @param url      文件访问地址
-     * @param errorMsg 错误信息
+     * @param taskId      任务ID
+     * @param status      任务状态
+     * @param fileId      文件标识
+     * @param url         文件访问地址
+     * @param playlistUrl HLS主播放列表访问地址，未打包HLS时为null
+     * @param errorMsg    错误信息
+     * @param leaseOwner  处理该任务的租约持有者
+     */
+    @Transactional(rollbackFor = Exception.class)
+    void saveProcessFinishStatus(Long taskId, String status, String fileId, String url, String playlistUrl, String errorMsg,
+                                 String leaseOwner);
+
+    /**
+     * 批量更新任务状态，在一个事务中用多行语句完成所有任务的状态记录，租约已不由结果中的持有者持有的任务不记录
+     *
+     * @param results 任务完成结果
      */
     @Transactional(rollbackFor = Exception.class)
-    void saveProcessFinishStatus(Long taskId, String status, String fileId, String url, String errorMsg);
+    void saveProcessFinishStatusBatch(List<ProcessFinishDTO> results);
 }
@@ -1,8 +1,12 @@
 package space.atnibam.minio.service;
 
 import com.baomidou.mybatisplus.extension.service.IService;
+import org.springframework.transaction.annotation.Transactional;
+import space.atnibam.common.mybatisplus.domain.KeysetPage;
+import space.atnibam.minio.model.dto.TranscodeProgressDTO;
 import space.atnibam.minio.model.entity.FileProcess;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -14,12 +18,58 @@ import java.util.List;
 public interface FileProcessService extends IService<FileProcess> {
 
     /**
-     * 根据分片索引、总分片数以及个数来获取媒体处理列表
+     * 领取待处理任务，领取到的任务状态变为处理中并由owner持有租约
      *
-     * @param shardIndex 分片索引
-     * @param shardTotal 总分片数
-     * @param count      要获取的个数
-     * @return 文件处理列表
+     * @param owner        租约持有者
+     * @param count        最多领取的个数
+     * @param leaseSeconds 租约时长（单位：秒）
+     * @param maxAttempts  每个任务最多领取的次数，达到上限仍未完成的任务记为处理失败
+     * @return 领取到的任务列表
      */
-    List<FileProcess> getFileProcessList(int shardIndex, int shardTotal, int count);
+    @Transactional(rollbackFor = Exception.class)
+    List<FileProcess> claimFileProcessList(String owner, int count, long leaseSeconds, int maxAttempts);
+
+    /**
+     * 续期正在处理的任务的租约
+     *
+     * @param taskIds      任务ID列表
+     * @param owner        租约持有者
+     * @param leaseSeconds 租约时长（单位：秒）
+     * @return 续期成功的任务数，小于任务ID数时说明部分租约已过期并被其他执行器领取
+     */
+    int renewLeases(Collection<Long> taskIds, String owner, long leaseSeconds);
+
+    /**
+     * 释放任务的租约，任务恢复为未处理状态
+     *
+     * @param taskId 任务ID
+     * @param owner  租约持有者
+     */
+    void releaseLease(Long taskId, String owner);
+
+    /**
+     * 记录任务的转码进度
+     *
+     * @param taskId   任务ID
+     * @param progress 转码进度
+     */
+    void updateProgress(Long taskId, TranscodeProgressDTO progress);
+
+    /**
+     * 获取任务的转码进度
+     *
+     * @param taskId 任务ID
+     * @return 转码进度，任务未开始转码或进度已过期时返回null
+     */
+    TranscodeProgressDTO getProgress(Long taskId);
+
+    /**
+     * 按任务ID分页查询指定状态的任务
+     *
+     * @param status 任务状态，为空时查询全部任务
+     * @param cursor 上一页返回的游标，查询第一页时为空
+     * @param size   每页记录数
+     * @return 任务分页结果
+     */
+    KeysetPage<FileProcess> listFileProcess(String status, String cursor, int size);
 }
\ No newline at end of file
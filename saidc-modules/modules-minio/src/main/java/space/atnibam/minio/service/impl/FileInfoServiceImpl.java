@@ -1,31 +1,65 @@
 package space.atnibam.minio.service.impl;
 
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.TimedCache;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import io.minio.GetObjectArgs;
-import io.minio.MinioClient;
-import io.minio.PutObjectArgs;
-import io.minio.UploadObjectArgs;
+import io.minio.*;
+import io.minio.errors.ErrorResponseException;
+import io.minio.messages.*;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.tomcat.util.http.fileupload.IOUtils;
 import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Service;
-import org.springframework.util.DigestUtils;
+import space.atnibam.common.core.enums.ResultCode;
 import space.atnibam.common.core.exception.MinioException;
 import space.atnibam.common.core.utils.text.StringUtils;
+import space.atnibam.common.mybatisplus.domain.KeysetPage;
+import space.atnibam.common.mybatisplus.utils.KeysetPageUtils;
+import space.atnibam.common.redis.configure.JsonbRedisValueCodec;
+import space.atnibam.common.redis.service.RedisService;
+import space.atnibam.common.redis.utils.BloomFilterManager;
+import space.atnibam.common.redis.utils.TwoLevelCache;
+import space.atnibam.common.redis.utils.TwoLevelCacheManager;
+import space.atnibam.minio.config.MultipartMinioClient;
 import space.atnibam.minio.mapper.FileInfoMapper;
 import space.atnibam.minio.mapper.FileProcessMapper;
+import space.atnibam.minio.model.dto.ChunkInfoDTO;
 import space.atnibam.minio.model.dto.UploadFileParamsDTO;
 import space.atnibam.minio.model.entity.FileInfo;
 import space.atnibam.minio.model.entity.FileProcess;
 import space.atnibam.minio.service.FileInfoService;
+import space.atnibam.minio.service.jobhandler.VideoTaskCreatedEvent;
 import space.atnibam.minio.utils.FileServiceUtil;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 import java.io.*;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import static org.bouncycastle.asn1.cms.CMSAttributes.contentType;
 import static space.atnibam.common.core.enums.ResultCode.*;
+import static space.atnibam.common.redis.constant.RedisConstants.REDIS_SEPARATOR;
 import static space.atnibam.minio.constant.FileServiceConstants.*;
 import static space.atnibam.minio.utils.FileServiceUtil.getContentType;
 
@@ -48,21 +82,70 @@ public class FileInfoServiceImpl extends ServiceImpl<FileInfoMapper, FileInfo> i
     @Resource
     private MinioClient minioClient;
 
+    @Resource
+    private MultipartMinioClient multipartMinioClient;
+
+    @Resource
+    private ExecutorService chunkDownloadExecutor;
+
+    @Resource
+    private RedisService redisService;
+
+    @Resource
+    private TwoLevelCacheManager twoLevelCacheManager;
+
+    @Resource
+    private BloomFilterManager bloomFilterManager;
+
+    @Resource
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    /**
+     * 文件信息的二级缓存，热门文件的重复上传检查只访问本地内存
+     */
+    private TwoLevelCache<FileInfo> fileInfoCache;
+
+    /**
+     * 文件是否存在的本地短期缓存，存在与不存在的结果都会缓存
+     */
+    private final TimedCache<String, Boolean> fileExistenceCache = CacheUtil.newTimedCache(EXISTENCE_CACHE_TTL_MILLIS);
+
+    /**
+     * 分块是否存在的本地短期缓存，只缓存存在的结果
+     */
+    private final TimedCache<String, Boolean> chunkExistenceCache = CacheUtil.newTimedCache(EXISTENCE_CACHE_TTL_MILLIS);
+
+    /**
+     * 分块合并模式，download：下载到本地合并，compose：在MinIO服务端拼接
+     */
+    @Value("${minio.merge.mode:" + MERGE_MODE_DOWNLOAD + "}")
+    private String mergeMode;
+
+    /**
+     * 分块上传模式，object：分块保存为独立对象，multipart：分块作为S3分段上传
+     */
+    @Value("${minio.chunk.mode:" + CHUNK_MODE_OBJECT + "}")
+    private String chunkMode;
+
+    /**
+     * 服务端合并后是否再读取一遍合并结果校验整体MD5.
+     * 合并前已逐块校验MD5和大小，只能保证存储的分块就是客户端上传的分块，不能保证分块拼接后的内容与客户端声明的文件MD5一致；
+     * 文件以声明的MD5作为秒传依据，不信任客户端时可以开启，代价是每次合并都要经本服务读取一遍完整文件
+     */
+    @Value("${minio.merge.verify-md5:false}")
+    private boolean verifyMergedMd5;
+
     /**
      * 上传文件
+     * 输入流在写入MinIO的同时计算MD5，由于对象名依赖MD5，文件先以临时对象名写入，计算完成后在服务端复制为正式对象
      *
      * @param uploadFileParamsDTO 文件信息
-     * @param bytes               文件字节数组
+     * @param inputStream         文件输入流
      * @param folder              桶下边的子目录
      * @return 返回上传文件结果信息
      */
     @Override
-    public String uploadFile(UploadFileParamsDTO uploadFileParamsDTO, byte[] bytes, String folder) {
-        String objectName;
-
-        // 计算文件md5值
-        String md5 = DigestUtils.md5DigestAsHex(bytes);
-
+    public String uploadFile(UploadFileParamsDTO uploadFileParamsDTO, InputStream inputStream, String folder) {
         if (StringUtils.isEmpty(folder)) {
             // 如果目录不存在，则自动生成一个目录
             folder = FileServiceUtil.getFileFolder(true, true, true);
@@ -71,20 +154,71 @@ public class FileInfoServiceImpl extends ServiceImpl<FileInfoMapper, FileInfo> i
             folder = folder + SLASH_SEPARATOR;
         }
 
-        // objectName = md5值 + 文件后缀名
+        String bucket = uploadFileParamsDTO.getBucket();
         String fileName = uploadFileParamsDTO.getFileName();
-        objectName = md5 + fileName.substring(fileName.lastIndexOf(EXTENSION_SEPARATOR));
-        objectName = folder + objectName;
+        String extension = fileName.substring(fileName.lastIndexOf(EXTENSION_SEPARATOR));
+
+        // MD5在上传完成前未知，先写入临时对象
+        String uploadingObjectName = folder + UUID.randomUUID() + UPLOADING_SUFFIX;
+
+        // 边上传边计算文件md5值
+        MessageDigest md5Digest = DigestUtils.getMd5Digest();
+        try (DigestInputStream digestInputStream = new DigestInputStream(inputStream, md5Digest)) {
+            // 文件大小已知，MinIO按固定分片大小读取，单个请求占用的内存与文件大小无关
+            minioClient.putObject(PutObjectArgs.builder()
+                    .bucket(bucket)
+                    .object(uploadingObjectName)
+                    .stream(digestInputStream, uploadFileParamsDTO.getFileSize(), UPLOAD_PART_SIZE)
+                    .contentType(getContentType(fileName))
+                    .build()
+            );
+        } catch (Exception e) {
+            log.error("文件流式上传失败，文件名：{}，错误信息：{}", fileName, e.getMessage());
+            removeObjectQuietly(bucket, uploadingObjectName);
+            // 在上传过程中出现异常时，抛出自定义异常，信息为："上传过程中出错"
+            throw new MinioException(MINIO_UPLOAD_ERROR);
+        }
+        String md5 = Hex.encodeHexString(md5Digest.digest());
+
+        // objectName = md5值 + 文件后缀名
+        String objectName = folder + md5 + extension;
 
         try {
-            // 将文件上传到 MinIO 并将相关信息添加到数据库
-            uploadFileToMinio(bytes, uploadFileParamsDTO.getBucket(), objectName);
-            FileInfo fileInfo = insertFileInfoToDB(uploadFileParamsDTO, objectName, md5);
+            // 在MinIO服务端将临时对象复制为正式对象，无需再次传输文件内容
+            minioClient.copyObject(CopyObjectArgs.builder()
+                    .bucket(bucket)
+                    .object(objectName)
+                    .source(CopySource.builder()
+                            .bucket(bucket)
+                            .object(uploadingObjectName)
+                            .build())
+                    .build());
             // 将文件信息添加到数据库并返回url
+            FileInfo fileInfo = insertFileInfoToDB(uploadFileParamsDTO, objectName, md5);
             return fileInfo.getUrl();
         } catch (Exception e) {
             // 在上传过程中出现异常时，抛出自定义异常，信息为："上传过程中出错"
             throw new MinioException(MINIO_UPLOAD_ERROR);
+        } finally {
+            // 删除临时对象
+            removeObjectQuietly(bucket, uploadingObjectName);
+        }
+    }
+
+    /**
+     * 删除MinIO中的对象，删除失败只记录日志，不影响主流程
+     *
+     * @param bucket     桶的名称
+     * @param objectName 对象名称
+     */
+    private void removeObjectQuietly(String bucket, String objectName) {
+        try {
+            minioClient.removeObject(RemoveObjectArgs.builder()
+                    .bucket(bucket)
+                    .object(objectName)
+                    .build());
+        } catch (Exception e) {
+            log.warn("删除MinIO对象失败，对象：{}，错误信息：{}", objectName, e.getMessage());
         }
     }
 
@@ -97,40 +231,62 @@ public class FileInfoServiceImpl extends ServiceImpl<FileInfoMapper, FileInfo> i
      * @return 返回保存在数据库的文件信息
      */
     private FileInfo insertFileInfoToDB(UploadFileParamsDTO uploadFileParamsDTO, String objectName, String md5) {
-        // 根据 MD5 查询文件是否已存在于数据库中
-        FileInfo fileInfo = fileInfoMapper.selectById(md5);
+        // 根据 MD5 查询数据库判断文件是否已存在，写入时不经过布隆过滤器和缓存，以数据库为准
+        FileInfo existing = fileInfoMapper.selectById(md5);
+        if (existing != null) {
+            // 已入库的文件可能是在布隆过滤器初始化期间写入的，重新加入以免被误判为不存在
+            bloomFilterManager.put(FILE_INFO_KEY, md5);
+            return existing;
+        }
         String url = SLASH_SEPARATOR + uploadFileParamsDTO.getBucket() + SLASH_SEPARATOR + objectName;
-        if (fileInfo == null) {
-            // 初始化一个新的 FileInfo 对象，并将上传文件的信息拷贝到其中
-            fileInfo = new FileInfo();
-            BeanUtils.copyProperties(uploadFileParamsDTO, fileInfo);
-
-            // 设置 FileInfo 的各项属性
-            fileInfo.setId(md5);
-            fileInfo.setBucket(uploadFileParamsDTO.getBucket());
-            fileInfo.setCreateDate(LocalDateTime.now());
-            fileInfo.setFilePath(objectName);
-            fileInfo.setUrl(url);
-            fileInfo.setUserId(uploadFileParamsDTO.getUserId());
-
-            // 将文件信息保存到数据库，若插入失败则抛出自定义异常
+        // 初始化一个新的 FileInfo 对象，并将上传文件的信息拷贝到其中
+        FileInfo fileInfo = new FileInfo();
+        BeanUtils.copyProperties(uploadFileParamsDTO, fileInfo);
+
+        // 设置 FileInfo 的各项属性
+        fileInfo.setId(md5);
+        fileInfo.setBucket(uploadFileParamsDTO.getBucket());
+        fileInfo.setCreateDate(LocalDateTime.now());
+        fileInfo.setFilePath(objectName);
+        fileInfo.setUrl(url);
+        fileInfo.setUserId(uploadFileParamsDTO.getUserId());
+
+        // 将文件信息保存到数据库，若插入失败则抛出自定义异常
+        try {
             if (fileInfoMapper.insert(fileInfo) <= 0) {
                 //抛出异常，信息为："保存文件信息失败"
                 throw new MinioException(MINIO_SAVE_FILE_INFO_ERROR);
             }
+        } catch (DuplicateKeyException e) {
+            // 相同文件的并发上传已先插入，以已入库的文件信息为准
+            existing = fileInfoMapper.selectById(md5);
+            if (existing == null) {
+                throw new MinioException(MINIO_SAVE_FILE_INFO_ERROR);
+            }
+            log.debug("文件信息已由并发上传写入：{}", md5);
+            bloomFilterManager.put(FILE_INFO_KEY, md5);
+            return existing;
+        }
 
-            // 如果是avi视频，将文件信息保存到待处理表
-            if ("video/x-msvideo".equals(contentType)) {
-                FileProcess fileProcess = new FileProcess();
-                // 将文件信息拷贝到待处理表中
-                BeanUtils.copyProperties(fileInfo, fileProcess);
-                // 未处理
-                fileProcess.setStatus("1");
-                int processInsert = fileProcessMapper.insert(fileProcess);
-                if (processInsert <= 0) {
-                    throw new MinioException(MINIO_SAVE_AVI_TO_PROCESS_ERROR);
-                }
+        // 加入布隆过滤器并写入缓存，覆盖之前缓存的不存在结果
+        bloomFilterManager.put(FILE_INFO_KEY, md5);
+        putFileInfoCache(fileInfo);
+
+        // 如果是avi视频，将文件信息保存到待处理表
+        if ("video/x-msvideo".equals(getContentType(objectName))) {
+            FileProcess fileProcess = new FileProcess();
+            // 将文件信息拷贝到待处理表中
+            BeanUtils.copyProperties(fileInfo, fileProcess);
+            // 文件信息的主键为md5，类型与任务ID不同，不会被拷贝
+            fileProcess.setFileId(md5);
+            // 未处理
+            fileProcess.setStatus("1");
+            int processInsert = fileProcessMapper.insert(fileProcess);
+            if (processInsert <= 0) {
+                throw new MinioException(MINIO_SAVE_AVI_TO_PROCESS_ERROR);
             }
+            // 通知转码执行器立即领取任务
+            applicationEventPublisher.publishEvent(new VideoTaskCreatedEvent(this, fileProcess.getId()));
         }
 
         return fileInfo;
@@ -189,43 +345,90 @@ public class FileInfoServiceImpl extends ServiceImpl<FileInfoMapper, FileInfo> i
     }
 
     /**
-     * 检查文件是否存在
+     * 检查文件是否存在.
+     * 文件信息依次查询本地缓存、Redis缓存，都未命中时才查询数据库，再通过statObject确认对象存在，确认结果在本地短期缓存
      *
      * @param md5 文件的MD5值
      * @return Boolean 返回文件是否存在的结果，如果文件存在返回true，否则返回false
      */
     @Override
     public Boolean checkFile(String md5) {
-        // 利用MD5值从数据库中查询对应的媒体文件
-        FileInfo fileInfo = fileInfoMapper.selectById(md5);
+        // 查询本地缓存
+        Boolean exists = fileExistenceCache.get(md5, false);
+        if (exists != null) {
+            return exists;
+        }
 
-        // 如果在数据库中没有找到对应的媒体文件，则直接返回false，表示文件不存在
-        if (fileInfo == null) {
-            return false;
+        // 有文件信息且MinIO中存在对象才视为已上传
+        FileInfo fileInfo = getFileInfo(md5);
+        exists = fileInfo != null && objectExists(fileInfo.getBucket(), fileInfo.getFilePath(), MINIO_GET_FILE_ERROR);
+        fileExistenceCache.put(md5, exists);
+        return exists;
+    }
+
+    /**
+     * 获取文件信息.
+     * 依次查询本地缓存和Redis缓存，Redis中以逻辑过期方式保存，过期后由后台线程重建，
+     * 都未命中时查询数据库，不存在的文件在Redis中以空值缓存
+     *
+     * @param md5 文件的MD5值
+     * @return 文件信息，文件不存在时返回null
+     */
+    private FileInfo getFileInfo(String md5) {
+        return fileInfoCache.get(md5, fileInfoMapper::selectById);
+    }
+
+    /**
+     * 文件信息入库后写入缓存，并清除之前缓存的不存在结果
+     *
+     * @param fileInfo 文件信息
+     */
+    private void putFileInfoCache(FileInfo fileInfo) {
+        fileExistenceCache.remove(fileInfo.getId());
+        try {
+            fileInfoCache.put(fileInfo.getId(), fileInfo);
+        } catch (Exception e) {
+            // 文件信息已入库，写缓存失败时删除Redis中可能残留的空值，下次查询时从数据库加载
+            log.warn("写入文件信息缓存失败，文件：{}，错误信息：{}", fileInfo.getId(), e.getMessage());
+            evictFileInfoCache(fileInfo.getId());
         }
+    }
 
-        // 若数据库中存在，根据数据库中的文件信息，继续判断bucket中是否存在该文件
+    /**
+     * 使文件信息的缓存失效，文件信息修改后调用
+     *
+     * @param md5 文件的MD5值
+     */
+    private void evictFileInfoCache(String md5) {
+        fileExistenceCache.remove(md5);
         try {
-            InputStream inputStream = minioClient.getObject(GetObjectArgs
-                    .builder()
-                    .bucket(fileInfo.getBucket())
-                    .object(fileInfo.getFilePath())
-                    .build());
-            // 如果bucket中没有找到对应的文件，也返回false，表示文件不存在
-            if (inputStream == null) {
-                return false;
-            }
+            fileInfoCache.evict(md5);
         } catch (Exception e) {
-            // 获取文件异常
-            throw new MinioException(MINIO_GET_FILE_ERROR);
+            log.warn("删除文件信息缓存失败，文件：{}，错误信息：{}", md5, e.getMessage());
         }
+    }
 
-        // 如果以上都没有问题，说明文件存在，返回true
-        return true;
+    /**
+     * 修改文件状态，并使文件信息的缓存失效
+     *
+     * @param md5    文件的MD5值
+     * @param status 文件状态，1:正常，0:禁用
+     */
+    @Override
+    public void updateFileStatus(String md5, String status) {
+        FileInfo fileInfo = new FileInfo();
+        fileInfo.setId(md5);
+        fileInfo.setStatus(status);
+        fileInfo.setChangeDate(LocalDateTime.now());
+        if (fileInfoMapper.updateById(fileInfo) <= 0) {
+            throw new MinioException(MINIO_GET_FILE_ERROR);
+        }
+        evictFileInfoCache(md5);
     }
 
     /**
-     * 检查文件块是否存在
+     * 检查文件块是否存在.
+     * 已确认存在的分块会缓存在本地，Redis中有上传记录的分块无需查询MinIO
      *
      * @param md5        文件的MD5值
      * @param chunkIndex 文件块的索引
@@ -234,29 +437,124 @@ public class FileInfoServiceImpl extends ServiceImpl<FileInfoMapper, FileInfo> i
      */
     @Override
     public Boolean checkChunk(String md5, int chunkIndex, String bucket) {
+        // 分段上传模式下直接查询会话中是否记录了该分段的ETag
+        if (CHUNK_MODE_MULTIPART.equals(chunkMode)) {
+            return redisService.getCacheMapValue(MULTIPART_SESSION_KEY + md5, String.valueOf(chunkIndex + 1)) != null;
+        }
+
+        // 分块上传后不会变为不存在，只缓存存在的结果
+        String chunkCacheKey = md5 + REDIS_SEPARATOR + chunkIndex;
+        if (chunkExistenceCache.get(chunkCacheKey, false) != null) {
+            return true;
+        }
+
         // 根据MD5值和文件块的索引获取文件块的路径
-        String chunkFileFolderPath = getChunkFileFolderPath(md5);
-        String chunkFilePath = chunkFileFolderPath + chunkIndex;
+        String chunkFilePath = getChunkFileFolderPath(md5) + chunkIndex;
 
+        // 优先查询上传分块时的记录，没有记录时再查询MinIO中的对象元数据
+        boolean exists = redisService.getCacheMapValue(CHUNK_INFO_KEY + md5, String.valueOf(chunkIndex)) != null
+                || objectExists(bucket, chunkFilePath, MINIO_GET_FILE_BLOCK_ERROR);
+        if (exists) {
+            chunkExistenceCache.put(chunkCacheKey, true);
+        }
+        return exists;
+    }
+
+    /**
+     * 通过statObject只获取对象元数据来判断对象是否存在，不会下载对象内容
+     *
+     * @param bucket     桶的名称
+     * @param objectName 对象名称
+     * @param resultCode 查询出错时抛出异常使用的结果代码
+     * @return 对象存在返回true，否则返回false
+     */
+    private boolean objectExists(String bucket, String objectName, ResultCode resultCode) {
         try {
-            // 判断文件块是否存在
-            InputStream inputStream = minioClient.getObject(GetObjectArgs
-                    .builder()
+            minioClient.statObject(StatObjectArgs.builder()
                     .bucket(bucket)
-                    .object(chunkFilePath)
+                    .object(objectName)
                     .build());
-
-            // 如果文件块不存在，返回false
-            if (inputStream == null) {
+            return true;
+        } catch (ErrorResponseException e) {
+            // 对象不存在
+            if (NO_SUCH_KEY.equals(e.errorResponse().code())) {
                 return false;
             }
+            throw new MinioException(resultCode);
         } catch (Exception e) {
-            // 获取文件块异常
-            throw new MinioException(MINIO_GET_FILE_BLOCK_ERROR);
+            throw new MinioException(resultCode);
         }
+    }
 
-        // 如果以上都没有问题，说明文件块存在，返回true
-        return true;
+    /**
+     * 创建文件信息的二级缓存和布隆过滤器，并启动本地缓存的定时清理.
+     * 查询不存在的MD5时由布隆过滤器直接拒绝，不会访问Redis和数据库
+     */
+    @PostConstruct
+    public void initLocalCache() {
+        bloomFilterManager.register(FILE_INFO_KEY, FILE_INFO_BLOOM_EXPECTED_INSERTIONS, FILE_INFO_BLOOM_FPP,
+                () -> fileInfoMapper.selectObjs(new LambdaQueryWrapper<FileInfo>().select(FileInfo::getId)));
+        // 文件信息字段固定且较小，Redis中使用JSONB二进制保存
+        fileInfoCache = twoLevelCacheManager.getCache(FILE_INFO_KEY, FileInfo.class, FILE_INFO_NEAR_CACHE_CAPACITY,
+                FILE_INFO_NEAR_CACHE_TTL_MILLIS, FILE_INFO_TTL_MINUTES, TimeUnit.MINUTES, new JsonbRedisValueCodec());
+        fileExistenceCache.schedulePrune(EXISTENCE_CACHE_TTL_MILLIS);
+        chunkExistenceCache.schedulePrune(EXISTENCE_CACHE_TTL_MILLIS);
+    }
+
+    /**
+     * 停止本地缓存的定时清理
+     */
+    @PreDestroy
+    public void stopExistenceCachePrune() {
+        fileExistenceCache.cancelPruneSchedule();
+        chunkExistenceCache.cancelPruneSchedule();
+    }
+
+    /**
+     * 批量检查分块是否存在.
+     * 优先使用上传分块时在Redis中记录的分块信息，没有记录时（如记录已过期）通过一次前缀列举MinIO中的分块对象得到
+     *
+     * @param md5        文件的MD5
+     * @param chunkTotal 分块的总数目
+     * @param bucket     存储桶名称
+     * @return 分块位图，第i个分块对应第i/8个字节中从低位起的第i%8位，1表示该分块已上传
+     */
+    @Override
+    public byte[] checkChunks(String md5, int chunkTotal, String bucket) {
+        // 位图大小由分块总数决定，先校验分块总数，避免按任意大的参数分配内存
+        checkChunkTotal(chunkTotal);
+        BitSet bitmap = new BitSet(chunkTotal);
+
+        Set<String> uploadedChunks = redisService.getCacheMapKeys(CHUNK_INFO_KEY + md5);
+        if (uploadedChunks.isEmpty() && !CHUNK_MODE_MULTIPART.equals(chunkMode)) {
+            // 分块对象名以分块序号结尾
+            String chunkFileFolder = getChunkFileFolderPath(md5);
+            uploadedChunks = new HashSet<>();
+            for (String chunkFilePath : listChunkItems(md5, bucket).keySet()) {
+                uploadedChunks.add(chunkFilePath.substring(chunkFileFolder.length()));
+            }
+        }
+
+        for (String chunk : uploadedChunks) {
+            int chunkIndex = Integer.parseInt(chunk);
+            if (chunkIndex < chunkTotal) {
+                bitmap.set(chunkIndex);
+            }
+        }
+
+        // BitSet会省略末尾的0，补齐到分块总数对应的字节数
+        return Arrays.copyOf(bitmap.toByteArray(), (chunkTotal + 7) / 8);
+    }
+
+    /**
+     * 校验分块总数，分块总数必须在1到单个文件允许的最大分块数之间
+     *
+     * @param chunkTotal 分块的总数目
+     */
+    private void checkChunkTotal(int chunkTotal) {
+        if (chunkTotal <= 0 || chunkTotal > MAX_CHUNK_TOTAL) {
+            throw new MinioException(PARAM_IS_INVALID);
+        }
     }
 
     /**
@@ -277,29 +575,112 @@ public class FileInfoServiceImpl extends ServiceImpl<FileInfoMapper, FileInfo> i
     /**
      * 上传文件块
      *
-     * @param md5    文件的MD5值
-     * @param chunk  文件块的索引
-     * @param bytes  文件块的字节数据
-     * @param bucket 存储桶名称
+     * @param md5      文件的MD5值
+     * @param chunk    文件块的索引
+     * @param bytes    文件块的字节数据
+     * @param bucket   存储桶名称
+     * @param fileName 源文件名，分段上传模式下创建会话时用于确定对象名，其他模式可以为空
      * @return 返回上传结果，如果上传成功返回true，否则直接抛出异常
      */
     @Override
-    public Boolean uploadChunk(String md5, int chunk, byte[] bytes, String bucket) {
-        // 获取文件块的路径
-        String chunkFilePath = getChunkFileFolderPath(md5) + chunk;
+    public Boolean uploadChunk(String md5, int chunk, byte[] bytes, String bucket, String fileName) {
+        // 分块序号从0开始，小于单个文件允许的最大分块数
+        if (chunk < 0 || chunk >= MAX_CHUNK_TOTAL) {
+            throw new MinioException(PARAM_IS_INVALID);
+        }
+
+        if (CHUNK_MODE_MULTIPART.equals(chunkMode)) {
+            // 分块直接作为分段上传到该文件的分段上传会话中
+            uploadChunkAsPart(md5, chunk, bytes, bucket, fileName);
+        } else {
+            // 获取文件块的路径
+            String chunkFilePath = getChunkFileFolderPath(md5) + chunk;
+
+            try {
+                // 上传文件块到MinIO
+                uploadFileToMinio(bytes, bucket, chunkFilePath);
+            } catch (Exception e) {
+                // 上传失败，记录错误信息并抛出异常
+                throw new MinioException(MINIO_UPLOAD_ERROR);
+            }
+        }
+
+        // 记录分块的MD5和大小，供合并时校验
+        String chunkInfoKey = CHUNK_INFO_KEY + md5;
+        redisService.setCacheMapValue(chunkInfoKey, String.valueOf(chunk), new ChunkInfoDTO(DigestUtils.md5Hex(bytes), (long) bytes.length));
+        redisService.expire(chunkInfoKey, CHUNK_INFO_EXPIRE_DAYS, TimeUnit.DAYS);
+        return true;
+    }
+
+    /**
+     * 将文件块作为分段上传，分段序号为文件块索引加1，分段的ETag记录到Redis中的会话信息里
+     *
+     * @param md5      文件的MD5值
+     * @param chunk    文件块的索引
+     * @param bytes    文件块的字节数据
+     * @param bucket   存储桶名称
+     * @param fileName 源文件名
+     */
+    private void uploadChunkAsPart(String md5, int chunk, byte[] bytes, String bucket, String fileName) {
+        String sessionKey = MULTIPART_SESSION_KEY + md5;
+        Map<String, String> session = getOrCreateMultipartSession(md5, bucket, fileName);
+        int partNumber = chunk + 1;
 
         try {
-            // 上传文件块到MinIO
-            uploadFileToMinio(bytes, bucket, chunkFilePath);
-            return true;
+            String etag = multipartMinioClient.uploadPart(bucket, session.get(OBJECT_NAME_FIELD), session.get(UPLOAD_ID_FIELD), bytes, partNumber);
+            redisService.setCacheMapValue(sessionKey, String.valueOf(partNumber), etag.replace(ETAG_QUOTE, ""));
         } catch (Exception e) {
-            // 上传失败，记录错误信息并抛出异常
+            log.error("上传分段失败，文件：{}，分段：{}，错误信息：{}", md5, partNumber, e.getMessage());
             throw new MinioException(MINIO_UPLOAD_ERROR);
         }
     }
 
+    /**
+     * 获取文件的分段上传会话，不存在时创建.
+     * 多个分块并发创建会话时，只有第一个写入Redis的会话生效，其余的会话会被终止
+     *
+     * @param md5      文件的MD5值
+     * @param bucket   存储桶名称
+     * @param fileName 源文件名
+     * @return 会话信息，包含会话ID和对象名
+     */
+    private Map<String, String> getOrCreateMultipartSession(String md5, String bucket, String fileName) {
+        String sessionKey = MULTIPART_SESSION_KEY + md5;
+        Map<String, String> session = redisService.getCacheMap(sessionKey);
+        if (session.containsKey(UPLOAD_ID_FIELD)) {
+            return session;
+        }
+
+        if (StringUtils.isEmpty(fileName)) {
+            throw new MinioException(PARAM_MISSING);
+        }
+
+        String objectName = getFilePathByMd5(md5, fileName.substring(fileName.lastIndexOf(EXTENSION_SEPARATOR)));
+        String uploadId;
+        try {
+            uploadId = multipartMinioClient.createMultipartUpload(bucket, objectName, getContentType(objectName));
+        } catch (Exception e) {
+            log.error("创建分段上传会话失败，文件：{}，错误信息：{}", md5, e.getMessage());
+            throw new MinioException(MINIO_CREATE_MULTIPART_UPLOAD_ERROR);
+        }
+
+        redisService.setCacheMapValueIfAbsent(sessionKey, OBJECT_NAME_FIELD, objectName);
+        if (!redisService.setCacheMapValueIfAbsent(sessionKey, UPLOAD_ID_FIELD, uploadId)) {
+            // 其他请求已经创建了会话，终止本次创建的会话
+            try {
+                multipartMinioClient.abortMultipartUpload(bucket, objectName, uploadId);
+            } catch (Exception e) {
+                log.warn("终止多余的分段上传会话失败，会话：{}，错误信息：{}", uploadId, e.getMessage());
+            }
+        }
+        redisService.expire(sessionKey, CHUNK_INFO_EXPIRE_DAYS, TimeUnit.DAYS);
+
+        return redisService.getCacheMap(sessionKey);
+    }
+
     /**
      * 合并分块文件，并上传至MinIO，最后将文件信息写入数据库.
+     * 分块由下载线程池并发下载，按顺序追加到合并文件的同时增量计算MD5，无需再完整读取一遍合并文件
      *
      * @param md5                 文件的MD5值
      * @param chunkTotal          分块的总数目
@@ -307,8 +688,17 @@ public class FileInfoServiceImpl extends ServiceImpl<FileInfoMapper, FileInfo> i
      */
     @Override
     public void mergeChunks(String md5, int chunkTotal, UploadFileParamsDTO uploadFileParamsDTO) {
-        // 下载分块文件
-        File[] chunkFiles = checkChunkStatus(md5, chunkTotal, uploadFileParamsDTO.getBucket());
+        checkChunkTotal(chunkTotal);
+
+        // 分块以分段方式上传时，完成分段上传即可，无需再拼接
+        if (CHUNK_MODE_MULTIPART.equals(chunkMode) && completeMultipartChunks(md5, chunkTotal, uploadFileParamsDTO)) {
+            return;
+        }
+
+        // 配置为服务端拼接模式时优先在MinIO服务端拼接，分块不满足拼接条件时退回到本地合并
+        if (MERGE_MODE_COMPOSE.equals(mergeMode) && composeChunks(md5, chunkTotal, uploadFileParamsDTO)) {
+            return;
+        }
 
         // 获取源文件名
         String fileName = uploadFileParamsDTO.getFileName();
@@ -324,41 +714,26 @@ public class FileInfoServiceImpl extends ServiceImpl<FileInfoMapper, FileInfo> i
             throw new MinioException(MINIO_CREATE_MERGE_TEMP_FILE_ERROR);
         }
 
-        // 定义缓冲区
-        byte[] buffer = new byte[1024];
+        // 合并失败时通知尚未开始的下载任务不再下载
+        AtomicBoolean aborted = new AtomicBoolean(false);
+
+        // 并发下载分块文件
+        List<CompletableFuture<File>> chunkFutures = downloadChunksAsync(md5, chunkTotal, uploadFileParamsDTO.getBucket(), aborted);
 
         try {
-            // 创建写入流，向临时文件写入数据
-            try (RandomAccessFile rafWrite = new RandomAccessFile(mergeFile, "rw")) {
-                // 遍历分块文件数组
-                for (File chunkFile : chunkFiles) {
-                    // 创建读取流，读取分块文件
-                    try (RandomAccessFile rafRead = new RandomAccessFile(chunkFile, "r")) {
-                        int len;
-                        while ((len = rafRead.read(buffer)) != -1) {
-                            rafWrite.write(buffer, 0, len);
-                        }
-                    }
-                }
-            } catch (Exception e) {
-                throw new MinioException(MINIO_MERGE_FILE_ERROR);
-            }
+            // 按顺序追加分块，同时计算MD5
+            String mergeMd5 = appendChunks(chunkFutures, mergeFile);
 
             // 设置文件大小
             uploadFileParamsDTO.setFileSize(mergeFile.length());
 
             // 对文件进行校验，通过MD5值比较
-            try (FileInputStream mergeInputStream = new FileInputStream(mergeFile)) {
-                String mergeMd5 = org.apache.commons.codec.digest.DigestUtils.md5Hex(mergeInputStream);
-                if (!md5.equals(mergeMd5)) {
-                    throw new MinioException(MINIO_MERGE_FILE_CHECK_ERROR);
-                }
-
-                log.debug("合并文件校验通过：{}", mergeFile.getAbsolutePath());
-            } catch (Exception e) {
-                throw new MinioException(MINIO_MERGE_FILE_CHECK_EXCEPTION);
+            if (!md5.equals(mergeMd5)) {
+                throw new MinioException(MINIO_MERGE_FILE_CHECK_ERROR);
             }
 
+            log.debug("合并文件校验通过：{}", mergeFile.getAbsolutePath());
+
             String mergeFilePath = getFilePathByMd5(md5, extension);
 
             // 将本地合并好的文件，上传到minio中，这里重载了一个方法
@@ -371,59 +746,484 @@ public class FileInfoServiceImpl extends ServiceImpl<FileInfoMapper, FileInfo> i
             if (fileInfo == null) {
                 throw new MinioException(MINIO_MEDIA_FILE_INSERT_ERROR);
             }
+
+            // 合并完成，分块信息不再需要
+            redisService.deleteObject(CHUNK_INFO_KEY + md5);
         } finally {
-            // 删除临时分块文件
-            for (File chunkFile : chunkFiles) {
+            aborted.set(true);
+
+            // 删除临时分块文件，仍在下载中的分块会在下载完成后删除
+            chunkFutures.forEach(chunkFuture -> chunkFuture.thenAccept(chunkFile -> {
+                if (chunkFile != null && chunkFile.exists() && !chunkFile.delete()) {
+                    log.warn("临时分块文件删除失败：{}", chunkFile.getAbsolutePath());
+                }
+            }));
+
+            // 删除合并后的临时文件，删除失败不影响合并结果
+            if (!mergeFile.delete()) {
+                log.warn("临时合并文件删除失败：{}", mergeFile.getAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * 完成文件的分段上传会话，MinIO按分段序号拼接出完整对象，最后将文件信息写入数据库.
+     * 完成前用上传分块时记录的分块MD5校验各分段的ETag，并确认会话中的分段数与分块总数一致，
+     * 开启了合并校验时完成后再流式读取一遍对象校验整体MD5；完成失败时终止会话，释放已上传的分段
+     *
+     * @param md5                 文件的MD5值
+     * @param chunkTotal          分块的总数目
+     * @param uploadFileParamsDTO 上传文件的参数对象
+     * @return 存在分段上传会话并完成返回true，会话不存在（如分块以独立对象上传）返回false
+     */
+    private boolean completeMultipartChunks(String md5, int chunkTotal, UploadFileParamsDTO uploadFileParamsDTO) {
+        String sessionKey = MULTIPART_SESSION_KEY + md5;
+        Map<String, String> session = redisService.getCacheMap(sessionKey);
+        String uploadId = session.get(UPLOAD_ID_FIELD);
+        if (uploadId == null) {
+            log.debug("分段上传会话不存在，按独立分块对象合并：{}", md5);
+            return false;
+        }
+
+        String bucket = uploadFileParamsDTO.getBucket();
+        String objectName = session.get(OBJECT_NAME_FIELD);
+        Map<String, ChunkInfoDTO> chunkInfoMap = redisService.getCacheMap(CHUNK_INFO_KEY + md5);
+
+        // 会话中除会话ID和对象名外的字段都是分段序号，存在超出分块总数的分段说明传入的分块总数偏小，不能完成出被截断的文件
+        int partCount = session.size() - MULTIPART_SESSION_META_FIELD_COUNT;
+        if (partCount > chunkTotal || chunkInfoMap.size() > chunkTotal) {
+            log.error("分块总数与上传记录不一致，文件：{}，分块总数：{}，已上传分段数：{}，分块记录数：{}", md5, chunkTotal, partCount, chunkInfoMap.size());
+            throw new MinioException(PARAM_IS_INVALID);
+        }
+
+        Part[] parts = new Part[chunkTotal];
+        long fileSize = 0;
+        for (int i = 0; i < chunkTotal; i++) {
+            int partNumber = i + 1;
+            String etag = session.get(String.valueOf(partNumber));
+            ChunkInfoDTO chunkInfo = chunkInfoMap.get(String.valueOf(i));
+            if (etag == null || chunkInfo == null) {
+                throw new MinioException(MINIO_QUERY_FILE_BLOCK_ERROR);
+            }
+            // 分段的ETag即为分段内容的MD5
+            if (!etag.equalsIgnoreCase(chunkInfo.getChunkMd5())) {
+                log.error("分段校验失败，文件：{}，分段：{}，记录的MD5：{}，实际ETag：{}", md5, partNumber, chunkInfo.getChunkMd5(), etag);
+                throw new MinioException(MINIO_MERGE_FILE_CHECK_ERROR);
+            }
+            parts[i] = new Part(partNumber, etag);
+            fileSize += chunkInfo.getChunkSize();
+        }
+
+        try {
+            multipartMinioClient.completeMultipartUpload(bucket, objectName, uploadId, parts);
+        } catch (Exception e) {
+            log.error("完成分段上传失败，文件：{}，错误信息：{}", objectName, e.getMessage());
+            // 完成失败的会话不再复用，终止会话释放已上传的分段，客户端需重新上传
+            abortMultipartSession(md5, bucket, objectName, uploadId);
+            throw new MinioException(MINIO_COMPLETE_MULTIPART_UPLOAD_ERROR);
+        }
+
+        log.debug("分段上传完成：{}", objectName);
+
+        if (verifyMergedMd5) {
+            try {
+                // 分段上传生成的对象ETag不是内容的MD5，开启合并校验时入库前读取对象校验整体MD5
+                verifyObjectMd5(bucket, objectName, md5);
+            } catch (MinioException e) {
+                // 会话已完成，校验不通过的对象已删除，会话信息和分块信息不再有效
+                redisService.deleteObject(Arrays.asList(sessionKey, CHUNK_INFO_KEY + md5));
+                throw e;
+            }
+        }
+
+        // 设置文件大小
+        uploadFileParamsDTO.setFileSize(fileSize);
+
+        // 将文件信息写入数据库
+        FileInfo fileInfo = insertFileInfoToDB(uploadFileParamsDTO, objectName, md5);
+        if (fileInfo == null) {
+            throw new MinioException(MINIO_MEDIA_FILE_INSERT_ERROR);
+        }
+
+        // 会话已完成，删除会话信息和分块信息
+        redisService.deleteObject(Arrays.asList(sessionKey, CHUNK_INFO_KEY + md5));
+        return true;
+    }
+
+    /**
+     * 终止文件的分段上传会话，并删除Redis中的会话信息和分块信息，终止失败只记录日志
+     *
+     * @param md5        文件的MD5值
+     * @param bucket     桶的名称
+     * @param objectName 对象名称
+     * @param uploadId   分段上传会话ID
+     */
+    private void abortMultipartSession(String md5, String bucket, String objectName, String uploadId) {
+        try {
+            multipartMinioClient.abortMultipartUpload(bucket, objectName, uploadId);
+        } catch (Exception e) {
+            log.warn("终止分段上传会话失败，会话：{}，错误信息：{}", uploadId, e.getMessage());
+        }
+        redisService.deleteObject(Arrays.asList(MULTIPART_SESSION_KEY + md5, CHUNK_INFO_KEY + md5));
+    }
+
+    /**
+     * 终止所有存储桶中过期的分段上传会话.
+     * Redis中的会话信息过期后，MinIO中对应的分段上传不会再被完成，已上传的分段会一直占用存储，由定时任务调用清理
+     *
+     * @return 终止的会话数
+     */
+    @Override
+    public int abortExpiredMultipartUploads() {
+        ZonedDateTime expireBefore = ZonedDateTime.now().minusDays(MULTIPART_UPLOAD_EXPIRE_DAYS);
+        List<Bucket> buckets;
+        try {
+            buckets = minioClient.listBuckets();
+        } catch (Exception e) {
+            log.error("查询存储桶失败，错误信息：{}", e.getMessage());
+            throw new MinioException(MINIO_QUERY_FILE_BLOCK_ERROR);
+        }
+
+        int aborted = 0;
+        for (Bucket bucket : buckets) {
+            String keyMarker = null;
+            String uploadIdMarker = null;
+            ListMultipartUploadsResult result;
+            do {
                 try {
-                    chunkFile.delete();
+                    result = multipartMinioClient.listMultipartUploads(bucket.name(), keyMarker, uploadIdMarker);
                 } catch (Exception e) {
-                    throw new MinioException(MINIO_DELETE_TEMP_FILE_ERROR);
+                    log.warn("查询分段上传会话失败，存储桶：{}，错误信息：{}", bucket.name(), e.getMessage());
+                    break;
                 }
+                for (Upload upload : result.uploads()) {
+                    if (upload.initiated() == null || !upload.initiated().isBefore(expireBefore)) {
+                        continue;
+                    }
+                    try {
+                        multipartMinioClient.abortMultipartUpload(bucket.name(), upload.objectName(), upload.uploadId());
+                        aborted++;
+                    } catch (Exception e) {
+                        log.warn("终止过期的分段上传会话失败，会话：{}，错误信息：{}", upload.uploadId(), e.getMessage());
+                    }
+                }
+                keyMarker = result.nextKeyMarker();
+                uploadIdMarker = result.nextUploadIdMarker();
+            } while (result.isTruncated());
+        }
+        return aborted;
+    }
+
+    /**
+     * 在MinIO服务端拼接分块文件，拼接不经过本服务，最后将文件信息写入数据库.
+     * 拼接前根据上传分块时记录的分块MD5和大小校验各分块，开启了合并校验时拼接后再流式读取一遍拼接结果校验整体MD5
+     *
+     * @param md5                 文件的MD5值
+     * @param chunkTotal          分块的总数目
+     * @param uploadFileParamsDTO 上传文件的参数对象
+     * @return 分块满足服务端拼接条件并拼接成功返回true，不满足条件（如分块信息缺失、分块小于5MB）返回false
+     */
+    @Override
+    public Boolean composeChunks(String md5, int chunkTotal, UploadFileParamsDTO uploadFileParamsDTO) {
+        String bucket = uploadFileParamsDTO.getBucket();
+
+        // 获取上传分块时记录的分块信息
+        Map<String, ChunkInfoDTO> chunkInfoMap = redisService.getCacheMap(CHUNK_INFO_KEY + md5);
+        if (!isComposable(chunkInfoMap, chunkTotal)) {
+            log.debug("分块不满足服务端拼接条件，改为本地合并：{}", md5);
+            return false;
+        }
+
+        // 一次列举出所有分块对象，用分块记录校验分块大小和ETag
+        Map<String, Item> chunkItemMap = listChunkItems(md5, bucket);
+        String chunkFileFolder = getChunkFileFolderPath(md5);
+
+        List<ComposeSource> sources = new ArrayList<>(chunkTotal);
+        long fileSize = 0;
+        for (int i = 0; i < chunkTotal; i++) {
+            String chunkFilePath = chunkFileFolder + i;
+            ChunkInfoDTO chunkInfo = chunkInfoMap.get(String.valueOf(i));
+            Item chunkItem = chunkItemMap.get(chunkFilePath);
+
+            if (chunkItem == null) {
+                throw new MinioException(MINIO_QUERY_FILE_BLOCK_ERROR);
+            }
+            if (!isSameChunk(chunkInfo, chunkItem)) {
+                log.error("分块校验失败，分块：{}，记录：{}，实际大小：{}，实际ETag：{}", chunkFilePath, chunkInfo, chunkItem.size(), chunkItem.etag());
+                throw new MinioException(MINIO_MERGE_FILE_CHECK_ERROR);
+            }
+
+            sources.add(ComposeSource.builder()
+                    .bucket(bucket)
+                    .object(chunkFilePath)
+                    .build());
+            fileSize += chunkItem.size();
+        }
+
+        // 获取源文件扩展名
+        String fileName = uploadFileParamsDTO.getFileName();
+        String extension = fileName.substring(fileName.lastIndexOf(EXTENSION_SEPARATOR));
+        String mergeFilePath = getFilePathByMd5(md5, extension);
+
+        try {
+            // 在MinIO服务端按分块顺序拼接
+            minioClient.composeObject(ComposeObjectArgs.builder()
+                    .bucket(bucket)
+                    .object(mergeFilePath)
+                    .sources(sources)
+                    .headers(Collections.singletonMap(HttpHeaders.CONTENT_TYPE, getContentType(mergeFilePath)))
+                    .build());
+        } catch (Exception e) {
+            log.error("服务端拼接分块失败，文件：{}，错误信息：{}", mergeFilePath, e.getMessage());
+            throw new MinioException(MINIO_MERGE_FILE_ERROR);
+        }
+
+        log.debug("服务端拼接分块完成：{}", mergeFilePath);
+
+        // 拼接只校验了各分块，开启合并校验时入库前再校验拼接结果的整体MD5，校验不通过的对象不会被秒传复用
+        if (verifyMergedMd5) {
+            verifyObjectMd5(bucket, mergeFilePath, md5);
+        }
+
+        // 设置文件大小
+        uploadFileParamsDTO.setFileSize(fileSize);
+
+        // 将文件信息写入数据库
+        FileInfo fileInfo = insertFileInfoToDB(uploadFileParamsDTO, mergeFilePath, md5);
+        if (fileInfo == null) {
+            throw new MinioException(MINIO_MEDIA_FILE_INSERT_ERROR);
+        }
+
+        // 拼接完成，删除分块对象和分块信息
+        removeChunks(md5, chunkTotal, bucket);
+        redisService.deleteObject(CHUNK_INFO_KEY + md5);
+        return true;
+    }
+
+    /**
+     * 流式读取MinIO中的对象并校验整体MD5，对象内容不会整体加载到内存.
+     * 服务端拼接、分段上传生成的对象ETag不是内容的MD5，只能读取一遍对象计算，校验不通过或无法校验时删除该对象
+     *
+     * @param bucket     桶的名称
+     * @param objectName 对象名称
+     * @param md5        声明的文件MD5值
+     */
+    private void verifyObjectMd5(String bucket, String objectName, String md5) {
+        String objectMd5;
+        try (InputStream inputStream = minioClient.getObject(GetObjectArgs.builder()
+                .bucket(bucket)
+                .object(objectName)
+                .build())) {
+            objectMd5 = DigestUtils.md5Hex(inputStream);
+        } catch (Exception e) {
+            log.error("读取对象校验MD5失败，对象：{}，错误信息：{}", objectName, e.getMessage());
+            removeObjectQuietly(bucket, objectName);
+            throw new MinioException(MINIO_MERGE_FILE_CHECK_EXCEPTION);
+        }
+
+        if (!md5.equalsIgnoreCase(objectMd5)) {
+            log.error("合并文件校验失败，对象：{}，声明的MD5：{}，实际MD5：{}", objectName, md5, objectMd5);
+            removeObjectQuietly(bucket, objectName);
+            throw new MinioException(MINIO_MERGE_FILE_CHECK_ERROR);
+        }
+    }
+
+    /**
+     * 判断分块是否满足服务端拼接条件：所有分块都有上传记录，除最后一块外每块不小于5MB，分块数不超过上限
+     *
+     * @param chunkInfoMap 上传分块时记录的分块信息
+     * @param chunkTotal   分块的总数目
+     * @return 满足条件返回true，否则返回false
+     */
+    private boolean isComposable(Map<String, ChunkInfoDTO> chunkInfoMap, int chunkTotal) {
+        if (chunkTotal > MAX_COMPOSE_SOURCES || chunkInfoMap == null || chunkInfoMap.size() < chunkTotal) {
+            return false;
+        }
+
+        for (int i = 0; i < chunkTotal; i++) {
+            ChunkInfoDTO chunkInfo = chunkInfoMap.get(String.valueOf(i));
+            if (chunkInfo == null) {
+                return false;
+            }
+            // 最后一块不受最小分片大小的限制
+            if (i < chunkTotal - 1 && chunkInfo.getChunkSize() < UPLOAD_PART_SIZE) {
+                return false;
             }
+        }
+
+        return true;
+    }
 
-            // 删除合并后的临时文件
+    /**
+     * 比较分块对象与上传时记录的分块信息是否一致.
+     * 分块以单次上传写入时ETag即为分块内容的MD5，分段写入的分块只比较大小
+     *
+     * @param chunkInfo 上传分块时记录的分块信息
+     * @param chunkItem MinIO中的分块对象
+     * @return 一致返回true，否则返回false
+     */
+    private boolean isSameChunk(ChunkInfoDTO chunkInfo, Item chunkItem) {
+        if (chunkInfo.getChunkSize() != chunkItem.size()) {
+            return false;
+        }
+
+        String etag = chunkItem.etag().replace(ETAG_QUOTE, "");
+        return etag.contains(MULTIPART_ETAG_SEPARATOR) || etag.equalsIgnoreCase(chunkInfo.getChunkMd5());
+    }
+
+    /**
+     * 列举文件的所有分块对象
+     *
+     * @param md5    文件的MD5值
+     * @param bucket 桶的名称
+     * @return 以对象名为键的分块对象
+     */
+    private Map<String, Item> listChunkItems(String md5, String bucket) {
+        Map<String, Item> chunkItemMap = new HashMap<>();
+        try {
+            Iterable<Result<Item>> results = minioClient.listObjects(ListObjectsArgs.builder()
+                    .bucket(bucket)
+                    .prefix(getChunkFileFolderPath(md5))
+                    .recursive(true)
+                    .build());
+            for (Result<Item> result : results) {
+                Item item = result.get();
+                chunkItemMap.put(item.objectName(), item);
+            }
+        } catch (Exception e) {
+            throw new MinioException(MINIO_QUERY_FILE_BLOCK_ERROR);
+        }
+        return chunkItemMap;
+    }
+
+    /**
+     * 批量删除文件的分块对象，删除失败只记录日志
+     *
+     * @param md5        文件的MD5值
+     * @param chunkTotal 分块的总数目
+     * @param bucket     桶的名称
+     */
+    private void removeChunks(String md5, int chunkTotal, String bucket) {
+        String chunkFileFolder = getChunkFileFolderPath(md5);
+        List<DeleteObject> chunkObjects = new ArrayList<>(chunkTotal);
+        for (int i = 0; i < chunkTotal; i++) {
+            chunkObjects.add(new DeleteObject(chunkFileFolder + i));
+        }
+
+        // removeObjects是惰性执行的，需要遍历结果才会真正删除
+        Iterable<Result<DeleteError>> results = minioClient.removeObjects(RemoveObjectsArgs.builder()
+                .bucket(bucket)
+                .objects(chunkObjects)
+                .build());
+        for (Result<DeleteError> result : results) {
             try {
-                mergeFile.delete();
+                DeleteError error = result.get();
+                log.warn("删除分块对象失败，对象：{}，错误信息：{}", error.objectName(), error.message());
             } catch (Exception e) {
-                throw new MinioException(MINIO_DELETE_TEMP_MERGE_FILE_ERROR);
+                log.warn("删除分块对象失败，错误信息：{}", e.getMessage());
             }
         }
     }
 
     /**
-     * 检查分块文件的状态，下载分块文件，并组成结果返回.
+     * 提交所有分块的下载任务，由分块下载线程池控制并发数.
      *
      * @param fileMd5    文件的MD5值
      * @param chunkTotal 分块的总数目
-     * @return FileInfo[] 下载的分块文件数组
+     * @param bucket     桶的名称
+     * @param aborted    合并是否已终止，终止后未开始的下载任务直接跳过
+     * @return 按分块序号排列的下载结果
      */
-    private File[] checkChunkStatus(String fileMd5, int chunkTotal, String bucket) {
-        // 作为结果返回
-        File[] files = new File[chunkTotal];
-
+    private List<CompletableFuture<File>> downloadChunksAsync(String fileMd5, int chunkTotal, String bucket, AtomicBoolean aborted) {
         // 获取分块文件目录
         String chunkFileFolder = getChunkFileFolderPath(fileMd5);
 
+        List<CompletableFuture<File>> chunkFutures = new ArrayList<>(chunkTotal);
         for (int i = 0; i < chunkTotal; i++) {
             // 获取分块文件路径
             String chunkFilePath = chunkFileFolder + i;
-            File chunkFile;
+            String chunkFilePrefix = CHUNK_SEPARATOR + i;
 
-            try {
-                // 创建临时的分块文件
-                chunkFile = File.createTempFile(CHUNK_SEPARATOR + i, null);
-            } catch (Exception e) {
-                throw new MinioException(MINIO_CREATE_TEMP_FILE_ERROR);
-            }
+            chunkFutures.add(CompletableFuture.supplyAsync(() -> {
+                if (aborted.get()) {
+                    return null;
+                }
+
+                File chunkFile;
+                try {
+                    // 创建临时的分块文件
+                    chunkFile = File.createTempFile(chunkFilePrefix, null);
+                } catch (Exception e) {
+                    throw new MinioException(MINIO_CREATE_TEMP_FILE_ERROR);
+                }
+
+                // 下载分块文件
+                return downloadFileFromMinio(chunkFile, bucket, chunkFilePath);
+            }, chunkDownloadExecutor));
+        }
+
+        return chunkFutures;
+    }
+
+    /**
+     * 按分块序号依次等待下载完成并追加到合并文件.
+     * 分块内容只读取一次，读入堆外缓冲区后先增量计算MD5，再写入合并文件，数据不经过堆内存
+     *
+     * @param chunkFutures 按分块序号排列的下载结果
+     * @param mergeFile    合并文件
+     * @return 合并文件的MD5值
+     */
+    private String appendChunks(List<CompletableFuture<File>> chunkFutures, File mergeFile) {
+        MessageDigest md5Digest = DigestUtils.getMd5Digest();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(MERGE_BUFFER_SIZE);
 
-            // 下载分块文件
-            chunkFile = downloadFileFromMinio(chunkFile, bucket, chunkFilePath);
+        try (FileChannel mergeChannel = FileChannel.open(mergeFile.toPath(), StandardOpenOption.WRITE)) {
+            for (CompletableFuture<File> chunkFuture : chunkFutures) {
+                File chunkFile = joinChunk(chunkFuture);
+
+                try (FileChannel chunkChannel = FileChannel.open(chunkFile.toPath(), StandardOpenOption.READ)) {
+                    while (chunkChannel.read(buffer) != -1) {
+                        // 以Buffer调用flip、clear，编译后的字节码在Java 8上也能运行
+                        ((Buffer) buffer).flip();
+
+                        // 增量计算MD5，使用副本计算不会移动缓冲区的位置
+                        md5Digest.update(buffer.duplicate());
+
+                        // 追加到合并文件末尾
+                        while (buffer.hasRemaining()) {
+                            mergeChannel.write(buffer);
+                        }
+                        ((Buffer) buffer).clear();
+                    }
+                }
 
-            // 组成结果
-            files[i] = chunkFile;
+                // 追加完成后立即删除分块，减少磁盘占用
+                if (!chunkFile.delete()) {
+                    log.warn("临时分块文件删除失败：{}", chunkFile.getAbsolutePath());
+                }
+            }
+        } catch (IOException e) {
+            throw new MinioException(MINIO_MERGE_FILE_ERROR);
         }
 
-        return files;
+        return Hex.encodeHexString(md5Digest.digest());
+    }
+
+    /**
+     * 等待分块下载完成，并还原下载过程中抛出的异常.
+     *
+     * @param chunkFuture 分块下载结果
+     * @return 下载完成的分块文件
+     */
+    private File joinChunk(CompletableFuture<File> chunkFuture) {
+        try {
+            return chunkFuture.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof MinioException) {
+                throw (MinioException) e.getCause();
+            }
+            throw new MinioException(MINIO_QUERY_FILE_BLOCK_ERROR);
+        }
     }
 
     /**
@@ -467,4 +1267,55 @@ public class FileInfoServiceImpl extends ServiceImpl<FileInfoMapper, FileInfo> i
         return md5.charAt(0) + SLASH_SEPARATOR + md5.charAt(1) + SLASH_SEPARATOR + md5 + SLASH_SEPARATOR + md5 + extension;
     }
 
+    /**
+     * 按上传时间倒序分页查询用户的文件.
+     * 先只查询索引(user_id, create_date, id)中的列定位一页的主键，再按主键查询完整记录，
+     * 翻页时不需要扫描并丢弃前面的记录
+     *
+     * @param userId 用户ID
+     * @param cursor 上一页返回的游标，查询第一页时为空
+     * @param size   每页记录数
+     * @return 文件信息分页结果
+     */
+    @Override
+    public KeysetPage<FileInfo> listUserFiles(Integer userId, String cursor, int size) {
+        LocalDateTime createDate = null;
+        String id = null;
+        try {
+            String[] values = KeysetPageUtils.decodeCursor(cursor, 2);
+            if (values != null) {
+                createDate = LocalDateTime.parse(values[0]);
+                id = values[1];
+            }
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new MinioException(PARAM_IS_INVALID);
+        }
+
+        LambdaQueryWrapper<FileInfo> wrapper = new LambdaQueryWrapper<FileInfo>()
+                .select(FileInfo::getId, FileInfo::getCreateDate)
+                .eq(FileInfo::getUserId, userId);
+        KeysetPageUtils.seek(wrapper, FileInfo::getCreateDate, FileInfo::getId, createDate, id, false, size);
+        KeysetPage<FileInfo> page = KeysetPageUtils.toPage(fileInfoMapper.selectList(wrapper), size,
+                fileInfo -> new Object[]{fileInfo.getCreateDate(), fileInfo.getId()});
+        if (page.getRecords().isEmpty()) {
+            return page;
+        }
+
+        // 按主键回表查询完整记录，并保持索引中的顺序
+        List<String> ids = new ArrayList<>(page.getRecords().size());
+        page.getRecords().forEach(fileInfo -> ids.add(fileInfo.getId()));
+        Map<String, FileInfo> fileInfoMap = new HashMap<>(ids.size() * 2);
+        fileInfoMapper.selectBatchIds(ids).forEach(fileInfo -> fileInfoMap.put(fileInfo.getId(), fileInfo));
+        List<FileInfo> records = new ArrayList<>(ids.size());
+        for (String fileId : ids) {
+            FileInfo fileInfo = fileInfoMap.get(fileId);
+            // 两次查询之间被删除的记录直接跳过
+            if (fileInfo != null) {
+                records.add(fileInfo);
+            }
+        }
+        page.setRecords(records);
+        return page;
+    }
+
 }
\ No newline at end of file
@@ -1,6 +1,5 @@
 package space.atnibam.minio.service.impl;
 
-import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
@@ -8,12 +7,19 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import space.atnibam.minio.mapper.FileProcessHistoryMapper;
 import space.atnibam.minio.mapper.FileProcessMapper;
+import space.atnibam.minio.model.dto.ProcessFinishDTO;
 import space.atnibam.minio.model.entity.FileProcess;
 import space.atnibam.minio.model.entity.FileProcessHistory;
 import space.atnibam.minio.service.FileProcessHistoryService;
 
 import javax.annotation.Resource;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static space.atnibam.minio.constant.FileServiceConstants.STATUS_FAILURE;
 import static space.atnibam.minio.constant.FileServiceConstants.STATUS_SUCCESS;
@@ -38,55 +44,87 @@ public class FileProcessHistoryServiceImpl extends ServiceImpl<FileProcessHistor
     /**
      * 更新任务状态
      *
-     * @param taskId   任务ID
-     * @param status   任务状态
-     * @param fileId   文件标识
-     * @param url      文件访问地址
-     * @param errorMsg 错误信息
+     * @param taskId      任务ID
+     * @param status      任务状态
+     * @param fileId      文件标识
+     * @param url         文件访问地址
+     * @param playlistUrl HLS主播放列表访问地址，未打包HLS时为null
+     * @param errorMsg    错误信息
+     * @param leaseOwner  处理该任务的租约持有者
      */
     @Transactional(rollbackFor = Exception.class)
     @Override
-    public void saveProcessFinishStatus(Long taskId, String status, String fileId, String url, String errorMsg) {
-        // 根据任务ID查询任务信息
-        FileProcess fileProcess = fileProcessMapper.selectById(taskId);
+    public void saveProcessFinishStatus(Long taskId, String status, String fileId, String url, String playlistUrl, String errorMsg,
+                                        String leaseOwner) {
+        saveProcessFinishStatusBatch(Collections.singletonList(
+                new ProcessFinishDTO(taskId, status, fileId, url, playlistUrl, errorMsg, null, leaseOwner)));
+    }
 
-        // 如果任务不存在，打印日志并退出方法
-        if (fileProcess == null) {
-            log.debug("更新任务状态时，此任务：{}，为空", taskId);
+    /**
+     * 批量更新任务状态.
+     * 失败的任务用一条UPDATE记录状态和失败原因；成功的任务用一条INSERT写入历史处理表，再用一条DELETE从待处理表中删除，
+     * 无论一批有多少任务，最多执行四条语句.
+     * 先锁定租约仍由结果中的持有者持有的任务，租约过期后已被其他执行器重新领取的任务不记录结果，
+     * 避免覆盖新持有者的处理状态，或重复写入历史处理表导致整批回滚
+     *
+     * @param results 任务完成结果
+     */
+    @Transactional(rollbackFor = Exception.class)
+    @Override
+    public void saveProcessFinishStatusBatch(List<ProcessFinishDTO> results) {
+        if (results.isEmpty()) {
             return;
         }
 
-        // 构建查询条件
-        LambdaQueryWrapper<FileProcess> queryWrapper = new LambdaQueryWrapper<FileProcess>().eq(FileProcess::getId, taskId);
-
-        // 如果任务状态为失败，更新任务状态和错误信息，并返回
-        if (STATUS_FAILURE.equals(status)) {
-            log.debug("任务失败：{}", taskId);
-            FileProcess fileProcessToUpdate = new FileProcess();
-            fileProcessToUpdate.setStatus(STATUS_FAILURE);
-            fileProcessToUpdate.setErrorMsg(errorMsg);
-            fileProcessToUpdate.setFinishDate(LocalDateTime.now());
-            fileProcessMapper.update(fileProcessToUpdate, queryWrapper);
-            return;
+        // 查询并锁定租约仍有效的任务，事务结束前其他执行器无法重新领取
+        Map<Long, FileProcess> fileProcessMap = fileProcessMapper.selectLeasedForUpdate(results).stream()
+                .collect(Collectors.toMap(FileProcess::getId, Function.identity()));
+
+        List<ProcessFinishDTO> failures = new ArrayList<>();
+        List<ProcessFinishDTO> successes = new ArrayList<>();
+        List<FileProcessHistory> histories = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (ProcessFinishDTO result : results) {
+            FileProcess fileProcess = fileProcessMap.get(result.getTaskId());
+
+            // 如果任务不存在或租约已不由该持有者持有，打印日志并丢弃处理结果
+            if (fileProcess == null) {
+                log.warn("更新任务状态时，任务：{}不存在或租约已失效，持有者：{}，丢弃处理结果", result.getTaskId(), result.getLeaseOwner());
+                continue;
+            }
+
+            // 如果任务状态为失败，记录失败原因
+            if (STATUS_FAILURE.equals(result.getStatus())) {
+                log.debug("任务失败：{}", result.getTaskId());
+                failures.add(result);
+                continue;
+            }
+
+            // 如果任务状态为成功，将任务信息连同处理结果写入历史处理表
+            if (STATUS_SUCCESS.equals(result.getStatus())) {
+                fileProcess.setStatus(STATUS_SUCCESS);
+                fileProcess.setUrl(result.getUrl());
+                fileProcess.setPlaylistUrl(result.getPlaylistUrl());
+                fileProcess.setFinishDate(now);
+
+                FileProcessHistory fileProcessHistory = new FileProcessHistory();
+                // 复制任务信息到历史处理表对象中
+                BeanUtils.copyProperties(fileProcess, fileProcessHistory);
+                fileProcessHistory.setHlsErrorMsg(result.getHlsErrorMsg());
+                histories.add(fileProcessHistory);
+                successes.add(result);
+            }
         }
 
-        // 如果任务状态为成功，更新任务状态和完成时间，并将任务从待处理任务表中删除，同时新增历史处理表记录
-        if (STATUS_SUCCESS.equals(status)) {
-            fileProcess.setStatus(STATUS_SUCCESS);
-            fileProcess.setUrl(url);
-            fileProcess.setFinishDate(LocalDateTime.now());
-            fileProcessMapper.update(fileProcess, queryWrapper);
-
-            FileProcessHistory fileProcessHistory = new FileProcessHistory();
-
-            // 复制任务信息到历史处理表对象中
-            BeanUtils.copyProperties(fileProcess, fileProcessHistory);
+        if (!failures.isEmpty()) {
+            fileProcessMapper.updateFailedBatch(failures);
+        }
 
+        if (!histories.isEmpty()) {
             // 向历史处理表插入数据
-            fileProcessHistoryMapper.insert(fileProcessHistory);
-
+            fileProcessHistoryMapper.insertBatch(histories);
             // 删除待处理任务表中的数据
-            fileProcessMapper.deleteById(taskId);
+            fileProcessMapper.deleteLeasedBatch(successes);
         }
     }
 
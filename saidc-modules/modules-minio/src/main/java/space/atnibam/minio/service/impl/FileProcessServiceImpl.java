@@ -1,13 +1,30 @@
 package space.atnibam.minio.service.impl;
 
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import space.atnibam.common.core.exception.MinioException;
+import space.atnibam.common.core.utils.text.StringUtils;
+import space.atnibam.common.mybatisplus.domain.KeysetPage;
+import space.atnibam.common.mybatisplus.utils.KeysetPageUtils;
+import space.atnibam.common.redis.service.RedisService;
 import space.atnibam.minio.mapper.FileProcessMapper;
+import space.atnibam.minio.model.dto.TranscodeProgressDTO;
 import space.atnibam.minio.model.entity.FileProcess;
 import space.atnibam.minio.service.FileProcessService;
 
 import javax.annotation.Resource;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static space.atnibam.common.core.enums.ResultCode.PARAM_IS_INVALID;
+import static space.atnibam.minio.constant.VideoTaskConstants.TASK_ATTEMPTS_EXHAUSTED_MSG;
+import static space.atnibam.minio.constant.VideoTaskConstants.TRANSCODE_PROGRESS_KEY;
+import static space.atnibam.minio.constant.VideoTaskConstants.TRANSCODE_PROGRESS_TTL_MINUTES;
 
 /**
  * @ClassName: FileProcessServiceImpl
@@ -15,6 +32,7 @@ import java.util.List;
  * @Author: AtnibamAitay
  * @CreateTime: 2023-10-22 21:37
  **/
+@Slf4j
 @Service
 public class FileProcessServiceImpl extends ServiceImpl<FileProcessMapper, FileProcess>
         implements FileProcessService {
@@ -22,17 +40,110 @@ public class FileProcessServiceImpl extends ServiceImpl<FileProcessMapper, FileP
     @Resource
     private FileProcessMapper fileProcessMapper;
 
+    @Resource
+    private RedisService redisService;
+
+    /**
+     * 领取待处理任务.
+     * 在同一事务中锁定可领取的行（跳过已被其他执行器锁定的行）并标记为处理中，
+     * 多个执行器按各自的空闲数量领取，不会领取到同一个任务。
+     * 领取次数达到上限仍未完成的任务记为处理失败，避免反复领取同一个无法处理的视频
+     *
+     * @param owner        租约持有者
+     * @param count        最多领取的个数
+     * @param leaseSeconds 租约时长（单位：秒）
+     * @param maxAttempts  每个任务最多领取的次数
+     * @return 领取到的任务列表
+     */
+    @Transactional(rollbackFor = Exception.class)
+    @Override
+    public List<FileProcess> claimFileProcessList(String owner, int count, long leaseSeconds, int maxAttempts) {
+        int exhausted = fileProcessMapper.failExhausted(maxAttempts, TASK_ATTEMPTS_EXHAUSTED_MSG);
+        if (exhausted > 0) {
+            log.warn("领取次数达到上限的任务已记为处理失败，任务数：{}", exhausted);
+        }
+        List<Long> ids = fileProcessMapper.selectClaimableIdsForUpdate(count, maxAttempts);
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        fileProcessMapper.claimByIds(ids, owner, leaseSeconds);
+        return fileProcessMapper.selectBatchIds(ids);
+    }
+
+    /**
+     * 续期正在处理的任务的租约
+     *
+     * @param taskIds      任务ID列表
+     * @param owner        租约持有者
+     * @param leaseSeconds 租约时长（单位：秒）
+     * @return 续期成功的任务数
+     */
+    @Override
+    public int renewLeases(Collection<Long> taskIds, String owner, long leaseSeconds) {
+        if (taskIds.isEmpty()) {
+            return 0;
+        }
+        return fileProcessMapper.renewLease(taskIds, owner, leaseSeconds);
+    }
+
+    /**
+     * 释放任务的租约，任务恢复为未处理状态
+     *
+     * @param taskId 任务ID
+     * @param owner  租约持有者
+     */
+    @Override
+    public void releaseLease(Long taskId, String owner) {
+        fileProcessMapper.releaseLease(taskId, owner);
+    }
+
     /**
-     * 根据分片索引、总分片数以及个数来获取媒体处理列表
+     * 记录任务的转码进度，进度保存在Redis中，任意节点都可以查询
      *
-     * @param shardIndex 分片索引
-     * @param shardTotal 总分片数
-     * @param count      要获取的个数
-     * @return 文件处理列表
+     * @param taskId   任务ID
+     * @param progress 转码进度
      */
     @Override
-    public List<FileProcess> getFileProcessList(int shardIndex, int shardTotal, int count) {
-        return fileProcessMapper.selectListByShardIndex(shardTotal, shardIndex, count);
+    public void updateProgress(Long taskId, TranscodeProgressDTO progress) {
+        redisService.setCacheObject(TRANSCODE_PROGRESS_KEY + taskId, progress, TRANSCODE_PROGRESS_TTL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * 获取任务的转码进度
+     *
+     * @param taskId 任务ID
+     * @return 转码进度，任务未开始转码或进度已过期时返回null
+     */
+    @Override
+    public TranscodeProgressDTO getProgress(Long taskId) {
+        return redisService.getCacheObject(TRANSCODE_PROGRESS_KEY + taskId);
+    }
+
+    /**
+     * 按任务ID分页查询指定状态的任务，依赖索引(status, id)
+     *
+     * @param status 任务状态，为空时查询全部任务
+     * @param cursor 上一页返回的游标，查询第一页时为空
+     * @param size   每页记录数
+     * @return 任务分页结果
+     */
+    @Override
+    public KeysetPage<FileProcess> listFileProcess(String status, String cursor, int size) {
+        Long id = null;
+        try {
+            String[] values = KeysetPageUtils.decodeCursor(cursor, 1);
+            if (values != null) {
+                id = Long.valueOf(values[0]);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new MinioException(PARAM_IS_INVALID);
+        }
+
+        LambdaQueryWrapper<FileProcess> wrapper = new LambdaQueryWrapper<FileProcess>()
+                .eq(StringUtils.isNotEmpty(status), FileProcess::getStatus, status);
+        KeysetPageUtils.seek(wrapper, FileProcess::getId, id, true, size);
+        return KeysetPageUtils.toPage(fileProcessMapper.selectList(wrapper), size,
+                fileProcess -> new Object[]{fileProcess.getId()});
     }
 
 }
\ No newline at end of file
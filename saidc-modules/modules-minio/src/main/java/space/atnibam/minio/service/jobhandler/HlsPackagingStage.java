@@ -0,0 +1,292 @@
+package space.atnibam.minio.service.jobhandler;
+
+import cn.hutool.core.io.FileUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import space.atnibam.common.core.exception.MinioException;
+import space.atnibam.minio.model.entity.FileProcess;
+import space.atnibam.minio.service.FileInfoService;
+import space.atnibam.minio.utils.FfmpegProgressParser;
+import space.atnibam.minio.utils.ProcessRunner;
+
+import javax.annotation.Resource;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static space.atnibam.common.core.enums.ResultCode.*;
+import static space.atnibam.minio.constant.FileServiceConstants.SLASH_SEPARATOR;
+import static space.atnibam.minio.constant.VideoTaskConstants.*;
+
+/**
+ * @ClassName: HlsPackagingStage
+ * @Description: 视频HLS打包阶段，各档码率与mp4在同一次转码中编码，再切成HLS切片并生成主播放列表，并发上传到MinIO
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-25 16:42
+ **/
+@Slf4j
+@Component
+public class HlsPackagingStage {
+
+    @Resource
+    private FileInfoService fileInfoService;
+
+    /**
+     * HLS切片上传线程池
+     */
+    @Resource
+    private ExecutorService hlsUploadExecutor;
+
+    @Value("${ffmpeg.path:ffmpeg}")
+    private String ffmpegPath;
+
+    /**
+     * 码率阶梯，每档格式为"分辨率:视频码率:音频码率"，多档之间用逗号分隔
+     */
+    @Value("${video.hls.ladder:" + DEFAULT_HLS_LADDER + "}")
+    private String ladder;
+
+    /**
+     * 切片时长（单位：秒）
+     */
+    @Value("${video.hls.segment-seconds:" + DEFAULT_HLS_SEGMENT_SECONDS + "}")
+    private int segmentSeconds;
+
+    /**
+     * 生成各档位编码参数，追加到转码命令中，与mp4在同一个ffmpeg进程中编码，源视频只解码一次.
+     * 每档输出一个mp4文件，按切片时长强制插入关键帧，保证各档位的切片边界对齐，播放器可以在切片之间切换码率
+     *
+     * @param renditionDir 各档位mp4的输出目录
+     * @param threads      ffmpeg使用的线程数
+     * @return 各档位的输出参数
+     */
+    public List<String> renditionOutputArgs(File renditionDir, int threads) {
+        String[] renditions = ladder.split(HLS_RENDITION_SEPARATOR);
+
+        List<String> args = new ArrayList<>();
+        for (int i = 0; i < renditions.length; i++) {
+            String[] fields = renditions[i].trim().split(HLS_RENDITION_FIELD_SEPARATOR);
+            args.add("-map");
+            args.add("0:v:0");
+            // 源视频没有音频时忽略
+            args.add("-map");
+            args.add("0:a:0?");
+            args.add("-s");
+            args.add(fields[0]);
+            args.add("-c:v");
+            args.add("libx264");
+            args.add("-b:v");
+            args.add(fields[1]);
+            args.add("-c:a");
+            args.add("aac");
+            args.add("-b:a");
+            args.add(fields[2]);
+            args.add("-pix_fmt");
+            args.add("yuv420p");
+            args.add("-sc_threshold");
+            args.add("0");
+            args.add("-force_key_frames");
+            args.add("expr:gte(t,n_forced*" + segmentSeconds + ")");
+            args.add("-threads");
+            args.add(String.valueOf(threads));
+            args.add(renditionFile(renditionDir, i).getAbsolutePath());
+        }
+        return args;
+    }
+
+    /**
+     * 将转码时生成的各档位mp4切片为多码率HLS并上传到MinIO，切片存放在视频所在目录的hls子目录下.
+     * 切片只复制音视频流，不重新编码
+     *
+     * @param fileProcess  待处理任务
+     * @param renditionDir 各档位mp4所在目录，由{@link #renditionOutputArgs}生成
+     * @param audio        源视频是否包含音频
+     * @param timeout      切片超时时间，超时后结束ffmpeg进程
+     * @param unit         超时时间单位
+     * @return 主播放列表的访问地址
+     * @throws InterruptedException 等待切片的线程被中断，此时ffmpeg进程已被结束
+     */
+    public String packageHls(FileProcess fileProcess, File renditionDir, boolean audio, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        File outputDir;
+        try {
+            outputDir = Files.createTempDirectory(TEMP_DIR_PREFIX_HLS).toFile();
+        } catch (IOException e) {
+            log.error("打包HLS前创建临时目录失败");
+            throw new MinioException(MINIO_CREATE_TEMP_FILE_BEFORE_PROCESS_ERROR);
+        }
+
+        try {
+            segment(renditionDir, outputDir, audio, timeout, unit);
+
+            // 切片存放在视频所在目录的hls子目录下，例 2/f/2f6451sdg/hls/
+            String videoPath = fileInfoService.getFilePathByMd5(fileProcess.getFileId(), "");
+            String folder = videoPath.substring(0, videoPath.lastIndexOf(SLASH_SEPARATOR) + 1) + HLS_FOLDER + SLASH_SEPARATOR;
+            upload(outputDir, fileProcess.getBucket(), folder);
+
+            return SLASH_SEPARATOR + fileProcess.getBucket() + SLASH_SEPARATOR + folder + HLS_MASTER_PLAYLIST;
+        } finally {
+            FileUtil.del(outputDir);
+        }
+    }
+
+    /**
+     * 调用ffmpeg一次完成所有档位的切片
+     *
+     * @param renditionDir 各档位mp4所在目录
+     * @param outputDir    切片输出目录
+     * @param audio        源视频是否包含音频
+     * @param timeout      超时时间
+     * @param unit         超时时间单位
+     * @throws InterruptedException 等待切片的线程被中断
+     */
+    private void segment(File renditionDir, File outputDir, boolean audio, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        int renditions = ladder.split(HLS_RENDITION_SEPARATOR).length;
+
+        List<String> commend = new ArrayList<>();
+        commend.add(ffmpegPath);
+        //覆盖输出文件
+        commend.add("-y");
+        StringBuilder streamMap = new StringBuilder();
+        for (int i = 0; i < renditions; i++) {
+            commend.add("-i");
+            commend.add(renditionFile(renditionDir, i).getAbsolutePath());
+
+            if (streamMap.length() > 0) {
+                streamMap.append(' ');
+            }
+            streamMap.append("v:").append(i);
+            if (audio) {
+                streamMap.append(",a:").append(i);
+            }
+        }
+        for (int i = 0; i < renditions; i++) {
+            commend.add("-map");
+            commend.add(i + ":v:0");
+            if (audio) {
+                commend.add("-map");
+                commend.add(i + ":a:0");
+            }
+        }
+        commend.add("-c");
+        commend.add("copy");
+        commend.add("-f");
+        commend.add("hls");
+        commend.add("-hls_time");
+        commend.add(String.valueOf(segmentSeconds));
+        commend.add("-hls_playlist_type");
+        commend.add("vod");
+        commend.add("-hls_flags");
+        commend.add("independent_segments");
+        commend.add("-hls_segment_filename");
+        commend.add(new File(outputDir, HLS_SEGMENT_FILE).getAbsolutePath());
+        commend.add("-master_pl_name");
+        commend.add(HLS_MASTER_PLAYLIST);
+        commend.add("-var_stream_map");
+        commend.add(streamMap.toString());
+        commend.add("-progress");
+        commend.add("pipe:1");
+        commend.add("-nostats");
+        commend.add(new File(outputDir, HLS_VARIANT_PLAYLIST).getAbsolutePath());
+
+        FfmpegProgressParser parser = new FfmpegProgressParser(null);
+        ProcessRunner.ProcessResult processResult;
+        try {
+            processResult = ProcessRunner.await(ProcessRunner.start(commend, timeout, unit, parser));
+        } catch (TimeoutException | IOException e) {
+            log.error("HLS打包失败，目录：{}，错误信息：{}", renditionDir.getAbsolutePath(), e.getMessage());
+            throw new MinioException(MINIO_PACKAGE_HLS_ERROR);
+        }
+        if (processResult.getExitValue() != 0 || !parser.isFinished()) {
+            log.error("HLS打包失败，目录：{}，ffmpeg日志：{}", renditionDir.getAbsolutePath(), processResult.getOutput());
+            throw new MinioException(MINIO_PACKAGE_HLS_ERROR);
+        }
+    }
+
+    /**
+     * 档位对应的mp4文件
+     *
+     * @param renditionDir 各档位mp4所在目录
+     * @param index        档位序号
+     * @return 该档位的mp4文件
+     */
+    private static File renditionFile(File renditionDir, int index) {
+        return new File(renditionDir, String.format(HLS_RENDITION_FILE, index));
+    }
+
+    /**
+     * 并发上传切片和各档位播放列表，全部上传完成后再上传主播放列表，保证主播放列表可访问时切片均已就绪.
+     * 提交上传前先确认主播放列表和各档位播放列表均已生成；已提交的上传失败时等待其余上传结束后再返回，
+     * 避免调用方删除输出目录时仍有上传在读取其中的文件
+     *
+     * @param outputDir 切片输出目录
+     * @param bucket    存储桶
+     * @param folder    MinIO中的目录
+     */
+    private void upload(File outputDir, String bucket, String folder) {
+        File[] files = outputDir.listFiles();
+        if (files == null) {
+            throw new MinioException(MINIO_PACKAGE_HLS_ERROR);
+        }
+
+        File master = new File(outputDir, HLS_MASTER_PLAYLIST);
+        if (!master.isFile()) {
+            log.error("HLS打包未生成主播放列表，目录：{}", outputDir.getAbsolutePath());
+            throw new MinioException(MINIO_PACKAGE_HLS_ERROR);
+        }
+        int renditions = ladder.split(HLS_RENDITION_SEPARATOR).length;
+        for (int i = 0; i < renditions; i++) {
+            File playlist = new File(outputDir, HLS_VARIANT_PLAYLIST.replace("%v", String.valueOf(i)));
+            if (!playlist.isFile()) {
+                log.error("HLS打包未生成档位播放列表：{}", playlist.getAbsolutePath());
+                throw new MinioException(MINIO_PACKAGE_HLS_ERROR);
+            }
+        }
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>(files.length);
+        try {
+            for (File file : files) {
+                if (HLS_MASTER_PLAYLIST.equals(file.getName())) {
+                    continue;
+                }
+                futures.add(CompletableFuture.runAsync(
+                        () -> fileInfoService.uploadFileToMinio(file.getAbsolutePath(), bucket, folder + file.getName()),
+                        hlsUploadExecutor));
+            }
+        } catch (RejectedExecutionException e) {
+            log.error("提交HLS切片上传失败：{}", e.getMessage());
+            awaitQuietly(futures);
+            throw new MinioException(MINIO_UPLOAD_FILE_ERROR);
+        }
+
+        try {
+            // allOf在所有上传都结束后才完成，其中一个失败时也会等待其余上传结束
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            log.error("上传HLS切片失败：{}", e.getMessage());
+            throw new MinioException(MINIO_UPLOAD_FILE_ERROR);
+        }
+        fileInfoService.uploadFileToMinio(master.getAbsolutePath(), bucket, folder + HLS_MASTER_PLAYLIST);
+    }
+
+    /**
+     * 等待已提交的上传全部结束，忽略上传的结果
+     *
+     * @param futures 已提交的上传
+     */
+    private static void awaitQuietly(List<CompletableFuture<Void>> futures) {
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .handle((result, e) -> null)
+                .join();
+    }
+}
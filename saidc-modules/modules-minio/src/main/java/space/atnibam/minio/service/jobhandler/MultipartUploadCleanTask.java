@@ -0,0 +1,31 @@
+package space.atnibam.minio.service.jobhandler;
+
+import com.xxl.job.core.handler.annotation.XxlJob;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import space.atnibam.minio.service.FileInfoService;
+
+import javax.annotation.Resource;
+
+/**
+ * @ClassName: MultipartUploadCleanTask
+ * @Description: 分段上传会话清理任务，终止Redis中会话信息已过期、不会再被完成的分段上传，释放已上传的分段
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-29 15:40
+ **/
+@Slf4j
+@Component
+public class MultipartUploadCleanTask {
+
+    @Resource
+    private FileInfoService fileInfoService;
+
+    /**
+     * 终止过期的分段上传会话，建议每天调度一次
+     */
+    @XxlJob("multipartUploadCleanJobHandler")
+    public void multipartUploadCleanJobHandler() {
+        int aborted = fileInfoService.abortExpiredMultipartUploads();
+        log.info("已终止过期的分段上传会话：{}个", aborted);
+    }
+}
@@ -0,0 +1,197 @@
+package space.atnibam.minio.service.jobhandler;
+
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import space.atnibam.minio.model.dto.ProcessFinishDTO;
+import space.atnibam.minio.service.FileProcessHistoryService;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static space.atnibam.minio.constant.VideoTaskConstants.DEFAULT_FINISH_BATCH_SIZE;
+import static space.atnibam.minio.constant.VideoTaskConstants.DEFAULT_FINISH_BATCH_WINDOW_MILLIS;
+import static space.atnibam.minio.constant.VideoTaskConstants.FINISH_WRITER_SHUTDOWN_TIMEOUT_SECONDS;
+
+/**
+ * @ClassName: ProcessFinishBatchWriter
+ * @Description: 任务完成状态的批量写入器，收集短时间内完成的任务结果，在一个事务中批量写入
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-26 15:20
+ **/
+@Slf4j
+@Component
+public class ProcessFinishBatchWriter {
+
+    @Resource
+    private FileProcessHistoryService fileProcessHistoryService;
+
+    /**
+     * 收到一批中的第一个结果后，继续等待其他结果的时长（单位：毫秒）
+     */
+    @Value("${video.finish.batch-window-millis:" + DEFAULT_FINISH_BATCH_WINDOW_MILLIS + "}")
+    private long batchWindowMillis;
+
+    /**
+     * 每批最多包含的结果数
+     */
+    @Value("${video.finish.batch-size:" + DEFAULT_FINISH_BATCH_SIZE + "}")
+    private int batchSize;
+
+    /**
+     * 停止信号，停止时放入队列末尾，写入线程取到后写完当前一批即退出
+     */
+    private static final PendingFinish STOP_SIGNAL = new PendingFinish(null, null);
+
+    private final BlockingQueue<PendingFinish> queue = new LinkedBlockingQueue<>();
+
+    /**
+     * 保护stopped和入队操作，保证停止信号之后不会再有结果入队
+     */
+    private final Object lock = new Object();
+
+    private boolean stopped;
+
+    private ExecutorService writerExecutor;
+
+    /**
+     * 启动写入线程
+     */
+    @PostConstruct
+    public void start() {
+        synchronized (lock) {
+            stopped = false;
+        }
+        writerExecutor = Executors.newSingleThreadExecutor(
+                ThreadFactoryBuilder.create().setNamePrefix("process-finish-writer-").build());
+        writerExecutor.execute(this::writeLoop);
+    }
+
+    /**
+     * 停止写入线程.
+     * 停止后不再接受新结果，写入线程写完停止前已提交的结果后退出；超时仍未写完的结果以异常结束，
+     * 对应任务的租约到期后会被重新处理
+     */
+    @PreDestroy
+    public void stop() {
+        synchronized (lock) {
+            if (stopped) {
+                return;
+            }
+            stopped = true;
+            queue.offer(STOP_SIGNAL);
+        }
+        writerExecutor.shutdown();
+        try {
+            if (!writerExecutor.awaitTermination(FINISH_WRITER_SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("等待写入任务完成状态超时，未写入的结果将在租约到期后重新处理");
+                writerExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            writerExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        List<PendingFinish> remaining = new ArrayList<>();
+        synchronized (lock) {
+            queue.drainTo(remaining);
+        }
+        IllegalStateException stoppedException = new IllegalStateException("任务完成状态写入器已停止");
+        remaining.stream().filter(pending -> pending != STOP_SIGNAL)
+                .forEach(pending -> pending.future.completeExceptionally(stoppedException));
+    }
+
+    /**
+     * 提交任务完成结果
+     *
+     * @param result 任务完成结果
+     * @return 结果写入数据库后完成的Future，写入器已停止时以IllegalStateException异常结束
+     */
+    public CompletableFuture<Void> submit(ProcessFinishDTO result) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        synchronized (lock) {
+            if (stopped) {
+                // 应用关闭过程中仍有任务完成，不再写入，租约到期后重新处理
+                future.completeExceptionally(new IllegalStateException("任务完成状态写入器已停止"));
+                return future;
+            }
+            queue.offer(new PendingFinish(result, future));
+        }
+        return future;
+    }
+
+    /**
+     * 收集并写入结果，取到一批的第一个结果后，在等待时长内继续收集，直到等待结束或达到每批上限.
+     * 取到停止信号时写完当前一批后退出，停止信号之后不会再有结果入队
+     */
+    private void writeLoop() {
+        boolean stopping = false;
+        while (!stopping) {
+            List<PendingFinish> batch = new ArrayList<>();
+            try {
+                PendingFinish first = queue.take();
+                if (first == STOP_SIGNAL) {
+                    return;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchWindowMillis);
+                while (batch.size() < batchSize) {
+                    PendingFinish next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    if (next == STOP_SIGNAL) {
+                        stopping = true;
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // 已取出的结果放回队列，由stop以异常结束
+                queue.addAll(batch);
+                Thread.currentThread().interrupt();
+                return;
+            }
+            write(batch);
+        }
+    }
+
+    /**
+     * 在一个事务中写入一批结果，并通知提交方
+     *
+     * @param batch 一批结果
+     */
+    private void write(List<PendingFinish> batch) {
+        try {
+            fileProcessHistoryService.saveProcessFinishStatusBatch(
+                    batch.stream().map(pending -> pending.result).collect(Collectors.toList()));
+            batch.forEach(pending -> pending.future.complete(null));
+        } catch (Exception e) {
+            log.error("批量记录任务完成状态失败，任务数：{}，错误信息：{}", batch.size(), e.getMessage());
+            batch.forEach(pending -> pending.future.completeExceptionally(e));
+        }
+    }
+
+    /**
+     * 等待写入的结果
+     */
+    @AllArgsConstructor
+    private static class PendingFinish {
+
+        private final ProcessFinishDTO result;
+
+        private final CompletableFuture<Void> future;
+    }
+}
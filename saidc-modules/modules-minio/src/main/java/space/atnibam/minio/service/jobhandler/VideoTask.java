@@ -1,24 +1,38 @@
 package space.atnibam.minio.service.jobhandler;
 
-import com.xxl.job.core.context.XxlJobHelper;
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.net.NetUtil;
+import cn.hutool.core.util.IdUtil;
 import com.xxl.job.core.handler.annotation.XxlJob;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.stereotype.Component;
 import space.atnibam.common.core.exception.MinioException;
+import space.atnibam.minio.model.dto.ProcessFinishDTO;
+import space.atnibam.minio.model.dto.TranscodeResultDTO;
 import space.atnibam.minio.model.entity.FileProcess;
 import space.atnibam.minio.service.FileInfoService;
-import space.atnibam.minio.service.FileProcessHistoryService;
 import space.atnibam.minio.service.FileProcessService;
 import space.atnibam.minio.utils.Mp4VideoUtil;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static space.atnibam.common.core.enums.ResultCode.*;
 import static space.atnibam.minio.constant.FileServiceConstants.SLASH_SEPARATOR;
@@ -41,86 +55,235 @@ public class VideoTask {
     private FileProcessService fileProcessService;
 
     @Resource
-    private FileProcessHistoryService fileProcessHistoryService;
+    private ProcessFinishBatchWriter processFinishBatchWriter;
+
+    @Resource
+    private HlsPackagingStage hlsPackagingStage;
+
+    /**
+     * 视频转码线程池，应用内共用
+     */
+    @Resource
+    private ThreadPoolTaskExecutor videoTranscodeExecutor;
+
+    /**
+     * 每个ffmpeg进程使用的线程数
+     */
+    @Value("${video.transcode.ffmpeg-threads:" + DEFAULT_FFMPEG_THREADS + "}")
+    private int ffmpegThreads;
+
+    /**
+     * 单个视频转码的超时时间（单位：分钟），超时后结束ffmpeg进程并记录为处理失败
+     */
+    @Value("${video.transcode.timeout-minutes:" + DEFAULT_TRANSCODE_TIMEOUT_MINUTES + "}")
+    private long transcodeTimeoutMinutes;
+
+    /**
+     * 转码成功后是否额外打包多码率HLS
+     */
+    @Value("${video.hls.enabled:true}")
+    private boolean hlsEnabled;
+
+    /**
+     * 任务租约时长（单位：秒）
+     */
+    @Value("${video.task.lease-seconds:" + DEFAULT_LEASE_SECONDS + "}")
+    private long leaseSeconds;
+
+    /**
+     * 每个任务最多领取的次数
+     */
+    @Value("${video.task.max-attempts:" + DEFAULT_MAX_ATTEMPTS + "}")
+    private int maxAttempts;
+
+    /**
+     * 租约续期调度线程池
+     */
+    @Resource
+    private ThreadPoolTaskScheduler leaseRenewalScheduler;
+
+    /**
+     * 当前执行器的标识，作为领取任务时的租约持有者
+     */
+    private final String leaseOwner = NetUtil.getLocalhostStr() + ":" + IdUtil.fastSimpleUUID();
+
+    /**
+     * 已提交到转码线程池、尚未处理完成的任务ID，处理期间定期续期这些任务的租约
+     */
+    private final Set<Long> runningTaskIds = ConcurrentHashMap.newKeySet();
+
+    private ScheduledFuture<?> leaseRenewalFuture;
+
+    /**
+     * 上次领取时是否领满，领满说明可能还有待处理任务，有任务处理完成时立即再次领取
+     */
+    private volatile boolean backlog;
+
+    /**
+     * 启动租约续期，每个租约时长内续期若干次，避免处理时间较长的任务被其他执行器重新领取
+     */
+    @PostConstruct
+    public void startLeaseRenewal() {
+        leaseRenewalFuture = leaseRenewalScheduler.scheduleAtFixedRate(this::renewLeases,
+                Duration.ofSeconds(Math.max(1, leaseSeconds / LEASE_RENEWALS_PER_PERIOD)));
+    }
+
+    /**
+     * 停止租约续期
+     */
+    @PreDestroy
+    public void stopLeaseRenewal() {
+        if (leaseRenewalFuture != null) {
+            leaseRenewalFuture.cancel(false);
+        }
+    }
 
     /**
-     * 处理视频任务
+     * 处理视频任务.
+     * 新任务写入时会立即触发领取，定时调度作为兜底，处理事件丢失或执行器繁忙时积压的任务
      */
     @XxlJob("videoJobHandler")
-    public void videoJobHandler() throws InterruptedException {
-        // 分片序号
-        int shardIndex = XxlJobHelper.getShardIndex();
-        // 分片总数
-        int shardTotal = XxlJobHelper.getShardTotal();
-        log.debug("分片序号：{}，分片总数：{}", shardIndex, shardTotal);
-
-        // 查询待处理任务，一次处理的任务数与cpu核心数相同
-        List<FileProcess> fileProcessList = fileProcessService.getFileProcessList(shardTotal, shardIndex, 12);
-        CountDownLatch countDownLatch = new CountDownLatch(fileProcessList.size());
-        // 未查询到待处理任务，结束方法
-        if (fileProcessList == null || fileProcessList.size() == 0) {
-            log.debug("查询到的待处理任务数为0");
+    public void videoJobHandler() {
+        dispatch();
+    }
+
+    /**
+     * 转码线程池是否有空闲线程
+     *
+     * @return 是否有空闲线程
+     */
+    public boolean hasIdleWorker() {
+        return runningTaskIds.size() < videoTranscodeExecutor.getMaxPoolSize();
+    }
+
+    /**
+     * 按转码线程池的空闲数量领取任务，提交后立即返回，不等待任务处理完成。
+     * 任务按执行器的空闲情况分配，不再按ID取模分片；定时调度和事件触发可能同时调用，加锁避免超额领取
+     */
+    public synchronized void dispatch() {
+        // 转码线程池的空闲数量
+        int idle = videoTranscodeExecutor.getMaxPoolSize() - runningTaskIds.size();
+        if (idle <= 0) {
+            log.debug("转码线程已全部占用，本次不领取任务");
             return;
         }
 
-        // 要处理的任务数
-        int size = fileProcessList.size();
-        // 查询到任务，创建size个线程去处理
-        ExecutorService threadPool = Executors.newFixedThreadPool(size);
-
-        fileProcessList.forEach(fileProcess -> threadPool.execute(() -> {
-            String status = fileProcess.getStatus();
-            // 避免重复执行任务
-            if (TASK_STATUS_PROCESSED.equals(status)) {
-                log.debug("该视频已经被处理，无需再次处理。视频信息：{}", fileProcess);
-                countDownLatch.countDown();
-                return;
+        // 领取任务，领取到的任务由当前执行器持有租约，其他执行器不会再领取
+        List<FileProcess> fileProcessList = fileProcessService.claimFileProcessList(leaseOwner, idle, leaseSeconds, maxAttempts);
+        backlog = fileProcessList.size() == idle;
+        // 未领取到待处理任务，结束方法
+        if (fileProcessList.isEmpty()) {
+            log.debug("领取到的待处理任务数为0");
+            return;
+        }
+
+        for (FileProcess fileProcess : fileProcessList) {
+            runningTaskIds.add(fileProcess.getId());
+            try {
+                videoTranscodeExecutor.execute(() -> {
+                    try {
+                        processVideo(fileProcess);
+                    } finally {
+                        runningTaskIds.remove(fileProcess.getId());
+                        if (backlog) {
+                            dispatch();
+                        }
+                    }
+                });
+            } catch (TaskRejectedException e) {
+                // 线程池已满或正在关闭，释放租约，留给其他执行器或下次调度
+                runningTaskIds.remove(fileProcess.getId());
+                fileProcessService.releaseLease(fileProcess.getId(), leaseOwner);
+                log.warn("转码线程池拒绝任务，释放租约：{}", fileProcess.getId());
+            }
+        }
+    }
+
+    /**
+     * 续期正在处理的任务的租约.
+     * 处理过程中抛出异常的任务不释放租约，租约到期后会被重新领取，相当于延迟重试
+     */
+    private void renewLeases() {
+        if (runningTaskIds.isEmpty()) {
+            return;
+        }
+        try {
+            int renewed = fileProcessService.renewLeases(runningTaskIds, leaseOwner, leaseSeconds);
+            if (renewed < runningTaskIds.size()) {
+                log.warn("部分任务的租约已过期，可能已被其他执行器重新领取，续期成功数：{}，处理中任务数：{}", renewed, runningTaskIds.size());
             }
+        } catch (Exception e) {
+            // 续期失败不影响下次续期
+            log.error("续期任务租约失败：{}", e.getMessage());
+        }
+    }
 
-            // 桶
-            String bucket = fileProcess.getBucket();
-            // 文件路径
-            String filePath = fileProcess.getFilePath();
-            // 原始文件的md5
-            String fileId = fileProcess.getFileId();
+    /**
+     * 处理单个视频：下载原始视频，转为mp4后上传到MinIO，最后记录处理结果
+     *
+     * @param fileProcess 待处理任务
+     */
+    private void processVideo(FileProcess fileProcess) {
+        // 桶
+        String bucket = fileProcess.getBucket();
+        // 文件路径
+        String filePath = fileProcess.getFilePath();
+        // 原始文件的md5
+        String fileId = fileProcess.getFileId();
 
-            File originalFile;
-            File mp4File;
+        File originalFile;
+        File mp4File;
+        // 各档位HLS的mp4，与mp4在同一次转码中生成
+        File renditionDir = null;
 
-            try {
-                // 将原始视频下载到本地，创建临时文件
-                originalFile = File.createTempFile(TEMP_FILE_PREFIX_ORIGINAL, null);
-                // 处理完成后的文件
-                mp4File = File.createTempFile(TEMP_FILE_PREFIX_MP4, TEMP_FILE_SUFFIX_MP4);
-            } catch (IOException e) {
-                log.error("处理视频前创建临时文件失败");
-                countDownLatch.countDown();
-                throw new MinioException(MINIO_CREATE_TEMP_FILE_BEFORE_PROCESS_ERROR);
+        try {
+            // 将原始视频下载到本地，创建临时文件
+            originalFile = File.createTempFile(TEMP_FILE_PREFIX_ORIGINAL, null);
+            // 处理完成后的文件
+            mp4File = File.createTempFile(TEMP_FILE_PREFIX_MP4, TEMP_FILE_SUFFIX_MP4);
+            if (hlsEnabled) {
+                renditionDir = Files.createTempDirectory(TEMP_DIR_PREFIX_HLS).toFile();
             }
+        } catch (IOException e) {
+            log.error("处理视频前创建临时文件失败");
+            throw new MinioException(MINIO_CREATE_TEMP_FILE_BEFORE_PROCESS_ERROR);
+        }
+
+        try {
             try {
                 fileInfoService.downloadFileFromMinio(originalFile, bucket, filePath);
             } catch (Exception e) {
                 log.error("下载原始文件过程中出错：{}，文件信息：{}", e.getMessage(), fileProcess);
-                countDownLatch.countDown();
                 throw new MinioException(MINIO_DOWNLOAD_ORIGINAL_FILE_ERROR);
             }
 
             // 调用工具类将avi转为mp4
-            String result;
+            TranscodeResultDTO result;
             try {
-                // 获取转换结果，转换成功返回success 转换失败返回错误信息
-                result = Mp4VideoUtil.generateMp4(originalFile.getAbsolutePath(), mp4File.getAbsolutePath());
+                // 获取转换结果，转换过程中的进度实时记录到任务上
+                result = Mp4VideoUtil.generateMp4(originalFile.getAbsolutePath(), mp4File.getAbsolutePath(),
+                        ffmpegThreads, transcodeTimeoutMinutes, TimeUnit.MINUTES,
+                        progress -> fileProcessService.updateProgress(fileProcess.getId(), progress),
+                        renditionDir == null ? Collections.emptyList() : hlsPackagingStage.renditionOutputArgs(renditionDir, ffmpegThreads));
+            } catch (InterruptedException e) {
+                // 转码线程被中断，ffmpeg进程已结束，释放租约，由下次调度重新处理
+                Thread.currentThread().interrupt();
+                log.warn("视频转码被取消，任务信息：{}", fileProcess);
+                fileProcessService.releaseLease(fileProcess.getId(), leaseOwner);
+                return;
             } catch (Exception e) {
                 log.error("处理视频失败，视频地址：{}，错误信息：{}", originalFile.getAbsolutePath(), e.getMessage());
-                countDownLatch.countDown();
                 throw new MinioException(MINIO_PROCESS_VIDEO_ERROR);
             }
 
             // 转换成功，上传到MinIO
             // 设置默认状态为失败
-            status = TASK_STATUS_FAILED;
+            String status = TASK_STATUS_FAILED;
             String url = null;
-            if (CONVERT_RESULT_SUCCESS.equals(result)) {
+            String playlistUrl = null;
+            String hlsErrorMsg = null;
+            String errorMsg = result.getMessage();
+            if (Boolean.TRUE.equals(result.getSuccess())) {
                 // 根据文件md5，生成objectName
                 String objectName = fileInfoService.getFilePathByMd5(fileId, TEMP_FILE_SUFFIX_MP4);
                 try {
@@ -134,14 +297,41 @@ public class VideoTask {
                 status = TASK_STATUS_PROCESSED;
                 // 拼接url，准备更新数据
                 url = SLASH_SEPARATOR + bucket + SLASH_SEPARATOR + objectName;
+
+                // 将各档位切片为多码率HLS，打包失败不影响mp4的处理结果，失败原因单独记录
+                if (renditionDir != null) {
+                    try {
+                        playlistUrl = hlsPackagingStage.packageHls(fileProcess, renditionDir, Boolean.TRUE.equals(result.getAudio()),
+                                transcodeTimeoutMinutes, TimeUnit.MINUTES);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        log.warn("HLS打包被取消，任务信息：{}", fileProcess);
+                        fileProcessService.releaseLease(fileProcess.getId(), leaseOwner);
+                        return;
+                    } catch (MinioException e) {
+                        log.warn("HLS打包失败，仅提供mp4，任务信息：{}", fileProcess);
+                        hlsErrorMsg = e.getResultCode().getMessage();
+                    }
+                }
             }
-            // 记录任务处理结果url
-            fileProcessHistoryService.saveProcessFinishStatus(fileProcess.getId(), status, fileId, url, result);
+            // 记录任务处理结果url，与同一时间完成的其他任务合并写入
+            try {
+                processFinishBatchWriter.submit(new ProcessFinishDTO(fileProcess.getId(), status, fileId, url, playlistUrl, errorMsg,
+                                hlsErrorMsg, leaseOwner))
+                        .get(FINISH_WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.error("等待记录任务处理结果时被中断，租约到期后将重新处理，任务信息：{}", fileProcess);
+            } catch (ExecutionException | TimeoutException e) {
+                log.error("记录任务处理结果失败，租约到期后将重新处理，任务信息：{}", fileProcess);
+            }
+        } finally {
             // 删除临时文件
-            countDownLatch.countDown();
-        }));
-
-        // 等待，为了防止无线等待，这里设置一个超时时间为30分钟（很充裕了），若到时间还未处理完，则结束任务
-        countDownLatch.await(AWAIT_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+            originalFile.delete();
+            mp4File.delete();
+            if (renditionDir != null) {
+                FileUtil.del(renditionDir);
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,30 @@
+package space.atnibam.minio.service.jobhandler;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * @ClassName: VideoTaskCreatedEvent
+ * @Description: 视频处理任务写入待处理表后发布的事件，用于立即调度转码，不必等待下一次定时调度
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-26 10:05
+ **/
+@Getter
+public class VideoTaskCreatedEvent extends ApplicationEvent {
+
+    /**
+     * 新写入的任务ID
+     */
+    private final Long taskId;
+
+    /**
+     * 构造方法
+     *
+     * @param source 事件源
+     * @param taskId 新写入的任务ID
+     */
+    public VideoTaskCreatedEvent(Object source, Long taskId) {
+        super(source);
+        this.taskId = taskId;
+    }
+}
@@ -0,0 +1,159 @@
+package space.atnibam.minio.service.jobhandler;
+
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import cn.hutool.core.util.IdUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.stream.StreamMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static space.atnibam.minio.constant.VideoTaskConstants.*;
+
+/**
+ * @ClassName: VideoTaskDispatcher
+ * @Description: 视频任务事件分发器，新任务写入后立即唤醒转码执行器领取，本节点繁忙时通过Redis Stream通知其他节点
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-26 10:12
+ **/
+@Slf4j
+@Component
+public class VideoTaskDispatcher {
+
+    @Resource
+    private VideoTask videoTask;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedisConnectionFactory redisConnectionFactory;
+
+    /**
+     * 是否通过Redis Stream在节点之间分发新任务
+     */
+    @Value("${video.dispatch.stream-enabled:true}")
+    private boolean streamEnabled;
+
+    /**
+     * 当前节点的标识，用于忽略自己发送的Stream消息
+     */
+    private final String nodeId = IdUtil.fastSimpleUUID();
+
+    /**
+     * 待处理的唤醒信号，多个信号在一次领取中合并处理
+     */
+    private final BlockingQueue<Long> signals = new LinkedBlockingQueue<>();
+
+    private ExecutorService dispatchExecutor;
+
+    private StreamMessageListenerContainer<String, MapRecord<String, String, String>> streamContainer;
+
+    /**
+     * 启动本地分发线程和Redis Stream监听
+     */
+    @PostConstruct
+    public void start() {
+        dispatchExecutor = Executors.newSingleThreadExecutor(
+                ThreadFactoryBuilder.create().setNamePrefix("video-dispatch-").setDaemon(true).build());
+        dispatchExecutor.execute(this::dispatchLoop);
+
+        if (streamEnabled) {
+            streamContainer = StreamMessageListenerContainer.create(redisConnectionFactory,
+                    StreamMessageListenerContainer.StreamMessageListenerContainerOptions.builder()
+                            .pollTimeout(Duration.ofSeconds(STREAM_POLL_TIMEOUT_SECONDS))
+                            .build());
+            // Redis暂时不可用时不取消监听，恢复后继续接收
+            streamContainer.register(StreamMessageListenerContainer.StreamReadRequest
+                    .builder(StreamOffset.latest(VIDEO_TASK_STREAM_KEY))
+                    .cancelOnError(e -> false)
+                    .errorHandler(e -> log.warn("读取视频任务Redis Stream失败：{}", e.getMessage()))
+                    .build(), this::onStreamMessage);
+            streamContainer.start();
+        }
+    }
+
+    /**
+     * 停止本地分发线程和Redis Stream监听
+     */
+    @PreDestroy
+    public void stop() {
+        if (streamContainer != null) {
+            streamContainer.stop();
+        }
+        dispatchExecutor.shutdownNow();
+    }
+
+    /**
+     * 新任务写入后触发.
+     * 本节点有空闲转码线程时放入本地队列立即领取，否则通过Redis Stream通知其他节点；
+     * 写入任务的事务提交后才触发，保证领取时能查询到该任务
+     *
+     * @param event 任务写入事件
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onVideoTaskCreated(VideoTaskCreatedEvent event) {
+        if (videoTask.hasIdleWorker() || !streamEnabled) {
+            signals.offer(event.getTaskId());
+            return;
+        }
+
+        try {
+            Map<String, String> message = new HashMap<>(2);
+            message.put(STREAM_FIELD_NODE, nodeId);
+            message.put(STREAM_FIELD_TASK_ID, String.valueOf(event.getTaskId()));
+            stringRedisTemplate.opsForStream().add(StreamRecords.newRecord().in(VIDEO_TASK_STREAM_KEY).ofMap(message));
+            stringRedisTemplate.opsForStream().trim(VIDEO_TASK_STREAM_KEY, VIDEO_TASK_STREAM_MAX_LEN, true);
+        } catch (Exception e) {
+            // 通知失败时任务由定时调度兜底
+            log.warn("发布视频任务到Redis Stream失败，任务ID：{}，错误信息：{}", event.getTaskId(), e.getMessage());
+        }
+    }
+
+    /**
+     * 收到其他节点发布的新任务，本节点有空闲转码线程时尝试领取，未领取到说明已被其他节点领取
+     *
+     * @param message Stream消息
+     */
+    private void onStreamMessage(MapRecord<String, String, String> message) {
+        Map<String, String> value = message.getValue();
+        if (nodeId.equals(value.get(STREAM_FIELD_NODE)) || !videoTask.hasIdleWorker()) {
+            return;
+        }
+        signals.offer(Long.valueOf(value.get(STREAM_FIELD_TASK_ID)));
+    }
+
+    /**
+     * 消费唤醒信号，积压的多个信号只触发一次领取
+     */
+    private void dispatchLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                signals.take();
+                signals.clear();
+                videoTask.dispatch();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                // 领取失败的任务由定时调度兜底
+                log.error("事件触发领取视频任务失败：{}", e.getMessage());
+            }
+        }
+    }
+}
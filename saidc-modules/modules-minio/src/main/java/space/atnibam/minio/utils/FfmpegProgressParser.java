@@ -0,0 +1,179 @@
+package space.atnibam.minio.utils;
+
+import space.atnibam.minio.model.dto.TranscodeProgressDTO;
+
+import java.math.BigDecimal;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static space.atnibam.minio.constant.VideoUtilConstants.*;
+
+/**
+ * @ClassName: FfmpegProgressParser
+ * @Description: 解析ffmpeg转码过程中的输出，从日志中取得源视频时长，从-progress输出中取得编码进度
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-25 14:35
+ **/
+public class FfmpegProgressParser implements Predicate<String> {
+
+    private static final Pattern DURATION = Pattern.compile(DURATION_PATTERN);
+
+    private static final Pattern PROGRESS_LINE = Pattern.compile(PROGRESS_LINE_PATTERN);
+
+    private static final Pattern INPUT_AUDIO_STREAM = Pattern.compile(INPUT_AUDIO_STREAM_PATTERN);
+
+    /**
+     * 每组进度解析完成后的回调，可以为null
+     */
+    private final Consumer<TranscodeProgressDTO> progressListener;
+
+    private Long sourceDurationMillis;
+
+    private Long encodedMillis;
+
+    private Double fps;
+
+    private String bitrate;
+
+    private String speed;
+
+    private boolean finished;
+
+    /**
+     * 是否已读到输出文件信息，之后的日志不再属于输入文件
+     */
+    private boolean outputSection;
+
+    private boolean audio;
+
+    /**
+     * 构造方法
+     *
+     * @param progressListener 每组进度解析完成后的回调，可以为null
+     */
+    public FfmpegProgressParser(Consumer<TranscodeProgressDTO> progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * 解析一行输出
+     *
+     * @param line ffmpeg输出的一行
+     * @return 是否为-progress输出，是则不需要保留到日志中
+     */
+    @Override
+    public boolean test(String line) {
+        Matcher progressMatcher = PROGRESS_LINE.matcher(line);
+        if (progressMatcher.matches()) {
+            onProgress(progressMatcher.group(1), progressMatcher.group(2));
+            return true;
+        }
+
+        if (outputSection) {
+            return false;
+        }
+        if (line.startsWith(OUTPUT_SECTION_MARKER)) {
+            outputSection = true;
+            return false;
+        }
+        if (!audio && INPUT_AUDIO_STREAM.matcher(line).find()) {
+            audio = true;
+        }
+
+        // 只取第一个Duration，即输入文件的时长
+        if (sourceDurationMillis == null) {
+            Matcher durationMatcher = DURATION.matcher(line);
+            if (durationMatcher.find()) {
+                sourceDurationMillis = (Long.parseLong(durationMatcher.group(1)) * 3600
+                        + Long.parseLong(durationMatcher.group(2)) * 60) * 1000
+                        + new BigDecimal(durationMatcher.group(3)).movePointRight(3).longValue();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 处理一个-progress字段，每组进度以progress字段结束
+     *
+     * @param key   字段名
+     * @param value 字段值
+     */
+    private void onProgress(String key, String value) {
+        switch (key) {
+            case PROGRESS_OUT_TIME_US:
+            case PROGRESS_OUT_TIME_MS:
+                if (isNumber(value)) {
+                    encodedMillis = Long.parseLong(value) / 1000;
+                }
+                break;
+            case PROGRESS_FPS:
+                if (isNumber(value)) {
+                    fps = Double.parseDouble(value);
+                }
+                break;
+            case PROGRESS_BITRATE:
+                bitrate = value;
+                break;
+            case PROGRESS_SPEED:
+                speed = value;
+                break;
+            case PROGRESS_STATE:
+                finished = PROGRESS_STATE_END.equals(value);
+                if (progressListener != null) {
+                    progressListener.accept(getProgress());
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * 获取当前进度
+     *
+     * @return 当前进度
+     */
+    public TranscodeProgressDTO getProgress() {
+        TranscodeProgressDTO progress = new TranscodeProgressDTO();
+        progress.setSourceDurationMillis(sourceDurationMillis);
+        progress.setEncodedMillis(encodedMillis);
+        if (sourceDurationMillis != null && sourceDurationMillis > 0 && encodedMillis != null) {
+            progress.setPercent((int) Math.min(100, encodedMillis * 100 / sourceDurationMillis));
+        }
+        progress.setFps(fps);
+        progress.setBitrate(bitrate);
+        progress.setSpeed(speed);
+        progress.setFinished(finished);
+        return progress;
+    }
+
+    /**
+     * 编码是否已正常结束
+     *
+     * @return 是否已输出progress=end
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * 输入文件是否包含音频流
+     *
+     * @return 是否包含音频流
+     */
+    public boolean hasAudio() {
+        return audio;
+    }
+
+    /**
+     * 判断字段值是否为数字，ffmpeg在没有数据时会输出N/A
+     *
+     * @param value 字段值
+     * @return 是否为数字
+     */
+    private static boolean isNumber(String value) {
+        return !value.isEmpty() && value.matches("-?\\d+(\\.\\d+)?");
+    }
+}
@@ -1,10 +1,19 @@
 package space.atnibam.minio.utils;
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import space.atnibam.minio.model.dto.TranscodeProgressDTO;
+import space.atnibam.minio.model.dto.TranscodeResultDTO;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+import static space.atnibam.minio.constant.VideoUtilConstants.DURATION_TOLERANCE_MILLIS;
 
 /**
  * @ClassName: Mp4VideoUtil
@@ -12,6 +21,7 @@ import java.util.List;
  * @Author: atnibamaitay
  * @CreateTime: 2023-10-22 22:43
  **/
+@Slf4j
 public class Mp4VideoUtil {
 
     @Value("${ffmpeg.path}")
@@ -20,11 +30,19 @@ public class Mp4VideoUtil {
     /**
      * 使用ffmpeg进行视频编码，生成mp4文件
      *
-     * @param videoPath     待转换视频的路径
-     * @param mp4folderPath 转换后的mp4文件的存放路径
-     * @return 返回字符串。如果转换成功，返回"success"，失败则返回控制台日志
+     * @param videoPath        待转换视频的路径
+     * @param mp4folderPath    转换后的mp4文件的存放路径
+     * @param threads          ffmpeg使用的线程数
+     * @param timeout          转码超时时间，超时后结束ffmpeg进程
+     * @param unit             超时时间单位
+     * @param progressListener 转码进度回调，ffmpeg每输出一组进度调用一次，可以为null
+     * @param extraOutputArgs  追加的其他输出文件及其参数，与mp4在同一个ffmpeg进程中编码，源视频只解码一次
+     * @return 转码结果，失败时message为原因或ffmpeg日志
+     * @throws InterruptedException 等待转码的线程被中断，此时ffmpeg进程已被结束
      */
-    public static String generateMp4(String videoPath, String mp4folderPath) {
+    public static TranscodeResultDTO generateMp4(String videoPath, String mp4folderPath, int threads, long timeout, TimeUnit unit,
+                                                 Consumer<TranscodeProgressDTO> progressListener,
+                                                 List<String> extraOutputArgs) throws InterruptedException {
         // 清除已生成的mp4
         clearMp4(mp4folderPath);
 
@@ -46,26 +64,59 @@ public class Mp4VideoUtil {
         commend.add("753k");
         commend.add("-r");
         commend.add("18");
+        // 限制ffmpeg的线程数，与转码线程池的并发数共同决定CPU占用
+        commend.add("-threads");
+        commend.add(String.valueOf(threads));
+        // 输出机器可读的进度到标准输出，并关闭默认的进度日志
+        commend.add("-progress");
+        commend.add("pipe:1");
+        commend.add("-nostats");
         commend.add(mp4folderPath);
+        commend.addAll(extraOutputArgs);
+
+        TranscodeResultDTO result = new TranscodeResultDTO();
+        result.setSuccess(false);
 
-        String outstring = null;
+        FfmpegProgressParser parser = new FfmpegProgressParser(progressListener);
+        ProcessRunner.ProcessResult processResult;
         try {
-            ProcessBuilder builder = new ProcessBuilder();
-            builder.command(commend);
-            // 将标准输入流和错误输入流合并，通过标准输入流程读取信息
-            builder.redirectErrorStream(true);
-            Process p = builder.start();
-            outstring = VideoUtil.waitFor(p);
-        } catch (Exception ex) {
-            ex.printStackTrace();
+            processResult = ProcessRunner.await(ProcessRunner.start(commend, timeout, unit, parser));
+        } catch (TimeoutException ex) {
+            log.error("视频转码超时，视频地址：{}", videoPath);
+            result.setMessage("视频转码超时");
+            return result;
+        } catch (IOException ex) {
+            log.error("视频转码失败，视频地址：{}，错误信息：{}", videoPath, ex.getMessage());
+            result.setMessage(ex.getMessage());
+            return result;
         }
 
-        Boolean checkVideoTime = VideoUtil.checkVideoTime(videoPath, mp4folderPath);
-        if (!checkVideoTime) {
-            return outstring;
+        // 转码前后的时长均来自转码过程中的输出，不需要再启动ffmpeg获取
+        TranscodeProgressDTO progress = parser.getProgress();
+        result.setSourceDurationMillis(progress.getSourceDurationMillis());
+        result.setEncodedDurationMillis(progress.getEncodedMillis());
+        result.setFps(progress.getFps());
+        result.setBitrate(progress.getBitrate());
+        result.setAudio(parser.hasAudio());
+
+        if (processResult.getExitValue() == 0 && parser.isFinished() && isSameDuration(progress)) {
+            result.setSuccess(true);
         } else {
-            return "success";
+            result.setMessage(processResult.getOutput());
         }
+        return result;
+    }
+
+    /**
+     * 校验转码前后的时长是否一致
+     *
+     * @param progress 转码结束时的进度
+     * @return 时长相差不超过允许误差时返回true
+     */
+    private static boolean isSameDuration(TranscodeProgressDTO progress) {
+        Long source = progress.getSourceDurationMillis();
+        Long encoded = progress.getEncodedMillis();
+        return source != null && encoded != null && Math.abs(source - encoded) <= DURATION_TOLERANCE_MILLIS;
     }
 
     /**
@@ -0,0 +1,214 @@
+package space.atnibam.minio.utils;
+
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+
+import static space.atnibam.minio.constant.VideoUtilConstants.OUTPUT_BUFFER_LINES;
+
+/**
+ * @ClassName: ProcessRunner
+ * @Description: 外部进程执行工具类，在线程池中读取进程输出、等待进程退出，进程退出时完成Future，支持超时和取消
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-25 10:36
+ **/
+public class ProcessRunner {
+
+    /**
+     * 读取进程输出、等待进程退出的线程池，线程在进程结束后归还
+     */
+    private static final ExecutorService PROCESS_EXECUTOR = Executors.newCachedThreadPool(
+            ThreadFactoryBuilder.create().setNamePrefix("process-runner-").setDaemon(true).build());
+
+    /**
+     * 启动进程，标准输出和错误输出合并后保留最后若干行.
+     * 超时或取消返回的Future时会强制结束进程
+     *
+     * @param command 命令及参数
+     * @param timeout 超时时间，小于等于0表示不限制
+     * @param unit    超时时间单位
+     * @return 进程执行结果
+     * @throws IOException 启动进程失败
+     */
+    public static CompletableFuture<ProcessResult> start(List<String> command, long timeout, TimeUnit unit) throws IOException {
+        return start(command, timeout, unit, null);
+    }
+
+    /**
+     * 启动进程，标准输出和错误输出合并，每读到一行先交给lineHandler处理，未被处理的行保留最后若干行.
+     * 超时或取消返回的Future时会强制结束进程
+     *
+     * @param command     命令及参数
+     * @param timeout     超时时间，小于等于0表示不限制
+     * @param unit        超时时间单位
+     * @param lineHandler 输出行处理，返回true表示该行已处理、不再保留，可以为null
+     * @return 进程执行结果
+     * @throws IOException 启动进程失败
+     */
+    public static CompletableFuture<ProcessResult> start(List<String> command, long timeout, TimeUnit unit,
+                                                         Predicate<String> lineHandler) throws IOException {
+        ProcessBuilder builder = new ProcessBuilder(command);
+        // 将标准输出和错误输出合并，只需要读取一个流
+        builder.redirectErrorStream(true);
+        Process process = builder.start();
+        // 进程不需要输入，直接关闭
+        process.getOutputStream().close();
+
+        OutputRingBuffer output = new OutputRingBuffer(OUTPUT_BUFFER_LINES);
+        CompletableFuture<Void> drained = CompletableFuture.runAsync(
+                () -> drain(process.getInputStream(), output, lineHandler), PROCESS_EXECUTOR);
+
+        // 进程退出且输出读取完毕后完成
+        CompletableFuture<ProcessResult> result = CompletableFuture.supplyAsync(
+                () -> waitFor(process, drained, output, timeout, unit), PROCESS_EXECUTOR);
+        // 超时、取消或读取输出失败时结束进程，正常退出时此调用无影响；取消时等待线程也会随进程结束而返回
+        result.whenComplete((r, e) -> {
+            if (e != null) {
+                process.destroyForcibly();
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 在线程池中等待进程退出和输出读取完毕
+     *
+     * @param process 进程
+     * @param drained 输出读取任务
+     * @param output  保存输出的环形缓冲区
+     * @param timeout 超时时间，小于等于0表示不限制
+     * @param unit    超时时间单位
+     * @return 进程执行结果
+     */
+    private static ProcessResult waitFor(Process process, CompletableFuture<Void> drained, OutputRingBuffer output,
+                                         long timeout, TimeUnit unit) {
+        try {
+            if (timeout <= 0) {
+                process.waitFor();
+            } else if (!process.waitFor(timeout, unit)) {
+                throw new CompletionException(new TimeoutException("进程执行超时"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+        // 进程退出后输出流随之结束，读取失败时抛出的异常原样传递
+        drained.join();
+        return new ProcessResult(process.exitValue(), output.toString());
+    }
+
+    /**
+     * 等待进程执行完成.
+     * 等待线程被中断时取消进程
+     *
+     * @param future start返回的Future
+     * @return 进程执行结果
+     * @throws TimeoutException     进程执行超时
+     * @throws InterruptedException 等待线程被中断
+     * @throws IOException          读取进程输出失败
+     */
+    public static ProcessResult await(CompletableFuture<ProcessResult> future)
+            throws TimeoutException, InterruptedException, IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof TimeoutException) {
+                throw (TimeoutException) cause;
+            }
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            throw new IOException(cause);
+        } catch (CancellationException e) {
+            throw new InterruptedException("进程已被取消");
+        }
+    }
+
+    /**
+     * 按行读取进程输出直到流结束
+     *
+     * @param in          进程输出流
+     * @param output      保存输出的环形缓冲区
+     * @param lineHandler 输出行处理，可以为null
+     */
+    private static void drain(InputStream in, OutputRingBuffer output, Predicate<String> lineHandler) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (lineHandler == null || !lineHandler.test(line)) {
+                    output.add(line);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 进程执行结果
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class ProcessResult {
+
+        /**
+         * 进程退出值
+         */
+        private final int exitValue;
+
+        /**
+         * 进程最后若干行输出
+         */
+        private final String output;
+    }
+
+    /**
+     * 只保留最后若干行的输出缓冲区，避免长时间运行的进程占用过多内存
+     */
+    private static class OutputRingBuffer {
+
+        private final int capacity;
+
+        private final Deque<String> lines;
+
+        OutputRingBuffer(int capacity) {
+            this.capacity = capacity;
+            this.lines = new ArrayDeque<>(capacity);
+        }
+
+        synchronized void add(String line) {
+            if (lines.size() == capacity) {
+                lines.pollFirst();
+            }
+            lines.addLast(line);
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.join(System.lineSeparator(), lines);
+        }
+    }
+}
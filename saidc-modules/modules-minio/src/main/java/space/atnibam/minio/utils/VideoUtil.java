@@ -1,11 +1,11 @@
 package space.atnibam.minio.utils;
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 
-import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static space.atnibam.minio.constant.VideoUtilConstants.*;
 
@@ -15,10 +15,9 @@ import static space.atnibam.minio.constant.VideoUtilConstants.*;
  * @Author: AtnibamAitay
  * @CreateTime: 2023-10-22 22:43
  **/
+@Slf4j
 public class VideoUtil {
 
-
-
     @Value("${ffmpeg.path}")
     private static String ffmpegPath;
 
@@ -31,17 +30,17 @@ public class VideoUtil {
      */
     public static Boolean checkVideoTime(String source, String target) {
         String sourceTime = getVideoTime(source);
-        // 取出时分秒
-        sourceTime = sourceTime.substring(0, sourceTime.lastIndexOf(LAST_CHAR_POSITION));
         String targetTime = getVideoTime(target);
-        // 取出时分秒
-        targetTime = targetTime.substring(0, targetTime.lastIndexOf(LAST_CHAR_POSITION));
 
         // 判断获取到的时间是否为空
         if (sourceTime == null || targetTime == null) {
             return false;
         }
 
+        // 取出时分秒
+        sourceTime = sourceTime.substring(0, sourceTime.lastIndexOf(LAST_CHAR_POSITION));
+        targetTime = targetTime.substring(0, targetTime.lastIndexOf(LAST_CHAR_POSITION));
+
         // 判断两个时间是否相等
         return sourceTime.equals(targetTime);
     }
@@ -63,17 +62,9 @@ public class VideoUtil {
         commend.add(videoPath);
 
         try {
-            // 创建一个新的进程生成器
-            ProcessBuilder builder = new ProcessBuilder();
-            // 设置此进程生成器的操作系统程序和参数
-            builder.command(commend);
-            // 将标准输入流和错误输入流合并，通过这样做可以通过标准输入流读取信息
-            builder.redirectErrorStream(true);
-            // 启动一个新进程，并使用此进程生成器的属性
-            Process p = builder.start();
-            // 等待由此Process对象表示的进程完成，返回该进程的输出信息
-            String outString = waitFor(p);
-            System.out.println(outString);
+            // 启动进程并等待进程完成，获取该进程的输出信息
+            String outString = ProcessRunner.await(
+                    ProcessRunner.start(commend, PROBE_TIMEOUT_SECONDS, TimeUnit.SECONDS)).getOutput();
 
             // 在ffmpeg的输出信息中找到"Duration: "字段的位置
             int start = outString.trim().indexOf(DURATION_MARKER);
@@ -90,83 +81,13 @@ public class VideoUtil {
                 }
             }
 
+        } catch (InterruptedException ex) {
+            // 保留中断状态，由调用方处理
+            Thread.currentThread().interrupt();
         } catch (Exception ex) {
-            // 输出异常信息到错误输出流
-            ex.printStackTrace();
-
+            log.error("获取视频时长失败，视频地址：{}，错误信息：{}", videoPath, ex.getMessage());
         }
         // 如果在过程中有任何异常发生，将返回null
         return null;
     }
-
-    /**
-     * 等待进程执行完成，并获取执行结果
-     *
-     * @param p 执行的进程
-     * @return 执行结果
-     */
-    public static String waitFor(Process p) {
-        // 初始化输入流为null
-        InputStream in = null;
-        // 默认退出值为-1
-        int exitValue = DEFAULT_EXIT_VALUE;
-        // 初始化输出字符串缓冲区
-        StringBuilder outputString = new StringBuilder();
-
-        try {
-            // 获取进程的输入流
-            in = p.getInputStream();
-            // 设置完成标志位为false
-            boolean finished = false;
-            // 设定最大重试次数为600，每次休眠1秒，最长执行时间10分钟
-            // 当前已重试次数为0
-            int retry = 0;
-
-            // 进程未完成时持续循环
-            while (!finished) {
-                // 若当前已重试次数超过最大重试次数，则返回"error"
-                if (retry > MAX_RETRY) {
-                    return DEFAULT_RESULT;
-                }
-                try {
-                    // 当输入流可读取的数据量大于0时，持续从输入流中读取数据
-                    while (in.available() > 0) {
-                        Character c = new Character((char) in.read());
-                        // 将读取到的字符添加至输出字符串缓冲区中
-                        outputString.append(c);
-                        // 打印读取到的字符
-                        System.out.print(c);
-                    }
-                    // 尝试获取进程的退出值，若进程未结束，此调用会抛出IllegalThreadStateException异常
-                    exitValue = p.exitValue();
-                    // 若没有抛出异常，说明进程已结束，设置完成标志位为true
-                    finished = true;
-
-                } catch (IllegalThreadStateException e) {
-                    // 进程未结束时，暂停1秒后再次尝试
-                    Thread.sleep(1000);
-                    // 已重试次数增加1
-                    retry++;
-                }
-            }
-
-        } catch (Exception e) {
-            // 打印异常堆栈信息
-            e.printStackTrace();
-
-        } finally {
-            // 确保输入流在使用完毕后被正确关闭
-            if (in != null) {
-                try {
-                    in.close();
-                } catch (IOException e) {
-                    // 输出关闭输入流时发生的异常信息
-                    System.out.println(e.getMessage());
-                }
-            }
-        }
-        // 返回从输入流中读取到的字符串
-        return outputString.toString();
-    }
-
-}
\ No newline at end of file
+}
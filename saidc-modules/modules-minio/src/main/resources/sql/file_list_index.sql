@@ -0,0 +1,4 @@
+-- 按用户分页查询文件：WHERE user_id = ? 按 (create_date, id) 键集分页，只查询索引列即可定位一页，再按主键回表
+CREATE INDEX idx_file_info_user_create ON file_info (user_id, create_date, id);
+-- 按状态分页查询待处理任务：WHERE status = ? 按 id 键集分页
+CREATE INDEX idx_file_process_status_id ON file_process (status, id);
@@ -0,0 +1,5 @@
+-- 视频转码后额外生成HLS多码率切片，记录主播放列表访问地址
+ALTER TABLE file_process ADD COLUMN playlist_url VARCHAR(512) NULL COMMENT 'HLS主播放列表访问地址' AFTER url;
+ALTER TABLE file_process_history ADD COLUMN playlist_url VARCHAR(512) NULL COMMENT 'HLS主播放列表访问地址' AFTER url;
+-- HLS打包失败不影响mp4的处理结果，失败原因单独记录
+ALTER TABLE file_process_history ADD COLUMN hls_error_msg VARCHAR(512) NULL COMMENT 'HLS打包失败原因' AFTER error_msg;
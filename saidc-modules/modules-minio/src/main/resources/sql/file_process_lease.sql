@@ -0,0 +1,7 @@
+-- 视频处理任务改为按租约领取：status增加 4处理中，记录租约持有者和租约到期时间
+ALTER TABLE file_process ADD COLUMN lease_owner VARCHAR(64) NULL COMMENT '租约持有者' AFTER status;
+ALTER TABLE file_process ADD COLUMN lease_expire_time DATETIME NULL COMMENT '租约到期时间' AFTER lease_owner;
+-- 领取任务时按状态和租约到期时间查找，避免全表扫描
+CREATE INDEX idx_file_process_status_lease ON file_process (status, lease_expire_time);
+-- 记录领取次数，租约多次到期仍未完成的任务记为处理失败，不再重新领取
+ALTER TABLE file_process ADD COLUMN attempts INT NOT NULL DEFAULT 0 COMMENT '领取次数' AFTER lease_expire_time;
@@ -0,0 +1,52 @@
+package space.atnibam.minio.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @ClassName: ThreadPoolConfigTest
+ * @Description: 线程池配置测试，校验视频转码线程池的并发数计算和有界队列
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-29 16:45
+ **/
+class ThreadPoolConfigTest {
+
+    /**
+     * 未配置并发数时按CPU核心数和每个ffmpeg进程的线程数计算，至少为1
+     */
+    @Test
+    void derivesTranscodeConcurrencyFromCores() {
+        int ffmpegThreads = 2;
+        ThreadPoolConfig config = new ThreadPoolConfig();
+        ReflectionTestUtils.setField(config, "transcodeConcurrency", 0);
+        ReflectionTestUtils.setField(config, "ffmpegThreads", ffmpegThreads);
+
+        ThreadPoolTaskExecutor executor = config.videoTranscodeExecutor();
+
+        int expected = Math.max(1, Runtime.getRuntime().availableProcessors() / ffmpegThreads);
+        assertThat(executor.getCorePoolSize()).isEqualTo(expected);
+        assertThat(executor.getMaxPoolSize()).isEqualTo(expected);
+    }
+
+    /**
+     * 配置了并发数时直接使用，队列容量与并发数相同，不会无限堆积任务
+     */
+    @Test
+    void usesConfiguredConcurrencyWithBoundedQueue() {
+        ThreadPoolConfig config = new ThreadPoolConfig();
+        ReflectionTestUtils.setField(config, "transcodeConcurrency", 3);
+        ReflectionTestUtils.setField(config, "ffmpegThreads", 1);
+
+        ThreadPoolTaskExecutor executor = config.videoTranscodeExecutor();
+        executor.initialize();
+        try {
+            assertThat(executor.getMaxPoolSize()).isEqualTo(3);
+            assertThat(executor.getThreadPoolExecutor().getQueue().remainingCapacity()).isEqualTo(3);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package space.atnibam.minio.mapper;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.MybatisSqlSessionFactoryBuilder;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import space.atnibam.minio.model.dto.ProcessFinishDTO;
+import space.atnibam.minio.model.entity.FileProcess;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @ClassName: FileProcessMapperTest
+ * @Description: 任务租约相关SQL测试，使用MySQL兼容模式的H2内存数据库执行映射接口中的语句
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-29 18:10
+ **/
+class FileProcessMapperTest {
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    private static final long LEASE_SECONDS = 60L;
+
+    private JdbcDataSource dataSource;
+
+    private SqlSessionFactory sqlSessionFactory;
+
+    private SqlSession session;
+
+    private FileProcessMapper mapper;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:file_process;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=100");
+        execute("DROP TABLE IF EXISTS file_process",
+                "CREATE TABLE file_process (id BIGINT AUTO_INCREMENT PRIMARY KEY, file_id VARCHAR(120), "
+                        + "file_name VARCHAR(255), bucket VARCHAR(128), file_path VARCHAR(512), status VARCHAR(12), "
+                        + "lease_owner VARCHAR(64), lease_expire_time DATETIME, attempts INT NOT NULL DEFAULT 0, "
+                        + "create_date DATETIME, finish_date DATETIME, url VARCHAR(1024), playlist_url VARCHAR(512), "
+                        + "error_msg VARCHAR(1024))");
+
+        MybatisConfiguration configuration = new MybatisConfiguration(
+                new Environment("test", new JdbcTransactionFactory(), dataSource));
+        configuration.setMapUnderscoreToCamelCase(true);
+        configuration.addMapper(FileProcessMapper.class);
+        sqlSessionFactory = new MybatisSqlSessionFactoryBuilder().build(configuration);
+        session = sqlSessionFactory.openSession(true);
+        mapper = session.getMapper(FileProcessMapper.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        session.close();
+    }
+
+    /**
+     * 领取未处理的任务和租约已过期的处理中任务，租约未过期的任务不领取；领取后记录租约并累加领取次数
+     */
+    @Test
+    void claimsPendingAndExpiredTasks() throws SQLException {
+        long pending = insert("1", null, null, 0);
+        long expired = insert("4", "other", -10, 1);
+        insert("4", "other", 60, 1);
+        insert("2", null, null, 1);
+
+        List<Long> ids = mapper.selectClaimableIdsForUpdate(10, MAX_ATTEMPTS);
+        assertThat(ids).containsExactly(pending, expired);
+
+        assertThat(mapper.claimByIds(ids, "me", LEASE_SECONDS)).isEqualTo(2);
+        FileProcess claimed = mapper.selectById(expired);
+        assertThat(claimed.getStatus()).isEqualTo("4");
+        assertThat(claimed.getLeaseOwner()).isEqualTo("me");
+        assertThat(claimed.getAttempts()).isEqualTo(2);
+        assertThat(claimed.getLeaseExpireTime()).isAfter(LocalDateTime.now().plusSeconds(LEASE_SECONDS - 10));
+        assertThat(mapper.selectClaimableIdsForUpdate(10, MAX_ATTEMPTS)).isEmpty();
+    }
+
+    /**
+     * 领取次数达到上限且租约已过期的任务不再领取，记为处理失败
+     */
+    @Test
+    void failsTasksThatExhaustedAttempts() throws SQLException {
+        long poison = insert("4", "crashed", -10, MAX_ATTEMPTS);
+        long running = insert("4", "other", 60, MAX_ATTEMPTS);
+
+        assertThat(mapper.selectClaimableIdsForUpdate(10, MAX_ATTEMPTS)).isEmpty();
+        assertThat(mapper.failExhausted(MAX_ATTEMPTS, "处理次数达到上限")).isEqualTo(1);
+
+        FileProcess failed = mapper.selectById(poison);
+        assertThat(failed.getStatus()).isEqualTo("3");
+        assertThat(failed.getErrorMsg()).isEqualTo("处理次数达到上限");
+        assertThat(failed.getLeaseOwner()).isNull();
+        assertThat(failed.getFinishDate()).isNotNull();
+        // 租约未过期的任务仍在处理，不受影响
+        assertThat(mapper.selectById(running).getStatus()).isEqualTo("4");
+    }
+
+    /**
+     * 只续期仍由该持有者持有的处理中任务
+     */
+    @Test
+    void renewsOnlyOwnLeases() throws SQLException {
+        long mine = insert("4", "me", 5, 1);
+        long others = insert("4", "other", 5, 1);
+        long finished = insert("3", "me", 5, 1);
+
+        assertThat(mapper.renewLease(Arrays.asList(mine, others, finished), "me", LEASE_SECONDS)).isEqualTo(1);
+        assertThat(mapper.selectById(mine).getLeaseExpireTime()).isAfter(LocalDateTime.now().plusSeconds(LEASE_SECONDS - 10));
+        assertThat(mapper.selectById(others).getLeaseExpireTime()).isBefore(LocalDateTime.now().plusSeconds(10));
+    }
+
+    /**
+     * 释放租约后任务恢复为未处理，本次领取不计入领取次数；其他持有者无法释放
+     */
+    @Test
+    void releasesOwnLeaseWithoutCountingTheAttempt() throws SQLException {
+        long id = insert("1", null, null, 0);
+        mapper.claimByIds(Collections.singletonList(id), "me", LEASE_SECONDS);
+
+        assertThat(mapper.releaseLease(id, "other")).isZero();
+        assertThat(mapper.releaseLease(id, "me")).isEqualTo(1);
+
+        FileProcess released = mapper.selectById(id);
+        assertThat(released.getStatus()).isEqualTo("1");
+        assertThat(released.getLeaseOwner()).isNull();
+        assertThat(released.getAttempts()).isZero();
+    }
+
+    /**
+     * 并发领取时跳过已被其他事务锁定的行，两个执行器不会领取到同一个任务
+     */
+    @Test
+    void concurrentClaimsSkipLockedRows() throws SQLException {
+        long first = insert("1", null, null, 0);
+        long second = insert("1", null, null, 0);
+
+        try (SqlSession a = sqlSessionFactory.openSession(false); SqlSession b = sqlSessionFactory.openSession(false)) {
+            List<Long> claimedByA = a.getMapper(FileProcessMapper.class).selectClaimableIdsForUpdate(1, MAX_ATTEMPTS);
+            List<Long> claimedByB = b.getMapper(FileProcessMapper.class).selectClaimableIdsForUpdate(1, MAX_ATTEMPTS);
+
+            assertThat(claimedByA).containsExactly(first);
+            assertThat(claimedByB).containsExactly(second);
+            a.rollback();
+            b.rollback();
+        }
+    }
+
+    /**
+     * 只锁定、更新、删除租约仍由结果中的持有者持有的处理中任务，已被其他执行器重新领取的任务不受影响
+     */
+    @Test
+    void completionWritesAreFencedByLease() throws SQLException {
+        long failedMine = insert("4", "me", 60, 1);
+        long failedReclaimed = insert("4", "other", 60, 2);
+        long doneMine = insert("4", "me", -10, 1);
+        long doneReclaimed = insert("4", "other", 60, 2);
+
+        List<ProcessFinishDTO> failures = Arrays.asList(finish(failedMine, "转码超时"), finish(failedReclaimed, "转码超时"));
+        List<ProcessFinishDTO> successes = Arrays.asList(finish(doneMine, null), finish(doneReclaimed, null));
+
+        List<ProcessFinishDTO> all = new ArrayList<>(failures);
+        all.addAll(successes);
+        assertThat(mapper.selectLeasedForUpdate(all)).extracting(FileProcess::getId)
+                .containsExactlyInAnyOrder(failedMine, doneMine);
+        assertThat(mapper.updateFailedBatch(failures)).isEqualTo(1);
+        assertThat(mapper.deleteLeasedBatch(successes)).isEqualTo(1);
+
+        FileProcess failed = mapper.selectById(failedMine);
+        assertThat(failed.getStatus()).isEqualTo("3");
+        assertThat(failed.getErrorMsg()).isEqualTo("转码超时");
+        assertThat(mapper.selectById(failedReclaimed).getStatus()).isEqualTo("4");
+        assertThat(mapper.selectById(doneMine)).isNull();
+        assertThat(mapper.selectById(doneReclaimed).getLeaseOwner()).isEqualTo("other");
+    }
+
+    /**
+     * 由持有者me提交的任务结果
+     */
+    private static ProcessFinishDTO finish(long id, String errorMsg) {
+        return new ProcessFinishDTO(id, errorMsg == null ? "2" : "3", "f" + id, null, null, errorMsg, null, "me");
+    }
+
+    /**
+     * 插入一个任务
+     *
+     * @param status             任务状态
+     * @param owner              租约持有者
+     * @param leaseOffsetSeconds 租约到期时间相对当前时间的秒数，为null时没有租约
+     * @param attempts           领取次数
+     * @return 任务ID
+     */
+    private long insert(String status, String owner, Integer leaseOffsetSeconds, int attempts) throws SQLException {
+        String lease = leaseOffsetSeconds == null ? "NULL" : "TIMESTAMPADD(SECOND, " + leaseOffsetSeconds + ", NOW())";
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.executeUpdate("INSERT INTO file_process (status, lease_owner, lease_expire_time, attempts) VALUES ('"
+                    + status + "', " + (owner == null ? "NULL" : "'" + owner + "'") + ", " + lease + ", " + attempts + ")",
+                    Statement.RETURN_GENERATED_KEYS);
+            try (ResultSet keys = statement.getGeneratedKeys()) {
+                keys.next();
+                return keys.getLong(1);
+            }
+        }
+    }
+
+    private void execute(String... sqls) throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            for (String sql : sqls) {
+                statement.execute(sql);
+            }
+        }
+    }
+}
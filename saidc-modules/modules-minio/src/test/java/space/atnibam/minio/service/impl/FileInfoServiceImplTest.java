@@ -0,0 +1,630 @@
+package space.atnibam.minio.service.impl;
+
+import io.minio.*;
+import io.minio.errors.ErrorResponseException;
+import io.minio.messages.Bucket;
+import io.minio.messages.ErrorResponse;
+import io.minio.messages.Item;
+import io.minio.messages.ListMultipartUploadsResult;
+import io.minio.messages.Upload;
+import okhttp3.Headers;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.test.util.ReflectionTestUtils;
+import space.atnibam.common.core.exception.MinioException;
+import space.atnibam.common.redis.service.RedisService;
+import space.atnibam.common.redis.utils.BloomFilterManager;
+import space.atnibam.common.redis.utils.TwoLevelCache;
+import space.atnibam.minio.config.MultipartMinioClient;
+import space.atnibam.minio.mapper.FileInfoMapper;
+import space.atnibam.minio.mapper.FileProcessMapper;
+import space.atnibam.minio.model.dto.ChunkInfoDTO;
+import space.atnibam.minio.model.dto.UploadFileParamsDTO;
+import space.atnibam.minio.model.entity.FileInfo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+import static space.atnibam.common.core.enums.ResultCode.*;
+import static space.atnibam.minio.constant.FileServiceConstants.*;
+
+/**
+ * @ClassName: FileInfoServiceImplTest
+ * @Description: 文件服务的上传、合并与缓存逻辑测试，MinIO、Redis和数据库均使用模拟对象
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-29 10:12
+ **/
+@ExtendWith(MockitoExtension.class)
+class FileInfoServiceImplTest {
+
+    private static final String BUCKET = "video";
+
+    @Mock
+    private FileInfoMapper fileInfoMapper;
+
+    @Mock
+    private FileProcessMapper fileProcessMapper;
+
+    @Mock
+    private MinioClient minioClient;
+
+    @Mock
+    private MultipartMinioClient multipartMinioClient;
+
+    @Mock
+    private RedisService redisService;
+
+    @Mock
+    private BloomFilterManager bloomFilterManager;
+
+    @Mock
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    @Mock
+    private TwoLevelCache<FileInfo> fileInfoCache;
+
+    @InjectMocks
+    private FileInfoServiceImpl fileInfoService;
+
+    private ExecutorService chunkDownloadExecutor;
+
+    @BeforeEach
+    void setUp() {
+        chunkDownloadExecutor = Executors.newFixedThreadPool(2);
+        ReflectionTestUtils.setField(fileInfoService, "chunkDownloadExecutor", chunkDownloadExecutor);
+        ReflectionTestUtils.setField(fileInfoService, "mergeMode", MERGE_MODE_DOWNLOAD);
+        ReflectionTestUtils.setField(fileInfoService, "chunkMode", CHUNK_MODE_OBJECT);
+    }
+
+    @AfterEach
+    void tearDown() {
+        chunkDownloadExecutor.shutdownNow();
+    }
+
+    /**
+     * 上传时边写入边计算MD5，临时对象复制为以MD5命名的正式对象后被删除
+     */
+    @Test
+    void uploadFileStreamsAndRenamesByMd5() throws Exception {
+        byte[] content = "streamed upload content".getBytes(StandardCharsets.UTF_8);
+        String md5 = DigestUtils.md5Hex(content);
+        when(minioClient.putObject(any(PutObjectArgs.class))).thenAnswer(invocation -> {
+            // 模拟MinIO读取完整的输入流
+            drain(invocation.<PutObjectArgs>getArgument(0).stream());
+            return null;
+        });
+        when(fileInfoMapper.insert(any(FileInfo.class))).thenReturn(1);
+
+        String url = fileInfoService.uploadFile(params("a.txt", content.length), new ByteArrayInputStream(content), "docs");
+
+        assertThat(url).isEqualTo("/" + BUCKET + "/docs/" + md5 + ".txt");
+        ArgumentCaptor<CopyObjectArgs> copyCaptor = ArgumentCaptor.forClass(CopyObjectArgs.class);
+        verify(minioClient).copyObject(copyCaptor.capture());
+        assertThat(copyCaptor.getValue().object()).isEqualTo("docs/" + md5 + ".txt");
+        assertThat(copyCaptor.getValue().source().object()).startsWith("docs/").endsWith(UPLOADING_SUFFIX);
+
+        ArgumentCaptor<RemoveObjectArgs> removeCaptor = ArgumentCaptor.forClass(RemoveObjectArgs.class);
+        verify(minioClient).removeObject(removeCaptor.capture());
+        assertThat(removeCaptor.getValue().object()).isEqualTo(copyCaptor.getValue().source().object());
+    }
+
+    /**
+     * 流式写入失败时删除临时对象，不写入数据库
+     */
+    @Test
+    void uploadFileRemovesTemporaryObjectWhenPutFails() throws Exception {
+        when(minioClient.putObject(any(PutObjectArgs.class))).thenThrow(new IOException("connection reset"));
+
+        assertThatThrownBy(() -> fileInfoService.uploadFile(params("a.txt", 3), new ByteArrayInputStream(new byte[3]), "docs"))
+                .isInstanceOf(MinioException.class);
+
+        ArgumentCaptor<RemoveObjectArgs> removeCaptor = ArgumentCaptor.forClass(RemoveObjectArgs.class);
+        verify(minioClient).removeObject(removeCaptor.capture());
+        assertThat(removeCaptor.getValue().object()).endsWith(UPLOADING_SUFFIX);
+        verify(minioClient, never()).copyObject(any());
+        verifyNoInteractions(fileInfoMapper);
+    }
+
+    /**
+     * 入库前直接查询数据库判断文件是否已存在，不经过布隆过滤器和缓存，已存在时不重复插入，并重新加入布隆过滤器
+     */
+    @Test
+    void uploadFileReusesExistingRowFromDatabase() throws Exception {
+        byte[] content = "existing content".getBytes(StandardCharsets.UTF_8);
+        String md5 = DigestUtils.md5Hex(content);
+        FileInfo existing = new FileInfo();
+        existing.setId(md5);
+        existing.setUrl("/" + BUCKET + "/docs/existing.txt");
+        mockStreamingPut();
+        when(fileInfoMapper.selectById(md5)).thenReturn(existing);
+
+        String url = fileInfoService.uploadFile(params("a.txt", content.length), new ByteArrayInputStream(content), "docs");
+
+        assertThat(url).isEqualTo(existing.getUrl());
+        verify(fileInfoMapper, never()).insert(any(FileInfo.class));
+        verify(bloomFilterManager).put(FILE_INFO_KEY, md5);
+        verifyNoInteractions(fileInfoCache, fileProcessMapper);
+    }
+
+    /**
+     * 相同文件并发上传时主键冲突，以先入库的文件信息为准，不重复创建待处理任务
+     */
+    @Test
+    void uploadFileToleratesConcurrentInsertOfSameFile() throws Exception {
+        byte[] content = "racing avi".getBytes(StandardCharsets.UTF_8);
+        String md5 = DigestUtils.md5Hex(content);
+        FileInfo winner = new FileInfo();
+        winner.setId(md5);
+        winner.setUrl("/" + BUCKET + "/videos/" + md5 + ".avi");
+        mockStreamingPut();
+        when(fileInfoMapper.selectById(md5)).thenReturn(null, winner);
+        when(fileInfoMapper.insert(any(FileInfo.class))).thenThrow(new DuplicateKeyException("Duplicate entry"));
+
+        String url = fileInfoService.uploadFile(params("a.avi", content.length), new ByteArrayInputStream(content), "videos");
+
+        assertThat(url).isEqualTo(winner.getUrl());
+        verify(fileInfoMapper, times(2)).selectById(md5);
+        verify(bloomFilterManager).put(FILE_INFO_KEY, md5);
+        verifyNoInteractions(fileInfoCache, fileProcessMapper, applicationEventPublisher);
+    }
+
+    /**
+     * 本地合并模式下分块按顺序追加，合并文件内容与MD5都与原文件一致，分块大于缓冲区时也能完整复制
+     */
+    @Test
+    void mergeChunksAppendsChunksInOrderAndVerifiesMd5() throws Exception {
+        byte[][] chunks = {randomBytes(MERGE_BUFFER_SIZE + 4096), randomBytes(1000), randomBytes(MERGE_BUFFER_SIZE)};
+        byte[] content = concat(chunks);
+        String md5 = DigestUtils.md5Hex(content);
+        mockChunkDownloads(chunks);
+        AtomicReference<byte[]> uploaded = new AtomicReference<>();
+        when(minioClient.uploadObject(any(UploadObjectArgs.class))).thenAnswer(invocation -> {
+            uploaded.set(Files.readAllBytes(Paths.get(invocation.<UploadObjectArgs>getArgument(0).filename())));
+            return null;
+        });
+        when(fileInfoMapper.insert(any(FileInfo.class))).thenReturn(1);
+
+        UploadFileParamsDTO params = params("movie.mp4", 0);
+        fileInfoService.mergeChunks(md5, chunks.length, params);
+
+        assertThat(uploaded.get()).isEqualTo(content);
+        assertThat(params.getFileSize()).isEqualTo(content.length);
+        verify(redisService).deleteObject(CHUNK_INFO_KEY + md5);
+    }
+
+    /**
+     * 合并后的MD5与声明的不一致时不上传、不入库
+     */
+    @Test
+    void mergeChunksRejectsMd5Mismatch() throws Exception {
+        byte[][] chunks = {randomBytes(100), randomBytes(100)};
+        mockChunkDownloads(chunks);
+        String md5 = DigestUtils.md5Hex("something else");
+
+        assertThatThrownBy(() -> fileInfoService.mergeChunks(md5, chunks.length, params("movie.mp4", 0)))
+                .isInstanceOf(MinioException.class)
+                .extracting("resultCode").isEqualTo(MINIO_MERGE_FILE_CHECK_ERROR);
+
+        verify(minioClient, never()).uploadObject(any());
+        verifyNoInteractions(fileInfoMapper);
+    }
+
+    /**
+     * 默认只校验各分块，服务端拼接后不再读取拼接结果，直接入库并删除分块
+     */
+    @Test
+    void composeChunksSkipsFullReadByDefault() throws Exception {
+        String md5 = DigestUtils.md5Hex("composed");
+        mockComposableChunks(md5);
+        when(fileInfoMapper.insert(any(FileInfo.class))).thenReturn(1);
+        when(minioClient.removeObjects(any(RemoveObjectsArgs.class))).thenReturn(Collections.emptyList());
+
+        assertThat(fileInfoService.composeChunks(md5, 2, params("movie.mp4", 0))).isTrue();
+
+        verify(minioClient, never()).getObject(any(GetObjectArgs.class));
+        verify(fileInfoMapper).insert(any(FileInfo.class));
+        verify(minioClient).removeObjects(any(RemoveObjectsArgs.class));
+    }
+
+    /**
+     * 开启合并校验时服务端拼接后读取拼接结果校验整体MD5，校验通过才入库并删除分块
+     */
+    @Test
+    void composeChunksRegistersVerifiedObject() throws Exception {
+        byte[] composed = randomBytes(2048);
+        String md5 = DigestUtils.md5Hex(composed);
+        mockComposableChunks(md5);
+        mockObjectContent(composed);
+        ReflectionTestUtils.setField(fileInfoService, "verifyMergedMd5", true);
+        when(fileInfoMapper.insert(any(FileInfo.class))).thenReturn(1);
+        when(minioClient.removeObjects(any(RemoveObjectsArgs.class))).thenReturn(Collections.emptyList());
+
+        assertThat(fileInfoService.composeChunks(md5, 2, params("movie.mp4", 0))).isTrue();
+
+        verify(fileInfoMapper).insert(any(FileInfo.class));
+        verify(minioClient).removeObjects(any(RemoveObjectsArgs.class));
+        verify(minioClient, never()).removeObject(any());
+    }
+
+    /**
+     * 开启合并校验时拼接结果的MD5与声明的不一致时删除拼接结果，不入库，保留分块以便重新合并
+     */
+    @Test
+    void composeChunksRemovesObjectWhenMd5Mismatch() throws Exception {
+        String md5 = DigestUtils.md5Hex("declared");
+        mockComposableChunks(md5);
+        mockObjectContent(randomBytes(2048));
+        ReflectionTestUtils.setField(fileInfoService, "verifyMergedMd5", true);
+
+        assertThatThrownBy(() -> fileInfoService.composeChunks(md5, 2, params("movie.mp4", 0)))
+                .isInstanceOf(MinioException.class)
+                .extracting("resultCode").isEqualTo(MINIO_MERGE_FILE_CHECK_ERROR);
+
+        ArgumentCaptor<RemoveObjectArgs> removeCaptor = ArgumentCaptor.forClass(RemoveObjectArgs.class);
+        verify(minioClient).removeObject(removeCaptor.capture());
+        assertThat(removeCaptor.getValue().object()).isEqualTo(fileInfoService.getFilePathByMd5(md5, ".mp4"));
+        verify(minioClient, never()).removeObjects(any());
+        verifyNoInteractions(fileInfoMapper);
+    }
+
+    /**
+     * 分段上传模式下默认只校验各分段的ETag，完成会话后不再读取对象，直接入库并删除会话信息
+     */
+    @Test
+    void completeMultipartChunksSkipsFullReadByDefault() throws Exception {
+        String md5 = DigestUtils.md5Hex("completed");
+        mockMultipartSession(md5, 2);
+        when(fileInfoMapper.insert(any(FileInfo.class))).thenReturn(1);
+        ReflectionTestUtils.setField(fileInfoService, "chunkMode", CHUNK_MODE_MULTIPART);
+
+        fileInfoService.mergeChunks(md5, 2, params("movie.mp4", 0));
+
+        verify(multipartMinioClient).completeMultipartUpload(eq(BUCKET), anyString(), eq("upload-1"), any());
+        verify(minioClient, never()).getObject(any(GetObjectArgs.class));
+        verify(fileInfoMapper).insert(any(FileInfo.class));
+        verify(redisService).deleteObject(Arrays.asList(MULTIPART_SESSION_KEY + md5, CHUNK_INFO_KEY + md5));
+    }
+
+    /**
+     * 开启合并校验时分段上传模式下完成会话后校验整体MD5，通过后入库并删除会话信息
+     */
+    @Test
+    void completeMultipartChunksRegistersVerifiedObject() throws Exception {
+        byte[] content = randomBytes(4096);
+        String md5 = DigestUtils.md5Hex(content);
+        mockMultipartSession(md5, 2);
+        mockObjectContent(content);
+        when(fileInfoMapper.insert(any(FileInfo.class))).thenReturn(1);
+        ReflectionTestUtils.setField(fileInfoService, "chunkMode", CHUNK_MODE_MULTIPART);
+        ReflectionTestUtils.setField(fileInfoService, "verifyMergedMd5", true);
+
+        UploadFileParamsDTO params = params("movie.mp4", 0);
+        fileInfoService.mergeChunks(md5, 2, params);
+
+        verify(multipartMinioClient).completeMultipartUpload(eq(BUCKET), anyString(), eq("upload-1"), any());
+        verify(fileInfoMapper).insert(any(FileInfo.class));
+        verify(redisService).deleteObject(Arrays.asList(MULTIPART_SESSION_KEY + md5, CHUNK_INFO_KEY + md5));
+        assertThat(params.getFileSize()).isEqualTo(2 * UPLOAD_PART_SIZE);
+    }
+
+    /**
+     * 传入的分块总数小于已上传的分段数时拒绝完成，不会生成被截断的文件
+     */
+    @Test
+    void completeMultipartChunksRejectsTruncatedChunkTotal() throws Exception {
+        String md5 = DigestUtils.md5Hex("truncated");
+        mockMultipartSession(md5, 3);
+        ReflectionTestUtils.setField(fileInfoService, "chunkMode", CHUNK_MODE_MULTIPART);
+
+        assertThatThrownBy(() -> fileInfoService.mergeChunks(md5, 2, params("movie.mp4", 0)))
+                .isInstanceOf(MinioException.class)
+                .extracting("resultCode").isEqualTo(PARAM_IS_INVALID);
+
+        verify(multipartMinioClient, never()).completeMultipartUpload(any(), any(), any(), any());
+        verifyNoInteractions(fileInfoMapper);
+    }
+
+    /**
+     * 完成分段上传失败时终止会话，并删除会话信息
+     */
+    @Test
+    void completeMultipartChunksAbortsSessionWhenCompletionFails() throws Exception {
+        String md5 = DigestUtils.md5Hex("failed");
+        mockMultipartSession(md5, 2);
+        doThrow(new IOException("timeout")).when(multipartMinioClient).completeMultipartUpload(any(), any(), any(), any());
+        ReflectionTestUtils.setField(fileInfoService, "chunkMode", CHUNK_MODE_MULTIPART);
+
+        assertThatThrownBy(() -> fileInfoService.mergeChunks(md5, 2, params("movie.mp4", 0)))
+                .isInstanceOf(MinioException.class)
+                .extracting("resultCode").isEqualTo(MINIO_COMPLETE_MULTIPART_UPLOAD_ERROR);
+
+        verify(multipartMinioClient).abortMultipartUpload(eq(BUCKET), anyString(), eq("upload-1"));
+        verify(redisService).deleteObject(Arrays.asList(MULTIPART_SESSION_KEY + md5, CHUNK_INFO_KEY + md5));
+        verifyNoInteractions(fileInfoMapper);
+    }
+
+    /**
+     * 开启合并校验时完成后的对象MD5与声明的不一致时删除对象和会话信息，不入库
+     */
+    @Test
+    void completeMultipartChunksRemovesObjectWhenMd5Mismatch() throws Exception {
+        String md5 = DigestUtils.md5Hex("declared");
+        mockMultipartSession(md5, 2);
+        mockObjectContent(randomBytes(4096));
+        ReflectionTestUtils.setField(fileInfoService, "chunkMode", CHUNK_MODE_MULTIPART);
+        ReflectionTestUtils.setField(fileInfoService, "verifyMergedMd5", true);
+
+        assertThatThrownBy(() -> fileInfoService.mergeChunks(md5, 2, params("movie.mp4", 0)))
+                .isInstanceOf(MinioException.class)
+                .extracting("resultCode").isEqualTo(MINIO_MERGE_FILE_CHECK_ERROR);
+
+        verify(minioClient).removeObject(any(RemoveObjectArgs.class));
+        verify(redisService).deleteObject(Arrays.asList(MULTIPART_SESSION_KEY + md5, CHUNK_INFO_KEY + md5));
+        verifyNoInteractions(fileInfoMapper);
+    }
+
+    /**
+     * 只终止发起时间早于过期时间的分段上传会话，并按分页标记查询下一页
+     */
+    @Test
+    void abortExpiredMultipartUploadsOnlyAbortsStaleUploads() throws Exception {
+        Bucket bucket = mock(Bucket.class);
+        when(bucket.name()).thenReturn(BUCKET);
+        when(minioClient.listBuckets()).thenReturn(Collections.singletonList(bucket));
+
+        ListMultipartUploadsResult firstPage = mock(ListMultipartUploadsResult.class);
+        Upload stale = upload("a/b/stale.mp4", "stale-upload", ZonedDateTime.now().minusDays(MULTIPART_UPLOAD_EXPIRE_DAYS + 1));
+        when(firstPage.uploads()).thenReturn(Collections.singletonList(stale));
+        when(firstPage.isTruncated()).thenReturn(true);
+        when(firstPage.nextKeyMarker()).thenReturn("a/b/stale.mp4");
+        when(firstPage.nextUploadIdMarker()).thenReturn("stale-upload");
+
+        ListMultipartUploadsResult secondPage = mock(ListMultipartUploadsResult.class);
+        Upload active = upload("c/d/active.mp4", "active-upload", ZonedDateTime.now().minusHours(1));
+        when(secondPage.uploads()).thenReturn(Collections.singletonList(active));
+        when(secondPage.isTruncated()).thenReturn(false);
+
+        when(multipartMinioClient.listMultipartUploads(BUCKET, null, null)).thenReturn(firstPage);
+        when(multipartMinioClient.listMultipartUploads(BUCKET, "a/b/stale.mp4", "stale-upload")).thenReturn(secondPage);
+
+        assertThat(fileInfoService.abortExpiredMultipartUploads()).isEqualTo(1);
+        verify(multipartMinioClient).abortMultipartUpload(BUCKET, "a/b/stale.mp4", "stale-upload");
+        verify(multipartMinioClient, never()).abortMultipartUpload(BUCKET, "c/d/active.mp4", "active-upload");
+    }
+
+    /**
+     * 已上传的分块按位写入位图，位图长度按分块总数补齐，超出分块总数的记录被忽略
+     */
+    @Test
+    void checkChunksBuildsBitmapFromChunkRecords() {
+        String md5 = DigestUtils.md5Hex("bitmap");
+        when(redisService.getCacheMapKeys(CHUNK_INFO_KEY + md5)).thenReturn(new HashSet<>(Arrays.asList("0", "2", "9", "20")));
+
+        byte[] bitmap = fileInfoService.checkChunks(md5, 12, BUCKET);
+
+        assertThat(bitmap).containsExactly(0b0000_0101, 0b0000_0010);
+        verify(minioClient, never()).listObjects(any());
+    }
+
+    /**
+     * Redis中没有分块记录时，通过一次前缀列举MinIO中的分块对象得到位图
+     */
+    @Test
+    void checkChunksFallsBackToListingChunkObjects() {
+        String md5 = DigestUtils.md5Hex("listing");
+        when(redisService.getCacheMapKeys(CHUNK_INFO_KEY + md5)).thenReturn(Collections.emptySet());
+        String chunkFolder = md5.charAt(0) + "/" + md5.charAt(1) + "/" + md5 + "/" + CHUNK_SEPARATOR + "/";
+        Item item = mock(Item.class);
+        when(item.objectName()).thenReturn(chunkFolder + 1);
+        when(minioClient.listObjects(any(ListObjectsArgs.class))).thenReturn(Collections.singletonList(new Result<>(item)));
+
+        assertThat(fileInfoService.checkChunks(md5, 3, BUCKET)).containsExactly(0b0000_0010);
+    }
+
+    /**
+     * 分块总数不在允许范围内时直接拒绝，不分配位图，也不查询Redis
+     */
+    @ParameterizedTest
+    @ValueSource(ints = {0, -1, MAX_CHUNK_TOTAL + 1, Integer.MAX_VALUE})
+    void checkChunksRejectsInvalidChunkTotal(int chunkTotal) {
+        assertThatThrownBy(() -> fileInfoService.checkChunks("md5", chunkTotal, BUCKET))
+                .isInstanceOf(MinioException.class)
+                .extracting("resultCode").isEqualTo(PARAM_IS_INVALID);
+        verifyNoInteractions(redisService);
+    }
+
+    /**
+     * 合并时同样校验分块总数
+     */
+    @Test
+    void mergeChunksRejectsInvalidChunkTotal() {
+        assertThatThrownBy(() -> fileInfoService.mergeChunks("md5", MAX_CHUNK_TOTAL + 1, params("movie.mp4", 0)))
+                .isInstanceOf(MinioException.class)
+                .extracting("resultCode").isEqualTo(PARAM_IS_INVALID);
+        verifyNoInteractions(redisService, minioClient);
+    }
+
+    /**
+     * 文件是否存在的结果在本地短期缓存，重复检查不再查询文件信息和MinIO
+     */
+    @Test
+    void checkFileCachesExistence() throws Exception {
+        FileInfo fileInfo = new FileInfo();
+        fileInfo.setBucket(BUCKET);
+        fileInfo.setFilePath("a/b/file.mp4");
+        when(fileInfoCache.get(eq("exists"), any())).thenReturn(fileInfo);
+
+        assertThat(fileInfoService.checkFile("exists")).isTrue();
+        assertThat(fileInfoService.checkFile("exists")).isTrue();
+
+        verify(fileInfoCache, times(1)).get(eq("exists"), any());
+        verify(minioClient, times(1)).statObject(any(StatObjectArgs.class));
+    }
+
+    /**
+     * 有文件信息但MinIO中的对象已不存在时视为未上传，不存在的结果同样缓存
+     */
+    @Test
+    void checkFileTreatsMissingObjectAsNotUploaded() throws Exception {
+        FileInfo fileInfo = new FileInfo();
+        fileInfo.setBucket(BUCKET);
+        fileInfo.setFilePath("a/b/file.mp4");
+        when(fileInfoCache.get(eq("missing"), any())).thenReturn(fileInfo);
+        ErrorResponseException notFound = mock(ErrorResponseException.class);
+        ErrorResponse errorResponse = mock(ErrorResponse.class);
+        when(errorResponse.code()).thenReturn(NO_SUCH_KEY);
+        when(notFound.errorResponse()).thenReturn(errorResponse);
+        when(minioClient.statObject(any(StatObjectArgs.class))).thenThrow(notFound);
+
+        assertThat(fileInfoService.checkFile("missing")).isFalse();
+        assertThat(fileInfoService.checkFile("missing")).isFalse();
+
+        verify(minioClient, times(1)).statObject(any(StatObjectArgs.class));
+    }
+
+    /**
+     * Redis中有分块上传记录时不查询MinIO，确认存在的分块缓存在本地
+     */
+    @Test
+    void checkChunkUsesUploadRecordAndCachesResult() throws Exception {
+        when(redisService.getCacheMapValue(CHUNK_INFO_KEY + "md5", "3")).thenReturn(new ChunkInfoDTO("x", 1L));
+
+        assertThat(fileInfoService.checkChunk("md5", 3, BUCKET)).isTrue();
+        assertThat(fileInfoService.checkChunk("md5", 3, BUCKET)).isTrue();
+
+        verify(redisService, times(1)).getCacheMapValue(CHUNK_INFO_KEY + "md5", "3");
+        verify(minioClient, never()).statObject(any());
+    }
+
+    private static Upload upload(String objectName, String uploadId, ZonedDateTime initiated) {
+        Upload upload = mock(Upload.class);
+        when(upload.initiated()).thenReturn(initiated);
+        lenient().when(upload.objectName()).thenReturn(objectName);
+        lenient().when(upload.uploadId()).thenReturn(uploadId);
+        return upload;
+    }
+
+    /**
+     * 模拟一个已上传指定数量分段的分段上传会话，每个分段5MB
+     */
+    private void mockMultipartSession(String md5, int partCount) {
+        Map<String, String> session = new HashMap<>();
+        session.put(UPLOAD_ID_FIELD, "upload-1");
+        session.put(OBJECT_NAME_FIELD, fileInfoService.getFilePathByMd5(md5, ".mp4"));
+        Map<String, ChunkInfoDTO> chunkInfoMap = new HashMap<>();
+        for (int i = 0; i < partCount; i++) {
+            String chunkMd5 = DigestUtils.md5Hex("part" + i);
+            session.put(String.valueOf(i + 1), chunkMd5);
+            chunkInfoMap.put(String.valueOf(i), new ChunkInfoDTO(chunkMd5, UPLOAD_PART_SIZE));
+        }
+        when(redisService.<String>getCacheMap(MULTIPART_SESSION_KEY + md5)).thenReturn(session);
+        when(redisService.<ChunkInfoDTO>getCacheMap(CHUNK_INFO_KEY + md5)).thenReturn(chunkInfoMap);
+    }
+
+    /**
+     * 模拟两个满足服务端拼接条件的分块，分块记录与MinIO中的分块对象一致
+     */
+    private void mockComposableChunks(String md5) {
+        String chunkFolder = md5.charAt(0) + "/" + md5.charAt(1) + "/" + md5 + "/" + CHUNK_SEPARATOR + "/";
+        Map<String, ChunkInfoDTO> chunkInfoMap = new HashMap<>();
+        List<Result<Item>> items = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            String chunkMd5 = DigestUtils.md5Hex("chunk" + i);
+            chunkInfoMap.put(String.valueOf(i), new ChunkInfoDTO(chunkMd5, UPLOAD_PART_SIZE));
+            Item item = mock(Item.class);
+            when(item.objectName()).thenReturn(chunkFolder + i);
+            when(item.size()).thenReturn(UPLOAD_PART_SIZE);
+            when(item.etag()).thenReturn("\"" + chunkMd5 + "\"");
+            items.add(new Result<>(item));
+        }
+        when(redisService.<ChunkInfoDTO>getCacheMap(CHUNK_INFO_KEY + md5)).thenReturn(chunkInfoMap);
+        when(minioClient.listObjects(any(ListObjectsArgs.class))).thenReturn(items);
+    }
+
+    /**
+     * 模拟读取对象时返回的内容
+     */
+    private void mockObjectContent(byte[] content) throws Exception {
+        when(minioClient.getObject(any(GetObjectArgs.class))).thenAnswer(invocation -> {
+            GetObjectArgs args = invocation.getArgument(0);
+            return new GetObjectResponse(Headers.of(), args.bucket(), "", args.object(), new ByteArrayInputStream(content));
+        });
+    }
+
+    /**
+     * 按对象名末尾的分块序号返回分块内容
+     */
+    private void mockChunkDownloads(byte[][] chunks) throws Exception {
+        when(minioClient.getObject(any(GetObjectArgs.class))).thenAnswer(invocation -> {
+            GetObjectArgs args = invocation.getArgument(0);
+            int index = Integer.parseInt(args.object().substring(args.object().lastIndexOf('/') + 1));
+            return new GetObjectResponse(Headers.of(), args.bucket(), "", args.object(), new ByteArrayInputStream(chunks[index]));
+        });
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        ThreadLocalRandom.current().nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] concat(byte[]... arrays) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        for (byte[] array : arrays) {
+            outputStream.write(array, 0, array.length);
+        }
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * 模拟MinIO读取完整的输入流，使边上传边计算的MD5与文件内容一致
+     */
+    private void mockStreamingPut() throws Exception {
+        when(minioClient.putObject(any(PutObjectArgs.class))).thenAnswer(invocation -> {
+            drain(invocation.<PutObjectArgs>getArgument(0).stream());
+            return null;
+        });
+    }
+
+    private static UploadFileParamsDTO params(String fileName, long fileSize) {
+        return UploadFileParamsDTO.builder()
+                .fileName(fileName)
+                .fileSize(fileSize)
+                .bucket(BUCKET)
+                .userId(1)
+                .build();
+    }
+
+    private static void drain(InputStream inputStream) throws IOException {
+        byte[] buffer = new byte[8];
+        while (inputStream.read(buffer) != -1) {
+            // 只读取，不保存
+        }
+    }
+}
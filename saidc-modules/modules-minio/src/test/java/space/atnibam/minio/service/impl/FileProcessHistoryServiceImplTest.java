@@ -0,0 +1,107 @@
+package space.atnibam.minio.service.impl;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import space.atnibam.minio.mapper.FileProcessHistoryMapper;
+import space.atnibam.minio.mapper.FileProcessMapper;
+import space.atnibam.minio.model.dto.ProcessFinishDTO;
+import space.atnibam.minio.model.entity.FileProcess;
+import space.atnibam.minio.model.entity.FileProcessHistory;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+import static space.atnibam.minio.constant.FileServiceConstants.STATUS_FAILURE;
+import static space.atnibam.minio.constant.FileServiceConstants.STATUS_SUCCESS;
+
+/**
+ * @ClassName: FileProcessHistoryServiceImplTest
+ * @Description: 任务完成状态批量记录测试
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-29 17:45
+ **/
+@ExtendWith(MockitoExtension.class)
+class FileProcessHistoryServiceImplTest {
+
+    @Mock
+    private FileProcessMapper fileProcessMapper;
+
+    @Mock
+    private FileProcessHistoryMapper fileProcessHistoryMapper;
+
+    @InjectMocks
+    private FileProcessHistoryServiceImpl fileProcessHistoryService;
+
+    /**
+     * 成功的任务写入历史表并从待处理表删除，失败的任务一条UPDATE记录，HLS打包失败原因单独记录且不影响成功状态；
+     * 租约已失效（未被锁定查询返回）的任务丢弃处理结果
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    void writesSuccessesAndFailuresInBatch() {
+        when(fileProcessMapper.selectLeasedForUpdate(anyList())).thenReturn(Arrays.asList(task(1L), task(2L)));
+
+        fileProcessHistoryService.saveProcessFinishStatusBatch(Arrays.asList(
+                new ProcessFinishDTO(1L, STATUS_SUCCESS, "f1", "/video/1.mp4", null, null, "HLS打包失败", "me"),
+                new ProcessFinishDTO(2L, STATUS_FAILURE, "f2", null, null, "转码超时", null, "me"),
+                new ProcessFinishDTO(3L, STATUS_SUCCESS, "f3", "/video/3.mp4", null, null, null, "stale")));
+
+        ArgumentCaptor<List<FileProcessHistory>> histories = ArgumentCaptor.forClass(List.class);
+        verify(fileProcessHistoryMapper).insertBatch(histories.capture());
+        assertThat(histories.getValue()).singleElement().satisfies(history -> {
+            assertThat(history.getId()).isEqualTo(1L);
+            assertThat(history.getStatus()).isEqualTo(STATUS_SUCCESS);
+            assertThat(history.getUrl()).isEqualTo("/video/1.mp4");
+            assertThat(history.getPlaylistUrl()).isNull();
+            assertThat(history.getHlsErrorMsg()).isEqualTo("HLS打包失败");
+        });
+        ArgumentCaptor<List<ProcessFinishDTO>> deleted = ArgumentCaptor.forClass(List.class);
+        verify(fileProcessMapper).deleteLeasedBatch(deleted.capture());
+        assertThat(deleted.getValue()).extracting(ProcessFinishDTO::getTaskId).containsExactly(1L);
+
+        ArgumentCaptor<List<ProcessFinishDTO>> failures = ArgumentCaptor.forClass(List.class);
+        verify(fileProcessMapper).updateFailedBatch(failures.capture());
+        assertThat(failures.getValue()).extracting(ProcessFinishDTO::getTaskId).containsExactly(2L);
+    }
+
+    /**
+     * 所有任务的租约都已失效时不写入任何数据
+     */
+    @Test
+    void dropsResultsWhoseLeaseWasLost() {
+        when(fileProcessMapper.selectLeasedForUpdate(anyList())).thenReturn(Collections.emptyList());
+
+        fileProcessHistoryService.saveProcessFinishStatusBatch(Arrays.asList(
+                new ProcessFinishDTO(1L, STATUS_SUCCESS, "f1", "/video/1.mp4", null, null, null, "stale"),
+                new ProcessFinishDTO(2L, STATUS_FAILURE, "f2", null, null, "转码超时", null, "stale")));
+
+        verify(fileProcessMapper, never()).updateFailedBatch(anyList());
+        verify(fileProcessMapper, never()).deleteLeasedBatch(anyList());
+        verifyNoInteractions(fileProcessHistoryMapper);
+    }
+
+    /**
+     * 空批次不访问数据库
+     */
+    @Test
+    void ignoresEmptyBatch() {
+        fileProcessHistoryService.saveProcessFinishStatusBatch(Collections.emptyList());
+
+        verifyNoInteractions(fileProcessMapper, fileProcessHistoryMapper);
+    }
+
+    private static FileProcess task(Long id) {
+        FileProcess fileProcess = new FileProcess();
+        fileProcess.setId(id);
+        fileProcess.setStatus("4");
+        return fileProcess;
+    }
+}
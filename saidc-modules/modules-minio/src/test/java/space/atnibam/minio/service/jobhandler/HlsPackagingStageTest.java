@@ -0,0 +1,198 @@
+package space.atnibam.minio.service.jobhandler;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import space.atnibam.common.core.enums.ResultCode;
+import space.atnibam.common.core.exception.MinioException;
+import space.atnibam.minio.model.entity.FileProcess;
+import space.atnibam.minio.service.FileInfoService;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * @ClassName: HlsPackagingStageTest
+ * @Description: HLS打包阶段测试，ffmpeg用sh脚本模拟，脚本记录收到的参数并在输出目录生成播放列表和切片
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-29 17:30
+ **/
+@DisabledOnOs(OS.WINDOWS)
+@ExtendWith(MockitoExtension.class)
+class HlsPackagingStageTest {
+
+    private static final String BUCKET = "video";
+
+    /**
+     * 模拟ffmpeg生成两个档位的播放列表、切片和主播放列表
+     */
+    private static final String PLAYLISTS_AND_SEGMENTS = "touch \"$d/master.m3u8\" \"$d/stream_0.m3u8\" \"$d/stream_1.m3u8\" "
+            + "\"$d/stream_0_00000.ts\" \"$d/stream_1_00000.ts\"\necho progress=end";
+
+    @Mock
+    private FileInfoService fileInfoService;
+
+    @InjectMocks
+    private HlsPackagingStage hlsPackagingStage;
+
+    @TempDir
+    Path tempDir;
+
+    private ExecutorService hlsUploadExecutor;
+
+    private Path argsFile;
+
+    @BeforeEach
+    void setUp() {
+        hlsUploadExecutor = Executors.newFixedThreadPool(2);
+        argsFile = tempDir.resolve("args");
+        ReflectionTestUtils.setField(hlsPackagingStage, "hlsUploadExecutor", hlsUploadExecutor);
+        ReflectionTestUtils.setField(hlsPackagingStage, "ladder", "1280x720:1500k:96k,640x360:400k:48k");
+        ReflectionTestUtils.setField(hlsPackagingStage, "segmentSeconds", 4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        hlsUploadExecutor.shutdown();
+    }
+
+    /**
+     * 每档输出一个mp4，强制关键帧对齐切片边界，源视频没有音频时忽略音频
+     */
+    @Test
+    void renditionArgsEncodeEveryRungInTheSamePass() {
+        File renditionDir = tempDir.toFile();
+
+        List<String> args = hlsPackagingStage.renditionOutputArgs(renditionDir, 2);
+
+        assertThat(args).containsSubsequence("-s", "1280x720", "-c:v", "libx264", "-b:v", "1500k")
+                .containsSubsequence("-s", "640x360", "-c:v", "libx264", "-b:v", "400k")
+                .contains("0:a:0?", "expr:gte(t,n_forced*4)")
+                .endsWith(new File(renditionDir, "rendition_1.mp4").getAbsolutePath());
+        assertThat(args).filteredOn(arg -> arg.endsWith(".mp4")).hasSize(2);
+    }
+
+    /**
+     * 切片只复制流不重新编码，主播放列表在切片和各档位播放列表之后上传
+     */
+    @Test
+    void segmentsRenditionsWithoutReencodingAndUploadsMasterLast() throws Exception {
+        useFfmpeg(PLAYLISTS_AND_SEGMENTS);
+        when(fileInfoService.getFilePathByMd5("abc", "")).thenReturn("a/b/abc/abc");
+
+        String playlistUrl = hlsPackagingStage.packageHls(task(), tempDir.toFile(), true, 10, TimeUnit.SECONDS);
+
+        assertThat(playlistUrl).isEqualTo("/video/a/b/abc/hls/master.m3u8");
+        String args = new String(Files.readAllBytes(argsFile), StandardCharsets.UTF_8);
+        assertThat(args).contains("-c copy").contains("v:0,a:0 v:1,a:1").doesNotContain("libx264");
+
+        InOrder inOrder = inOrder(fileInfoService);
+        inOrder.verify(fileInfoService, times(4)).uploadFileToMinio(anyString(), eq(BUCKET), argThat(name -> !name.endsWith("master.m3u8")));
+        inOrder.verify(fileInfoService).uploadFileToMinio(anyString(), eq(BUCKET), eq("a/b/abc/hls/master.m3u8"));
+    }
+
+    /**
+     * ffmpeg失败时抛出打包失败，不上传任何文件
+     */
+    @Test
+    void failsWhenSegmentingFails() throws Exception {
+        useFfmpeg("exit 1");
+
+        assertThatThrownBy(() -> hlsPackagingStage.packageHls(task(), tempDir.toFile(), false, 10, TimeUnit.SECONDS))
+                .isInstanceOf(MinioException.class)
+                .extracting("resultCode").isEqualTo(ResultCode.MINIO_PACKAGE_HLS_ERROR);
+        String args = new String(Files.readAllBytes(argsFile), StandardCharsets.UTF_8);
+        assertThat(args).contains("v:0 v:1").doesNotContain("a:0");
+        verify(fileInfoService, never()).uploadFileToMinio(anyString(), anyString(), anyString());
+    }
+
+    /**
+     * 未生成主播放列表或档位播放列表时在提交上传前失败，不上传任何文件
+     */
+    @Test
+    void failsBeforeUploadingWhenPlaylistIsMissing() throws Exception {
+        when(fileInfoService.getFilePathByMd5("abc", "")).thenReturn("a/b/abc/abc");
+        for (String script : Arrays.asList(
+                "touch \"$d/stream_0.m3u8\" \"$d/stream_1.m3u8\" \"$d/stream_0_00000.ts\"\necho progress=end",
+                "touch \"$d/master.m3u8\" \"$d/stream_0.m3u8\" \"$d/stream_0_00000.ts\"\necho progress=end")) {
+            useFfmpeg(script);
+
+            assertThatThrownBy(() -> hlsPackagingStage.packageHls(task(), tempDir.toFile(), true, 10, TimeUnit.SECONDS))
+                    .isInstanceOf(MinioException.class)
+                    .extracting("resultCode").isEqualTo(ResultCode.MINIO_PACKAGE_HLS_ERROR);
+        }
+        verify(fileInfoService, never()).uploadFileToMinio(anyString(), anyString(), anyString());
+    }
+
+    /**
+     * 一个切片上传失败时等待其余上传结束后才抛出，不上传主播放列表
+     */
+    @Test
+    void waitsForInFlightUploadsWhenOneFails() throws Exception {
+        useFfmpeg(PLAYLISTS_AND_SEGMENTS);
+        when(fileInfoService.getFilePathByMd5("abc", "")).thenReturn("a/b/abc/abc");
+        AtomicInteger finished = new AtomicInteger();
+        doAnswer(invocation -> {
+            String objectName = invocation.getArgument(2);
+            if (objectName.endsWith("stream_0_00000.ts")) {
+                throw new MinioException(ResultCode.MINIO_UPLOAD_FILE_ERROR);
+            }
+            Thread.sleep(200);
+            // 上传结束时文件仍未被删除
+            assertThat(new File(invocation.<String>getArgument(0))).exists();
+            finished.incrementAndGet();
+            return null;
+        }).when(fileInfoService).uploadFileToMinio(anyString(), eq(BUCKET), anyString());
+
+        assertThatThrownBy(() -> hlsPackagingStage.packageHls(task(), tempDir.toFile(), true, 10, TimeUnit.SECONDS))
+                .isInstanceOf(MinioException.class)
+                .extracting("resultCode").isEqualTo(ResultCode.MINIO_UPLOAD_FILE_ERROR);
+
+        assertThat(finished).hasValue(3);
+        verify(fileInfoService, never()).uploadFileToMinio(anyString(), anyString(), endsWith("master.m3u8"));
+    }
+
+    /**
+     * 用sh脚本模拟ffmpeg，脚本记录参数，$d为最后一个参数即播放列表所在的输出目录
+     *
+     * @param body 脚本主体
+     */
+    private void useFfmpeg(String body) throws Exception {
+        Path script = tempDir.resolve("ffmpeg");
+        String content = "#!/bin/sh\necho \"$@\" > '" + argsFile + "'\n"
+                + "for a in \"$@\"; do last=$a; done\nd=$(dirname \"$last\")\n" + body + "\n";
+        Files.write(script, content.getBytes(StandardCharsets.UTF_8));
+        script.toFile().setExecutable(true);
+        ReflectionTestUtils.setField(hlsPackagingStage, "ffmpegPath", script.toString());
+    }
+
+    private static FileProcess task() {
+        FileProcess fileProcess = new FileProcess();
+        fileProcess.setId(1L);
+        fileProcess.setFileId("abc");
+        fileProcess.setBucket(BUCKET);
+        return fileProcess;
+    }
+}
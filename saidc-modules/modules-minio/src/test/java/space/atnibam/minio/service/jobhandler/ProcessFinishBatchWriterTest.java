@@ -0,0 +1,149 @@
+package space.atnibam.minio.service.jobhandler;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import space.atnibam.minio.model.dto.ProcessFinishDTO;
+import space.atnibam.minio.service.FileProcessHistoryService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/**
+ * @ClassName: ProcessFinishBatchWriterTest
+ * @Description: 任务完成状态批量写入器测试，数据库写入使用模拟对象并记录每批的内容
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-29 19:05
+ **/
+@ExtendWith(MockitoExtension.class)
+class ProcessFinishBatchWriterTest {
+
+    @Mock
+    private FileProcessHistoryService fileProcessHistoryService;
+
+    @InjectMocks
+    private ProcessFinishBatchWriter writer;
+
+    /**
+     * 每次写入的任务ID
+     */
+    private final List<List<Long>> batches = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(writer, "batchWindowMillis", 200L);
+        ReflectionTestUtils.setField(writer, "batchSize", 3);
+        lenient().doAnswer(invocation -> {
+            List<ProcessFinishDTO> results = invocation.getArgument(0);
+            batches.add(results.stream().map(ProcessFinishDTO::getTaskId).collect(Collectors.toList()));
+            return null;
+        }).when(fileProcessHistoryService).saveProcessFinishStatusBatch(anyList());
+        writer.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        writer.stop();
+    }
+
+    /**
+     * 等待时长内提交的结果合并为一批写入，超过每批上限时拆分
+     */
+    @Test
+    void groupsResultsWithinWindowUpToBatchSize() throws Exception {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (long id = 1; id <= 4; id++) {
+            futures.add(writer.submit(result(id)));
+        }
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(2, TimeUnit.SECONDS);
+        assertThat(batches).hasSize(2);
+        assertThat(batches.get(0)).containsExactly(1L, 2L, 3L);
+        assertThat(batches.get(1)).containsExactly(4L);
+    }
+
+    /**
+     * 写入失败时同一批的结果均以异常结束
+     */
+    @Test
+    void failsWholeBatchWhenWriteFails() {
+        doThrow(new IllegalStateException("db down")).when(fileProcessHistoryService).saveProcessFinishStatusBatch(anyList());
+
+        CompletableFuture<Void> first = writer.submit(result(1L));
+        CompletableFuture<Void> second = writer.submit(result(2L));
+
+        assertThatThrownBy(() -> first.get(2, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class)
+                .hasRootCauseMessage("db down");
+        assertThatThrownBy(() -> second.get(2, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class);
+    }
+
+    /**
+     * 停止前提交的结果全部写入，停止后提交的结果直接以异常结束且不写入
+     */
+    @Test
+    void writesPendingResultsOnStopAndRejectsLaterOnes() throws Exception {
+        CompletableFuture<Void> pending = writer.submit(result(1L));
+
+        writer.stop();
+        CompletableFuture<Void> late = writer.submit(result(2L));
+
+        assertThat(pending).isCompleted();
+        pending.get();
+        assertThatThrownBy(late::get).hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(batches).containsExactly(Collections.singletonList(1L));
+    }
+
+    /**
+     * 与stop并发提交时，每个结果要么被写入，要么以异常结束，不会一直等待
+     */
+    @Test
+    void everySubmissionCompletesWhenStoppingConcurrently() throws Exception {
+        ReflectionTestUtils.setField(writer, "batchWindowMillis", 1L);
+        ExecutorService submitters = Executors.newFixedThreadPool(4);
+        CountDownLatch started = new CountDownLatch(4);
+        List<CompletableFuture<Void>> futures = new CopyOnWriteArrayList<>();
+        try {
+            for (int t = 0; t < 4; t++) {
+                long base = t * 1000L;
+                submitters.execute(() -> {
+                    started.countDown();
+                    for (long id = base; id < base + 200; id++) {
+                        futures.add(writer.submit(result(id)));
+                    }
+                });
+            }
+            started.await();
+            writer.stop();
+        } finally {
+            submitters.shutdown();
+            assertThat(submitters.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        }
+
+        assertThat(futures).hasSize(800).allMatch(CompletableFuture::isDone);
+        long written = futures.stream().filter(future -> !future.isCompletedExceptionally()).count();
+        assertThat(batches.stream().mapToLong(List::size).sum()).isEqualTo(written);
+    }
+
+    private static ProcessFinishDTO result(Long id) {
+        return new ProcessFinishDTO(id, "2", "f" + id, "/video/" + id + ".mp4", null, null, null, "me");
+    }
+}
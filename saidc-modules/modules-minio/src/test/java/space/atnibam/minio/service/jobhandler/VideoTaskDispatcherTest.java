@@ -0,0 +1,143 @@
+package space.atnibam.minio.service.jobhandler;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * @ClassName: VideoTaskDispatcherTest
+ * @Description: 视频任务事件分发测试，跨节点分发使用嵌入式Redis
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-29 18:40
+ **/
+class VideoTaskDispatcherTest {
+
+    private static RedisServer redisServer;
+
+    private static LettuceConnectionFactory connectionFactory;
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redisServer = new RedisServer(port);
+        redisServer.start();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", port));
+        connectionFactory.afterPropertiesSet();
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        connectionFactory.destroy();
+        redisServer.stop();
+    }
+
+    /**
+     * 本节点有空闲转码线程时直接在本地领取，不经过Redis
+     */
+    @Test
+    void dispatchesLocallyWhenIdle() {
+        VideoTask videoTask = mock(VideoTask.class);
+        when(videoTask.hasIdleWorker()).thenReturn(true);
+        StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+        VideoTaskDispatcher dispatcher = dispatcher(videoTask, redisTemplate, false);
+        try {
+            dispatcher.onVideoTaskCreated(new VideoTaskCreatedEvent(this, 1L));
+
+            verify(videoTask, timeout(2000)).dispatch();
+            verifyNoInteractions(redisTemplate);
+        } finally {
+            dispatcher.stop();
+        }
+    }
+
+    /**
+     * 领取期间到达的多个唤醒信号合并为一次领取
+     */
+    @Test
+    void coalescesSignalsArrivingDuringDispatch() throws InterruptedException {
+        VideoTask videoTask = mock(VideoTask.class);
+        when(videoTask.hasIdleWorker()).thenReturn(true);
+        CountDownLatch dispatching = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            dispatching.countDown();
+            release.await();
+            return null;
+        }).doNothing().when(videoTask).dispatch();
+        VideoTaskDispatcher dispatcher = dispatcher(videoTask, mock(StringRedisTemplate.class), false);
+        try {
+            dispatcher.onVideoTaskCreated(new VideoTaskCreatedEvent(this, 1L));
+            assertThat(dispatching.await(2, TimeUnit.SECONDS)).isTrue();
+            for (long id = 2; id <= 10; id++) {
+                dispatcher.onVideoTaskCreated(new VideoTaskCreatedEvent(this, id));
+            }
+            release.countDown();
+
+            verify(videoTask, timeout(2000).times(2)).dispatch();
+            Thread.sleep(200);
+            verify(videoTask, times(2)).dispatch();
+        } finally {
+            dispatcher.stop();
+        }
+    }
+
+    /**
+     * 本节点繁忙时通过Redis Stream通知其他节点，有空闲线程的节点领取，发送节点忽略自己的消息
+     */
+    @Test
+    void handsOffToIdleNodeThroughStreamWhenBusy() throws InterruptedException {
+        StringRedisTemplate redisTemplate = new StringRedisTemplate(connectionFactory);
+        VideoTask busyTask = mock(VideoTask.class);
+        when(busyTask.hasIdleWorker()).thenReturn(false);
+        VideoTask idleTask = mock(VideoTask.class);
+        when(idleTask.hasIdleWorker()).thenReturn(true);
+        VideoTaskDispatcher busy = dispatcher(busyTask, redisTemplate, true);
+        VideoTaskDispatcher idle = dispatcher(idleTask, redisTemplate, true);
+
+        int published = 0;
+        try {
+            // Stream从最新位置读取，监听开始前发布的消息收不到，重复发布直到被领取
+            while (mockingDetails(idleTask).getInvocations().stream()
+                    .noneMatch(invocation -> "dispatch".equals(invocation.getMethod().getName())) && published < 50) {
+                busy.onVideoTaskCreated(new VideoTaskCreatedEvent(this, 1L));
+                published++;
+                Thread.sleep(100);
+            }
+        } finally {
+            busy.stop();
+            idle.stop();
+        }
+
+        verify(idleTask, atLeastOnce()).dispatch();
+        verify(busyTask, never()).dispatch();
+        // 发送节点收到自己的消息时不检查空闲线程，只在发布前检查
+        verify(busyTask, times(published)).hasIdleWorker();
+        assertThat(redisTemplate.opsForStream().size("minio:video:task:stream")).isBetween(1L, (long) published);
+    }
+
+    private static VideoTaskDispatcher dispatcher(VideoTask videoTask, StringRedisTemplate redisTemplate, boolean streamEnabled) {
+        VideoTaskDispatcher dispatcher = new VideoTaskDispatcher();
+        ReflectionTestUtils.setField(dispatcher, "videoTask", videoTask);
+        ReflectionTestUtils.setField(dispatcher, "stringRedisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(dispatcher, "redisConnectionFactory", connectionFactory);
+        ReflectionTestUtils.setField(dispatcher, "streamEnabled", streamEnabled);
+        dispatcher.start();
+        return dispatcher;
+    }
+}
@@ -0,0 +1,89 @@
+package space.atnibam.minio.service.jobhandler;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+import space.atnibam.minio.model.entity.FileProcess;
+import space.atnibam.minio.service.FileProcessService;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * @ClassName: VideoTaskTest
+ * @Description: 视频处理任务的领取与分发测试，转码线程池和任务服务均使用模拟对象
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-29 16:52
+ **/
+@ExtendWith(MockitoExtension.class)
+class VideoTaskTest {
+
+    private static final long LEASE_SECONDS = 300L;
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    @Mock
+    private FileProcessService fileProcessService;
+
+    @Mock
+    private ThreadPoolTaskExecutor videoTranscodeExecutor;
+
+    @InjectMocks
+    private VideoTask videoTask;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(videoTask, "leaseSeconds", LEASE_SECONDS);
+        ReflectionTestUtils.setField(videoTask, "maxAttempts", MAX_ATTEMPTS);
+        when(videoTranscodeExecutor.getMaxPoolSize()).thenReturn(2);
+    }
+
+    /**
+     * 只按转码线程池的空闲数量领取任务，线程全部占用时不再领取
+     */
+    @Test
+    void dispatchClaimsOnlyIdleWorkers() {
+        when(fileProcessService.claimFileProcessList(anyString(), eq(2), eq(LEASE_SECONDS), eq(MAX_ATTEMPTS)))
+                .thenReturn(Arrays.asList(task(1L), task(2L)));
+
+        videoTask.dispatch();
+
+        verify(videoTranscodeExecutor, times(2)).execute(any(Runnable.class));
+        assertThat(videoTask.hasIdleWorker()).isFalse();
+
+        // 提交的任务尚未执行完成，再次调度时不领取
+        videoTask.dispatch();
+        verify(fileProcessService, times(1)).claimFileProcessList(anyString(), anyInt(), anyLong(), anyInt());
+    }
+
+    /**
+     * 线程池拒绝任务时释放租约，留给其他执行器或下次调度
+     */
+    @Test
+    void dispatchReleasesLeaseWhenExecutorRejects() {
+        when(fileProcessService.claimFileProcessList(anyString(), eq(2), eq(LEASE_SECONDS), eq(MAX_ATTEMPTS)))
+                .thenReturn(Arrays.asList(task(1L), task(2L)));
+        doNothing().doThrow(new TaskRejectedException("full")).when(videoTranscodeExecutor).execute(any(Runnable.class));
+
+        videoTask.dispatch();
+
+        verify(fileProcessService).releaseLease(eq(2L), anyString());
+        verify(fileProcessService, never()).releaseLease(eq(1L), anyString());
+        assertThat(videoTask.hasIdleWorker()).isTrue();
+    }
+
+    private static FileProcess task(Long id) {
+        FileProcess fileProcess = new FileProcess();
+        fileProcess.setId(id);
+        return fileProcess;
+    }
+}
@@ -0,0 +1,86 @@
+package space.atnibam.minio.utils;
+
+import org.junit.jupiter.api.Test;
+import space.atnibam.minio.model.dto.TranscodeProgressDTO;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @ClassName: FfmpegProgressParserTest
+ * @Description: ffmpeg输出解析测试，输出样例取自ffmpeg -progress pipe:1 -nostats的实际输出
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-29 17:05
+ **/
+class FfmpegProgressParserTest {
+
+    /**
+     * 从输入文件信息中取得时长和音频流，输出文件信息中的时长和音频流被忽略
+     */
+    @Test
+    void parsesInputDurationAndAudio() {
+        FfmpegProgressParser parser = new FfmpegProgressParser(null);
+
+        feed(parser,
+                "Input #0, avi, from 'in.avi':",
+                "  Duration: 00:01:02.50, start: 0.000000, bitrate: 1500 kb/s",
+                "  Stream #0:0: Video: mpeg4 (Simple Profile), yuv420p, 640x480, 25 fps",
+                "Output #0, mp4, to 'out.mp4':",
+                "  Duration: 00:09:09.00, start: 0.000000, bitrate: N/A",
+                "  Stream #0:1: Audio: aac (LC), 44100 Hz, stereo");
+
+        assertThat(parser.getProgress().getSourceDurationMillis()).isEqualTo(62500L);
+        assertThat(parser.hasAudio()).isFalse();
+    }
+
+    /**
+     * 每组进度以progress字段结束并回调一次，progress=end表示正常结束
+     */
+    @Test
+    void reportsProgressGroups() {
+        List<TranscodeProgressDTO> reports = new ArrayList<>();
+        FfmpegProgressParser parser = new FfmpegProgressParser(reports::add);
+
+        feed(parser,
+                "  Duration: 00:00:10.00, start: 0.000000, bitrate: 1500 kb/s",
+                "  Stream #0:1: Audio: mp3, 44100 Hz, stereo, fltp, 128 kb/s",
+                "fps=N/A",
+                "out_time_us=5000000",
+                "bitrate=700.1kbits/s",
+                "speed=2.01x",
+                "progress=continue",
+                "fps=24.5",
+                "out_time_us=10000000",
+                "progress=end");
+
+        assertThat(parser.hasAudio()).isTrue();
+        assertThat(reports).hasSize(2);
+        assertThat(reports.get(0).getPercent()).isEqualTo(50);
+        assertThat(reports.get(0).getFps()).isNull();
+        assertThat(reports.get(0).getFinished()).isFalse();
+        assertThat(reports.get(1).getPercent()).isEqualTo(100);
+        assertThat(reports.get(1).getFps()).isEqualTo(24.5);
+        assertThat(reports.get(1).getSpeed()).isEqualTo("2.01x");
+        assertThat(parser.isFinished()).isTrue();
+    }
+
+    /**
+     * -progress输出的行被消费，不保留到日志中，普通日志行保留
+     */
+    @Test
+    void consumesOnlyProgressLines() {
+        FfmpegProgressParser parser = new FfmpegProgressParser(null);
+
+        assertThat(parser.test("out_time_us=1000")).isTrue();
+        assertThat(parser.test("[libx264 @ 0x1] using cpu capabilities: MMX2 SSE2")).isFalse();
+        assertThat(parser.test("Error while decoding stream #0:0")).isFalse();
+    }
+
+    private static void feed(FfmpegProgressParser parser, String... lines) {
+        for (String line : lines) {
+            parser.test(line);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package space.atnibam.minio.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static space.atnibam.minio.constant.VideoUtilConstants.OUTPUT_BUFFER_LINES;
+
+/**
+ * @ClassName: ProcessRunnerTest
+ * @Description: 外部进程执行工具类测试，通过sh执行简单命令模拟ffmpeg进程
+ * @Author: AtnibamAitay
+ * @CreateTime: 2023-10-29 16:20
+ **/
+@DisabledOnOs(OS.WINDOWS)
+class ProcessRunnerTest {
+
+    /**
+     * 进程正常退出时返回退出值，标准输出和错误输出合并
+     */
+    @Test
+    void returnsExitValueAndMergedOutput() throws Exception {
+        ProcessRunner.ProcessResult result = ProcessRunner.await(
+                ProcessRunner.start(sh("echo out; echo err 1>&2; exit 3"), 10, TimeUnit.SECONDS));
+
+        assertThat(result.getExitValue()).isEqualTo(3);
+        assertThat(result.getOutput()).contains("out").contains("err");
+    }
+
+    /**
+     * 被lineHandler处理的行不再保留，输出只保留最后若干行
+     */
+    @Test
+    void keepsOnlyUnhandledTailOfOutput() throws Exception {
+        int lines = OUTPUT_BUFFER_LINES + 50;
+        ProcessRunner.ProcessResult result = ProcessRunner.await(ProcessRunner.start(
+                sh("i=0; while [ $i -lt " + lines + " ]; do echo line$i; echo progress=$i; i=$((i+1)); done"),
+                10, TimeUnit.SECONDS, line -> line.startsWith("progress=")));
+
+        String[] output = result.getOutput().split(System.lineSeparator());
+        assertThat(output).hasSize(OUTPUT_BUFFER_LINES);
+        assertThat(output[0]).isEqualTo("line50");
+        assertThat(output[OUTPUT_BUFFER_LINES - 1]).isEqualTo("line" + (lines - 1));
+        assertThat(result.getOutput()).doesNotContain("progress=");
+    }
+
+    /**
+     * 超时后抛出TimeoutException，并结束进程
+     */
+    @Test
+    void timesOutAndKillsProcess() {
+        long start = System.nanoTime();
+
+        assertThatThrownBy(() -> ProcessRunner.await(ProcessRunner.start(sh("sleep 30"), 200, TimeUnit.MILLISECONDS)))
+                .isInstanceOf(TimeoutException.class);
+
+        assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start)).isLessThan(10);
+    }
+
+    /**
+     * 取消返回的Future时结束进程
+     */
+    @Test
+    void cancelDestroysProcess(@TempDir Path tempDir) throws Exception {
+        // 进程未被结束时会在1秒后创建标记文件
+        Path marker = tempDir.resolve("marker");
+        CompletableFuture<ProcessRunner.ProcessResult> future = ProcessRunner.start(
+                sh("sleep 1; touch " + marker), 0, TimeUnit.SECONDS);
+
+        future.cancel(true);
+
+        assertThatThrownBy(() -> ProcessRunner.await(future)).isInstanceOf(InterruptedException.class);
+        Thread.sleep(1500);
+        assertThat(marker).doesNotExist();
+    }
+
+    private static List<String> sh(String script) {
+        return Arrays.asList("sh", "-c", script);
+    }
+}